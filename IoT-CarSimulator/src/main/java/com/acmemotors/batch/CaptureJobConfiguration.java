@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import java.io.File;
+
+import com.acmemotors.capture.CaptureCompiler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Compiles a recorded trip (job parameter {@code inputFile}) into a capture
+ * ({@code outputFile}, the input file name followed by {@code .capture} by default)
+ * that the {@code fleetJob} replays without parsing.
+ *
+ * The batch infrastructure comes from {@link LoaderJobConfiguration}.
+ *
+ * @author Michael Minella
+ */
+@Configuration
+public class CaptureJobConfiguration {
+
+	private static final Log logger = LogFactory.getLog(CaptureJobConfiguration.class);
+
+	@Autowired
+	private JobBuilderFactory jobBuilderFactory;
+
+	@Autowired
+	private StepBuilderFactory stepBuilderFactory;
+
+	@Bean
+	@StepScope
+	public Tasklet captureTasklet(
+			@Value("#{jobParameters['inputFile']}")String inputFile,
+			@Value("#{jobParameters['outputFile'] ?: jobParameters['inputFile'] + '.capture'}")String outputFile) {
+		return (contribution, chunkContext) -> {
+			File input = new File(inputFile);
+			File output = new File(outputFile);
+
+			int records = new CaptureCompiler().compile(input, output);
+
+			contribution.incrementWriteCount(records);
+			ExecutionContext context = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+			context.putLong("inputSize", input.length());
+			context.putLong("captureSize", output.length());
+
+			logger.info(String.format("Compiled %d records of %s (%d bytes) into %s (%d bytes)",
+					records, input, input.length(), output, output.length()));
+
+			return RepeatStatus.FINISHED;
+		};
+	}
+
+	@Bean
+	public Step captureStep() {
+		return stepBuilderFactory.get("captureStep")
+					   .tasklet(captureTasklet(null, null))
+					   .build();
+	}
+
+	@Bean
+	public Job captureJob() {
+		return jobBuilderFactory.get("captureJob")
+					   .incrementer(new RunIdIncrementer())
+					   .flow(captureStep())
+					   .end()
+					   .build();
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.acmemotors.capture.CaptureTrip;
+import com.acmemotors.load.LoadGenerator;
+import com.acmemotors.load.MappedTrip;
+import com.acmemotors.load.SyntheticVehicle;
+import com.acmemotors.load.Trip;
+import com.acmemotors.load.Vehicle;
+import com.acmemotors.load.VirtualVehicle;
+import com.acmemotors.service.RequestGateway;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+/**
+ * A load generation job: the recorded trips (job parameter {@code inputFile}, a comma
+ * separated list of files) are driven by a fleet of {@code vehicles} virtual vehicles
+ * sending {@code rate} records per second between them for {@code duration}
+ * milliseconds.  Each vehicle has its own VIN and journey id, starts at a random point
+ * of its trip and has its positions moved by up to {@code jitter} degrees.  The trips are
+ * mapped in memory ({@link MappedTrip}) and shared by all the vehicles, so the size of
+ * the fleet costs next to no memory.  The files can also be captures compiled by the
+ * {@code captureJob} ({@link CaptureTrip}), replayed without parsing any JSON.
+ *
+ * Without {@code inputFile} the vehicles are {@link SyntheticVehicle}s: each car's
+ * records are synthesized by its own model, seeded from {@code seed}, so the fleet can be
+ * of any size and every car is different.  The cars then start up to {@code spread}
+ * degrees ({@link SyntheticVehicle#DEFAULT_SPREAD} by default) from the same point.
+ *
+ * The batch infrastructure and the {@link RequestGateway} come from
+ * {@link LoaderJobConfiguration}.
+ *
+ * @author Michael Minella
+ */
+@Configuration
+public class FleetJobConfiguration {
+
+	@Autowired
+	private JobBuilderFactory jobBuilderFactory;
+
+	@Autowired
+	private StepBuilderFactory stepBuilderFactory;
+
+	@Autowired
+	private RequestGateway gateway;
+
+	@Bean
+	@StepScope
+	public Tasklet loadGeneratorTasklet(
+			@Value("#{jobParameters['inputFile']}")String fileNames,
+			@Value("#{jobParameters['vehicles'] ?: 100}")int vehicles,
+			@Value("#{jobParameters['rate'] ?: 100}")double rate,
+			@Value("#{jobParameters['duration'] ?: 60000}")long duration,
+			@Value("#{jobParameters['jitter'] ?: 0}")double jitter,
+			@Value("#{jobParameters['spread']}")Double spread,
+			@Value("#{jobParameters['seed']}")Long seed,
+			@Value("#{jobParameters['senderThreads'] ?: 8}")int senderThreads) {
+		return (contribution, chunkContext) -> {
+			Random random = seed != null ? new Random(seed) : new Random();
+			List<? extends Vehicle> fleet;
+
+			if(StringUtils.hasText(fileNames)) {
+				List<Trip> trips = new ArrayList<>();
+
+				for (String fileName : StringUtils.commaDelimitedListToStringArray(fileNames)) {
+					File file = new File(fileName.trim());
+					trips.add(CaptureTrip.isCapture(file) ? new CaptureTrip(file) : new MappedTrip(file));
+				}
+
+				fleet = VirtualVehicle.fleet(trips, vehicles, jitter, random);
+			}
+			else {
+				// Each car sends a record every vehicles / rate seconds, its model moves on as much
+				fleet = SyntheticVehicle.fleet(vehicles, vehicles / rate,
+						spread != null ? spread : SyntheticVehicle.DEFAULT_SPREAD, random);
+			}
+
+			LoadGenerator generator = new LoadGenerator(fleet, gateway, rate);
+			generator.setSenderThreads(senderThreads);
+
+			LoadGenerator.Report report = generator.run(duration);
+
+			contribution.incrementWriteCount((int) Math.min(report.getSent(), Integer.MAX_VALUE));
+			ExecutionContext context = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+			context.putLong("failed", report.getFailed());
+			context.putLong("dropped", report.getDropped());
+			context.putDouble("achievedRate", report.getAchievedRate());
+
+			return RepeatStatus.FINISHED;
+		};
+	}
+
+	@Bean
+	public Step loadGeneratorStep() {
+		return stepBuilderFactory.get("loadGeneratorStep")
+					   .tasklet(loadGeneratorTasklet(null, 0, 0, 0, 0, null, null, 0))
+					   .build();
+	}
+
+	@Bean
+	public Job fleetJob() {
+		return jobBuilderFactory.get("fleetJob")
+					   .incrementer(new RunIdIncrementer())
+					   .flow(loadGeneratorStep())
+					   .end()
+					   .build();
+	}
+}
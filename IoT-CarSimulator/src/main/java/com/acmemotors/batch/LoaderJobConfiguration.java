@@ -15,53 +15,19 @@
  */
 package com.acmemotors.batch;
 
-import static com.acmemotors.batch.domain.Field.ABSOLUTE_THROTTLE_POS_B;
-import static com.acmemotors.batch.domain.Field.ACCELERATION;
-import static com.acmemotors.batch.domain.Field.ACCELERATOR_THROTTLE_POS_D;
-import static com.acmemotors.batch.domain.Field.ACCELERATOR_THROTTLE_POS_E;
-import static com.acmemotors.batch.domain.Field.BAROMETRIC_PRESSURE;
-import static com.acmemotors.batch.domain.Field.BEARING;
-import static com.acmemotors.batch.domain.Field.CATALYST_TEMP;
-import static com.acmemotors.batch.domain.Field.CONTROL_MODULE_VOLTAGE;
-import static com.acmemotors.batch.domain.Field.COOLANT_TEMP;
-import static com.acmemotors.batch.domain.Field.DISTANCE_WITH_MIL_ON;
-import static com.acmemotors.batch.domain.Field.ENGINE_LOAD;
-import static com.acmemotors.batch.domain.Field.FUEL_LEVEL_INPUT;
-import static com.acmemotors.batch.domain.Field.FUEL_SYSTEM_STATUS;
-import static com.acmemotors.batch.domain.Field.INTAKE_AIR_TEMP;
-import static com.acmemotors.batch.domain.Field.INTAKE_MANIFOLD_PRESSURE;
-import static com.acmemotors.batch.domain.Field.JOURNEY_ID;
-import static com.acmemotors.batch.domain.Field.LATITUDE;
-import static com.acmemotors.batch.domain.Field.LONGITUDE;
-import static com.acmemotors.batch.domain.Field.LONG_TERM_FUEL;
-import static com.acmemotors.batch.domain.Field.MAF_AIRFLOW;
-import static com.acmemotors.batch.domain.Field.OBD_STANDARDS;
-import static com.acmemotors.batch.domain.Field.RELATIVE_THROTTLE_POS;
-import static com.acmemotors.batch.domain.Field.RPM;
-import static com.acmemotors.batch.domain.Field.SHORT_TERM_FUEL;
-import static com.acmemotors.batch.domain.Field.THROTTLE_POSITION;
-import static com.acmemotors.batch.domain.Field.TIME_SINCE_ENGINE_START;
-import static com.acmemotors.batch.domain.Field.VEHICLE_SPEED;
-import static com.acmemotors.batch.domain.Field.VIN;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.io.File;
 
 import javax.sql.DataSource;
 
-import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
 import com.acmemotors.batch.support.GatewayItemWriter;
+import com.acmemotors.batch.support.HerbieJsonWriter;
+import com.acmemotors.batch.support.JsonFilePartitioner;
+import com.acmemotors.batch.support.JsonRecordItemReader;
+import com.acmemotors.batch.support.PacedItemWriter;
+import com.acmemotors.batch.support.SendMetricsJobListener;
+import com.acmemotors.metrics.SendMetrics;
 import com.acmemotors.service.RequestGateway;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
 
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
@@ -71,41 +37,37 @@ import org.springframework.batch.core.configuration.annotation.StepBuilderFactor
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.mapping.FieldSetMapper;
-import org.springframework.batch.item.file.transform.DefaultFieldSet;
-import org.springframework.batch.item.file.transform.FieldSet;
-import org.springframework.batch.item.file.transform.LineTokenizer;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.http.HttpMethod;
-import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.config.EnableIntegration;
 import org.springframework.integration.gateway.GatewayProxyFactoryBean;
-import org.springframework.integration.http.outbound.HttpRequestExecutingMessageHandler;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.util.StringUtils;
-import org.springframework.validation.BindException;
 
 /**
- * This is a Spring Batch job that reads in a specified CSV file, processes it into JSON and then
- * writes it to the specified Spring channel.  The commit interval on this job is hardcoded to 1
- * and should stay that way due to the fact that the delay between each write occurs in the
- * {@link org.springframework.batch.item.ItemProcessor}.  If we want to change the commit interval,
- * this logic would need to be moved to the {@link org.springframework.batch.item.ItemWriter}
+ * This is a Spring Batch job that reads in a specified JSON file, processes it into JSON and then
+ * writes it to the specified Spring channel, sent on by the transport chosen in
+ * {@link TransportConfiguration}.  The file can be split into partitions replayed in
+ * parallel, each one by its own thread.  The records are written on a fixed schedule, one every
+ * {@code delay} milliseconds, by a {@link PacedItemWriter} that measures how late each one was
+ * sent; the percentiles are logged at the end of the job.  With a commit interval above 1 the
+ * records of a chunk are sent together once the last of them is due.
  *
  * @author Michael Minella
  */
 @Configuration
 @EnableBatchProcessing
 @EnableIntegration
+@Import(TransportConfiguration.class)
 public class LoaderJobConfiguration {
 
 	@Autowired
@@ -131,202 +93,66 @@ public class LoaderJobConfiguration {
 	}
 
 	/**
-	 * Returns the tokenizer used to parse a line of the input file (each record is a JSON
-	 * string).
+	 * Splits the input file into the given number of partitions (job parameter
+	 * {@code partitions}, 1 by default), each one replayed by its own thread.
 	 *
-	 * @return {@link org.springframework.batch.item.file.transform.LineTokenizer} capable
-	 * 		of parsing the input JSON.
+	 * @param fileName the path to the input file
+	 * @param partitions the number of partitions
+	 * @return the {@link org.springframework.batch.core.partition.support.Partitioner}
+	 * 		of the input file
 	 */
 	@Bean
-	@SuppressWarnings("unchecked")
-	public LineTokenizer jsonLineTokenzier() {
-		return line -> {
-			List<String> tokens = new ArrayList<>();
-
-			try {
-				HashMap<String,Object> result =
-						new ObjectMapper().readValue(line, HashMap.class);
-
-				tokens.add((String) result.get(Field.get(0).getHerbieField()));
-				tokens.add(String.valueOf(result.get(Field.get(1).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(2).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(3).getHerbieField())));
-				tokens.add(result.get(Field.get(4).getHerbieField()).toString());
-				tokens.add(String.valueOf(result.get(Field.get(5).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(6).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(7).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(8).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(9).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(10).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(11).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(12).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(13).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(14).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(15).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(16).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(17).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(18).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(19).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(20).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(21).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(22).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(23).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(24).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(25).getHerbieField())));
-				tokens.add(String.valueOf(result.get(Field.get(26).getHerbieField())));
-
-			} catch (IOException e) {
-				throw new RuntimeException("Unable to parse json: " + line);
-			}
-
-			String[] fields = Field.herbieFields();
-			return new DefaultFieldSet(tokens.toArray(new String[tokens.size() - 1]),
-					Arrays.copyOfRange(fields, 0, fields.length - 1));
-		};
+	@StepScope
+	public JsonFilePartitioner partitioner(
+			@Value("#{jobParameters['inputFile']}")String fileName,
+			@Value("#{jobParameters['partitions'] ?: 1}")int partitions) {
+		return new JsonFilePartitioner(new File(fileName), partitions);
 	}
 
+	/**
+	 * Streams the records of the partition of the input file being replayed.
+	 *
+	 * @param fileName the path to the input file
+	 * @param start the offset of the first record of the partition
+	 * @param end the offset past the last record of the partition
+	 * @param journeyId the id of the journey replayed
+	 * @return the reader of the records of the partition
+	 * @throws Exception if the reader can not be initialized
+	 */
 	@Bean
 	@StepScope
-	public FlatFileItemReader<Map<String, Object>> reader(
-			@Value("#{jobParameters['inputFile']}")String fileName) throws Exception {
-
-		DefaultLineMapper<Map<String, Object>> mapper = new DefaultLineMapper<>();
-		mapper.setLineTokenizer(jsonLineTokenzier());
-		mapper.setFieldSetMapper(new FieldSetMapper<Map<String,Object>>() {
-
-			private UUID journeyId = UUID.randomUUID();
-
-			private Double readDouble(String value) {
-				if(StringUtils.hasText(value)) {
-					return Double.valueOf(value);
-				} else {
-					return null;
-				}
-			}
-
-			private Integer readInteger(String value) {
-				if(StringUtils.hasText(value)) {
-					return Integer.valueOf(value);
-				} else {
-					return null;
-				}
-			}
-
-			@Override
-			public Map<String, Object> mapFieldSet(FieldSet fieldSet) throws BindException {
+	public JsonRecordItemReader reader(
+			@Value("#{jobParameters['inputFile']}")String fileName,
+			@Value("#{stepExecutionContext['start']}")Long start,
+			@Value("#{stepExecutionContext['end']}")Long end,
+			@Value("#{stepExecutionContext['journeyId']}")String journeyId) throws Exception {
 
-				Map<String, Object> map = new HashMap<>();
-
-				map.put(VIN.getHerbieField(),
-						fieldSet.readString(VIN.getHerbieField()));
-				map.put(LONGITUDE.getHerbieField(),
-						readDouble(fieldSet.readString(LONGITUDE.getHerbieField())));
-				map.put(LATITUDE.getHerbieField(),
-						readDouble(fieldSet.readString(LATITUDE.getHerbieField())));
-				map.put(RPM.getHerbieField(),
-						readDouble(fieldSet.readString(RPM.getHerbieField())));
-				map.put(VEHICLE_SPEED.getHerbieField(),
-						readInteger(fieldSet.readString(VEHICLE_SPEED.getHerbieField())));
-				String statuses =
-						fieldSet.readString(FUEL_SYSTEM_STATUS.getHerbieField());
-				String [] statusPieces =
-						statuses.substring(1,statuses.length() - 1).split(",");
-				Integer [] integerStatuses = {readInteger(statusPieces[0].trim()),
-												readInteger(statusPieces[1].trim())};
-				map.put(FUEL_SYSTEM_STATUS.getHerbieField(), integerStatuses);
-				map.put(ENGINE_LOAD.getHerbieField(),
-						readDouble(fieldSet.readString(ENGINE_LOAD.getHerbieField())));
-				map.put(COOLANT_TEMP.getHerbieField(),
-						readInteger(fieldSet.readString(COOLANT_TEMP.getHerbieField())));
-				map.put(SHORT_TERM_FUEL.getHerbieField(),
-						readDouble(fieldSet.readString(SHORT_TERM_FUEL.getHerbieField())));
-				map.put(LONG_TERM_FUEL.getHerbieField(),
-						readDouble(fieldSet.readString(LONG_TERM_FUEL.getHerbieField())));
-				map.put(INTAKE_MANIFOLD_PRESSURE.getHerbieField(),
-						readInteger(fieldSet.readString(INTAKE_MANIFOLD_PRESSURE.getHerbieField())));
-				map.put(INTAKE_AIR_TEMP.getHerbieField(),
-						readInteger(fieldSet.readString(INTAKE_AIR_TEMP.getHerbieField())));
-				map.put(MAF_AIRFLOW.getHerbieField(),
-						readDouble(fieldSet.readString(MAF_AIRFLOW.getHerbieField())));
-				map.put(THROTTLE_POSITION.getHerbieField(),
-						readInteger(fieldSet.readString(THROTTLE_POSITION.getHerbieField())));
-				map.put(OBD_STANDARDS.getHerbieField(),
-						fieldSet.readString(OBD_STANDARDS.getHerbieField()));
-				map.put(TIME_SINCE_ENGINE_START.getHerbieField(),
-						readInteger(fieldSet.readString(TIME_SINCE_ENGINE_START.getHerbieField())));
-				map.put(FUEL_LEVEL_INPUT.getHerbieField(),
-						readInteger(fieldSet.readString(FUEL_LEVEL_INPUT.getHerbieField())));
-				map.put(RELATIVE_THROTTLE_POS.getHerbieField(),
-						readDouble(fieldSet.readString(RELATIVE_THROTTLE_POS.getHerbieField())));
-				map.put(ABSOLUTE_THROTTLE_POS_B.getHerbieField(),
-						readDouble(fieldSet.readString(ABSOLUTE_THROTTLE_POS_B.getHerbieField())));
-				map.put(ACCELERATOR_THROTTLE_POS_D.getHerbieField(),
-						readDouble(fieldSet.readString(ACCELERATOR_THROTTLE_POS_D.getHerbieField())));
-				map.put(ACCELERATOR_THROTTLE_POS_E.getHerbieField(),
-						readDouble(fieldSet.readString(ACCELERATOR_THROTTLE_POS_E.getHerbieField())));
-				map.put(DISTANCE_WITH_MIL_ON.getHerbieField(),
-						readInteger(fieldSet.readString(DISTANCE_WITH_MIL_ON.getHerbieField())));
-				map.put(CATALYST_TEMP.getHerbieField(),
-						readDouble(fieldSet.readString(CATALYST_TEMP.getHerbieField())));
-				map.put(BAROMETRIC_PRESSURE.getHerbieField(),
-						readInteger(fieldSet.readString(BAROMETRIC_PRESSURE.getHerbieField())));
-				map.put(CONTROL_MODULE_VOLTAGE.getHerbieField(),
-						readDouble(fieldSet.readString(CONTROL_MODULE_VOLTAGE.getHerbieField())));
-				map.put(ACCELERATION.getHerbieField(),
-						readDouble(fieldSet.readString(ACCELERATION.getHerbieField())));
-				map.put(BEARING.getHerbieField(),
-						readDouble(fieldSet.readString(BEARING.getHerbieField())));
-				map.put(JOURNEY_ID.getHerbieField(), journeyId.toString());
-
-				return map;
-			}
-		});
+		JsonRecordItemReader reader = new JsonRecordItemReader();
+		reader.setResource(new FileSystemResource(fileName));
 
-		mapper.afterPropertiesSet();
+		if(start != null && end != null) {
+			reader.setStart(start);
+			reader.setEnd(end);
+		}
 
-		FlatFileItemReader<Map<String, Object>> reader = new FlatFileItemReader<>();
-		reader.setLineMapper(mapper);
-		reader.setResource(new FileSystemResource(fileName));
+		reader.setJourneyId(journeyId);
+		// A replay is not restarted where it stopped, no need to store the position
+		reader.setSaveState(false);
 		reader.afterPropertiesSet();
 
 		return reader;
 	}
 
 	@Bean
-	@StepScope
-	public ItemProcessor<Map<String, Object>, String> processor(
-			@Value("#{jobParameters['delay']}")final long delay) {
-		return item -> {
-			DefaultSerializerProvider provider = new DefaultSerializerProvider.Impl();
-
-			provider.setNullValueSerializer(new JsonSerializer<Object>() {
-				@Override
-				public void serialize(Object value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
-					if(value == null) {
-						jgen.writeString("");
-					} else {
-						if(value instanceof String) {
-							jgen.writeString((String) value);
-						} else {
-							if(value instanceof Integer) {
-								jgen.writeNumber((Integer) value);
-							} else {
-								jgen.writeNumber((Double) value);
-							}
-						}
-					}
-				}
-			});
-
-			ObjectMapper mapper = new ObjectMapper();
-			mapper.setSerializerProvider(provider);
-
-			String processedItem = mapper.writeValueAsString(item);
+	public HerbieJsonWriter jsonWriter() {
+		return new HerbieJsonWriter();
+	}
 
-			Thread.sleep(delay);
+	@Bean
+	public ItemProcessor<TelemetryRecord, String> processor() {
+		HerbieJsonWriter jsonWriter = jsonWriter();
 
-			return processedItem;
-		};
+		return jsonWriter::write;
 	}
 
 	@Bean
@@ -334,18 +160,6 @@ public class LoaderJobConfiguration {
 		return new DirectChannel();
 	}
 
-	@Bean
-	@ServiceActivator(inputChannel = "requestChannel")
-	public HttpRequestExecutingMessageHandler messageHandler(
-			@Value("${serverUrl}") String serverUrl	) {
-		HttpRequestExecutingMessageHandler handler =
-				new HttpRequestExecutingMessageHandler(serverUrl);
-		handler.setHttpMethod(HttpMethod.POST);
-		handler.setExpectedResponseType(String.class);
-
-		return handler;
-	}
-
 	@Bean
 	public GatewayProxyFactoryBean gatewayProxyFactoryBean() {
 		GatewayProxyFactoryBean gatewayProxyFactoryBean = new GatewayProxyFactoryBean();
@@ -355,26 +169,105 @@ public class LoaderJobConfiguration {
 		return gatewayProxyFactoryBean;
 	}
 
+	/**
+	 * Number of items processed before they are written (job parameter
+	 * {@code commitInterval}, 1 by default).  The items of a chunk can be sent in batches
+	 * by the {@link GatewayItemWriter}.
+	 *
+	 * @param commitInterval the number of items per chunk
+	 * @return the completion policy of the chunks
+	 */
+	@Bean
+	@StepScope
+	public SimpleCompletionPolicy completionPolicy(
+			@Value("#{jobParameters['commitInterval'] ?: 1}")int commitInterval) {
+		return new SimpleCompletionPolicy(commitInterval);
+	}
+
+	/**
+	 * Sends the items of a chunk in batches of {@code batchSize} items (1 by default)
+	 * formatted as {@code batchFormat} ({@code NDJSON} or {@code JSON_ARRAY}), with up
+	 * to {@code maxInFlight} requests sent in parallel and each batch sent up to
+	 * {@code maxAttempts} times, all job parameters.
+	 *
+	 * @param batchSize the maximum number of items per request
+	 * @param batchFormat how the items of a batch are sent
+	 * @param maxInFlight the maximum number of requests sent in parallel
+	 * @param maxAttempts the number of times a batch is sent before giving up
+	 * @return the writer
+	 */
+	@Bean
+	@StepScope
+	public GatewayItemWriter writer(
+			@Value("#{jobParameters['batchSize'] ?: 1}")int batchSize,
+			@Value("#{jobParameters['batchFormat'] ?: 'NDJSON'}")GatewayItemWriter.BatchFormat batchFormat,
+			@Value("#{jobParameters['maxInFlight'] ?: 1}")int maxInFlight,
+			@Value("#{jobParameters['maxAttempts'] ?: 1}")int maxAttempts) {
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setBatchSize(batchSize);
+		writer.setBatchFormat(batchFormat);
+		writer.setMaxInFlight(maxInFlight);
+		writer.setMaxAttempts(maxAttempts);
+
+		return writer;
+	}
+
 	@Bean
-	public GatewayItemWriter writer() {
-		return new GatewayItemWriter();
+	public SendMetrics sendMetrics() {
+		return new SendMetrics();
+	}
+
+	/**
+	 * Writes the records {@code delay} milliseconds apart (job parameter, 0 by default),
+	 * recording their latencies from the time they were due in {@link #sendMetrics()}.
+	 *
+	 * @param delay the time between two records
+	 * @return the writer pacing the records
+	 * @throws Exception if the writer can not be initialized
+	 */
+	@Bean
+	@StepScope
+	public PacedItemWriter<String> pacedWriter(
+			@Value("#{jobParameters['delay'] ?: 0}")long delay) throws Exception {
+		PacedItemWriter<String> writer = new PacedItemWriter<>();
+		writer.setDelegate(writer(1, null, 1, 1));
+		writer.setInterval(delay);
+		writer.setMetrics(sendMetrics());
+		writer.afterPropertiesSet();
+
+		return writer;
 	}
 
 	@Bean
 	public Step step1() throws Exception {
 		return stepBuilderFactory.get("step1")
-					   .<Map<String, Object>, String> chunk(1)
-					   .reader(reader(null))
-					   .processor(processor(-1l))
-					   .writer(writer())
+					   .<TelemetryRecord, String> chunk(completionPolicy(1))
+					   .reader(reader(null, null, null, null))
+					   .processor(processor())
+					   .writer(pacedWriter(0))
+					   .build();
+	}
+
+	@Bean
+	public TaskExecutor partitionTaskExecutor() {
+		return new SimpleAsyncTaskExecutor("simulator-");
+	}
+
+	@Bean
+	public Step partitionedStep() throws Exception {
+		return stepBuilderFactory.get("partitionedStep")
+					   .partitioner("step1", partitioner(null, 1))
+					   .step(step1())
+					   .taskExecutor(partitionTaskExecutor())
 					   .build();
 	}
 
 	@Bean
-	public Job simulatorJob(Step step1) throws Exception {
+	public Job simulatorJob() throws Exception {
 		return jobBuilderFactory.get("simulatorJob")
 					   .incrementer(new RunIdIncrementer())
-					   .flow(step1)
+					   .listener(new SendMetricsJobListener(sendMetrics()))
+					   .flow(partitionedStep())
 					   .end()
 					   .build();
 	}
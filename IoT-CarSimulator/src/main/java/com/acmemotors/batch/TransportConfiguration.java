@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import java.net.URI;
+
+import com.acmemotors.transport.NullRecordSink;
+import com.acmemotors.transport.RecordSinkMessageHandler;
+import com.acmemotors.transport.TcpRecordSink;
+import com.acmemotors.transport.WebSocketRecordSink;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.http.outbound.HttpRequestExecutingMessageHandler;
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.integration.ip.tcp.serializer.ByteArrayLfSerializer;
+
+/**
+ * How the records sent through the {@link com.acmemotors.service.RequestGateway} reach the
+ * server, chosen with the {@code transport} property:
+ *
+ * <ul>
+ *     <li>{@code http} (the default): each payload is POSTed to {@code serverUrl}</li>
+ *     <li>{@code tcp}: the payloads are written one per line on a connection kept open
+ *     to {@code tcpHost}:{@code tcpPort} (localhost:1234 by default)</li>
+ *     <li>{@code websocket}: each payload is a text message of a WebSocket opened to
+ *     {@code webSocketUrl} (ws://localhost:9000/ by default)</li>
+ *     <li>{@code none}: the payloads are dropped, to measure the simulator alone</li>
+ * </ul>
+ *
+ * Each transport has its own configuration, so only the handler chosen is subscribed to
+ * the request channel.
+ *
+ * @author Michael Minella
+ */
+@Configuration
+public class TransportConfiguration {
+
+	private static final String REQUEST_CHANNEL = "requestChannel";
+
+	@Configuration
+	@ConditionalOnProperty(name = "transport", havingValue = "http", matchIfMissing = true)
+	public static class HttpTransport {
+
+		@Bean
+		@ServiceActivator(inputChannel = REQUEST_CHANNEL)
+		public HttpRequestExecutingMessageHandler messageHandler(
+				@Value("${serverUrl}") String serverUrl	) {
+			HttpRequestExecutingMessageHandler handler =
+					new HttpRequestExecutingMessageHandler(serverUrl);
+			handler.setHttpMethod(HttpMethod.POST);
+			handler.setExpectedResponseType(String.class);
+
+			return handler;
+		}
+	}
+
+	@Configuration
+	@ConditionalOnProperty(name = "transport", havingValue = "tcp")
+	public static class TcpTransport {
+
+		@Bean
+		public TcpNetClientConnectionFactory tcpConnectionFactory(
+				@Value("${tcpHost:localhost}") String host,
+				@Value("${tcpPort:1234}") int port) {
+			TcpNetClientConnectionFactory connectionFactory = new TcpNetClientConnectionFactory(host, port);
+			connectionFactory.setSingleUse(false);
+			connectionFactory.setSoKeepAlive(true);
+			connectionFactory.setSoTcpNoDelay(true);
+			connectionFactory.setSerializer(new ByteArrayLfSerializer());
+
+			return connectionFactory;
+		}
+
+		@Bean
+		@ServiceActivator(inputChannel = REQUEST_CHANNEL)
+		public RecordSinkMessageHandler tcpMessageHandler(TcpNetClientConnectionFactory tcpConnectionFactory) {
+			return new RecordSinkMessageHandler(new TcpRecordSink(tcpConnectionFactory));
+		}
+	}
+
+	@Configuration
+	@ConditionalOnProperty(name = "transport", havingValue = "websocket")
+	public static class WebSocketTransport {
+
+		@Bean
+		@ServiceActivator(inputChannel = REQUEST_CHANNEL)
+		public RecordSinkMessageHandler webSocketMessageHandler(
+				@Value("${webSocketUrl:ws://localhost:9000/}") String webSocketUrl) {
+			return new RecordSinkMessageHandler(new WebSocketRecordSink(URI.create(webSocketUrl)));
+		}
+	}
+
+	@Configuration
+	@ConditionalOnProperty(name = "transport", havingValue = "none")
+	public static class NoTransport {
+
+		@Bean
+		@ServiceActivator(inputChannel = REQUEST_CHANNEL)
+		public RecordSinkMessageHandler nullMessageHandler() {
+			return new RecordSinkMessageHandler(new NullRecordSink());
+		}
+	}
+}
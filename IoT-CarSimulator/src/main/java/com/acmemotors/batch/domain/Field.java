@@ -1,7 +1,9 @@
 package com.acmemotors.batch.domain;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -9,47 +11,65 @@ import java.util.stream.Collectors;
  */
 public enum Field {
 
-	VIN("vin", "vin"),
-	LONGITUDE("longitude", "longitude"),
-	LATITUDE("latitude", "latitude"),
-	VEHICLE_SPEED("vehicle_speed", "vehicleSpeed"),
-	FUEL_SYSTEM_STATUS("fuel_system_status", "fuelSystemStatus"),
-	ENGINE_LOAD("engine_load", "engineLoad"),
-	COOLANT_TEMP("coolant_temp", "coolantTemp"),
-	SHORT_TERM_FUEL("short_term_fuel", "shortTermFuel"),
-	LONG_TERM_FUEL("long_term_fuel", "longTermFuel"),
-	INTAKE_MANIFOLD_PRESSURE("intake_manifold_pressure", "intakeManifoldPressure"),
-	INTAKE_AIR_TEMP("intake_air_temp", "intakeAirTemp"),
-	MAF_AIRFLOW("maf_airflow", "mafAirflow"),
-	THROTTLE_POSITION("throttle_position", "throttlePosition"),
-	OBD_STANDARDS("obd_standards", "obdStandards"),
-	TIME_SINCE_ENGINE_START("time_since_engine_start", "timeSinceEngineStart"),
-	FUEL_LEVEL_INPUT("fuel_level_input", "fuelLevelInput"),
-	RELATIVE_THROTTLE_POS("relative_throttle_pos", "relativeThrottlePos"),
-	ABSOLUTE_THROTTLE_POS_B("absolute_throttle_pos_b", "absoluteThrottlePosB"),
-	ACCELERATOR_THROTTLE_POS_D("accelerator_throttle_pos_d", "acceleratorThrottlePosD"),
-	ACCELERATOR_THROTTLE_POS_E("accelerator_throttle_pos_e", "acceleratorThrottlePosE"),
-	DISTANCE_WITH_MIL_ON("distance_with_mil_on", "distanceWithMilOn"),
-	CATALYST_TEMP("catalyst_temp", "catalystTemp"),
-	BAROMETRIC_PRESSURE("barometric_pressure", "barometricPressure"),
-	CONTROL_MODULE_VOLTAGE("control_module_voltage", "controlModuleVoltage"),
-	ACCELERATION("acceleration", "acceleration"),
-	BEARING("bearing", "bearing"),
-	RPM ("rpm", "rpm"),
-	JOURNEY_ID("journey_id", "journeyId");
+	VIN("vin", "vin", Type.STRING),
+	LONGITUDE("longitude", "longitude", Type.DECIMAL),
+	LATITUDE("latitude", "latitude", Type.DECIMAL),
+	VEHICLE_SPEED("vehicle_speed", "vehicleSpeed", Type.INTEGER),
+	FUEL_SYSTEM_STATUS("fuel_system_status", "fuelSystemStatus", Type.INTEGER_ARRAY),
+	ENGINE_LOAD("engine_load", "engineLoad", Type.DECIMAL),
+	COOLANT_TEMP("coolant_temp", "coolantTemp", Type.INTEGER),
+	SHORT_TERM_FUEL("short_term_fuel", "shortTermFuel", Type.DECIMAL),
+	LONG_TERM_FUEL("long_term_fuel", "longTermFuel", Type.DECIMAL),
+	INTAKE_MANIFOLD_PRESSURE("intake_manifold_pressure", "intakeManifoldPressure", Type.INTEGER),
+	INTAKE_AIR_TEMP("intake_air_temp", "intakeAirTemp", Type.INTEGER),
+	MAF_AIRFLOW("maf_airflow", "mafAirflow", Type.DECIMAL),
+	THROTTLE_POSITION("throttle_position", "throttlePosition", Type.INTEGER),
+	OBD_STANDARDS("obd_standards", "obdStandards", Type.STRING),
+	TIME_SINCE_ENGINE_START("time_since_engine_start", "timeSinceEngineStart", Type.INTEGER),
+	FUEL_LEVEL_INPUT("fuel_level_input", "fuelLevelInput", Type.INTEGER),
+	RELATIVE_THROTTLE_POS("relative_throttle_pos", "relativeThrottlePos", Type.DECIMAL),
+	ABSOLUTE_THROTTLE_POS_B("absolute_throttle_pos_b", "absoluteThrottlePosB", Type.DECIMAL),
+	ACCELERATOR_THROTTLE_POS_D("accelerator_throttle_pos_d", "acceleratorThrottlePosD", Type.DECIMAL),
+	ACCELERATOR_THROTTLE_POS_E("accelerator_throttle_pos_e", "acceleratorThrottlePosE", Type.DECIMAL),
+	DISTANCE_WITH_MIL_ON("distance_with_mil_on", "distanceWithMilOn", Type.INTEGER),
+	CATALYST_TEMP("catalyst_temp", "catalystTemp", Type.DECIMAL),
+	BAROMETRIC_PRESSURE("barometric_pressure", "barometricPressure", Type.INTEGER),
+	CONTROL_MODULE_VOLTAGE("control_module_voltage", "controlModuleVoltage", Type.DECIMAL),
+	ACCELERATION("acceleration", "acceleration", Type.DECIMAL),
+	BEARING("bearing", "bearing", Type.DECIMAL),
+	RPM ("rpm", "rpm", Type.DECIMAL),
+	JOURNEY_ID("journey_id", "journeyId", Type.STRING);
+
+	private static final Map<String, Field> HERBIE_FIELDS = new HashMap<>();
+
+	static {
+		for (Field field : values()) {
+			HERBIE_FIELDS.put(field.getHerbieField(), field);
+		}
+	}
 
 	private String herbieField;
 	private String gemfireField;
+	private Type type;
 
-	Field(String herbieField, String gemfireField) {
+	Field(String herbieField, String gemfireField, Type type) {
 		this.herbieField = herbieField;
 		this.gemfireField = gemfireField;
+		this.type = type;
 	}
 
 	public static Field get(int index) {
 		return values()[index];
 	}
 
+	/**
+	 * @param herbieField the name of a field in the JSON sent by Herbie
+	 * @return the field with that name or null if there is none
+	 */
+	public static Field forHerbieField(String herbieField) {
+		return HERBIE_FIELDS.get(herbieField);
+	}
+
 	public String getHerbieField() {
 		return herbieField;
 	}
@@ -58,6 +78,10 @@ public enum Field {
 		return gemfireField;
 	}
 
+	public Type getType() {
+		return type;
+	}
+
 	public static String[] herbieFields() {
 		List<String> collect = Arrays.asList(values()).stream()
 				.map(Field::getHerbieField)
@@ -73,4 +97,22 @@ public enum Field {
 
 		return collect.toArray(new String[collect.size()]);
 	}
+
+	/**
+	 * The Java type a value of a field is read as.
+	 */
+	public enum Type {
+
+		/** Read as a {@link String} whatever its JSON type. */
+		STRING,
+
+		/** Read as an {@link Integer}. */
+		INTEGER,
+
+		/** Read as a {@link Double}. */
+		DECIMAL,
+
+		/** Read as an {@link Integer} array. */
+		INTEGER_ARRAY
+	}
 }
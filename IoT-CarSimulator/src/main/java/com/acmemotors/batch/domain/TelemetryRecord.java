@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.domain;
+
+/**
+ * A record sent by Herbie, holding a value for each {@link Field}.  The numbers (the
+ * {@link Field.Type#INTEGER} and {@link Field.Type#DECIMAL} fields) are kept unboxed in
+ * one array and the strings and arrays in another, each field having its slot in one of
+ * them, and the fields without a value are flagged in a bit mask rather than held as
+ * nulls.  A record is therefore three objects (plus the fuel system status) however many
+ * fields it has.
+ *
+ * Elements of the fuel system status that are missing are held as {@link #MISSING}.
+ *
+ * @author Michael Minella
+ */
+public class TelemetryRecord {
+
+	/**
+	 * Value of a missing element of an integer array.
+	 */
+	public static final int MISSING = Integer.MIN_VALUE;
+
+	private static final Field[] FIELDS = Field.values();
+
+	private static final int[] SLOTS = new int[FIELDS.length];
+
+	private static final int NUMBER_COUNT;
+
+	private static final int REFERENCE_COUNT;
+
+	private static final long ALL_NULL = FIELDS.length == 64 ? -1L : (1L << FIELDS.length) - 1;
+
+	static {
+		if(FIELDS.length > 64) {
+			throw new IllegalStateException("The null mask of a record holds up to 64 fields");
+		}
+
+		int numbers = 0;
+		int references = 0;
+
+		for (Field field : FIELDS) {
+			SLOTS[field.ordinal()] = isNumber(field) ? numbers++ : references++;
+		}
+
+		NUMBER_COUNT = numbers;
+		REFERENCE_COUNT = references;
+	}
+
+	private final double[] numbers;
+
+	private final Object[] references;
+
+	private long nulls = ALL_NULL;
+
+	/**
+	 * Creates a record without any value.
+	 */
+	public TelemetryRecord() {
+		this.numbers = new double[NUMBER_COUNT];
+		this.references = new Object[REFERENCE_COUNT];
+	}
+
+	/**
+	 * Creates a copy of a record.  The arrays of integers are shared, they are not
+	 * meant to be modified.
+	 *
+	 * @param record the record to copy
+	 */
+	public TelemetryRecord(TelemetryRecord record) {
+		this.numbers = record.numbers.clone();
+		this.references = record.references.clone();
+		this.nulls = record.nulls;
+	}
+
+	/**
+	 * @return true if the field has no value
+	 */
+	public boolean isNull(Field field) {
+		return (nulls & (1L << field.ordinal())) != 0;
+	}
+
+	public void setNull(Field field) {
+		nulls |= 1L << field.ordinal();
+
+		if(isNumber(field)) {
+			numbers[SLOTS[field.ordinal()]] = 0;
+		}
+		else {
+			references[SLOTS[field.ordinal()]] = null;
+		}
+	}
+
+	/**
+	 * @return the value of an {@link Field.Type#INTEGER} or {@link Field.Type#DECIMAL}
+	 * 		field, 0 if it has no value
+	 */
+	public double getDouble(Field field) {
+		return numbers[numberSlot(field)];
+	}
+
+	public void setDouble(Field field, double value) {
+		numbers[numberSlot(field)] = value;
+		nulls &= ~(1L << field.ordinal());
+	}
+
+	/**
+	 * @return the value of an {@link Field.Type#INTEGER} field, 0 if it has no value
+	 */
+	public int getInt(Field field) {
+		return (int) numbers[numberSlot(field)];
+	}
+
+	public void setInt(Field field, int value) {
+		setDouble(field, value);
+	}
+
+	/**
+	 * @return the value of a {@link Field.Type#STRING} field, null if it has no value
+	 */
+	public String getString(Field field) {
+		return (String) references[referenceSlot(field, Field.Type.STRING)];
+	}
+
+	/**
+	 * @param value the value of a {@link Field.Type#STRING} field, null for no value
+	 */
+	public void setString(Field field, String value) {
+		setReference(field, Field.Type.STRING, value);
+	}
+
+	/**
+	 * @return the value of an {@link Field.Type#INTEGER_ARRAY} field, null if it has no
+	 * 		value
+	 */
+	public int[] getIntArray(Field field) {
+		return (int[]) references[referenceSlot(field, Field.Type.INTEGER_ARRAY)];
+	}
+
+	/**
+	 * @param value the value of an {@link Field.Type#INTEGER_ARRAY} field, null for no
+	 * 		value
+	 */
+	public void setIntArray(Field field, int[] value) {
+		setReference(field, Field.Type.INTEGER_ARRAY, value);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder("TelemetryRecord{");
+
+		for (Field field : FIELDS) {
+			if(field.ordinal() > 0) {
+				string.append(", ");
+			}
+
+			string.append(field.getHerbieField()).append('=');
+
+			if(isNull(field)) {
+				string.append("null");
+				continue;
+			}
+
+			switch (field.getType()) {
+				case INTEGER:
+					string.append(getInt(field));
+					break;
+				case DECIMAL:
+					string.append(getDouble(field));
+					break;
+				case STRING:
+					string.append(getString(field));
+					break;
+				case INTEGER_ARRAY:
+					int[] values = getIntArray(field);
+					string.append('[');
+
+					for (int i = 0; i < values.length; i++) {
+						if(i > 0) {
+							string.append(", ");
+						}
+
+						string.append(values[i] == MISSING ? "null" : String.valueOf(values[i]));
+					}
+
+					string.append(']');
+					break;
+			}
+		}
+
+		return string.append('}').toString();
+	}
+
+	private void setReference(Field field, Field.Type type, Object value) {
+		references[referenceSlot(field, type)] = value;
+
+		if(value == null) {
+			nulls |= 1L << field.ordinal();
+		}
+		else {
+			nulls &= ~(1L << field.ordinal());
+		}
+	}
+
+	private static int numberSlot(Field field) {
+		if(!isNumber(field)) {
+			throw new IllegalArgumentException(field + " is not a number");
+		}
+
+		return SLOTS[field.ordinal()];
+	}
+
+	private static int referenceSlot(Field field, Field.Type type) {
+		if(field.getType() != type) {
+			throw new IllegalArgumentException(field + " is not of type " + type);
+		}
+
+		return SLOTS[field.ordinal()];
+	}
+
+	private static boolean isNumber(Field field) {
+		return field.getType() == Field.Type.INTEGER || field.getType() == Field.Type.DECIMAL;
+	}
+}
@@ -17,34 +17,199 @@ package com.acmemotors.batch.support;
 
 import com.acmemotors.service.RequestGateway;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Spring Batch {@link org.springframework.batch.item.ItemWriter} used to send each item
  * to a given destination via MessagingGateway.
  *
+ * With a batch size greater than 1 the items of a chunk are sent together, up to
+ * <code>batchSize</code> per request, as newline delimited JSON or as a JSON array.  With
+ * more than one request in flight the batches of a chunk are sent in parallel, and the
+ * chunk is written once all of them were sent.  A batch that fails is sent again up to
+ * <code>maxAttempts</code> times, waiting longer after each failure.
+ *
  * @author mminella
  */
-public class GatewayItemWriter implements ItemWriter<String>, InitializingBean {
+public class GatewayItemWriter implements ItemWriter<String>, InitializingBean, DisposableBean {
+
+	public static final long DEFAULT_RETRY_DELAY = 100;
 
 	@Autowired
 	private RequestGateway gateway;
 
+	private int batchSize = 1;
+
+	private BatchFormat batchFormat = BatchFormat.NDJSON;
+
+	private int maxInFlight = 1;
+
+	private int maxAttempts = 1;
+
+	private long retryDelay = DEFAULT_RETRY_DELAY;
+
+	private RetryTemplate retryTemplate;
+
+	private ExecutorService senders;
+
 	@Override
 	public void write(List<? extends String> items) throws Exception {
-		items.forEach(gateway::send);
+		List<String> batches = new ArrayList<>();
+
+		if(batchSize == 1) {
+			batches.addAll(items);
+		}
+		else {
+			for (int i = 0; i < items.size(); i += batchSize) {
+				batches.add(batchFormat.join(items.subList(i, Math.min(i + batchSize, items.size()))));
+			}
+		}
+
+		if(senders == null) {
+			for (String batch : batches) {
+				send(batch);
+			}
+
+			return;
+		}
+
+		List<CompletableFuture<Void>> sends = new ArrayList<>(batches.size());
+
+		for (String batch : batches) {
+			sends.add(CompletableFuture.runAsync(() -> send(batch), senders));
+		}
+
+		try {
+			CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+		}
+		catch (CompletionException e) {
+			if(e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+
+			throw e;
+		}
 	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		Assert.notNull(gateway, "A RequestGateway is required");
+
+		SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy();
+		retryPolicy.setMaxAttempts(maxAttempts);
+
+		ExponentialBackOffPolicy backOffPolicy = new ExponentialBackOffPolicy();
+		backOffPolicy.setInitialInterval(retryDelay);
+
+		retryTemplate = new RetryTemplate();
+		retryTemplate.setRetryPolicy(retryPolicy);
+		retryTemplate.setBackOffPolicy(backOffPolicy);
+
+		if(maxInFlight > 1 && senders == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+
+			senders = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+				Thread thread = new Thread(runnable, "gateway-writer-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if(senders != null) {
+			senders.shutdown();
+			senders = null;
+		}
 	}
 
 	public void setGateway(RequestGateway gateway) {
 		this.gateway = gateway;
 	}
+
+	/**
+	 * @param batchSize the maximum number of items sent per request, 1 (the default) to
+	 * 		send each item on its own
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param batchFormat how the items of a batch are sent, newline delimited by default
+	 */
+	public void setBatchFormat(BatchFormat batchFormat) {
+		Assert.notNull(batchFormat, "A batch format is required");
+		this.batchFormat = batchFormat;
+	}
+
+	/**
+	 * @param maxInFlight the maximum number of requests sent at the same time, 1 (the
+	 * 		default) to send them one after the other on the thread of the step
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		Assert.isTrue(maxInFlight > 0, "At least one request must be allowed in flight");
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * @param maxAttempts the number of times a batch is sent before giving up, 1 (the
+	 * 		default) to not retry
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "At least one attempt is required");
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * @param retryDelay how long to wait before the first retry of a batch in
+	 * 		milliseconds, doubled after each failure
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	private void send(String batch) {
+		retryTemplate.execute(context -> gateway.send(batch));
+	}
+
+	/**
+	 * How the items of a batch are sent in one request.
+	 */
+	public enum BatchFormat {
+
+		/** One item per line. */
+		NDJSON {
+			@Override
+			String join(List<? extends String> items) {
+				return String.join("\n", items);
+			}
+		},
+
+		/** A JSON array of the items. */
+		JSON_ARRAY {
+			@Override
+			String join(List<? extends String> items) {
+				return "[" + String.join(",", items) + "]";
+			}
+		};
+
+		abstract String join(List<? extends String> items);
+	}
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the records sent by Herbie from a Jackson streaming parser.  The values are read
+ * straight from the tokens into the slots of their {@link Field} in a
+ * {@link TelemetryRecord}; the fields not known (like the timestamp) and the journey id
+ * are skipped, and the fields missing or empty are left without value.
+ *
+ * Instances are stateless and thread safe.
+ *
+ * @author Michael Minella
+ */
+public class HerbieJsonReader {
+
+	/**
+	 * Shared by all the readers: it is thread safe and caches the field names read.
+	 */
+	public static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * Reads the next record of the parser.
+	 *
+	 * @param parser the parser, before the start of a record
+	 * @return the record, null at the end of the input
+	 * @throws JsonParseException if the input is not a record or a value is invalid
+	 */
+	public TelemetryRecord read(JsonParser parser) throws IOException {
+		JsonToken token = parser.nextToken();
+
+		return token != null ? readObject(parser, token) : null;
+	}
+
+	/**
+	 * Reads the record the parser is at.
+	 *
+	 * @param parser the parser, its current token being the start of a record
+	 * @param token the current token
+	 * @return the record
+	 * @throws JsonParseException if the input is not a record or a value is invalid
+	 */
+	public TelemetryRecord readObject(JsonParser parser, JsonToken token) throws IOException {
+		if(token != JsonToken.START_OBJECT) {
+			throw new JsonParseException("Expected a JSON object", parser.getTokenLocation());
+		}
+
+		TelemetryRecord record = new TelemetryRecord();
+
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			Field field = Field.forHerbieField(parser.getCurrentName());
+			JsonToken value = parser.nextToken();
+
+			if(field == null || field == Field.JOURNEY_ID) {
+				parser.skipChildren();
+			}
+			else {
+				readValue(parser, record, field, value);
+			}
+		}
+
+		return record;
+	}
+
+	private static void readValue(JsonParser parser, TelemetryRecord record, Field field, JsonToken value)
+			throws IOException {
+		if(value == JsonToken.VALUE_NULL
+				|| (value == JsonToken.VALUE_STRING && parser.getTextLength() == 0)) {
+			record.setNull(field);
+			return;
+		}
+
+		switch (field.getType()) {
+			case STRING:
+				if(!value.isScalarValue()) {
+					throw invalidValue(parser, field);
+				}
+
+				record.setString(field, parser.getText());
+				break;
+			case INTEGER:
+				record.setInt(field, readInteger(parser, field, value));
+				break;
+			case DECIMAL:
+				if(value.isNumeric()) {
+					record.setDouble(field, parser.getDoubleValue());
+				}
+				else if(value == JsonToken.VALUE_STRING) {
+					record.setDouble(field, parseDouble(parser, field));
+				}
+				else {
+					throw invalidValue(parser, field);
+				}
+
+				break;
+			case INTEGER_ARRAY:
+				if(value != JsonToken.START_ARRAY) {
+					throw invalidValue(parser, field);
+				}
+
+				int[] values = new int[2];
+				int count = 0;
+
+				while((value = parser.nextToken()) != JsonToken.END_ARRAY) {
+					if(count == values.length) {
+						values = Arrays.copyOf(values, count * 2);
+					}
+
+					values[count++] = value == JsonToken.VALUE_NULL ?
+							TelemetryRecord.MISSING : readInteger(parser, field, value);
+				}
+
+				record.setIntArray(field, count == values.length ? values : Arrays.copyOf(values, count));
+				break;
+			default:
+				throw new IllegalStateException("Unknown type " + field.getType());
+		}
+	}
+
+	private static int readInteger(JsonParser parser, Field field, JsonToken value) throws IOException {
+		if(value.isNumeric()) {
+			return parser.getValueAsInt();
+		}
+		else if(value == JsonToken.VALUE_STRING) {
+			try {
+				return Integer.parseInt(parser.getText());
+			}
+			catch (NumberFormatException e) {
+				throw invalidValue(parser, field);
+			}
+		}
+
+		throw invalidValue(parser, field);
+	}
+
+	private static double parseDouble(JsonParser parser, Field field) throws IOException {
+		try {
+			return Double.parseDouble(parser.getText());
+		}
+		catch (NumberFormatException e) {
+			throw invalidValue(parser, field);
+		}
+	}
+
+	private static JsonParseException invalidValue(JsonParser parser, Field field) {
+		return new JsonParseException("Invalid value for " + field.getHerbieField(), parser.getTokenLocation());
+	}
+}
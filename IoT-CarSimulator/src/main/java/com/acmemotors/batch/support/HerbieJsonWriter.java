@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+
+/**
+ * Writes records as the JSON sent by Herbie: values missing (null) are written as empty
+ * strings, numbers as JSON numbers and arrays (the fuel system status) as JSON arrays.
+ * The output is the same as the one of an {@link com.fasterxml.jackson.databind.ObjectMapper}
+ * with a null value serializer writing empty strings, but written by hand into a buffer
+ * reused by each thread, so nothing but the resulting String is allocated per record.
+ *
+ * {@link TelemetryRecord}s are written with their fields in the order of {@link Field},
+ * straight from their unboxed values.
+ *
+ * Instances are thread safe.
+ *
+ * @author Michael Minella
+ */
+public class HerbieJsonWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final Field[] FIELDS = Field.values();
+
+	/**
+	 * The name of each field, quoted and followed by the colon, by ordinal.
+	 */
+	private static final String[] NAMES = new String[FIELDS.length];
+
+	static {
+		for (Field field : FIELDS) {
+			StringBuilder name = new StringBuilder();
+			appendString(field.getHerbieField(), name);
+			NAMES[field.ordinal()] = name.append(':').toString();
+		}
+	}
+
+	private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+	/**
+	 * @param record the record to write
+	 * @return the JSON object of the record
+	 */
+	public String write(TelemetryRecord record) {
+		StringBuilder json = buffers.get();
+		json.setLength(0);
+
+		write(record, json);
+
+		return json.toString();
+	}
+
+	/**
+	 * Appends the JSON object of a record to the given buffer.
+	 *
+	 * @param record the record to write
+	 * @param json where to write the record
+	 */
+	public void write(TelemetryRecord record, StringBuilder json) {
+		json.append('{');
+
+		for (Field field : FIELDS) {
+			if(field.ordinal() > 0) {
+				json.append(',');
+			}
+
+			json.append(NAMES[field.ordinal()]);
+
+			if(record.isNull(field)) {
+				json.append("\"\"");
+				continue;
+			}
+
+			switch (field.getType()) {
+				case INTEGER:
+					json.append(record.getInt(field));
+					break;
+				case DECIMAL:
+					appendDouble(record.getDouble(field), json);
+					break;
+				case STRING:
+					appendString(record.getString(field), json);
+					break;
+				case INTEGER_ARRAY:
+					int[] values = record.getIntArray(field);
+					json.append('[');
+
+					for (int i = 0; i < values.length; i++) {
+						if(i > 0) {
+							json.append(',');
+						}
+
+						if(values[i] == TelemetryRecord.MISSING) {
+							json.append("\"\"");
+						}
+						else {
+							json.append(values[i]);
+						}
+					}
+
+					json.append(']');
+					break;
+			}
+		}
+
+		json.append('}');
+	}
+
+	private static void appendDouble(double value, StringBuilder json) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			// Like Jackson, which quotes the numbers that are not valid JSON
+			json.append('"').append(value).append('"');
+		}
+		else {
+			json.append(value);
+		}
+	}
+
+	private static void appendString(String value, StringBuilder json) {
+		json.append('"');
+
+		int length = value.length();
+		int plain = 0;
+
+		while(plain < length && !needsEscape(value.charAt(plain))) {
+			plain++;
+		}
+
+		// Field names and most values are copied in one go
+		json.append(value, 0, plain);
+
+		for (int i = plain; i < length; i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				case '\b':
+					json.append("\\b");
+					break;
+				case '\f':
+					json.append("\\f");
+					break;
+				default:
+					if(c < 0x20) {
+						json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+					}
+					else {
+						json.append(c);
+					}
+			}
+		}
+
+		json.append('"');
+	}
+
+	private static boolean needsEscape(char c) {
+		return c < 0x20 || c == '"' || c == '\\';
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+/**
+ * Splits a file of one JSON record per line into ranges of bytes of about the same
+ * size, each one starting at the beginning of a line, to be read in parallel by
+ * {@link JsonRecordItemReader}s.  The range of a partition is stored under
+ * {@link #START_KEY} and {@link #END_KEY} in its context, along with the id of the
+ * journey (the same for all the partitions) under {@link #JOURNEY_ID_KEY}.
+ *
+ * @author Michael Minella
+ */
+public class JsonFilePartitioner implements Partitioner {
+
+	public static final String START_KEY = "start";
+
+	public static final String END_KEY = "end";
+
+	public static final String JOURNEY_ID_KEY = "journeyId";
+
+	private final File file;
+
+	private final int partitions;
+
+	/**
+	 * @param file the file to split
+	 * @param partitions the number of partitions, or 0 to use the grid size given to
+	 * 		{@link #partition(int)}
+	 */
+	public JsonFilePartitioner(File file, int partitions) {
+		Assert.notNull(file, "A file is required");
+		Assert.isTrue(partitions >= 0, "The number of partitions can not be negative");
+
+		this.file = file;
+		this.partitions = partitions;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		int count = Math.max(partitions > 0 ? partitions : gridSize, 1);
+		String journeyId = UUID.randomUUID().toString();
+		Map<String, ExecutionContext> contexts = new HashMap<>();
+
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			long length = input.length();
+			long start = 0;
+
+			for (int i = 1; i <= count && start < length; i++) {
+				long end = i == count ? length : nextLine(input, length * i / count);
+
+				if(end > start) {
+					ExecutionContext context = new ExecutionContext();
+					context.putLong(START_KEY, start);
+					context.putLong(END_KEY, end);
+					context.putString(JOURNEY_ID_KEY, journeyId);
+					contexts.put("partition" + contexts.size(), context);
+
+					start = end;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Unable to split " + file, e);
+		}
+
+		return contexts;
+	}
+
+	/**
+	 * @return the offset of the first line starting at or after the given offset
+	 */
+	private static long nextLine(RandomAccessFile input, long offset) throws IOException {
+		if(offset == 0) {
+			return 0;
+		}
+
+		input.seek(offset - 1);
+		byte[] buffer = new byte[8192];
+		int read;
+
+		while((read = input.read(buffer)) > 0) {
+			for (int i = 0; i < read; i++) {
+				if(buffer[i] == '\n') {
+					return offset + i;
+				}
+			}
+
+			offset += read;
+		}
+
+		return input.length();
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Reads the records of a journey recorded by Herbie (one JSON object per line) with
+ * Jackson's streaming parser and a {@link HerbieJsonReader}, adding the id of the
+ * journey to every record.
+ *
+ * The reader can be limited to the records starting in a range of bytes of the file
+ * (see {@link JsonFilePartitioner}) so several readers can replay parts of the same
+ * file in parallel.
+ *
+ * @author Michael Minella
+ */
+public class JsonRecordItemReader extends AbstractItemCountingItemStreamItemReader<TelemetryRecord>
+		implements InitializingBean {
+
+	private static final HerbieJsonReader RECORD_READER = new HerbieJsonReader();
+
+	private Resource resource;
+
+	private long start = 0;
+
+	private long end = Long.MAX_VALUE;
+
+	private String journeyId;
+
+	private JsonParser parser;
+
+	public JsonRecordItemReader() {
+		setName(ClassUtils.getShortName(JsonRecordItemReader.class));
+	}
+
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * @param start the offset in bytes of the first record to read, it must be the start
+	 * 		of a line.  Defaults to 0.
+	 */
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	/**
+	 * @param end the offset in bytes past the last record to read: the records starting
+	 * 		at or after it are left to another reader.  Defaults to the end of the file.
+	 */
+	public void setEnd(long end) {
+		this.end = end;
+	}
+
+	/**
+	 * @param journeyId the id of the journey added to every record.  A random one is
+	 * 		used by default.
+	 */
+	public void setJourneyId(String journeyId) {
+		this.journeyId = journeyId;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(resource, "A resource is required");
+		Assert.isTrue(start >= 0 && start <= end, "The range of bytes to read is invalid");
+
+		if(journeyId == null) {
+			journeyId = UUID.randomUUID().toString();
+		}
+	}
+
+	@Override
+	protected void doOpen() throws Exception {
+		InputStream inputStream = resource.getInputStream();
+
+		try {
+			long skipped = 0;
+
+			while(skipped < start) {
+				long count = inputStream.skip(start - skipped);
+
+				if(count <= 0) {
+					break;
+				}
+
+				skipped += count;
+			}
+
+			parser = HerbieJsonReader.JSON_FACTORY.createParser(inputStream);
+		}
+		catch (IOException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+
+	@Override
+	protected TelemetryRecord doRead() throws Exception {
+		JsonToken token = parser.nextToken();
+
+		if(token == null || start + parser.getTokenLocation().getByteOffset() >= end) {
+			return null;
+		}
+
+		TelemetryRecord record;
+
+		try {
+			record = RECORD_READER.readObject(parser, token);
+		}
+		catch (JsonParseException e) {
+			throw new ParseException(e.getOriginalMessage() + " at byte "
+					+ (start + e.getLocation().getByteOffset()) + " of " + resource, e);
+		}
+
+		record.setString(Field.JOURNEY_ID, journeyId);
+
+		return record;
+	}
+
+	@Override
+	protected void doClose() throws Exception {
+		if(parser != null) {
+			parser.close();
+			parser = null;
+		}
+	}
+}
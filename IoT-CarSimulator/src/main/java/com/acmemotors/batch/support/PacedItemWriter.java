@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.acmemotors.metrics.SendMetrics;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Writes the items at a fixed rate, open loop: the n-th item is due <code>n * interval</code>
+ * after the first one whatever the time taken to write the previous ones, so when the
+ * destination is slow the items pile up and are written back to back until the
+ * schedule is caught up with, rather than the whole schedule slipping.  The items of a
+ * chunk are written together once the last of them is due.
+ *
+ * The latency of each item, from the time it was due to the end of the write, and the
+ * time taken by the write are recorded in {@link SendMetrics}.  Measuring from the time
+ * due counts the time an item waited behind a slow write, which measuring the write
+ * alone would hide.
+ *
+ * A writer paces the items of one step execution, from one thread.
+ *
+ * @author Michael Minella
+ */
+public class PacedItemWriter<T> implements ItemWriter<T>, InitializingBean {
+
+	private ItemWriter<T> delegate;
+
+	private long interval;
+
+	private SendMetrics metrics;
+
+	private long nextDue = Long.MIN_VALUE;
+
+	public void setDelegate(ItemWriter<T> delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * @param interval the time between two items in milliseconds, 0 (the default) to
+	 * 		write them as fast as they come
+	 */
+	public void setInterval(long interval) {
+		Assert.isTrue(interval >= 0, "The interval can not be negative");
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+	}
+
+	public void setMetrics(SendMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(delegate, "A delegate is required");
+		Assert.notNull(metrics, "SendMetrics are required");
+	}
+
+	@Override
+	public void write(List<? extends T> items) throws Exception {
+		if(items.isEmpty()) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		// Without a schedule, items are due when they come
+		long firstDue = interval == 0 || nextDue == Long.MIN_VALUE ? now : nextDue;
+		long lastDue = firstDue + (items.size() - 1) * interval;
+
+		nextDue = lastDue + interval;
+
+		while((now = System.nanoTime()) < lastDue) {
+			LockSupport.parkNanos(lastDue - now);
+
+			if(Thread.interrupted()) {
+				throw new InterruptedException("Interrupted while waiting for the items to be due");
+			}
+		}
+
+		long start = System.nanoTime();
+		delegate.write(items);
+		long end = System.nanoTime();
+
+		metrics.getServiceTime().recordValue(end - start);
+
+		for (int i = 0; i < items.size(); i++) {
+			metrics.getLatency().recordValue(end - (firstDue + i * interval));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import com.acmemotors.metrics.SendMetrics;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.Assert;
+
+/**
+ * Starts each job with empty {@link SendMetrics} and reports them at its end: logged,
+ * and the main percentiles (in milliseconds) saved in the context of the job
+ * execution.
+ *
+ * @author Michael Minella
+ */
+public class SendMetricsJobListener implements JobExecutionListener {
+
+	private static final Log logger = LogFactory.getLog(SendMetricsJobListener.class);
+
+	private final SendMetrics metrics;
+
+	public SendMetricsJobListener(SendMetrics metrics) {
+		Assert.notNull(metrics, "SendMetrics are required");
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void beforeJob(JobExecution jobExecution) {
+		metrics.reset();
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		ExecutionContext context = jobExecution.getExecutionContext();
+		context.putLong("sent", metrics.getLatency().getTotalCount());
+		context.putDouble("latencyP50", metrics.getLatency().getValueAtPercentile(50) / 1e6);
+		context.putDouble("latencyP99", metrics.getLatency().getValueAtPercentile(99) / 1e6);
+		context.putDouble("latencyMax", metrics.getLatency().getMaxValue() / 1e6);
+
+		logger.info("Records sent by " + jobExecution.getJobInstance().getJobName() + "\n" + metrics.report());
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.capture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonReader;
+import com.fasterxml.jackson.core.JsonParser;
+
+import org.springframework.util.Assert;
+
+/**
+ * Compiles a trip recorded by Herbie (one JSON object per line) into a capture (see
+ * {@link CaptureFormat}): the values are stored field by field, the integers and the
+ * decimals with a fixed number of decimals (like the positions) as the difference with
+ * the previous record, and the strings (like the VIN) as indexes in a dictionary.  A
+ * capture is replayed by a {@link CaptureTrip} without any parsing.
+ *
+ * The fields not known to the simulator, like the timestamp, are not kept, as they are
+ * not sent either.
+ *
+ * @author Michael Minella
+ */
+public class CaptureCompiler {
+
+	private static final Field[] FIELDS = Field.values();
+
+	/**
+	 * Above it the doubles are not all integers anymore.
+	 */
+	private static final double MAX_EXACT = 1L << 53;
+
+	private final HerbieJsonReader recordReader = new HerbieJsonReader();
+
+	/**
+	 * @param json the trip recorded
+	 * @param capture the capture to write
+	 * @return the number of records of the trip
+	 * @throws IOException if the trip can't be read or the capture written
+	 */
+	public int compile(File json, File capture) throws IOException {
+		List<TelemetryRecord> records;
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(json))) {
+			records = read(in);
+		}
+
+		try (OutputStream out = new FileOutputStream(capture)) {
+			write(records, out);
+		}
+
+		return records.size();
+	}
+
+	/**
+	 * @param in the JSON records, one per line
+	 * @return the records
+	 * @throws IOException if the input can't be read or is not valid
+	 */
+	public List<TelemetryRecord> read(InputStream in) throws IOException {
+		List<TelemetryRecord> records = new ArrayList<>();
+
+		try (JsonParser parser = HerbieJsonReader.JSON_FACTORY.createParser(in)) {
+			TelemetryRecord record;
+
+			while((record = recordReader.read(parser)) != null) {
+				records.add(record);
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * Writes the capture of the given records.
+	 *
+	 * @param records the records of the trip
+	 * @param out where to write the capture, left open
+	 * @throws IOException if the capture can't be written
+	 */
+	public void write(List<TelemetryRecord> records, OutputStream out) throws IOException {
+		Assert.notEmpty(records, "A capture needs at least one record");
+
+		List<Field> fields = new ArrayList<>();
+		List<ByteArrayOutputStream> contents = new ArrayList<>();
+		List<Byte> encodings = new ArrayList<>();
+
+		for (Field field : FIELDS) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+			if(writeNulls(records, field, content)) {
+				fields.add(field);
+				contents.add(content);
+				encodings.add(writeValues(records, field, content));
+			}
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(CaptureFormat.MAGIC);
+		data.writeShort(CaptureFormat.VERSION);
+		data.writeInt(records.size());
+		data.writeShort(fields.size());
+
+		for (int i = 0; i < fields.size(); i++) {
+			data.writeUTF(fields.get(i).getHerbieField());
+			data.writeByte(encodings.get(i));
+			data.writeInt(contents.get(i).size());
+			contents.get(i).writeTo(data);
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * @return false if none of the records has a value for the field
+	 */
+	private static boolean writeNulls(List<TelemetryRecord> records, Field field, ByteArrayOutputStream content) {
+		byte[] nulls = new byte[(records.size() + 7) / 8];
+		int count = 0;
+
+		for (int i = 0; i < records.size(); i++) {
+			if(records.get(i).isNull(field)) {
+				nulls[i >> 3] |= 1 << (i & 7);
+				count++;
+			}
+		}
+
+		if(count == records.size()) {
+			return false;
+		}
+		else if(count == 0) {
+			content.write(0);
+		}
+		else {
+			content.write(1);
+			content.write(nulls, 0, nulls.length);
+		}
+
+		return true;
+	}
+
+	private static byte writeValues(List<TelemetryRecord> records, Field field, ByteArrayOutputStream content)
+			throws IOException {
+		switch (field.getType()) {
+			case INTEGER:
+				long previous = 0;
+
+				for (TelemetryRecord record : records) {
+					if(!record.isNull(field)) {
+						long value = record.getInt(field);
+						CaptureFormat.writeSignedVarLong(value - previous, content);
+						previous = value;
+					}
+				}
+
+				return CaptureFormat.VARINT_DELTA;
+			case DECIMAL:
+				return writeDecimals(records, field, content);
+			case STRING:
+				Map<String, Integer> dictionary = new LinkedHashMap<>();
+
+				for (TelemetryRecord record : records) {
+					if(!record.isNull(field)) {
+						dictionary.putIfAbsent(record.getString(field), dictionary.size());
+					}
+				}
+
+				DataOutputStream data = new DataOutputStream(content);
+				CaptureFormat.writeVarLong(dictionary.size(), content);
+
+				for (String value : dictionary.keySet()) {
+					data.writeUTF(value);
+				}
+
+				for (TelemetryRecord record : records) {
+					if(!record.isNull(field)) {
+						CaptureFormat.writeVarLong(dictionary.get(record.getString(field)), content);
+					}
+				}
+
+				return CaptureFormat.DICTIONARY;
+			case INTEGER_ARRAY:
+				for (TelemetryRecord record : records) {
+					if(!record.isNull(field)) {
+						int[] values = record.getIntArray(field);
+						CaptureFormat.writeVarLong(values.length, content);
+
+						for (int value : values) {
+							CaptureFormat.writeSignedVarLong(value, content);
+						}
+					}
+				}
+
+				return CaptureFormat.ARRAYS;
+			default:
+				throw new IllegalStateException("Unknown type " + field.getType());
+		}
+	}
+
+	/**
+	 * Writes the decimals as integers when they all have a few decimals, as doubles
+	 * otherwise.
+	 */
+	private static byte writeDecimals(List<TelemetryRecord> records, Field field, ByteArrayOutputStream content) {
+		int scale = 0;
+
+		for (TelemetryRecord record : records) {
+			if(!record.isNull(field)) {
+				while(scale <= CaptureFormat.MAX_SCALE && !isExact(record.getDouble(field), scale)) {
+					scale++;
+				}
+			}
+		}
+
+		// A value exact with fewer decimals may not be with more if it gets too large
+		for (TelemetryRecord record : records) {
+			if(scale <= CaptureFormat.MAX_SCALE && !record.isNull(field)
+					&& !isExact(record.getDouble(field), scale)) {
+				scale = CaptureFormat.MAX_SCALE + 1;
+			}
+		}
+
+		if(scale > CaptureFormat.MAX_SCALE) {
+			for (TelemetryRecord record : records) {
+				if(!record.isNull(field)) {
+					long bits = Double.doubleToRawLongBits(record.getDouble(field));
+
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						content.write((int) (bits >>> shift));
+					}
+				}
+			}
+
+			return CaptureFormat.DOUBLE;
+		}
+
+		content.write(scale);
+		long previous = 0;
+
+		for (TelemetryRecord record : records) {
+			if(!record.isNull(field)) {
+				long value = Math.round(record.getDouble(field) * CaptureFormat.POWERS_OF_TEN[scale]);
+				CaptureFormat.writeSignedVarLong(value - previous, content);
+				previous = value;
+			}
+		}
+
+		return CaptureFormat.FIXED_DELTA;
+	}
+
+	/**
+	 * @return true if the value is read back exactly from its value times 10^scale
+	 * 		rounded to an integer
+	 */
+	static boolean isExact(double value, int scale) {
+		double scaled = value * CaptureFormat.POWERS_OF_TEN[scale];
+
+		if(Double.isNaN(scaled) || Math.abs(scaled) >= MAX_EXACT) {
+			return false;
+		}
+
+		// Compared as by equals so -0.0 is not taken for 0
+		return Double.compare(Math.round(scaled) / CaptureFormat.POWERS_OF_TEN[scale], value) == 0;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.capture;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a capture, a trip stored by column.  All the numbers are big endian.
+ *
+ * <pre>
+ * int     MAGIC
+ * short   VERSION
+ * int     number of records
+ * short   number of columns, then for each column:
+ *   UTF     name of the field (see {@link com.acmemotors.batch.domain.Field#getHerbieField()})
+ *   byte    encoding
+ *   int     length in bytes of the content, then the content:
+ *     byte    1 if some records have no value, followed by a bit per record
+ *             (1 for no value, least significant bit first), 0 otherwise
+ *     the values of the records that have one, depending on the encoding:
+ *     VARINT_DELTA  the difference with the previous value, as a zigzag varint
+ *     FIXED_DELTA   a byte n, then the values times 10^n as in VARINT_DELTA
+ *     DOUBLE        the values as 8 byte doubles
+ *     DICTIONARY    the number of distinct values as a varint, the values (UTF), then
+ *                   the index of the value of each record as a varint
+ *     ARRAYS        the length of each array as a varint followed by its elements as
+ *                   zigzag varints
+ * </pre>
+ *
+ * The columns of the fields without any value are not written.
+ *
+ * @author Michael Minella
+ */
+final class CaptureFormat {
+
+	static final int MAGIC = 0x48524243;
+
+	static final short VERSION = 1;
+
+	static final byte VARINT_DELTA = 1;
+
+	static final byte FIXED_DELTA = 2;
+
+	static final byte DOUBLE = 3;
+
+	static final byte DICTIONARY = 4;
+
+	static final byte ARRAYS = 5;
+
+	/**
+	 * The largest number of decimals of a {@link #FIXED_DELTA} column.
+	 */
+	static final int MAX_SCALE = 9;
+
+	/**
+	 * 10^n by number of decimals n.
+	 */
+	static final double[] POWERS_OF_TEN = new double[MAX_SCALE + 1];
+
+	static {
+		for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = Math.pow(10, i);
+		}
+	}
+
+	private CaptureFormat() {
+	}
+
+	static void writeVarLong(long value, ByteArrayOutputStream out) {
+		while((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+
+	static void writeSignedVarLong(long value, ByteArrayOutputStream out) {
+		writeVarLong((value << 1) ^ (value >> 63), out);
+	}
+
+	static long readVarLong(ByteBuffer in) {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalStateException("Invalid varint at byte " + in.position());
+	}
+
+	static long readSignedVarLong(ByteBuffer in) {
+		long value = readVarLong(in);
+
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.capture;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.load.Trip;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+/**
+ * A trip replayed from a capture written by a {@link CaptureCompiler}.  The capture is
+ * decoded once into a primitive array per field (an index in the dictionary for the
+ * strings), and the records are built from the arrays when asked for, so replaying the
+ * trip does no parsing at all.
+ *
+ * @author Michael Minella
+ */
+public class CaptureTrip implements Trip {
+
+	private final File file;
+
+	private final int size;
+
+	/**
+	 * The column of each field by ordinal, null for the fields without any value.
+	 */
+	private final Column[] columns = new Column[Field.values().length];
+
+	/**
+	 * Reads and decodes the given capture.
+	 *
+	 * @param file the capture
+	 * @throws IOException if the file can't be read or is not a valid capture
+	 */
+	public CaptureTrip(File file) throws IOException {
+		this.file = file;
+
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+		try {
+			if(in.getInt() != CaptureFormat.MAGIC) {
+				throw invalid("not a capture");
+			}
+
+			short version = in.getShort();
+
+			if(version != CaptureFormat.VERSION) {
+				throw invalid("unsupported version " + version);
+			}
+
+			this.size = in.getInt();
+
+			if(size <= 0) {
+				throw invalid("no record");
+			}
+
+			int columnCount = in.getShort();
+			DataInputStream data = new DataInputStream(new ByteBufferBackedInputStream(in));
+
+			for (int i = 0; i < columnCount; i++) {
+				Field field = Field.forHerbieField(data.readUTF());
+				byte encoding = in.get();
+				int length = in.getInt();
+
+				ByteBuffer content = in.slice();
+				content.limit(length);
+				in.position(in.position() + length);
+
+				// The fields unknown to this version of the simulator are skipped
+				if(field != null) {
+					columns[field.ordinal()] = readColumn(field, encoding, content);
+				}
+			}
+		}
+		catch (BufferUnderflowException | IllegalArgumentException | IllegalStateException e) {
+			throw invalid("truncated or corrupted (" + e + ")");
+		}
+	}
+
+	/**
+	 * @param file a file
+	 * @return true if the file starts like a capture
+	 * @throws IOException if the file can't be read
+	 */
+	public static boolean isCapture(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			return file.length() >= 4 && in.readInt() == CaptureFormat.MAGIC;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public TelemetryRecord record(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("No record " + index + " in " + this);
+		}
+
+		TelemetryRecord record = new TelemetryRecord();
+
+		for (int i = 0; i < columns.length; i++) {
+			Column column = columns[i];
+
+			if(column != null && (column.nulls == null || !column.nulls.get(index))) {
+				column.copy(index, record);
+			}
+		}
+
+		return record;
+	}
+
+	@Override
+	public String toString() {
+		return "CaptureTrip[" + file + ", " + size + " records]";
+	}
+
+	private Column readColumn(Field field, byte encoding, ByteBuffer in) throws IOException {
+		BitSet nulls = null;
+
+		if(in.get() != 0) {
+			byte[] bits = new byte[(size + 7) / 8];
+			in.get(bits);
+			nulls = BitSet.valueOf(bits);
+		}
+
+		switch (field.getType()) {
+			case INTEGER:
+			case DECIMAL:
+				return new NumberColumn(field, nulls, readNumbers(field, encoding, nulls, in));
+			case STRING:
+				checkEncoding(field, encoding, CaptureFormat.DICTIONARY);
+
+				String[] dictionary = new String[count(in)];
+				DataInputStream data = new DataInputStream(new ByteBufferBackedInputStream(in));
+
+				for (int i = 0; i < dictionary.length; i++) {
+					dictionary[i] = data.readUTF();
+				}
+
+				int[] indexes = new int[size];
+
+				for (int i = 0; i < size; i++) {
+					if(nulls == null || !nulls.get(i)) {
+						indexes[i] = (int) CaptureFormat.readVarLong(in);
+
+						if(indexes[i] < 0 || indexes[i] >= dictionary.length) {
+							throw invalid("invalid index " + indexes[i] + " for " + field.getHerbieField());
+						}
+					}
+				}
+
+				return new StringColumn(field, nulls, dictionary, indexes);
+			case INTEGER_ARRAY:
+				checkEncoding(field, encoding, CaptureFormat.ARRAYS);
+
+				int[][] arrays = new int[size][];
+
+				for (int i = 0; i < size; i++) {
+					if(nulls == null || !nulls.get(i)) {
+						arrays[i] = new int[count(in)];
+
+						for (int j = 0; j < arrays[i].length; j++) {
+							arrays[i][j] = (int) CaptureFormat.readSignedVarLong(in);
+						}
+					}
+				}
+
+				return new ArrayColumn(field, nulls, arrays);
+			default:
+				throw new IllegalStateException("Unknown type " + field.getType());
+		}
+	}
+
+	private double[] readNumbers(Field field, byte encoding, BitSet nulls, ByteBuffer in) throws IOException {
+		double[] values = new double[size];
+
+		if(encoding == CaptureFormat.DOUBLE && field.getType() == Field.Type.DECIMAL) {
+			for (int i = 0; i < size; i++) {
+				if(nulls == null || !nulls.get(i)) {
+					values[i] = in.getDouble();
+				}
+			}
+
+			return values;
+		}
+
+		int scale = 0;
+
+		if(encoding == CaptureFormat.FIXED_DELTA && field.getType() == Field.Type.DECIMAL) {
+			scale = in.get();
+
+			if(scale < 0 || scale > CaptureFormat.MAX_SCALE) {
+				throw invalid("invalid scale " + scale + " for " + field.getHerbieField());
+			}
+		}
+		else {
+			checkEncoding(field, encoding, CaptureFormat.VARINT_DELTA);
+		}
+
+		double divisor = CaptureFormat.POWERS_OF_TEN[scale];
+		long value = 0;
+
+		for (int i = 0; i < size; i++) {
+			if(nulls == null || !nulls.get(i)) {
+				value += CaptureFormat.readSignedVarLong(in);
+				values[i] = value / divisor;
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * @return the number of values that follow, each one taking at least a byte
+	 */
+	private int count(ByteBuffer in) throws IOException {
+		long count = CaptureFormat.readVarLong(in);
+
+		if(count < 0 || count > in.remaining()) {
+			throw invalid("invalid count " + count);
+		}
+
+		return (int) count;
+	}
+
+	private void checkEncoding(Field field, byte encoding, byte expected) throws IOException {
+		if(encoding != expected) {
+			throw invalid("invalid encoding " + encoding + " for " + field.getHerbieField());
+		}
+	}
+
+	private IOException invalid(String reason) {
+		return new IOException(file + " is not a valid capture: " + reason);
+	}
+
+	private static abstract class Column {
+
+		protected final Field field;
+
+		/**
+		 * The records without value, null if they all have one.
+		 */
+		protected final BitSet nulls;
+
+		Column(Field field, BitSet nulls) {
+			this.field = field;
+			this.nulls = nulls;
+		}
+
+		abstract void copy(int index, TelemetryRecord record);
+	}
+
+	private static class NumberColumn extends Column {
+
+		private final double[] values;
+
+		NumberColumn(Field field, BitSet nulls, double[] values) {
+			super(field, nulls);
+			this.values = values;
+		}
+
+		@Override
+		void copy(int index, TelemetryRecord record) {
+			record.setDouble(field, values[index]);
+		}
+	}
+
+	private static class StringColumn extends Column {
+
+		private final String[] dictionary;
+
+		private final int[] indexes;
+
+		StringColumn(Field field, BitSet nulls, String[] dictionary, int[] indexes) {
+			super(field, nulls);
+			this.dictionary = dictionary;
+			this.indexes = indexes;
+		}
+
+		@Override
+		void copy(int index, TelemetryRecord record) {
+			record.setString(field, dictionary[indexes[index]]);
+		}
+	}
+
+	private static class ArrayColumn extends Column {
+
+		private final int[][] values;
+
+		ArrayColumn(Field field, BitSet nulls, int[][] values) {
+			super(field, nulls);
+			this.values = values;
+		}
+
+		@Override
+		void copy(int index, TelemetryRecord record) {
+			// The arrays of a record are shared, they are not meant to be modified
+			record.setIntArray(field, values[index]);
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonWriter;
+import com.acmemotors.service.RequestGateway;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Sends the records of a fleet of {@link Vehicle}s at a target aggregate rate.
+ * Every vehicle sends a record every {@code vehicles / rate} seconds, the vehicles being
+ * spread evenly over that period, and the sends are scheduled on a {@link TimerWheel}
+ * at the time they are due rather than after the previous one.  The records are read,
+ * serialized and sent by a pool of sender threads, one at a time per vehicle so the
+ * records of a car reach the server in order.  A record due while the previous one of
+ * its vehicle is still being sent, or while the queue of the senders is full, is
+ * dropped (and counted) so a slow server does not lower the rate the others are sent
+ * at.
+ *
+ * @author Michael Minella
+ */
+public class LoadGenerator {
+
+	private static final Log logger = LogFactory.getLog(LoadGenerator.class);
+
+	public static final int DEFAULT_SENDER_THREADS = 8;
+
+	public static final int DEFAULT_MAX_PENDING_SENDS = 10000;
+
+	public static final long DEFAULT_REPORT_INTERVAL = 10000;
+
+	private static final HerbieJsonWriter JSON_WRITER = new HerbieJsonWriter();
+
+	private final List<? extends Vehicle> vehicles;
+
+	private final RequestGateway gateway;
+
+	private final double rate;
+
+	private int senderThreads = DEFAULT_SENDER_THREADS;
+
+	private int maxPendingSends = DEFAULT_MAX_PENDING_SENDS;
+
+	private long reportInterval = DEFAULT_REPORT_INTERVAL;
+
+	private final LongAdder sent = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private volatile boolean stopping;
+
+	/**
+	 * @param vehicles the vehicles to simulate
+	 * @param gateway where to send the records
+	 * @param rate the target number of records sent per second by all the vehicles
+	 */
+	public LoadGenerator(List<? extends Vehicle> vehicles, RequestGateway gateway, double rate) {
+		Assert.notEmpty(vehicles, "At least one vehicle is required");
+		Assert.notNull(gateway, "A RequestGateway is required");
+		Assert.isTrue(rate > 0, "The rate must be positive");
+
+		this.vehicles = vehicles;
+		this.gateway = gateway;
+		this.rate = rate;
+	}
+
+	public void setSenderThreads(int senderThreads) {
+		Assert.isTrue(senderThreads > 0, "At least one sender thread is required");
+		this.senderThreads = senderThreads;
+	}
+
+	/**
+	 * @param maxPendingSends the number of records waiting for a sender thread above
+	 * 		which the records due are dropped
+	 */
+	public void setMaxPendingSends(int maxPendingSends) {
+		Assert.isTrue(maxPendingSends > 0, "The number of pending sends must be positive");
+		this.maxPendingSends = maxPendingSends;
+	}
+
+	/**
+	 * @param reportInterval how often the rate achieved is logged, in milliseconds, 0
+	 * 		to only report at the end
+	 */
+	public void setReportInterval(long reportInterval) {
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * Sends records for the given duration then waits for the records queued to be sent.
+	 *
+	 * @param duration how long to send records for, in milliseconds
+	 * @return the number of records sent and the rate achieved
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Report run(long duration) throws InterruptedException {
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxPendingSends), runnable -> {
+					Thread thread = new Thread(runnable, "load-sender-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		TimerWheel wheel = new TimerWheel("load-generator", 1, TimeUnit.MILLISECONDS, 4096);
+
+		long start = System.nanoTime();
+		long period = (long) (vehicles.size() * TimeUnit.SECONDS.toNanos(1) / rate);
+		long spacing = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+
+		stopping = false;
+		sent.reset();
+		failed.reset();
+		dropped.reset();
+
+		for (int i = 0; i < vehicles.size(); i++) {
+			schedule(wheel, senders, vehicles.get(i), new AtomicBoolean(), start + i * spacing, period);
+		}
+
+		if(reportInterval > 0) {
+			scheduleReport(wheel, start, start + TimeUnit.MILLISECONDS.toNanos(reportInterval), 0);
+		}
+
+		wheel.start();
+
+		try {
+			TimeUnit.MILLISECONDS.sleep(duration);
+		}
+		finally {
+			stopping = true;
+			wheel.stop();
+			senders.shutdown();
+		}
+
+		senders.awaitTermination(1, TimeUnit.MINUTES);
+
+		Report report = new Report(sent.sum(), failed.sum(), dropped.sum(),
+				System.nanoTime() - start, rate);
+
+		logger.info(report);
+
+		return report;
+	}
+
+	/**
+	 * @param sending whether a record of the vehicle is queued or being sent
+	 */
+	private void schedule(TimerWheel wheel, ThreadPoolExecutor senders, Vehicle vehicle, AtomicBoolean sending,
+			long deadline, long period) {
+		wheel.schedule(() -> {
+			if(stopping) {
+				return;
+			}
+
+			if(!sending.compareAndSet(false, true)) {
+				dropped.increment();
+			}
+			else {
+				try {
+					senders.execute(() -> send(vehicle, sending));
+				}
+				catch (RejectedExecutionException e) {
+					sending.set(false);
+					dropped.increment();
+				}
+			}
+
+			schedule(wheel, senders, vehicle, sending, deadline + period, period);
+		}, deadline);
+	}
+
+	private void scheduleReport(TimerWheel wheel, long start, long deadline, long lastSent) {
+		wheel.schedule(() -> {
+			long count = sent.sum();
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			logger.info(String.format("%.0f s: %.1f msg/s over the last %d ms for a target of %.1f msg/s (%d failed, %d dropped)",
+					seconds, (count - lastSent) * 1000.0 / reportInterval, reportInterval, rate,
+					failed.sum(), dropped.sum()));
+
+			scheduleReport(wheel, start, deadline + TimeUnit.MILLISECONDS.toNanos(reportInterval), count);
+		}, deadline);
+	}
+
+	private void send(Vehicle vehicle, AtomicBoolean sending) {
+		TelemetryRecord record = null;
+
+		try {
+			record = vehicle.next();
+			gateway.send(JSON_WRITER.write(record));
+			sent.increment();
+		}
+		catch (Exception e) {
+			failed.increment();
+
+			if(logger.isDebugEnabled()) {
+				logger.debug("Unable to send " + (record != null ? record : "a record of " + vehicle.getVin()), e);
+			}
+		}
+		finally {
+			sending.set(false);
+		}
+	}
+
+	/**
+	 * What a run of the generator achieved.
+	 */
+	public static class Report {
+
+		private final long sent;
+
+		private final long failed;
+
+		private final long dropped;
+
+		private final long elapsed;
+
+		private final double targetRate;
+
+		Report(long sent, long failed, long dropped, long elapsed, double targetRate) {
+			this.sent = sent;
+			this.failed = failed;
+			this.dropped = dropped;
+			this.elapsed = elapsed;
+			this.targetRate = targetRate;
+		}
+
+		public long getSent() {
+			return sent;
+		}
+
+		public long getFailed() {
+			return failed;
+		}
+
+		public long getDropped() {
+			return dropped;
+		}
+
+		/**
+		 * @return the duration of the run in nanoseconds
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		public double getTargetRate() {
+			return targetRate;
+		}
+
+		/**
+		 * @return the number of records sent per second
+		 */
+		public double getAchievedRate() {
+			return elapsed > 0 ? sent * 1e9 / elapsed : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Sent %d records in %.1f s: %.1f msg/s for a target of %.1f msg/s (%d failed, %d dropped)",
+					sent, elapsed / 1e9, getAchievedRate(), targetRate, failed, dropped);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonReader;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import org.springframework.util.Assert;
+
+/**
+ * A trip recorded by Herbie (one JSON object per line) replayed straight from the file
+ * mapped in memory.  The file is scanned once to index the offset of each line, then
+ * each record is parsed from its line when asked for, through a view of the mapping of
+ * its own, so any number of vehicles can read the trip concurrently at their own
+ * position.  The records are never held on the heap: replaying a trip costs its pages
+ * in the page cache (shared by all the vehicles and the other processes replaying it)
+ * plus four bytes per record for the index.
+ *
+ * The mapping is released when the trip is garbage collected.
+ *
+ * @author Michael Minella
+ */
+public class MappedTrip implements Trip {
+
+	private static final HerbieJsonReader RECORD_READER = new HerbieJsonReader();
+
+	private final File file;
+
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The offset of each record, followed by the length of the file.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * Maps and indexes the given file.
+	 *
+	 * @param file the trip recorded, up to 2 GB
+	 * @throws IOException if the file can't be mapped
+	 */
+	public MappedTrip(File file) throws IOException {
+		Assert.notNull(file, "A file is required");
+
+		this.file = file;
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Assert.isTrue(channel.size() <= Integer.MAX_VALUE, file + " is larger than 2 GB");
+
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		this.offsets = index(buffer);
+
+		Assert.isTrue(offsets.length > 1, file + " has no record");
+	}
+
+	@Override
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @throws UncheckedIOException if the line of the record is not a valid record
+	 */
+	@Override
+	public TelemetryRecord record(int index) {
+		ByteBuffer line = buffer.duplicate();
+		line.limit(offsets[index + 1]).position(offsets[index]);
+
+		try (JsonParser parser = HerbieJsonReader.JSON_FACTORY.createParser(new ByteBufferBackedInputStream(line))) {
+			return RECORD_READER.read(parser);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Unable to read the record " + index + " of " + file, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MappedTrip[" + file + ", " + size() + " records]";
+	}
+
+	/**
+	 * @return the offsets of the lines that are not blank, followed by the length of
+	 * 		the buffer: a line runs up to the start of the next one, so the blank lines
+	 * 		between records are part of the previous record
+	 */
+	private static int[] index(ByteBuffer buffer) {
+		int[] offsets = new int[1024];
+		int count = 0;
+		int limit = buffer.limit();
+		boolean lineStart = true;
+
+		for (int i = 0; i < limit; i++) {
+			byte b = buffer.get(i);
+
+			if(b == '\n') {
+				lineStart = true;
+			}
+			else if(lineStart && b != '\r' && b != ' ' && b != '\t') {
+				lineStart = false;
+
+				if(count == offsets.length - 1) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+
+				offsets[count++] = i;
+			}
+		}
+
+		offsets[count++] = limit;
+
+		return Arrays.copyOf(offsets, count);
+	}
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+
+import org.springframework.util.Assert;
+
+/**
+ * A car whose records are synthesized by a model of a vehicle rather than replayed from
+ * a recording, so a fleet can be as large as needed without any file.  The car drives
+ * an endless road made of straight segments, each one turning from the previous one,
+ * at a speed of its own for each segment and sometimes stopping at the end of one.  The
+ * signals follow from the motion: the rpm from the speed and the gear engaged, the
+ * engine load from the speed and the acceleration, the air flow from the rpm and the
+ * load, the fuel level from the fuel burnt, the coolant and catalyst warming up with
+ * the load since the engine started, the position and bearing from the road.
+ *
+ * Everything is drawn from a {@link Random} seeded by the vehicle, and the journey id
+ * is derived from the seed, so the same seed gives the same car and the same records.
+ * Each call to {@link #next()} moves the model on by the interval between two records
+ * of the vehicle, in steps of at most a second.
+ *
+ * The model is moved on by whichever sender thread asks for the next record, hence
+ * {@link #next()} being synchronized.
+ *
+ * @author Michael Minella
+ */
+public class SyntheticVehicle implements Vehicle {
+
+	/**
+	 * Where the fleets start by default: around the trips recorded in Dallas.
+	 */
+	public static final double DEFAULT_LATITUDE = 32.98;
+
+	public static final double DEFAULT_LONGITUDE = -96.71;
+
+	/**
+	 * The default maximum distance in degrees between the start of a car and the center
+	 * of its fleet.
+	 */
+	public static final double DEFAULT_SPREAD = 0.1;
+
+	private static final double METERS_PER_DEGREE = 111320;
+
+	private static final double GRAVITY = 9.81;
+
+	private static final double MAX_STEP = 1;
+
+	private static final double MAX_ACCELERATION = 2.5;
+
+	private static final double MAX_BRAKING = 3.5;
+
+	private static final double COMFORTABLE_BRAKING = 2;
+
+	private static final double IDLE_RPM = 750;
+
+	/**
+	 * The speed in km/h up to which each gear is used and the rpm per km/h in it.
+	 */
+	private static final double[] GEAR_TOP_SPEEDS = {20, 35, 55, 75, 95, Double.MAX_VALUE};
+
+	private static final double[] GEAR_RPM_PER_KMH = {110, 65, 45, 33, 27, 22};
+
+	private static final double VOLUMETRIC_EFFICIENCY = 0.85;
+
+	/**
+	 * Density of the air in g/L, of the fuel in g/L and grams of air burnt per gram of fuel.
+	 */
+	private static final double AIR_DENSITY = 1.184;
+
+	private static final double FUEL_DENSITY = 745;
+
+	private static final double AIR_FUEL_RATIO = 14.7;
+
+	private static final double THERMOSTAT_TEMP = 90;
+
+	private static final double REFUEL_LEVEL = 8;
+
+	/**
+	 * Closed loop, as recorded by Herbie; shared by the records, it is not modified.
+	 */
+	private static final int[] FUEL_SYSTEM_STATUS = {2, 0};
+
+	private final String vin;
+
+	private final String journeyId;
+
+	private final Random random;
+
+	private final double interval;
+
+	// The car and its surroundings, fixed for the life of the vehicle
+
+	private final double displacement;
+
+	private final double gearing;
+
+	private final double tankSize;
+
+	private final double cruiseSpeed;
+
+	private final double ambientTemp;
+
+	private final double barometricPressure;
+
+	private final double longTermFuelTrim;
+
+	// Where the car is on the road
+
+	private double latitude;
+
+	private double longitude;
+
+	private double heading;
+
+	private double remaining;
+
+	private double segmentSpeed;
+
+	private boolean stopAtEnd;
+
+	private double stopTime;
+
+	// The state of the car
+
+	private double runTime;
+
+	private double speed;
+
+	private double acceleration;
+
+	private double rpm;
+
+	private double load;
+
+	private double mafAirflow;
+
+	private double fuelLevel;
+
+	private double coolantTemp;
+
+	private double catalystTemp;
+
+	/**
+	 * @param vin the VIN of the vehicle
+	 * @param seed the seed of the car, its road and its driving
+	 * @param interval the time between two records of the vehicle, in seconds
+	 * @param latitude where the car starts
+	 * @param longitude where the car starts
+	 */
+	public SyntheticVehicle(String vin, long seed, double interval, double latitude,
+			double longitude) {
+		Assert.hasText(vin, "A VIN is required");
+		Assert.isTrue(interval > 0, "The interval between two records must be positive");
+
+		this.vin = vin;
+		this.journeyId = UUID.nameUUIDFromBytes(ByteBuffer.allocate(Long.BYTES).putLong(seed).array()).toString();
+		this.random = new Random(seed);
+		this.interval = interval;
+		this.latitude = latitude;
+		this.longitude = longitude;
+
+		this.displacement = 1.4 + random.nextInt(5) * 0.4;
+		this.gearing = 0.9 + random.nextDouble() * 0.2;
+		this.tankSize = 45 + random.nextInt(4) * 10;
+		this.cruiseSpeed = 50 + random.nextDouble() * 40;
+		this.ambientTemp = 5 + random.nextDouble() * 30;
+		this.barometricPressure = 95 + random.nextDouble() * 7;
+		this.longTermFuelTrim = random.nextGaussian() * 3;
+
+		this.fuelLevel = 20 + random.nextDouble() * 80;
+		this.coolantTemp = ambientTemp;
+		this.catalystTemp = ambientTemp;
+		this.rpm = IDLE_RPM;
+		this.heading = random.nextDouble() * 360;
+
+		nextSegment();
+	}
+
+	/**
+	 * Creates a fleet of distinct cars starting around the same point, numbered from 0.
+	 * The seeds of the cars are drawn from the given random, so the same random gives
+	 * the same fleet.
+	 *
+	 * @param count the number of vehicles
+	 * @param interval the time between two records of a vehicle, in seconds
+	 * @param spread the maximum distance in degrees between the start of a car and
+	 * 		{@link #DEFAULT_LATITUDE}, {@link #DEFAULT_LONGITUDE}
+	 * @param random the source of the seeds and start points
+	 * @return the vehicles
+	 */
+	public static List<SyntheticVehicle> fleet(int count, double interval, double spread,
+			Random random) {
+		Assert.isTrue(count > 0, "The number of vehicles must be positive");
+
+		List<SyntheticVehicle> vehicles = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			vehicles.add(new SyntheticVehicle(VirtualVehicle.vin(null, i), random.nextLong(), interval,
+					DEFAULT_LATITUDE + (random.nextDouble() * 2 - 1) * spread,
+					DEFAULT_LONGITUDE + (random.nextDouble() * 2 - 1) * spread));
+		}
+
+		return vehicles;
+	}
+
+	@Override
+	public String getVin() {
+		return vin;
+	}
+
+	@Override
+	public String getJourneyId() {
+		return journeyId;
+	}
+
+	/**
+	 * @return the record of the vehicle one interval after the previous one
+	 */
+	@Override
+	public synchronized TelemetryRecord next() {
+		for (double left = interval; left > 0; left -= MAX_STEP) {
+			step(Math.min(left, MAX_STEP));
+		}
+
+		TelemetryRecord record = new TelemetryRecord();
+		double throttle = clamp(8 + load * 0.6 + random.nextGaussian(), 0, 100);
+		double pedal = clamp(15 + load * 0.65, 0, 100);
+
+		record.setString(Field.VIN, vin);
+		record.setDouble(Field.LONGITUDE, round(longitude, 1e6));
+		record.setDouble(Field.LATITUDE, round(latitude, 1e6));
+		record.setInt(Field.VEHICLE_SPEED, (int) Math.round(speed * 3.6));
+		record.setIntArray(Field.FUEL_SYSTEM_STATUS, FUEL_SYSTEM_STATUS);
+		record.setDouble(Field.ENGINE_LOAD, Math.round(load));
+		record.setInt(Field.COOLANT_TEMP, (int) Math.round(coolantTemp));
+		record.setDouble(Field.SHORT_TERM_FUEL, Math.round(random.nextGaussian() * 2));
+		record.setDouble(Field.LONG_TERM_FUEL, Math.round(longTermFuelTrim));
+		record.setInt(Field.INTAKE_MANIFOLD_PRESSURE,
+				(int) Math.round(barometricPressure * (0.25 + 0.7 * load / 100)));
+		// The air under the hood gets hotter when the car is slow
+		record.setInt(Field.INTAKE_AIR_TEMP,
+				(int) Math.round(ambientTemp + 5 + 20 * Math.exp(-speed / 8)));
+		record.setDouble(Field.MAF_AIRFLOW, round(mafAirflow, 100));
+		record.setInt(Field.THROTTLE_POSITION, (int) Math.round(throttle));
+		record.setString(Field.OBD_STANDARDS, "2");
+		record.setInt(Field.TIME_SINCE_ENGINE_START, (int) runTime);
+		record.setInt(Field.FUEL_LEVEL_INPUT, (int) Math.round(fuelLevel));
+		record.setDouble(Field.RELATIVE_THROTTLE_POS, Math.round(Math.max(throttle - 12, 0)));
+		record.setDouble(Field.ABSOLUTE_THROTTLE_POS_B, Math.round(Math.min(throttle + 4, 100)));
+		record.setDouble(Field.ACCELERATOR_THROTTLE_POS_D, Math.round(pedal));
+		record.setDouble(Field.ACCELERATOR_THROTTLE_POS_E, Math.round(pedal / 2));
+		record.setInt(Field.DISTANCE_WITH_MIL_ON, 0);
+		record.setDouble(Field.CATALYST_TEMP, Math.round(catalystTemp));
+		record.setInt(Field.BAROMETRIC_PRESSURE, (int) Math.round(barometricPressure));
+		record.setDouble(Field.CONTROL_MODULE_VOLTAGE, round(13.8 + random.nextGaussian() * 0.1, 100));
+		// Measured by an accelerometer, gravity included, in g
+		record.setDouble(Field.ACCELERATION, round(Math.hypot(1, acceleration / GRAVITY), 1000));
+		record.setDouble(Field.BEARING, round(heading, 1e6));
+		record.setDouble(Field.RPM, Math.round(rpm));
+		record.setString(Field.JOURNEY_ID, journeyId);
+
+		return record;
+	}
+
+	private void step(double seconds) {
+		runTime += seconds;
+
+		if(stopTime > 0) {
+			speed = 0;
+			acceleration = 0;
+			stopTime -= seconds;
+
+			if(stopTime <= 0) {
+				nextSegment();
+			}
+		}
+		else {
+			drive(seconds);
+		}
+
+		runEngine(seconds);
+	}
+
+	private void drive(double seconds) {
+		double target = segmentSpeed / 3.6;
+
+		if(stopAtEnd && remaining <= speed * speed / (2 * COMFORTABLE_BRAKING) + 2) {
+			target = 0;
+		}
+
+		acceleration = clamp((target - speed) / 3 + random.nextGaussian() * 0.1,
+				-MAX_BRAKING, MAX_ACCELERATION);
+		speed = Math.max(speed + acceleration * seconds, 0);
+
+		double distance = speed * seconds;
+
+		if(stopAtEnd) {
+			distance = Math.min(distance, remaining);
+		}
+
+		move(distance);
+		remaining -= distance;
+
+		if(stopAtEnd && remaining < 3 && speed < 1.5) {
+			speed = 0;
+			stopTime = 5 + random.nextDouble() * 40;
+		}
+		else if(!stopAtEnd && remaining <= 0) {
+			nextSegment();
+		}
+	}
+
+	private void runEngine(double seconds) {
+		double kmh = speed * 3.6;
+		int gear = 0;
+
+		while(kmh > GEAR_TOP_SPEEDS[gear]) {
+			gear++;
+		}
+
+		rpm = Math.max(kmh * GEAR_RPM_PER_KMH[gear] * gearing, IDLE_RPM) + random.nextGaussian() * 15;
+		// Rolling and air resistance plus the acceleration, none when braking
+		load = clamp(20 + 0.2 * kmh + 0.0015 * kmh * kmh + 12 * acceleration, 5, 100);
+		mafAirflow = rpm / 120 * displacement * VOLUMETRIC_EFFICIENCY * load / 100 * AIR_DENSITY;
+
+		fuelLevel -= mafAirflow / AIR_FUEL_RATIO / FUEL_DENSITY * seconds / tankSize * 100;
+
+		if(fuelLevel < REFUEL_LEVEL) {
+			fuelLevel = 100;
+		}
+
+		// Warms up with the load until the thermostat opens, then stays around it
+		double hot = THERMOSTAT_TEMP + load * 0.05;
+
+		if(coolantTemp < THERMOSTAT_TEMP) {
+			coolantTemp = Math.min(coolantTemp + (0.05 + load * 0.003) * seconds, hot);
+		}
+		else {
+			coolantTemp += (hot - coolantTemp) * Math.min(seconds / 30, 1);
+		}
+
+		catalystTemp += (300 + load * 4 + rpm * 0.05 - catalystTemp) * Math.min(seconds / 40, 1);
+	}
+
+	private void move(double distance) {
+		double radians = Math.toRadians(heading);
+
+		latitude += distance * Math.cos(radians) / METERS_PER_DEGREE;
+		longitude += distance * Math.sin(radians)
+				/ (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+	}
+
+	/**
+	 * Turns onto the next segment of the road: a turn at a crossing a quarter of the time,
+	 * a bend otherwise.
+	 */
+	private void nextSegment() {
+		double turn = random.nextDouble() < 0.25 ? (random.nextBoolean() ? 90 : -90) : 0;
+
+		heading = (heading + turn + random.nextGaussian() * 10 + 360) % 360;
+		remaining = 150 + random.nextDouble() * 1350;
+		segmentSpeed = clamp(cruiseSpeed * (0.6 + random.nextDouble() * 0.7), 20, 130);
+		stopAtEnd = random.nextDouble() < 0.3;
+		stopTime = 0;
+	}
+
+	private static double clamp(double value, double min, double max) {
+		return Math.max(min, Math.min(value, max));
+	}
+
+	private static double round(double value, double scale) {
+		return Math.round(value * scale) / scale;
+	}
+}
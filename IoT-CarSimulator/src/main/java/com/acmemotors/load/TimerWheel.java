@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Hashed timer wheel running tasks at a given time on a single thread.  Time is cut in
+ * ticks, and a task is put in the slot of the tick it is due on (modulo the number of
+ * slots) so each tick only looks at the tasks of one slot, however many tasks are
+ * scheduled.  Tasks run no earlier than their deadline and up to a tick later.
+ *
+ * Tasks may be scheduled from any thread, including from a task run by the wheel; they
+ * must be short since they all run on the thread of the wheel.
+ *
+ * @author Michael Minella
+ */
+public class TimerWheel {
+
+	private static final Log logger = LogFactory.getLog(TimerWheel.class);
+
+	private final String name;
+
+	private final long tickDuration;
+
+	private final Queue<Timeout>[] slots;
+
+	private final int mask;
+
+	private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	private long startTime;
+
+	private long tick;
+
+	/**
+	 * @param name the name of the thread of the wheel
+	 * @param tickDuration the duration of a tick
+	 * @param unit the unit of the tick duration
+	 * @param slotCount the number of slots, rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(String name, long tickDuration, TimeUnit unit, int slotCount) {
+		Assert.isTrue(tickDuration > 0, "The tick duration must be positive");
+		Assert.isTrue(slotCount > 0 && slotCount <= 1 << 30, "The number of slots must be between 1 and 2^30");
+
+		int size = Integer.highestOneBit(slotCount);
+
+		if(size < slotCount) {
+			size <<= 1;
+		}
+
+		this.name = name;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.slots = (Queue<Timeout>[]) new Queue<?>[size];
+		this.mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			slots[i] = new ArrayDeque<>();
+		}
+	}
+
+	/**
+	 * Schedules a task.
+	 *
+	 * @param task the task to run
+	 * @param deadline when to run the task, in the time of {@link System#nanoTime()}
+	 */
+	public void schedule(Runnable task, long deadline) {
+		scheduled.add(new Timeout(task, deadline));
+	}
+
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		startTime = System.nanoTime();
+		tick = 0;
+		running = true;
+
+		thread = new Thread(this::run, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the wheel, the tasks not run yet are dropped.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		LockSupport.unpark(thread);
+		thread.join();
+
+		scheduled.clear();
+
+		for (Queue<Timeout> slot : slots) {
+			slot.clear();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void run() {
+		while(running) {
+			long deadline = startTime + (tick + 1) * tickDuration;
+			long now;
+
+			while((now = System.nanoTime()) < deadline && running) {
+				LockSupport.parkNanos(deadline - now);
+			}
+
+			if(!running) {
+				return;
+			}
+
+			transferScheduled();
+			expire(slots[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void transferScheduled() {
+		Timeout timeout;
+
+		while((timeout = scheduled.poll()) != null) {
+			long ticks = Math.max((timeout.deadline - startTime) / tickDuration, tick);
+
+			timeout.rounds = (ticks - tick) / slots.length;
+			slots[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expire(Queue<Timeout> slot) {
+		Iterator<Timeout> timeouts = slot.iterator();
+
+		while(timeouts.hasNext()) {
+			Timeout timeout = timeouts.next();
+
+			if(timeout.rounds > 0) {
+				timeout.rounds--;
+				continue;
+			}
+
+			timeouts.remove();
+
+			try {
+				timeout.task.run();
+			}
+			catch (RuntimeException e) {
+				logger.warn("Task " + timeout.task + " failed", e);
+			}
+		}
+	}
+
+	private static class Timeout {
+
+		private final Runnable task;
+
+		private final long deadline;
+
+		private long rounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.util.List;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+
+import org.springframework.util.Assert;
+
+/**
+ * The records of a recorded trip, read by index.  A trip is shared by all the
+ * {@link VirtualVehicle}s driving it, each one at its own position, so implementations
+ * must be thread safe.
+ *
+ * @author Michael Minella
+ */
+public interface Trip {
+
+	/**
+	 * @return the number of records of the trip
+	 */
+	int size();
+
+	/**
+	 * @param index the index of the record, from 0 to {@link #size()} excluded
+	 * @return a new copy of the record, the caller is free to modify it
+	 */
+	TelemetryRecord record(int index);
+
+	/**
+	 * @param records the records of the trip, held in memory
+	 * @return the trip made of the records
+	 */
+	static Trip of(List<TelemetryRecord> records) {
+		Assert.notEmpty(records, "A trip needs at least one record");
+
+		return new Trip() {
+
+			@Override
+			public int size() {
+				return records.size();
+			}
+
+			@Override
+			public TelemetryRecord record(int index) {
+				return new TelemetryRecord(records.get(index));
+			}
+		};
+	}
+}
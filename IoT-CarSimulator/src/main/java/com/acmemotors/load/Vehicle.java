@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+
+/**
+ * A car of the fleet driven by a {@link LoadGenerator}, sending a record each time it is
+ * its turn.  The records of a vehicle are asked for one after the other, never
+ * concurrently, but not always by the same sender thread.
+ *
+ * @author Michael Minella
+ */
+public interface Vehicle {
+
+	String getVin();
+
+	String getJourneyId();
+
+	/**
+	 * @return the next record of the vehicle, a new instance the caller is free to modify
+	 */
+	TelemetryRecord next();
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+
+import org.springframework.util.Assert;
+
+/**
+ * A car driving a recorded trip under its own VIN and journey id.  Each vehicle starts
+ * at its own point of the trip, loops back to the start when it reaches the end, and
+ * can be moved by a fixed offset so cars driving the same trip are not all at the same
+ * place.
+ *
+ * {@link #next()} is synchronized so the sender thread asking for a record sees where
+ * the previous record, asked for by another thread, left the vehicle on the trip.
+ *
+ * @author Michael Minella
+ */
+public class VirtualVehicle implements Vehicle {
+
+	private static final String DEFAULT_VIN_PREFIX = "1ACME000000";
+
+	private final String vin;
+
+	private final String journeyId = UUID.randomUUID().toString();
+
+	private final Trip trip;
+
+	private final double latitudeOffset;
+
+	private final double longitudeOffset;
+
+	private int position;
+
+	public VirtualVehicle(String vin, Trip trip, int position,
+			double latitudeOffset, double longitudeOffset) {
+		Assert.hasText(vin, "A VIN is required");
+		Assert.notNull(trip, "A trip is required");
+
+		this.vin = vin;
+		this.trip = trip;
+		this.position = position % trip.size();
+		this.latitudeOffset = latitudeOffset;
+		this.longitudeOffset = longitudeOffset;
+	}
+
+	/**
+	 * Creates a fleet of vehicles driving the given trips, the trips being assigned in
+	 * turn.  The VIN of a vehicle is made of the start of the VIN recorded in its trip
+	 * followed by the number of the vehicle as serial number.
+	 *
+	 * @param trips the trips recorded
+	 * @param count the number of vehicles
+	 * @param jitter the maximum offset in degrees of the positions of a vehicle
+	 * @param random the source of the start points and offsets
+	 * @return the vehicles
+	 */
+	public static List<VirtualVehicle> fleet(List<? extends Trip> trips, int count,
+			double jitter, Random random) {
+		Assert.notEmpty(trips, "At least one trip is required");
+		Assert.isTrue(count > 0, "The number of vehicles must be positive");
+
+		List<VirtualVehicle> vehicles = new ArrayList<>(count);
+
+		for (int i = 0; i < count; i++) {
+			Trip trip = trips.get(i % trips.size());
+			String recordedVin = trip.record(0).getString(Field.VIN);
+
+			vehicles.add(new VirtualVehicle(vin(recordedVin, i), trip, random.nextInt(trip.size()),
+					offset(jitter, random), offset(jitter, random)));
+		}
+
+		return vehicles;
+	}
+
+	/**
+	 * @return the VIN of the vehicle with the given number: the first 11 characters of
+	 * 		the recorded VIN followed by the number on six digits
+	 */
+	static String vin(String recordedVin, int number) {
+		String prefix = recordedVin != null && recordedVin.length() >= 11 ?
+				recordedVin.substring(0, 11) : DEFAULT_VIN_PREFIX;
+
+		return String.format("%s%06d", prefix, number % 1000000);
+	}
+
+	@Override
+	public String getVin() {
+		return vin;
+	}
+
+	@Override
+	public String getJourneyId() {
+		return journeyId;
+	}
+
+	/**
+	 * @return a copy of the next record of the trip, with the VIN, journey id and
+	 * 		position of this vehicle
+	 */
+	@Override
+	public synchronized TelemetryRecord next() {
+		TelemetryRecord record = trip.record(position);
+
+		if(++position == trip.size()) {
+			position = 0;
+		}
+
+		record.setString(Field.VIN, vin);
+		record.setString(Field.JOURNEY_ID, journeyId);
+		shift(record, Field.LATITUDE, latitudeOffset);
+		shift(record, Field.LONGITUDE, longitudeOffset);
+
+		return record;
+	}
+
+	private static void shift(TelemetryRecord record, Field field, double offset) {
+		if(offset != 0 && !record.isNull(field)) {
+			record.setDouble(field, record.getDouble(field) + offset);
+		}
+	}
+
+	private static double offset(double jitter, Random random) {
+		return jitter > 0 ? (random.nextDouble() * 2 - 1) * jitter : 0;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.metrics;
+
+/**
+ * Latencies of the records sent by the simulator, in nanoseconds.  The latency of a
+ * record is measured from the time it was due to be sent, so the time it waited behind
+ * slower requests is counted; the service time is only the time taken by the request
+ * that sent it.  Comparing the two tells how far the server lags behind the rate asked.
+ *
+ * @author Michael Minella
+ */
+public class SendMetrics {
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public LatencyHistogram getServiceTime() {
+		return serviceTime;
+	}
+
+	public void reset() {
+		latency.reset();
+		serviceTime.reset();
+	}
+
+	/**
+	 * @return the count, mean, percentiles and maximum, in milliseconds, of both
+	 * 		histograms, one per line
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder(String.format("%-24s %10s %9s %9s %9s %9s %9s %9s%n",
+				"send (ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+
+		append(report, "latency", latency);
+		append(report, "service time", serviceTime);
+
+		return report.toString();
+	}
+
+	private static void append(StringBuilder report, String name, LatencyHistogram histogram) {
+		report.append(String.format("%-24s %10d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", name, histogram.getTotalCount(),
+				histogram.getMean() / 1e6,
+				histogram.getValueAtPercentile(50) / 1e6,
+				histogram.getValueAtPercentile(90) / 1e6,
+				histogram.getValueAtPercentile(99) / 1e6,
+				histogram.getValueAtPercentile(99.9) / 1e6,
+				histogram.getMaxValue() / 1e6));
+	}
+}
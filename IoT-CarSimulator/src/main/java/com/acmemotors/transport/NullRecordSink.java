@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops the records, only counting them, to measure what the simulator costs without
+ * any network in the way.
+ *
+ * @author Michael Minella
+ */
+public class NullRecordSink implements RecordSink {
+
+	private final LongAdder payloads = new LongAdder();
+
+	private final LongAdder characters = new LongAdder();
+
+	@Override
+	public void send(String payload) {
+		payloads.increment();
+		characters.add(payload.length());
+	}
+
+	/**
+	 * @return the number of payloads sent
+	 */
+	public long getPayloads() {
+		return payloads.sum();
+	}
+
+	/**
+	 * @return the number of characters of the payloads sent
+	 */
+	public long getCharacters() {
+		return characters.sum();
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 the original author or authors.
+ * Copyright 2015 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -13,34 +13,22 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.acmemotors.obd2;
+package com.acmemotors.transport;
 
-import org.junit.Before;
-import org.junit.Test;
-import static org.junit.Assert.*;
+import java.io.Closeable;
+import java.io.IOException;
 
 /**
- * @author mminella
+ * Where the records sent through the {@link com.acmemotors.service.RequestGateway} go
+ * when they are not POSTed to the server.  Implementations are thread safe.
+ *
+ * @author Michael Minella
  */
-public class OBD2ControllerTest {
-
-	private OBD2Controller controller;
-
-	@Before
-	public void setUp() {
-		controller = new OBD2Controller();
-	}
+public interface RecordSink extends Closeable {
 
 	/**
+	 * @param payload a record, or a batch of records, as JSON
+	 * @throws IOException if the payload can't be sent
 	 */
-	@Test
-	public void testRpmDecoding() {
-		int rpm = controller.decodeRPM("01 0C\n" +
-										 "18 DA F1 11 04 41 0C 0C C0 \n" +
-										 "18 DA F1 1D 04 41 0C 0C B4 \n" +
-										 "\n" +
-										 ">");
-
-		assertEquals(816, rpm);
-	}
+	void send(String payload) throws IOException;
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.util.Assert;
+
+/**
+ * Sends the payload of the messages of the request channel to a {@link RecordSink}.
+ * The sinks are one way, so once a payload is sent the reply the
+ * {@link com.acmemotors.service.RequestGateway} waits for is an empty string, like an
+ * HTTP response without body.
+ *
+ * @author Michael Minella
+ */
+public class RecordSinkMessageHandler extends AbstractReplyProducingMessageHandler implements DisposableBean {
+
+	private final RecordSink sink;
+
+	public RecordSinkMessageHandler(RecordSink sink) {
+		Assert.notNull(sink, "A sink is required");
+
+		this.sink = sink;
+	}
+
+	public RecordSink getSink() {
+		return sink;
+	}
+
+	@Override
+	protected Object handleRequestMessage(Message<?> requestMessage) {
+		try {
+			sink.send(requestMessage.getPayload().toString());
+		}
+		catch (Exception e) {
+			throw new MessageHandlingException(requestMessage,
+					"Unable to send to " + sink, e);
+		}
+
+		return "";
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		sink.close();
+	}
+}
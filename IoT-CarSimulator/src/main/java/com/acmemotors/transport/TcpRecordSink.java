@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import java.io.IOException;
+
+import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * Sends the records over a raw TCP connection, one per line.  The connection is kept
+ * open and shared by all the threads sending (the factory must not be single use), and
+ * reopened by the factory on the next send once it fails.  Nothing is read back.  The
+ * factory is started on the first send and stopped when the sink is closed.
+ *
+ * @author Michael Minella
+ */
+public class TcpRecordSink implements RecordSink {
+
+	private final AbstractClientConnectionFactory connectionFactory;
+
+	/**
+	 * @param connectionFactory the factory of the connection, with a serializer ending
+	 * 		each payload with a line feed
+	 */
+	public TcpRecordSink(AbstractClientConnectionFactory connectionFactory) {
+		Assert.notNull(connectionFactory, "A connection factory is required");
+		Assert.isTrue(!connectionFactory.isSingleUse(), "The connection must be kept open");
+
+		this.connectionFactory = connectionFactory;
+	}
+
+	@Override
+	public void send(String payload) throws IOException {
+		if(!connectionFactory.isRunning()) {
+			// Like the TCP adapters, which start the factory they use
+			connectionFactory.start();
+		}
+
+		try {
+			connectionFactory.getConnection().send(MessageBuilder.withPayload(payload).build());
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException("Unable to send to " + this, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		connectionFactory.stop();
+	}
+
+	@Override
+	public String toString() {
+		return "tcp://" + connectionFactory.getHost() + ":" + connectionFactory.getPort();
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Sends the records as the text messages of a WebSocket (RFC 6455), each payload in a
+ * frame of its own.  The connection is opened on the first send, shared by all the
+ * threads sending and opened again on the next send once it failed.  The messages of
+ * the server are read by a thread of the connection only to answer its pings and
+ * close requests.
+ *
+ * Only plain ({@code ws}) connections are supported.
+ *
+ * @author Michael Minella
+ */
+public class WebSocketRecordSink implements RecordSink {
+
+	private static final Log logger = LogFactory.getLog(WebSocketRecordSink.class);
+
+	private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+	private static final int TEXT = 0x1;
+
+	private static final int CLOSE = 0x8;
+
+	private static final int PING = 0x9;
+
+	private static final int PONG = 0xA;
+
+	private static final int FIN = 0x80;
+
+	private static final int MASKED = 0x80;
+
+	private final URI uri;
+
+	private int connectTimeout = 5000;
+
+	private Socket socket;
+
+	private OutputStream out;
+
+	private byte[] buffer = new byte[1024];
+
+	/**
+	 * @param uri the {@code ws://host:port/path} of the server
+	 */
+	public WebSocketRecordSink(URI uri) {
+		Assert.notNull(uri, "A URI is required");
+		Assert.isTrue("ws".equalsIgnoreCase(uri.getScheme()), "Only ws:// URIs are supported");
+		Assert.hasText(uri.getHost(), "The URI has no host");
+
+		this.uri = uri;
+	}
+
+	/**
+	 * @param connectTimeout the time to open the connection, and then to answer the
+	 * 		handshake, in milliseconds, 5 seconds by default
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	@Override
+	public synchronized void send(String payload) throws IOException {
+		if(socket == null) {
+			connect();
+		}
+
+		try {
+			writeFrame(TEXT, payload.getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e) {
+			disconnect();
+			throw e;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(socket != null) {
+			try {
+				writeFrame(CLOSE, new byte[] {0x03, (byte) 0xE8});
+			}
+			catch (IOException e) {
+				logger.debug("Unable to close the WebSocket nicely", e);
+			}
+			finally {
+				disconnect();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return uri.toString();
+	}
+
+	private void connect() throws IOException {
+		int port = uri.getPort() != -1 ? uri.getPort() : 80;
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+
+		if(uri.getRawQuery() != null) {
+			path += "?" + uri.getRawQuery();
+		}
+
+		byte[] nonce = new byte[16];
+		ThreadLocalRandom.current().nextBytes(nonce);
+		String key = Base64.getEncoder().encodeToString(nonce);
+
+		Socket socket = new Socket();
+
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+			// The handshake is read while holding the monitor of the sink
+			socket.setSoTimeout(connectTimeout);
+
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			String request = "GET " + path + " HTTP/1.1\r\n"
+					+ "Host: " + uri.getHost() + ":" + port + "\r\n"
+					+ "Upgrade: websocket\r\n"
+					+ "Connection: Upgrade\r\n"
+					+ "Sec-WebSocket-Key: " + key + "\r\n"
+					+ "Sec-WebSocket-Version: 13\r\n\r\n";
+			out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			checkHandshake(readHeaders(in), key);
+			socket.setSoTimeout(0);
+
+			Thread reader = new Thread(() -> read(socket, in), "websocket-sink-reader");
+			reader.setDaemon(true);
+			reader.start();
+
+			this.socket = socket;
+			this.out = out;
+		}
+		catch (IOException e) {
+			socket.close();
+			throw new IOException("Unable to open a WebSocket to " + uri, e);
+		}
+	}
+
+	private void disconnect() {
+		if(socket != null) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				logger.debug("Unable to close the socket", e);
+			}
+
+			socket = null;
+			out = null;
+		}
+	}
+
+	/**
+	 * Writes a frame, masked as required from a client.
+	 */
+	private void writeFrame(int opcode, byte[] payload) throws IOException {
+		int length = payload.length;
+		out.write(FIN | opcode);
+
+		if(length < 126) {
+			out.write(MASKED | length);
+		}
+		else if(length <= 0xFFFF) {
+			out.write(MASKED | 126);
+			out.write(length >>> 8);
+			out.write(length);
+		}
+		else {
+			out.write(MASKED | 127);
+
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				out.write((int) ((long) length >>> shift));
+			}
+		}
+
+		int mask = ThreadLocalRandom.current().nextInt();
+		byte[] maskBytes = {(byte) (mask >>> 24), (byte) (mask >>> 16), (byte) (mask >>> 8), (byte) mask};
+		out.write(maskBytes);
+
+		if(buffer.length < length) {
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		}
+
+		for (int i = 0; i < length; i++) {
+			buffer[i] = (byte) (payload[i] ^ maskBytes[i & 3]);
+		}
+
+		out.write(buffer, 0, length);
+		out.flush();
+	}
+
+	/**
+	 * Reads the messages of the server until the connection is closed, answering the
+	 * pings and the close requests.
+	 */
+	private void read(Socket socket, InputStream stream) {
+		DataInputStream in = new DataInputStream(stream);
+
+		try {
+			while(true) {
+				int opcode = in.readUnsignedByte() & 0x0F;
+				int second = in.readUnsignedByte();
+				long length = second & 0x7F;
+
+				if(length == 126) {
+					length = in.readUnsignedShort();
+				}
+				else if(length == 127) {
+					length = in.readLong();
+				}
+
+				byte[] mask = null;
+
+				if((second & MASKED) != 0) {
+					mask = new byte[4];
+					in.readFully(mask);
+				}
+
+				if(opcode == PING || opcode == CLOSE) {
+					if(length > 125) {
+						throw new IOException("Invalid control frame of " + length + " bytes");
+					}
+
+					byte[] payload = new byte[(int) length];
+					in.readFully(payload);
+
+					if(mask != null) {
+						for (int i = 0; i < payload.length; i++) {
+							payload[i] ^= mask[i & 3];
+						}
+					}
+
+					synchronized (this) {
+						if(this.socket != socket) {
+							return;
+						}
+
+						if(opcode == PING) {
+							writeFrame(PONG, payload);
+						}
+						else {
+							writeFrame(CLOSE, payload);
+							disconnect();
+							return;
+						}
+					}
+				}
+				else {
+					skip(in, length);
+				}
+			}
+		}
+		catch (EOFException e) {
+			logger.debug("WebSocket closed by " + uri);
+		}
+		catch (IOException e) {
+			if(!socket.isClosed()) {
+				logger.debug("Unable to read from " + uri, e);
+			}
+		}
+		finally {
+			synchronized (this) {
+				if(this.socket == socket) {
+					disconnect();
+				}
+			}
+		}
+	}
+
+	private static void skip(DataInputStream in, long length) throws IOException {
+		while(length > 0) {
+			int skipped = in.skipBytes((int) Math.min(length, Integer.MAX_VALUE));
+
+			if(skipped <= 0) {
+				throw new EOFException();
+			}
+
+			length -= skipped;
+		}
+	}
+
+	private static String readHeaders(InputStream in) throws IOException {
+		ByteArrayOutputStream headers = new ByteArrayOutputStream();
+		int matched = 0;
+
+		// Up to the blank line ending the headers
+		while(matched < 4) {
+			int b = in.read();
+
+			if(b == -1) {
+				throw new EOFException("Connection closed during the handshake");
+			}
+
+			headers.write(b);
+			matched = (b == '\r' && (matched == 0 || matched == 2)) || (b == '\n' && (matched == 1 || matched == 3)) ?
+					matched + 1 : (b == '\r' ? 1 : 0);
+		}
+
+		return new String(headers.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	private void checkHandshake(String headers, String key) throws IOException {
+		String[] lines = headers.split("\r\n");
+
+		if(lines.length == 0 || !lines[0].matches("HTTP/1\\.1 101( .*)?")) {
+			throw new IOException("Upgrade refused: " + (lines.length > 0 ? lines[0] : headers));
+		}
+
+		String expected = accept(key);
+
+		for (String line : lines) {
+			int colon = line.indexOf(':');
+
+			if(colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+				if(line.substring(colon + 1).trim().equals(expected)) {
+					return;
+				}
+
+				break;
+			}
+		}
+
+		throw new IOException("Invalid Sec-WebSocket-Accept in the handshake");
+	}
+
+	/**
+	 * @return the value of Sec-WebSocket-Accept expected for the given key
+	 */
+	static String accept(String key) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+
+			return Base64.getEncoder().encodeToString(digest);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import com.acmemotors.capture.CaptureTrip;
+import org.junit.Test;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Michael Minella
+ */
+public class CaptureJobConfigurationTests {
+
+	@Test
+	public void testCaptureJob() throws Exception {
+		File capture = File.createTempFile("journey", ".capture");
+		GenericApplicationContext context = new AnnotationConfigApplicationContext(TestJobConfiguration.class);
+
+		try {
+			JobLauncher launcher = context.getBean(JobLauncher.class);
+			Job job = context.getBean("captureJob", Job.class);
+
+			JobParameters jobParameters = new JobParametersBuilder()
+					.addString("inputFile", new ClassPathResource("/data/sampleJourney.json").getFile().getAbsolutePath())
+					.addString("outputFile", capture.getAbsolutePath())
+					.toJobParameters();
+			JobExecution execution = launcher.run(job, jobParameters);
+
+			assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+
+			StepExecution step = execution.getStepExecutions().iterator().next();
+
+			assertEquals(3, step.getWriteCount());
+			assertEquals(capture.length(), step.getExecutionContext().getLong("captureSize"));
+			assertTrue(CaptureTrip.isCapture(capture));
+			assertEquals(3, new CaptureTrip(capture).size());
+		}
+		finally {
+			context.close();
+			capture.delete();
+		}
+	}
+
+	@Configuration
+	@Import({LoaderJobConfiguration.class, CaptureJobConfiguration.class})
+	public static class TestJobConfiguration {
+	}
+}
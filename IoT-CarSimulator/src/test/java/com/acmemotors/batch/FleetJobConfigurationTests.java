@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.acmemotors.service.RequestGateway;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Michael Minella
+ */
+public class FleetJobConfigurationTests {
+
+	private static final List<String> sent = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void testFleetJob() throws Exception {
+		sent.clear();
+		GenericApplicationContext context = new AnnotationConfigApplicationContext(TestJobConfiguration.class);
+
+		try {
+			JobLauncher launcher = context.getBean(JobLauncher.class);
+			Job job = context.getBean("fleetJob", Job.class);
+
+			JobParameters jobParameters = new JobParametersBuilder()
+					.addString("inputFile", new ClassPathResource("/data/sampleJourney.json").getFile().getAbsolutePath())
+					.addLong("vehicles", 50l)
+					.addLong("rate", 500l)
+					.addLong("duration", 1000l)
+					.addDouble("jitter", 0.001)
+					.addLong("seed", 42l)
+					.toJobParameters();
+			JobExecution execution = launcher.run(job, jobParameters);
+
+			assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+
+			StepExecution step = execution.getStepExecutions().iterator().next();
+
+			assertEquals(sent.size(), step.getWriteCount());
+			// 500 records due in a second, give or take the scheduling
+			assertTrue("Sent " + sent.size(), sent.size() >= 400 && sent.size() <= 550);
+
+			ObjectMapper mapper = new ObjectMapper();
+			Set<String> vins = new HashSet<>();
+
+			for (String record : sent) {
+				JsonNode node = mapper.readTree(record);
+				vins.add(node.get("vin").asText());
+				assertEquals(17, node.get("vin").asText().length());
+			}
+
+			assertEquals(50, vins.size());
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testSyntheticFleetJob() throws Exception {
+		sent.clear();
+		GenericApplicationContext context = new AnnotationConfigApplicationContext(TestJobConfiguration.class);
+
+		try {
+			JobLauncher launcher = context.getBean(JobLauncher.class);
+			Job job = context.getBean("fleetJob", Job.class);
+
+			JobParameters jobParameters = new JobParametersBuilder()
+					.addLong("vehicles", 20l)
+					.addLong("rate", 200l)
+					.addLong("duration", 1000l)
+					.addDouble("spread", 0.01)
+					.addLong("seed", 42l)
+					.toJobParameters();
+			JobExecution execution = launcher.run(job, jobParameters);
+
+			assertEquals(BatchStatus.COMPLETED, execution.getStatus());
+			assertTrue("Sent " + sent.size(), sent.size() >= 150 && sent.size() <= 220);
+
+			ObjectMapper mapper = new ObjectMapper();
+			Set<String> vins = new HashSet<>();
+
+			for (String record : sent) {
+				JsonNode node = mapper.readTree(record);
+				vins.add(node.get("vin").asText());
+
+				// Every field has a value
+				for (JsonNode value : node) {
+					assertTrue(record, !"".equals(value.asText()) || value.isArray());
+				}
+			}
+
+			assertEquals(20, vins.size());
+		}
+		finally {
+			context.close();
+		}
+	}
+
+	@Configuration
+	@Import({LoaderJobConfiguration.class, FleetJobConfiguration.class})
+	public static class TestJobConfiguration {
+
+		@Bean
+		@Primary
+		public RequestGateway testGateway() {
+			return input -> {
+				sent.add(input);
+				return null;
+			};
+		}
+	}
+}
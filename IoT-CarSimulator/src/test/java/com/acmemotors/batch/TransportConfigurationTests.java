@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.acmemotors.service.RequestGateway;
+import com.acmemotors.transport.NullRecordSink;
+import com.acmemotors.transport.RecordSinkMessageHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.integration.http.outbound.HttpRequestExecutingMessageHandler;
+
+/**
+ * @author Michael Minella
+ */
+public class TransportConfigurationTests {
+
+	private AnnotationConfigApplicationContext context;
+
+	@After
+	public void tearDown() {
+		if(context != null) {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testHttpByDefault() {
+		start(new HashMap<>());
+
+		assertEquals(1, context.getBeansOfType(HttpRequestExecutingMessageHandler.class).size());
+		assertEquals(0, context.getBeansOfType(RecordSinkMessageHandler.class).size());
+	}
+
+	@Test
+	public void testNone() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("transport", "none");
+		start(properties);
+
+		RequestGateway gateway = context.getBean(RequestGateway.class);
+
+		assertEquals("", gateway.send("{\"vin\":\"1\"}"));
+		assertEquals("", gateway.send("{\"vin\":\"2\"}"));
+
+		NullRecordSink sink = (NullRecordSink) context.getBean(RecordSinkMessageHandler.class).getSink();
+
+		assertEquals(2, sink.getPayloads());
+		assertEquals(0, context.getBeansOfType(HttpRequestExecutingMessageHandler.class).size());
+	}
+
+	@Test
+	public void testTcp() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			server.setSoTimeout(5000);
+
+			Map<String, Object> properties = new HashMap<>();
+			properties.put("transport", "tcp");
+			properties.put("tcpPort", server.getLocalPort());
+			start(properties);
+
+			RequestGateway gateway = context.getBean(RequestGateway.class);
+
+			assertEquals("", gateway.send("{\"vin\":\"1\"}"));
+
+			try (Socket socket = server.accept()) {
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+				assertEquals("{\"vin\":\"1\"}", in.readLine());
+			}
+		}
+	}
+
+	private void start(Map<String, Object> properties) {
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+		context.register(TestConfiguration.class);
+		context.refresh();
+	}
+
+	@Configuration
+	@Import(LoaderJobConfiguration.class)
+	public static class TestConfiguration {
+
+		@Bean
+		public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+			PropertySourcesPlaceholderConfigurer configurer = new PropertySourcesPlaceholderConfigurer();
+			configurer.setIgnoreUnresolvablePlaceholders(true);
+
+			return configurer;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class TelemetryRecordTests {
+
+	@Test
+	public void testNewRecordHasNoValue() {
+		TelemetryRecord record = new TelemetryRecord();
+
+		for (Field field : Field.values()) {
+			assertTrue(record.isNull(field));
+		}
+
+		assertNull(record.getString(Field.VIN));
+		assertEquals(0, record.getDouble(Field.RPM), 0);
+	}
+
+	@Test
+	public void testValues() {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "SCEDT26T0BD007019");
+		record.setInt(Field.VEHICLE_SPEED, 42);
+		record.setDouble(Field.RPM, 659.5);
+		record.setIntArray(Field.FUEL_SYSTEM_STATUS, new int[] {2, 0});
+
+		assertEquals("SCEDT26T0BD007019", record.getString(Field.VIN));
+		assertEquals(42, record.getInt(Field.VEHICLE_SPEED));
+		assertEquals(659.5, record.getDouble(Field.RPM), 0);
+		assertArrayEquals(new int[] {2, 0}, record.getIntArray(Field.FUEL_SYSTEM_STATUS));
+		assertFalse(record.isNull(Field.VEHICLE_SPEED));
+		assertTrue(record.isNull(Field.COOLANT_TEMP));
+
+		record.setNull(Field.VEHICLE_SPEED);
+		record.setString(Field.VIN, null);
+
+		assertTrue(record.isNull(Field.VEHICLE_SPEED));
+		assertTrue(record.isNull(Field.VIN));
+		assertFalse(record.isNull(Field.RPM));
+	}
+
+	@Test
+	public void testNullNumberHasNoValue() {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setInt(Field.VEHICLE_SPEED, 42);
+		record.setDouble(Field.RPM, 659.5);
+
+		record.setNull(Field.VEHICLE_SPEED);
+		record.setNull(Field.RPM);
+
+		assertEquals(0, record.getInt(Field.VEHICLE_SPEED));
+		assertEquals(0, record.getDouble(Field.RPM), 0);
+	}
+
+	@Test
+	public void testCopy() {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "SCEDT26T0BD007019");
+		record.setDouble(Field.LATITUDE, 32.5);
+
+		TelemetryRecord copy = new TelemetryRecord(record);
+		copy.setString(Field.VIN, "SCEDT26T0BD000001");
+		copy.setDouble(Field.LATITUDE, 33.0);
+		copy.setInt(Field.COOLANT_TEMP, 90);
+
+		assertEquals("SCEDT26T0BD007019", record.getString(Field.VIN));
+		assertEquals(32.5, record.getDouble(Field.LATITUDE), 0);
+		assertTrue(record.isNull(Field.COOLANT_TEMP));
+		assertEquals("SCEDT26T0BD000001", copy.getString(Field.VIN));
+		assertEquals(33.0, copy.getDouble(Field.LATITUDE), 0);
+	}
+
+	@Test
+	public void testToString() {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "SCEDT26T0BD007019");
+		record.setInt(Field.VEHICLE_SPEED, 12);
+		record.setIntArray(Field.FUEL_SYSTEM_STATUS, new int[] {2, TelemetryRecord.MISSING});
+
+		String string = record.toString();
+
+		assertTrue(string, string.startsWith("TelemetryRecord{vin=SCEDT26T0BD007019, longitude=null, latitude=null, " +
+				"vehicle_speed=12, fuel_system_status=[2, null], "));
+		assertTrue(string, string.endsWith("}"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongType() {
+		new TelemetryRecord().getString(Field.RPM);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotANumber() {
+		new TelemetryRecord().setDouble(Field.VIN, 1);
+	}
+}
@@ -15,13 +15,20 @@
  */
 package com.acmemotors.batch.support;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.acmemotors.service.RequestGateway;
 import org.junit.After;
@@ -120,4 +127,104 @@ public class GatewayItemWriterTests {
 
 		writer.write(items);
 	}
+
+	@Test
+	public void testNewlineDelimitedBatches() throws Exception {
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setGateway(gateway);
+		writer.setBatchSize(2);
+		writer.afterPropertiesSet();
+
+		writer.write(Arrays.asList("{\"a\":1}", "{\"b\":2}", "{\"c\":3}"));
+
+		verify(gateway).send("{\"a\":1}\n{\"b\":2}");
+		verify(gateway).send("{\"c\":3}");
+	}
+
+	@Test
+	public void testJsonArrayBatches() throws Exception {
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setGateway(gateway);
+		writer.setBatchSize(10);
+		writer.setBatchFormat(GatewayItemWriter.BatchFormat.JSON_ARRAY);
+		writer.afterPropertiesSet();
+
+		writer.write(Arrays.asList("{\"a\":1}", "{\"b\":2}"));
+
+		verify(gateway).send("[{\"a\":1},{\"b\":2}]");
+	}
+
+	@Test
+	public void testBatchesSentInParallel() throws Exception {
+		CountDownLatch inFlight = new CountDownLatch(3);
+		AtomicInteger maxInFlight = new AtomicInteger();
+		AtomicInteger current = new AtomicInteger();
+
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setGateway(input -> {
+			maxInFlight.accumulateAndGet(current.incrementAndGet(), Math::max);
+			inFlight.countDown();
+
+			try {
+				// Only returns once three requests are in flight together
+				assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			current.decrementAndGet();
+			return null;
+		});
+		writer.setMaxInFlight(3);
+		writer.afterPropertiesSet();
+
+		try {
+			writer.write(Arrays.asList("foo", "bar", "baz", "qux", "quux", "corge"));
+		}
+		finally {
+			writer.destroy();
+		}
+
+		assertEquals(3, maxInFlight.get());
+	}
+
+	@Test
+	public void testFailedBatchIsRetried() throws Exception {
+		doThrow(new RuntimeException("Cannot connect")).doReturn(null).when(gateway).send("foo\nbar");
+
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setGateway(gateway);
+		writer.setBatchSize(2);
+		writer.setMaxAttempts(2);
+		writer.setRetryDelay(1);
+		writer.afterPropertiesSet();
+
+		writer.write(Arrays.asList("foo", "bar"));
+
+		verify(gateway, times(2)).send("foo\nbar");
+	}
+
+	@Test
+	public void testExceptionIsBubbledFromParallelSends() throws Exception {
+		doThrow(new RuntimeException("Cannot connect")).when(gateway).send("bar");
+
+		exception.expect(RuntimeException.class);
+		exception.expectMessage("Cannot connect");
+
+		GatewayItemWriter writer = new GatewayItemWriter();
+		writer.setGateway(gateway);
+		writer.setMaxInFlight(2);
+		writer.setMaxAttempts(3);
+		writer.setRetryDelay(1);
+		writer.afterPropertiesSet();
+
+		try {
+			writer.write(Arrays.asList("foo", "bar", "baz"));
+		}
+		finally {
+			writer.destroy();
+			verify(gateway, times(3)).send("bar");
+		}
+	}
 }
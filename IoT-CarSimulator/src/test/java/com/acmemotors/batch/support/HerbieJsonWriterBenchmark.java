@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares the {@link HerbieJsonWriter} with the serialization previously done by the
+ * processor of the simulator job (a serializer provider and an
+ * {@link ObjectMapper} built for every record, from the record as a map) and with a
+ * shared {@link ObjectWriter}.
+ * Run with the GC profiler to see the allocation rate of each approach:
+ *
+ * <code>
+ * $ java -cp &lt;TEST_CLASSPATH&gt; com.acmemotors.batch.support.HerbieJsonWriterBenchmark
+ * </code>
+ *
+ * @author Michael Minella
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HerbieJsonWriterBenchmark {
+
+	private TelemetryRecord record;
+
+	private Map<String, Object> map;
+
+	private final ObjectWriter objectWriter = HerbieJsonWriterTests.objectMapper().writer();
+
+	private final HerbieJsonWriter writer = new HerbieJsonWriter();
+
+	@Setup
+	public void setUp() throws Exception {
+		JsonRecordItemReader reader = new JsonRecordItemReader();
+		reader.setResource(new ClassPathResource("/data/sampleJourney.json"));
+		reader.afterPropertiesSet();
+		reader.open(new ExecutionContext());
+
+		try {
+			record = reader.read();
+			map = HerbieJsonWriterTests.toMap(record);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public String objectMapperPerRecord() throws Exception {
+		return HerbieJsonWriterTests.objectMapper().writeValueAsString(map);
+	}
+
+	@Benchmark
+	public String sharedObjectWriter() throws Exception {
+		return objectWriter.writeValueAsString(map);
+	}
+
+	@Benchmark
+	public String herbieJsonWriter() {
+		return writer.write(record);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(HerbieJsonWriterBenchmark.class.getSimpleName())
+				.addProfiler("gc")
+				.build();
+
+		new Runner(options).run();
+	}
+}
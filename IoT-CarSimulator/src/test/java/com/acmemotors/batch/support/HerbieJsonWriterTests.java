@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import org.junit.Test;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Michael Minella
+ */
+public class HerbieJsonWriterTests {
+
+	private final HerbieJsonWriter writer = new HerbieJsonWriter();
+
+	@Test
+	public void testSameOutputAsObjectMapper() throws Exception {
+		ObjectMapper mapper = objectMapper();
+
+		JsonRecordItemReader reader = new JsonRecordItemReader();
+		reader.setResource(new ClassPathResource("/data/sampleJourney.json"));
+		reader.afterPropertiesSet();
+		reader.open(new ExecutionContext());
+
+		try {
+			TelemetryRecord record;
+
+			while((record = reader.read()) != null) {
+				assertEquals(mapper.writeValueAsString(toMap(record)), writer.write(record));
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testEscapedString() throws Exception {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "a \"b\"\\\n\u0001");
+
+		assertTrue(writer.write(record).startsWith("{\"vin\":\"a \\\"b\\\"\\\\\\n\\u0001\","));
+		assertEquals(objectMapper().writeValueAsString(toMap(record)), writer.write(record));
+	}
+
+	@Test
+	public void testRecordValues() throws Exception {
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "SCEDT26T0BD007019");
+		record.setDouble(Field.LATITUDE, Double.NaN);
+		record.setInt(Field.VEHICLE_SPEED, 12);
+		record.setIntArray(Field.FUEL_SYSTEM_STATUS, new int[] {2, TelemetryRecord.MISSING});
+		record.setDouble(Field.RPM, 659);
+
+		assertEquals(objectMapper().writeValueAsString(toMap(record)), writer.write(record));
+		assertTrue(writer.write(record).startsWith("{\"vin\":\"SCEDT26T0BD007019\",\"longitude\":\"\"," +
+				"\"latitude\":\"NaN\",\"vehicle_speed\":12,\"fuel_system_status\":[2,\"\"],"));
+	}
+
+	@Test
+	public void testAppend() {
+		StringBuilder json = new StringBuilder("[");
+		TelemetryRecord record = new TelemetryRecord();
+		record.setString(Field.VIN, "SCEDT26T0BD007019");
+
+		writer.write(record, json);
+
+		assertTrue(json.toString().startsWith("[{\"vin\":\"SCEDT26T0BD007019\","));
+		assertTrue(json.toString().endsWith("\"\"}"));
+	}
+
+	/**
+	 * @return the values of a record by field name, boxed the way the simulator used to
+	 * 		hold them before serializing them with {@link #objectMapper()}: nulls for the
+	 * 		fields without value and {@link Integer} arrays
+	 */
+	static Map<String, Object> toMap(TelemetryRecord record) {
+		Map<String, Object> map = new LinkedHashMap<>();
+
+		for (Field field : Field.values()) {
+			Object value = null;
+
+			if(!record.isNull(field)) {
+				switch (field.getType()) {
+					case INTEGER:
+						value = record.getInt(field);
+						break;
+					case DECIMAL:
+						value = record.getDouble(field);
+						break;
+					case STRING:
+						value = record.getString(field);
+						break;
+					case INTEGER_ARRAY:
+						value = Arrays.stream(record.getIntArray(field))
+								.mapToObj(element -> element == TelemetryRecord.MISSING ? null : element)
+								.toArray(Integer[]::new);
+						break;
+				}
+			}
+
+			map.put(field.getHerbieField(), value);
+		}
+
+		return map;
+	}
+
+	/**
+	 * The serialization previously used by the simulator.
+	 */
+	static ObjectMapper objectMapper() {
+		DefaultSerializerProvider provider = new DefaultSerializerProvider.Impl();
+
+		provider.setNullValueSerializer(new JsonSerializer<Object>() {
+			@Override
+			public void serialize(Object value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+				jgen.writeString("");
+			}
+		});
+
+		ObjectMapper mapper = new ObjectMapper();
+		mapper.setSerializerProvider(provider);
+
+		return mapper;
+	}
+}
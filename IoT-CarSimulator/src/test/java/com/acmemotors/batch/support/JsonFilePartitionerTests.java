@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * @author Michael Minella
+ */
+public class JsonFilePartitionerTests {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("journey", ".json");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testPartitionsStartOnLines() throws Exception {
+		StringBuilder input = new StringBuilder();
+
+		for (int i = 0; i < 100; i++) {
+			input.append("{\"vin\":\"").append(i).append("\"}\n");
+		}
+
+		byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+		Files.write(file.toPath(), bytes);
+
+		Map<String, ExecutionContext> partitions = new JsonFilePartitioner(file, 3).partition(1);
+
+		assertEquals(3, partitions.size());
+
+		long start = 0;
+		String journeyId = partitions.get("partition0").getString(JsonFilePartitioner.JOURNEY_ID_KEY);
+
+		for (int i = 0; i < partitions.size(); i++) {
+			ExecutionContext context = partitions.get("partition" + i);
+
+			assertEquals(start, context.getLong(JsonFilePartitioner.START_KEY));
+			assertEquals(journeyId, context.getString(JsonFilePartitioner.JOURNEY_ID_KEY));
+			assertEquals('{', bytes[(int) start]);
+
+			start = context.getLong(JsonFilePartitioner.END_KEY);
+		}
+
+		assertEquals(bytes.length, start);
+	}
+
+	@Test
+	public void testMorePartitionsThanLines() throws Exception {
+		Files.write(file.toPath(), "{\"vin\":\"1\"}\n{\"vin\":\"2\"}\n".getBytes(StandardCharsets.UTF_8));
+
+		Map<String, ExecutionContext> partitions = new JsonFilePartitioner(file, 0).partition(10);
+
+		assertEquals(2, partitions.size());
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		assertEquals(0, new JsonFilePartitioner(file, 4).partition(1).size());
+	}
+}
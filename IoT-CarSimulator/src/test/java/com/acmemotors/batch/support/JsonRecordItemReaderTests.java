@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ParseException;
+import org.springframework.core.io.ByteArrayResource;
+
+/**
+ * @author Michael Minella
+ */
+public class JsonRecordItemReaderTests {
+
+	private static final String RECORD = "{\"vehicle_speed\":0,\"obd_standards\":2,\"intake_manifold_pressure\":\"\",\"accelerator_throttle_pos_e\":8,\"engine_load\":30,\"maf_airflow\":7,\"latitude\":\"32.984979\",\"vin\":\"SCEDT26T0BD007019\",\"bearing\":\"319.492374\",\"catalyst_temp\":446,\"relative_throttle_pos\":1,\"fuel_level_input\":99,\"fuel_system_status\":[2,0],\"accelerator_throttle_pos_d\":16,\"acceleration\":\"0.992\",\"throttle_position\":14,\"barometric_pressure\":95,\"control_module_voltage\":13,\"longitude\":\"-96.709578\",\"distance_with_mil_on\":0,\"coolant_temp\":92,\"intake_air_temp\":60,\"rpm\":659,\"short_term_fuel\":-1,\"time_since_engine_start\":217,\"absolute_throttle_pos_b\":18,\"long_term_fuel\":2,\"timestamp\":1408670439897}";
+
+	@Rule
+	public ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void testTypedValues() throws Exception {
+		List<TelemetryRecord> items = read(RECORD + "\n", 0, Long.MAX_VALUE);
+
+		assertEquals(1, items.size());
+
+		TelemetryRecord item = items.get(0);
+
+		assertEquals("SCEDT26T0BD007019", item.getString(Field.VIN));
+		assertEquals(-96.709578, item.getDouble(Field.LONGITUDE), 0);
+		assertEquals(32.984979, item.getDouble(Field.LATITUDE), 0);
+		assertEquals(659.0, item.getDouble(Field.RPM), 0);
+		assertEquals(0, item.getInt(Field.VEHICLE_SPEED));
+		assertArrayEquals(new int[] {2, 0}, item.getIntArray(Field.FUEL_SYSTEM_STATUS));
+		assertEquals(30.0, item.getDouble(Field.ENGINE_LOAD), 0);
+		assertEquals(92, item.getInt(Field.COOLANT_TEMP));
+		assertEquals(-1.0, item.getDouble(Field.SHORT_TERM_FUEL), 0);
+		assertEquals(2.0, item.getDouble(Field.LONG_TERM_FUEL), 0);
+		assertTrue(item.isNull(Field.INTAKE_MANIFOLD_PRESSURE));
+		assertEquals(60, item.getInt(Field.INTAKE_AIR_TEMP));
+		assertEquals(7.0, item.getDouble(Field.MAF_AIRFLOW), 0);
+		assertEquals(14, item.getInt(Field.THROTTLE_POSITION));
+		assertEquals("2", item.getString(Field.OBD_STANDARDS));
+		assertEquals(217, item.getInt(Field.TIME_SINCE_ENGINE_START));
+		assertEquals(99, item.getInt(Field.FUEL_LEVEL_INPUT));
+		assertEquals(1.0, item.getDouble(Field.RELATIVE_THROTTLE_POS), 0);
+		assertEquals(18.0, item.getDouble(Field.ABSOLUTE_THROTTLE_POS_B), 0);
+		assertEquals(16.0, item.getDouble(Field.ACCELERATOR_THROTTLE_POS_D), 0);
+		assertEquals(8.0, item.getDouble(Field.ACCELERATOR_THROTTLE_POS_E), 0);
+		assertEquals(0, item.getInt(Field.DISTANCE_WITH_MIL_ON));
+		assertEquals(446.0, item.getDouble(Field.CATALYST_TEMP), 0);
+		assertEquals(95, item.getInt(Field.BAROMETRIC_PRESSURE));
+		assertEquals(13.0, item.getDouble(Field.CONTROL_MODULE_VOLTAGE), 0);
+		assertEquals(0.992, item.getDouble(Field.ACCELERATION), 0);
+		assertEquals(319.492374, item.getDouble(Field.BEARING), 0);
+		assertEquals("journey", item.getString(Field.JOURNEY_ID));
+	}
+
+	@Test
+	public void testMissingFields() throws Exception {
+		List<TelemetryRecord> items = read("{\"vin\":\"1\",\"rpm\":null}\n{\"vin\":\"2\"}", 0, Long.MAX_VALUE);
+
+		assertEquals(2, items.size());
+		assertEquals("1", items.get(0).getString(Field.VIN));
+		assertTrue(items.get(0).isNull(Field.RPM));
+		assertEquals("2", items.get(1).getString(Field.VIN));
+		assertTrue(items.get(1).isNull(Field.FUEL_SYSTEM_STATUS));
+		assertNull(items.get(1).getIntArray(Field.FUEL_SYSTEM_STATUS));
+		assertTrue(items.get(1).isNull(Field.VEHICLE_SPEED));
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		String first = "{\"vin\":\"1\"}\n";
+		String second = "{\"vin\":\"2\"}\n";
+		String third = "{\"vin\":\"3\"}\n";
+		String input = first + second + third;
+
+		List<TelemetryRecord> items = read(input, first.length(), first.length() + second.length());
+
+		assertEquals(1, items.size());
+		assertEquals("2", items.get(0).getString(Field.VIN));
+
+		items = read(input, first.length(), input.length());
+
+		assertEquals(2, items.size());
+		assertEquals("3", items.get(1).getString(Field.VIN));
+	}
+
+	@Test
+	public void testInvalidValue() throws Exception {
+		exception.expect(ParseException.class);
+		exception.expectMessage("Invalid value for rpm");
+
+		read("{\"rpm\":[1]}", 0, Long.MAX_VALUE);
+	}
+
+	@Test
+	public void testMissingArrayElement() throws Exception {
+		List<TelemetryRecord> items = read("{\"fuel_system_status\":[2,null,1]}", 0, Long.MAX_VALUE);
+
+		assertArrayEquals(new int[] {2, TelemetryRecord.MISSING, 1}, items.get(0).getIntArray(Field.FUEL_SYSTEM_STATUS));
+	}
+
+	private List<TelemetryRecord> read(String input, long start, long end) throws Exception {
+		JsonRecordItemReader reader = new JsonRecordItemReader();
+		reader.setResource(new ByteArrayResource(input.getBytes(StandardCharsets.UTF_8)));
+		reader.setStart(start);
+		reader.setEnd(end);
+		reader.setJourneyId("journey");
+		reader.afterPropertiesSet();
+
+		List<TelemetryRecord> items = new ArrayList<>();
+		reader.open(new ExecutionContext());
+
+		try {
+			TelemetryRecord item;
+
+			while((item = reader.read()) != null) {
+				items.add(item);
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		return items;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.batch.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.acmemotors.metrics.SendMetrics;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class PacedItemWriterTests {
+
+	private final List<Long> writtenAt = new ArrayList<>();
+
+	private final SendMetrics metrics = new SendMetrics();
+
+	private PacedItemWriter<String> writer;
+
+	private long writeDuration;
+
+	@Before
+	public void setUp() throws Exception {
+		writer = new PacedItemWriter<>();
+		writer.setDelegate(items -> {
+			writtenAt.add(System.nanoTime());
+			TimeUnit.MILLISECONDS.sleep(writeDuration);
+		});
+		writer.setMetrics(metrics);
+	}
+
+	@Test
+	public void testItemsAreWrittenOnSchedule() throws Exception {
+		writer.setInterval(20);
+		writer.afterPropertiesSet();
+
+		for (int i = 0; i < 5; i++) {
+			writer.write(Collections.singletonList("item"));
+		}
+
+		long elapsed = writtenAt.get(4) - writtenAt.get(0);
+
+		assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(80));
+		assertEquals(5, metrics.getLatency().getTotalCount());
+		assertEquals(5, metrics.getServiceTime().getTotalCount());
+	}
+
+	@Test
+	public void testSlowWritesDoNotHideLatency() throws Exception {
+		writeDuration = 50;
+		writer.setInterval(10);
+		writer.afterPropertiesSet();
+
+		for (int i = 0; i < 5; i++) {
+			writer.write(Collections.singletonList("item"));
+		}
+
+		// Each write takes 50ms while one is due every 10ms: the last item was due
+		// 40ms after the first one but only written after the four writes before it
+		long lastLatency = metrics.getLatency().getMaxValue();
+
+		assertTrue("latency " + lastLatency, lastLatency >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(metrics.getServiceTime().getMaxValue() < TimeUnit.MILLISECONDS.toNanos(150));
+
+		// No waiting between the writes once behind schedule
+		long elapsed = writtenAt.get(4) - writtenAt.get(0);
+		assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(350));
+	}
+
+	@Test
+	public void testChunkIsWrittenWhenItsLastItemIsDue() throws Exception {
+		writer.setInterval(30);
+		writer.afterPropertiesSet();
+
+		long start = System.nanoTime();
+		writer.write(Arrays.asList("a", "b", "c"));
+
+		assertTrue(writtenAt.get(0) - start >= TimeUnit.MILLISECONDS.toNanos(60));
+		assertEquals(3, metrics.getLatency().getTotalCount());
+		assertEquals(1, metrics.getServiceTime().getTotalCount());
+	}
+
+	@Test
+	public void testNoInterval() throws Exception {
+		writer.afterPropertiesSet();
+
+		writer.write(Arrays.asList("a", "b"));
+		writer.write(Arrays.asList("c"));
+
+		assertEquals(2, writtenAt.size());
+		assertEquals(3, metrics.getLatency().getTotalCount());
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.capture;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.load.MappedTrip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares the replay of a trip from its JSON recording ({@link MappedTrip}) and from
+ * its capture ({@link CaptureTrip}):
+ *
+ * <code>
+ * $ java -cp &lt;TEST_CLASSPATH&gt; com.acmemotors.capture.CaptureTripBenchmark
+ * </code>
+ *
+ * @author Michael Minella
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CaptureTripBenchmark {
+
+	private File capture;
+
+	private MappedTrip mappedTrip;
+
+	private CaptureTrip captureTrip;
+
+	private int index;
+
+	@Setup
+	public void setUp() throws Exception {
+		File json = new ClassPathResource("/data/sampleJourney.json").getFile();
+		capture = File.createTempFile("journey", ".capture");
+		new CaptureCompiler().compile(json, capture);
+
+		mappedTrip = new MappedTrip(json);
+		captureTrip = new CaptureTrip(capture);
+	}
+
+	@TearDown
+	public void tearDown() {
+		capture.delete();
+	}
+
+	@Benchmark
+	public TelemetryRecord json() {
+		index = (index + 1) % mappedTrip.size();
+
+		return mappedTrip.record(index);
+	}
+
+	@Benchmark
+	public TelemetryRecord capture() {
+		index = (index + 1) % captureTrip.size();
+
+		return captureTrip.record(index);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(CaptureTripBenchmark.class.getSimpleName())
+				.addProfiler("gc")
+				.build();
+
+		new Runner(options).run();
+	}
+}
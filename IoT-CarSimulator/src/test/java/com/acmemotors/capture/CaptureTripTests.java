@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.capture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonWriter;
+import com.acmemotors.load.MappedTrip;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Michael Minella
+ */
+public class CaptureTripTests {
+
+	private final CaptureCompiler compiler = new CaptureCompiler();
+
+	private final HerbieJsonWriter writer = new HerbieJsonWriter();
+
+	private File json;
+
+	private File capture;
+
+	@Before
+	public void setUp() throws Exception {
+		json = File.createTempFile("journey", ".json");
+		capture = File.createTempFile("journey", ".capture");
+	}
+
+	@After
+	public void tearDown() {
+		json.delete();
+		capture.delete();
+	}
+
+	@Test
+	public void testSameRecordsAsJson() throws Exception {
+		File sample = new ClassPathResource("/data/sampleJourney.json").getFile();
+
+		assertEquals(3, compiler.compile(sample, capture));
+		assertTrue(CaptureTrip.isCapture(capture));
+		assertFalse(CaptureTrip.isCapture(sample));
+
+		MappedTrip expected = new MappedTrip(sample);
+		CaptureTrip trip = new CaptureTrip(capture);
+
+		assertEquals(expected.size(), trip.size());
+
+		for (int i = 0; i < trip.size(); i++) {
+			assertEquals(writer.write(expected.record(i)), writer.write(trip.record(i)));
+		}
+
+		assertTrue(capture.length() < sample.length());
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		List<TelemetryRecord> records = new ArrayList<>();
+
+		TelemetryRecord first = new TelemetryRecord();
+		first.setString(Field.VIN, "SCEDT26T0BD007019");
+		first.setDouble(Field.LATITUDE, 32.984979);
+		first.setDouble(Field.ACCELERATION, 0.1 + 0.2);
+		first.setInt(Field.VEHICLE_SPEED, 12);
+		first.setIntArray(Field.FUEL_SYSTEM_STATUS, new int[] {2, TelemetryRecord.MISSING});
+		first.setDouble(Field.RPM, -0.0);
+		records.add(first);
+
+		TelemetryRecord second = new TelemetryRecord();
+		second.setString(Field.VIN, "SCEDT26T0BD007019");
+		second.setDouble(Field.LATITUDE, -32.5);
+		second.setDouble(Field.ACCELERATION, Double.NaN);
+		second.setInt(Field.VEHICLE_SPEED, Integer.MIN_VALUE);
+		second.setString(Field.OBD_STANDARDS, "\u00e9\"");
+		records.add(second);
+
+		write(records);
+		CaptureTrip trip = new CaptureTrip(capture);
+
+		assertEquals(2, trip.size());
+
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(writer.write(records.get(i)), writer.write(trip.record(i)));
+		}
+
+		assertArrayEquals(new int[] {2, TelemetryRecord.MISSING}, trip.record(0).getIntArray(Field.FUEL_SYSTEM_STATUS));
+		assertTrue(trip.record(0).isNull(Field.OBD_STANDARDS));
+		assertTrue(trip.record(1).isNull(Field.FUEL_SYSTEM_STATUS));
+		assertTrue(trip.record(1).isNull(Field.RPM));
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(trip.record(0).getDouble(Field.RPM)));
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		Random random = new Random(42);
+		StringBuilder input = new StringBuilder();
+		// In millionths of degrees, like the positions of Herbie
+		long latitude = 32984979;
+		long longitude = -96709578;
+
+		for (int i = 0; i < 1000; i++) {
+			latitude += random.nextInt(100);
+			longitude -= random.nextInt(100);
+
+			input.append("{\"vin\":\"SCEDT26T0BD007019\",\"latitude\":").append(latitude / 1e6)
+					.append(",\"longitude\":").append(longitude / 1e6)
+					.append(",\"vehicle_speed\":").append(40 + random.nextInt(5))
+					.append(",\"rpm\":").append(2000 + random.nextInt(50))
+					.append(",\"fuel_system_status\":[2,0],\"timestamp\":").append(1408670439897L + i * 1000)
+					.append("}\n");
+		}
+
+		Files.write(json.toPath(), input.toString().getBytes(StandardCharsets.UTF_8));
+
+		compiler.compile(json, capture);
+
+		assertTrue("Capture of " + capture.length() + " bytes", capture.length() * 5 < json.length());
+
+		MappedTrip expected = new MappedTrip(json);
+		CaptureTrip trip = new CaptureTrip(capture);
+
+		for (int i = 0; i < trip.size(); i++) {
+			assertEquals(writer.write(expected.record(i)), writer.write(trip.record(i)));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotACapture() throws Exception {
+		Files.write(capture.toPath(), "{\"vin\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+
+		new CaptureTrip(capture);
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws Exception {
+		compiler.compile(new ClassPathResource("/data/sampleJourney.json").getFile(), capture);
+
+		byte[] bytes = Files.readAllBytes(capture.toPath());
+		Files.write(capture.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+		new CaptureTrip(capture);
+	}
+
+	private void write(List<TelemetryRecord> records) throws IOException {
+		try (OutputStream out = new FileOutputStream(capture)) {
+			compiler.write(records, out);
+		}
+	}
+}
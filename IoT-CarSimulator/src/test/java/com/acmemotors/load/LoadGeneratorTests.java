@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class LoadGeneratorTests {
+
+	private static final Pattern SPEED = Pattern.compile("\"vehicle_speed\":(\\d+)");
+
+	@Test
+	public void testRecordsOfAVehicleAreSentInOrder() throws Exception {
+		List<Integer> received = new CopyOnWriteArrayList<>();
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+
+		// A record due every millisecond for a server taking five to answer
+		LoadGenerator generator = new LoadGenerator(Collections.singletonList(new CountingVehicle()), input -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+			try {
+				Thread.sleep(5);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			Matcher matcher = SPEED.matcher(input);
+			assertTrue(input, matcher.find());
+			received.add(Integer.valueOf(matcher.group(1)));
+
+			inFlight.decrementAndGet();
+			return null;
+		}, 1000);
+		generator.setSenderThreads(4);
+		generator.setReportInterval(0);
+
+		LoadGenerator.Report report = generator.run(200);
+
+		assertEquals(1, maxInFlight.get());
+		assertTrue(report.getDropped() > 0);
+		assertEquals(report.getSent(), received.size());
+
+		for (int i = 0; i < received.size(); i++) {
+			assertEquals(i, received.get(i).intValue());
+		}
+	}
+
+	private static class CountingVehicle implements Vehicle {
+
+		private int count;
+
+		@Override
+		public String getVin() {
+			return "1ACME000000000001";
+		}
+
+		@Override
+		public String getJourneyId() {
+			return "journey";
+		}
+
+		@Override
+		public synchronized TelemetryRecord next() {
+			TelemetryRecord record = new TelemetryRecord();
+			record.setString(Field.VIN, getVin());
+			record.setInt(Field.VEHICLE_SPEED, count++);
+
+			return record;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonWriter;
+import com.acmemotors.batch.support.JsonRecordItemReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * @author Michael Minella
+ */
+public class MappedTripTests {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("journey", ".json");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testIndexSkipsBlankLines() throws Exception {
+		write("{\"vin\":\"0\",\"rpm\":1}\r\n\n  {\"vin\":\"1\",\"rpm\":\"\"}\n\n{\"vin\":\"2\"}");
+
+		MappedTrip trip = new MappedTrip(file);
+
+		assertEquals(3, trip.size());
+		assertEquals("0", trip.record(0).getString(Field.VIN));
+		assertEquals(1, trip.record(0).getDouble(Field.RPM), 0);
+		assertEquals("1", trip.record(1).getString(Field.VIN));
+		assertTrue(trip.record(1).isNull(Field.RPM));
+		assertEquals("2", trip.record(2).getString(Field.VIN));
+		assertNull(trip.record(2).getString(Field.JOURNEY_ID));
+	}
+
+	@Test
+	public void testSameRecordsAsReader() throws Exception {
+		File sample = new ClassPathResource("/data/sampleJourney.json").getFile();
+		MappedTrip trip = new MappedTrip(sample);
+		HerbieJsonWriter writer = new HerbieJsonWriter();
+
+		JsonRecordItemReader reader = new JsonRecordItemReader();
+		reader.setResource(new ClassPathResource("/data/sampleJourney.json"));
+		reader.afterPropertiesSet();
+		reader.open(new ExecutionContext());
+
+		try {
+			TelemetryRecord expected;
+			int index = 0;
+
+			while((expected = reader.read()) != null) {
+				expected.setString(Field.JOURNEY_ID, null);
+				assertEquals(writer.write(expected), writer.write(trip.record(index++)));
+			}
+
+			assertEquals(index, trip.size());
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testRecordsAreCopies() throws Exception {
+		write("{\"vin\":\"0\",\"latitude\":32.5}\n");
+
+		MappedTrip trip = new MappedTrip(file);
+		trip.record(0).setDouble(Field.LATITUDE, 0);
+
+		assertEquals(32.5, trip.record(0).getDouble(Field.LATITUDE), 0);
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		StringBuilder input = new StringBuilder();
+
+		for (int i = 0; i < 1000; i++) {
+			input.append("{\"vin\":\"").append(i).append("\",\"vehicle_speed\":").append(i).append("}\n");
+		}
+
+		write(input.toString());
+
+		MappedTrip trip = new MappedTrip(file);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+
+			for (int thread = 0; thread < 4; thread++) {
+				int offset = thread * 250;
+
+				results.add(executor.submit((Callable<Boolean>) () -> {
+					for (int i = 0; i < 10000; i++) {
+						int index = (offset + i) % trip.size();
+						TelemetryRecord record = trip.record(index);
+
+						if(record.getInt(Field.VEHICLE_SPEED) != index
+								|| !String.valueOf(index).equals(record.getString(Field.VIN))) {
+							return false;
+						}
+					}
+
+					return true;
+				}));
+			}
+
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyFile() throws Exception {
+		write("\n\n");
+
+		new MappedTrip(file);
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void testInvalidRecord() throws Exception {
+		write("{\"rpm\":[1]}\n");
+
+		new MappedTrip(file).record(0);
+	}
+
+	private void write(String input) throws Exception {
+		Files.write(file.toPath(), input.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import com.acmemotors.batch.support.HerbieJsonWriter;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class SyntheticVehicleTests {
+
+	@Test
+	public void testSameSeedSameCar() {
+		HerbieJsonWriter writer = new HerbieJsonWriter();
+		SyntheticVehicle first = new SyntheticVehicle("1ACME000000000001", 7, 1, 32.98, -96.71);
+		SyntheticVehicle second = new SyntheticVehicle("1ACME000000000001", 7, 1, 32.98, -96.71);
+
+		for (int i = 0; i < 500; i++) {
+			TelemetryRecord record = first.next();
+			TelemetryRecord other = second.next();
+
+			assertEquals(writer.write(record), writer.write(other));
+		}
+	}
+
+	@Test
+	public void testDistinctSeeds() {
+		List<Double> speeds = speeds(new SyntheticVehicle("1ACME000000000001", 1, 1, 32.98, -96.71));
+
+		assertNotEquals(speeds, speeds(new SyntheticVehicle("1ACME000000000001", 2, 1, 32.98, -96.71)));
+		assertNotEquals(new SyntheticVehicle("1ACME000000000001", 1, 1, 32.98, -96.71).getJourneyId(),
+				new SyntheticVehicle("1ACME000000000001", 2, 1, 32.98, -96.71).getJourneyId());
+	}
+
+	@Test
+	public void testSignalsFollowTheMotion() {
+		SyntheticVehicle vehicle = new SyntheticVehicle("1ACME000000000001", 42, 1, 32.98, -96.71);
+		TelemetryRecord previous = vehicle.next();
+
+		assertTrue(previous.getInt(Field.COOLANT_TEMP) < 40);
+
+		int topSpeed = 0;
+		int stops = 0;
+
+		for (int i = 1; i < 3600; i++) {
+			TelemetryRecord record = vehicle.next();
+			int speed = record.getInt(Field.VEHICLE_SPEED);
+			double rpm = record.getDouble(Field.RPM);
+
+			assertEquals(i + 1, record.getInt(Field.TIME_SINCE_ENGINE_START));
+			assertTrue(record.getDouble(Field.MAF_AIRFLOW) > 0);
+			assertTrue(record.getInt(Field.FUEL_LEVEL_INPUT) <= previous.getInt(Field.FUEL_LEVEL_INPUT));
+			assertTrue(record.getInt(Field.COOLANT_TEMP) <= 100);
+
+			if(speed == 0) {
+				assertTrue("Idling at " + rpm, rpm < 850);
+
+				if(previous.getInt(Field.VEHICLE_SPEED) > 0) {
+					stops++;
+				}
+			}
+			else {
+				assertTrue("Driving at " + rpm, rpm > 650 && rpm < 4000);
+			}
+
+			// The car moved along the bearing of the previous record, by its speed (the
+			// speed of a car stopping is set to 0 once it moved)
+			double north = (record.getDouble(Field.LATITUDE) - previous.getDouble(Field.LATITUDE)) * 111320;
+			double east = (record.getDouble(Field.LONGITUDE) - previous.getDouble(Field.LONGITUDE)) * 111320
+					* Math.cos(Math.toRadians(record.getDouble(Field.LATITUDE)));
+			double distance = Math.hypot(north, east);
+
+			assertTrue(distance + " m at " + speed + " km/h", distance <= Math.max(speed / 3.6, 1.5) + 0.5);
+
+			if(distance > 5) {
+				double bearing = Math.toDegrees(Math.atan2(east, north));
+				double error = Math.abs(bearing - previous.getDouble(Field.BEARING)) % 360;
+
+				assertTrue("Moved towards " + bearing + " with a bearing of " + previous.getDouble(Field.BEARING),
+						Math.min(error, 360 - error) < 2);
+			}
+
+			topSpeed = Math.max(topSpeed, speed);
+			previous = record;
+		}
+
+		assertTrue(topSpeed > 30);
+		assertTrue(stops > 0);
+		// Warmed up after an hour
+		assertTrue(previous.getInt(Field.COOLANT_TEMP) >= 88);
+	}
+
+	@Test
+	public void testInterval() {
+		SyntheticVehicle vehicle = new SyntheticVehicle("1ACME000000000001", 42, 2.5, 32.98, -96.71);
+
+		vehicle.next();
+		vehicle.next();
+
+		assertEquals(7, vehicle.next().getInt(Field.TIME_SINCE_ENGINE_START));
+	}
+
+	@Test
+	public void testFleet() {
+		List<SyntheticVehicle> fleet = SyntheticVehicle.fleet(100, 1, 0.01, new Random(1));
+
+		assertEquals(100, fleet.size());
+
+		Set<String> vins = new HashSet<>();
+		Set<String> journeys = new HashSet<>();
+
+		for (SyntheticVehicle vehicle : fleet) {
+			vins.add(vehicle.getVin());
+			journeys.add(vehicle.getJourneyId());
+
+			TelemetryRecord record = vehicle.next();
+
+			assertEquals(vehicle.getVin(), record.getString(Field.VIN));
+			assertTrue(Math.abs(record.getDouble(Field.LATITUDE) - SyntheticVehicle.DEFAULT_LATITUDE) <= 0.011);
+			assertTrue(Math.abs(record.getDouble(Field.LONGITUDE) - SyntheticVehicle.DEFAULT_LONGITUDE) <= 0.011);
+
+			for (Field field : Field.values()) {
+				assertTrue(field + " has no value", !record.isNull(field));
+			}
+		}
+
+		assertEquals(100, vins.size());
+		assertEquals(100, journeys.size());
+		assertTrue(vins.contains("1ACME000000000042"));
+	}
+
+	private static List<Double> speeds(SyntheticVehicle vehicle) {
+		List<Double> speeds = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++) {
+			speeds.add(vehicle.next().getDouble(Field.VEHICLE_SPEED));
+		}
+
+		return speeds;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class TimerWheelTests {
+
+	private TimerWheel wheel;
+
+	@Before
+	public void setUp() {
+		// Few slots so the tasks go around the wheel
+		wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 7);
+		wheel.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		wheel.stop();
+	}
+
+	@Test
+	public void testTasksRunAtTheirDeadlineInOrder() throws Exception {
+		List<Long> late = new CopyOnWriteArrayList<>();
+		List<Integer> order = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(3);
+		long now = System.nanoTime();
+
+		long[] delays = {30, 10, 20};
+
+		for (int i = 0; i < delays.length; i++) {
+			int task = i;
+			long deadline = now + TimeUnit.MILLISECONDS.toNanos(delays[i]);
+
+			wheel.schedule(() -> {
+				late.add(System.nanoTime() - deadline);
+				order.add(task);
+				done.countDown();
+			}, deadline);
+		}
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, (int) order.get(0));
+		assertEquals(2, (int) order.get(1));
+		assertEquals(0, (int) order.get(2));
+
+		for (long lateness : late) {
+			assertTrue(lateness >= 0);
+		}
+	}
+
+	@Test
+	public void testPastDeadlineRunsOnNextTick() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+
+		wheel.schedule(done::countDown, System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testTaskReschedulingItself() throws Exception {
+		CountDownLatch done = new CountDownLatch(5);
+
+		wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+
+				if(done.getCount() > 0) {
+					wheel.schedule(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3));
+				}
+			}
+		}, System.nanoTime());
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFailingTaskDoesNotStopTheWheel() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+		long now = System.nanoTime();
+
+		wheel.schedule(() -> {
+			throw new IllegalStateException("Failed");
+		}, now);
+		wheel.schedule(done::countDown, now + TimeUnit.MILLISECONDS.toNanos(5));
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testStopDropsPendingTasks() throws Exception {
+		CountDownLatch done = new CountDownLatch(1);
+
+		wheel.schedule(done::countDown, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+		wheel.stop();
+
+		assertFalse(wheel.isRunning());
+		assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.acmemotors.batch.domain.Field;
+import com.acmemotors.batch.domain.TelemetryRecord;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class VirtualVehicleTests {
+
+	@Test
+	public void testVin() {
+		assertEquals("SCEDT26T0BD000042", VirtualVehicle.vin("SCEDT26T0BD007019", 42));
+		assertEquals("1ACME000000000007", VirtualVehicle.vin(null, 7));
+	}
+
+	@Test
+	public void testNextLoopsOverTheTrip() {
+		VirtualVehicle vehicle = new VirtualVehicle("SCEDT26T0BD000001", Trip.of(trip(3)), 2, 0, 0);
+
+		assertEquals(2, vehicle.next().getDouble(Field.RPM), 0);
+		assertEquals(0, vehicle.next().getDouble(Field.RPM), 0);
+		assertEquals(1, vehicle.next().getDouble(Field.RPM), 0);
+	}
+
+	@Test
+	public void testNextOverridesIdentityAndPosition() {
+		List<TelemetryRecord> trip = trip(1);
+		VirtualVehicle vehicle = new VirtualVehicle("SCEDT26T0BD000001", Trip.of(trip), 0, 0.5, -0.25);
+
+		TelemetryRecord record = vehicle.next();
+
+		assertEquals("SCEDT26T0BD000001", record.getString(Field.VIN));
+		assertEquals(vehicle.getJourneyId(), record.getString(Field.JOURNEY_ID));
+		assertEquals(33.0, record.getDouble(Field.LATITUDE), 1e-9);
+		assertEquals(-97.25, record.getDouble(Field.LONGITUDE), 1e-9);
+		assertTrue(record.isNull(Field.BEARING));
+		assertEquals("SCEDT26T0BD007019", trip.get(0).getString(Field.VIN));
+		assertEquals(32.5, trip.get(0).getDouble(Field.LATITUDE), 0);
+	}
+
+	@Test
+	public void testFleet() {
+		List<VirtualVehicle> fleet = VirtualVehicle.fleet(Arrays.asList(Trip.of(trip(10)), Trip.of(trip(5))), 100, 0.01, new Random(1));
+
+		assertEquals(100, fleet.size());
+
+		Set<String> vins = new HashSet<>();
+		Set<String> journeys = new HashSet<>();
+		Set<Object> latitudes = new HashSet<>();
+
+		for (VirtualVehicle vehicle : fleet) {
+			vins.add(vehicle.getVin());
+			journeys.add(vehicle.getJourneyId());
+
+			double latitude = vehicle.next().getDouble(Field.LATITUDE);
+			assertTrue(Math.abs(latitude - 32.5) <= 0.01);
+			latitudes.add(latitude);
+		}
+
+		assertEquals(100, vins.size());
+		assertEquals(100, journeys.size());
+		assertNotEquals(1, latitudes.size());
+	}
+
+	private static List<TelemetryRecord> trip(int size) {
+		List<TelemetryRecord> trip = new ArrayList<>();
+
+		for (int i = 0; i < size; i++) {
+			TelemetryRecord record = new TelemetryRecord();
+			record.setString(Field.VIN, "SCEDT26T0BD007019");
+			record.setDouble(Field.LATITUDE, 32.5);
+			record.setDouble(Field.LONGITUDE, -97.0);
+			record.setDouble(Field.RPM, i);
+			record.setString(Field.JOURNEY_ID, "recorded");
+			trip.add(record);
+		}
+
+		return trip;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.integration.ip.tcp.serializer.ByteArrayLfSerializer;
+
+/**
+ * @author Michael Minella
+ */
+public class TcpRecordSinkTests {
+
+	private ServerSocket server;
+
+	private TcpNetClientConnectionFactory connectionFactory;
+
+	private TcpRecordSink sink;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerSocket(0);
+		server.setSoTimeout(5000);
+
+		connectionFactory = new TcpNetClientConnectionFactory("localhost", server.getLocalPort());
+		connectionFactory.setSingleUse(false);
+		connectionFactory.setSerializer(new ByteArrayLfSerializer());
+		connectionFactory.start();
+
+		sink = new TcpRecordSink(connectionFactory);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sink.close();
+		server.close();
+	}
+
+	@Test
+	public void testLinesOnOneConnection() throws Exception {
+		sink.send("{\"vin\":\"1\"}");
+
+		try (Socket socket = server.accept()) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+			sink.send("{\"vin\":\"2\"}\n{\"vin\":\"3\"}");
+
+			assertEquals("{\"vin\":\"1\"}", in.readLine());
+			assertEquals("{\"vin\":\"2\"}", in.readLine());
+			assertEquals("{\"vin\":\"3\"}", in.readLine());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSingleUse() {
+		TcpNetClientConnectionFactory singleUse = new TcpNetClientConnectionFactory("localhost", 1234);
+		singleUse.setSingleUse(true);
+
+		new TcpRecordSink(singleUse);
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class WebSocketRecordSinkTests {
+
+	private ServerSocket server;
+
+	private WebSocketRecordSink sink;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerSocket(0);
+		server.setSoTimeout(5000);
+
+		sink = new WebSocketRecordSink(URI.create("ws://localhost:" + server.getLocalPort() + "/records"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sink.close();
+		server.close();
+	}
+
+	@Test
+	public void testAccept() {
+		// The example of RFC 6455
+		assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", WebSocketRecordSink.accept("dGhlIHNhbXBsZSBub25jZQ=="));
+	}
+
+	@Test
+	public void testTextMessages() throws Exception {
+		Thread client = new Thread(() -> {
+			try {
+				sink.send("{\"vin\":\"1\"}");
+				sink.send(repeat('a', 70000));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		client.start();
+
+		try (Socket socket = server.accept()) {
+			DataInputStream in = handshake(socket, true);
+
+			assertEquals("{\"vin\":\"1\"}", readText(in));
+			assertEquals(repeat('a', 70000), readText(in));
+
+			// Pinged, the client answers with a pong of the same payload
+			OutputStream out = socket.getOutputStream();
+			out.write(new byte[] {(byte) 0x89, 2, 'h', 'i'});
+			out.flush();
+
+			assertEquals(0x8A, in.readUnsignedByte());
+			assertEquals("hi", new String(readPayload(in), StandardCharsets.UTF_8));
+		}
+
+		client.join();
+	}
+
+	@Test(expected = IOException.class)
+	public void testUpgradeRefused() throws Exception {
+		Thread server = new Thread(() -> {
+			try (Socket socket = this.server.accept()) {
+				handshake(socket, false);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		server.start();
+
+		try {
+			sink.send("{}");
+		}
+		finally {
+			server.join();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnansweredUpgradeTimesOut() throws Exception {
+		// The connection is accepted by the backlog of the server, the upgrade is never answered
+		sink.setConnectTimeout(200);
+		sink.send("{}");
+	}
+
+	private static DataInputStream handshake(Socket socket, boolean accept) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1), 1);
+		String key = null;
+		String line;
+
+		assertEquals("GET /records HTTP/1.1", reader.readLine());
+
+		while(!(line = reader.readLine()).isEmpty()) {
+			if(line.startsWith("Sec-WebSocket-Key:")) {
+				key = line.substring(line.indexOf(':') + 1).trim();
+			}
+		}
+
+		String response = accept ?
+				"HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+						+ "Sec-WebSocket-Accept: " + WebSocketRecordSink.accept(key) + "\r\n\r\n" :
+				"HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+		socket.getOutputStream().write(response.getBytes(StandardCharsets.ISO_8859_1));
+		socket.getOutputStream().flush();
+
+		return new DataInputStream(socket.getInputStream());
+	}
+
+	private static String readText(DataInputStream in) throws IOException {
+		assertEquals(0x81, in.readUnsignedByte());
+
+		return new String(readPayload(in), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the length, mask and payload of a frame from the client.
+	 */
+	private static byte[] readPayload(DataInputStream in) throws IOException {
+		int second = in.readUnsignedByte();
+		assertTrue("Frames of a client are masked", (second & 0x80) != 0);
+
+		long length = second & 0x7F;
+
+		if(length == 126) {
+			length = in.readUnsignedShort();
+		}
+		else if(length == 127) {
+			length = in.readLong();
+		}
+
+		byte[] mask = new byte[4];
+		in.readFully(mask);
+
+		byte[] payload = new byte[(int) length];
+		in.readFully(payload);
+
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] ^= mask[i & 3];
+		}
+
+		return payload;
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder value = new StringBuilder(count);
+
+		for (int i = 0; i < count; i++) {
+			value.append(c);
+		}
+
+		return value.toString();
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * Histogram of latencies with a bounded relative error, laid out like an HdrHistogram:
+ * values are counted in buckets covering a power of two each, split in 64 equal
+ * sub-buckets, so a value is known to within about 1.6% whatever its magnitude while
+ * the counts of every value up to the highest trackable one fit in a couple thousand
+ * slots allocated up front.
+ *
+ * Recording a value only increments counters: nothing is allocated and no lock is
+ * taken, so the histogram can be recorded to from any number of threads, such as the
+ * polling loops of a fleet of cars or the senders of the simulator.  Reading the
+ * percentiles while values are recorded gives a slightly inconsistent but close view.
+ *
+ * @author Michael Minella
+ */
+public class LatencyHistogram {
+
+	/**
+	 * One hour, in nanoseconds.
+	 */
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3600L * 1000 * 1000 * 1000;
+
+	private static final int SUB_BUCKET_BITS = 7;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+	private final long highestTrackableValue;
+
+	private final AtomicLongArray counts;
+
+	private final AtomicLong totalCount = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+	}
+
+	/**
+	 * @param highestTrackableValue the highest value counted, higher values are
+	 * 		counted as this one
+	 */
+	public LatencyHistogram(long highestTrackableValue) {
+		Assert.isTrue(highestTrackableValue >= SUB_BUCKET_COUNT,
+				"highestTrackableValue must be at least " + SUB_BUCKET_COUNT);
+
+		this.highestTrackableValue = highestTrackableValue;
+		this.counts = new AtomicLongArray(index(highestTrackableValue) + 1);
+	}
+
+	/**
+	 * @param value the latency, negative values are counted as 0
+	 */
+	public void recordValue(long value) {
+		long clamped = Math.min(Math.max(value, 0), highestTrackableValue);
+
+		counts.incrementAndGet(index(clamped));
+		totalCount.incrementAndGet();
+		total.addAndGet(clamped);
+		max.accumulateAndGet(clamped, Math::max);
+	}
+
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	public long getMaxValue() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long count = totalCount.get();
+
+		return count == 0 ? 0 : total.get() / (double) count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the highest value of the bucket holding the percentile, never above
+	 * 		the highest value recorded, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = totalCount.get();
+
+		if(count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+		long seen = 0;
+
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+
+			if(seen >= target) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Forgets every value recorded.  Values recorded meanwhile may be partly lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+
+		totalCount.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Values below {@link #SUB_BUCKET_COUNT} are counted exactly, above it the bucket
+	 * is the power of two of the value and the sub-bucket its next
+	 * {@link #SUB_BUCKET_BITS} - 1 bits.
+	 */
+	static int index(long value) {
+		int bucket = 63 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT - 1)) - (SUB_BUCKET_BITS - 1);
+		int subBucket = (int) (value >>> bucket);
+
+		return bucket * SUB_BUCKET_HALF_COUNT + subBucket;
+	}
+
+	static long highestValue(int index) {
+		if(index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+
+		int bucket = index / SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = index - bucket * SUB_BUCKET_HALF_COUNT;
+
+		return ((subBucket + 1) << bucket) - 1;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class LatencyHistogramTests {
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.recordValue(i);
+		}
+
+		assertEquals(100, histogram.getTotalCount());
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(99, histogram.getValueAtPercentile(99));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+		assertEquals(50.5, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void testRelativeErrorIsBounded() {
+		for (long value = 128; value < LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE; value = value * 3 + 7) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.recordValue(value);
+			histogram.recordValue(LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE);
+
+			long reported = histogram.getValueAtPercentile(50);
+
+			assertTrue(reported >= value);
+			assertTrue("value " + value + " reported as " + reported, reported - value <= value / 64);
+		}
+	}
+
+	@Test
+	public void testBucketsAreContiguous() {
+		for (long value = 1; value < 1L << 40; value = value * 2 + 1) {
+			int index = LatencyHistogram.index(value);
+
+			assertTrue(LatencyHistogram.highestValue(index) >= value);
+			assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+		}
+	}
+
+	@Test
+	public void testValuesAboveTheHighestTrackableAreClamped() {
+		LatencyHistogram histogram = new LatencyHistogram(1000);
+		histogram.recordValue(5000);
+		histogram.recordValue(-1);
+
+		assertEquals(1000, histogram.getMaxValue());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(1000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testReset() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordValue(42);
+		histogram.reset();
+
+		assertEquals(0, histogram.getTotalCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+}
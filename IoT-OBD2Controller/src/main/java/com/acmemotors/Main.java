@@ -15,8 +15,22 @@
  */
 package com.acmemotors;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateRingBuffer;
+import com.acmemotors.fleet.FleetMain;
+import com.acmemotors.gps.NmeaGpsSource;
 import com.acmemotors.integration.OBD2Serializer;
+import com.acmemotors.integration.PipelinedOBD2Gateway;
+import com.acmemotors.journal.CarStateDeltaEncoder;
+import com.acmemotors.journal.CarStateJournal;
+import com.acmemotors.journal.JournalUplink;
 import com.acmemotors.obd2.OBD2Controller;
+import com.acmemotors.obd2.OBD2PollingMetrics;
+import com.acmemotors.obd2.OBD2SessionCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -24,25 +38,38 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.integration.annotation.IntegrationComponentScan;
-import org.springframework.integration.annotation.ServiceActivator;
-import org.springframework.integration.annotation.Transformer;
-import org.springframework.integration.channel.DirectChannel;
-import org.springframework.integration.ip.tcp.TcpOutboundGateway;
+import org.springframework.core.env.Environment;
 import org.springframework.integration.ip.tcp.connection.TcpNioClientConnectionFactory;
-import org.springframework.integration.transformer.ObjectToStringTransformer;
-import org.springframework.messaging.MessageChannel;
+import org.springframework.util.backoff.BackOffExecution;
+import org.springframework.util.backoff.ExponentialBackOff;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * To execute the simulator run the following command:
- * java -jar IoT-OBD2Controller.jar --dongleHost=&lt;OBD2_HOST&gt; --donglePort=&lt;OBD2_PORT&gt; --gpsHost=&lt;GPS_HOST&gt;
+ * java -jar IoT-OBD2Controller.jar --dongleHost=&lt;OBD2_HOST&gt; --donglePort=&lt;OBD2_PORT&gt; --gpsHost=&lt;GPS_HOST&gt; --gpsPort=&lt;GPS_PORT&gt;
+ *
+ * or, with a serial GPS, --gpsDevice=&lt;DEVICE&gt; instead of --gpsHost and --gpsPort.
+ *
+ * To poll the dongles of many cars from one process, list them with
+ * --dongles=&lt;HOST:PORT,HOST:PORT...&gt;, see {@link FleetMain}.
+ *
+ * To keep the samples on the device and upload them to the ingest endpoint whenever
+ * it can be reached, add --journalDirectory=&lt;DIRECTORY&gt; --ingestUrl=&lt;URL&gt;
+ * and, to upload only the values that changed, --uplinkDeltas=true (see
+ * {@link CarStateDeltaEncoder} for --deadbands and --keyframeInterval).
+ *
+ * The session negotiated with the car (protocol and supported PIDs) is remembered in
+ * --sessionCache=&lt;FILE&gt; when set, making later starts faster.  When the dongle is
+ * lost, the connection is brought back up after --reconnectDelay milliseconds, the
+ * delay doubling on each failed attempt up to --maxReconnectDelay.
+ *
+ * To print the latencies of the polling loop (round trip per command, decoding, GPS,
+ * whole sample, output) to the standard error every minute, add --metricsInterval=60000
  *
  * @author Michael Minella
  */
 @Configuration
 @ComponentScan
-@IntegrationComponentScan
 @EnableAutoConfiguration
 public class Main {
 
@@ -63,60 +90,173 @@ public class Main {
 	}
 
 	@Bean
-	public MessageChannel requests() {
-		return new DirectChannel();
-	}
-
-	@Bean
-	public MessageChannel replies() {
-		return new DirectChannel();
+	public RestTemplate restTemplate() {
+		return new RestTemplate();
 	}
 
-	@Bean
-	public MessageChannel results() {
-		return new DirectChannel();
+	/**
+	 * Reads the NMEA sentences of a serial GPS when --gpsDevice is set, of a GPS
+	 * streaming them over TCP otherwise.
+	 */
+	@Bean(initMethod = "start", destroyMethod = "stop")
+	public NmeaGpsSource gps(@Value("${gpsHost:192.168.1.2}") String gpsHost,
+							 @Value("${gpsPort:11123}") int gpsPort,
+							 @Value("${gpsDevice:}") String gpsDevice) {
+		return gpsDevice.isEmpty() ? new NmeaGpsSource(gpsHost, gpsPort) : new NmeaGpsSource(new File(gpsDevice));
 	}
 
 	@Bean
-	public RestTemplate restTemplate() {
-		return new RestTemplate();
+	public PipelinedOBD2Gateway gateway(TcpNioClientConnectionFactory connectionFactory,
+										@Value("${maxPendingCommands:8}") int maxPendingCommands) {
+		return new PipelinedOBD2Gateway(connectionFactory, maxPendingCommands);
 	}
 
 	@Bean
-	@ServiceActivator(inputChannel = "requests")
-	public TcpOutboundGateway tcpOutboundGateway(TcpNioClientConnectionFactory connectionFactory) {
-		TcpOutboundGateway gateway = new TcpOutboundGateway();
-		gateway.setConnectionFactory(connectionFactory);
-		gateway.setOutputChannel(replies());
-		gateway.afterPropertiesSet();
-		return gateway;
+	public CarStateRingBuffer samples(@Value("${sampleBufferSize:1024}") int sampleBufferSize) {
+		return new CarStateRingBuffer(sampleBufferSize);
 	}
 
+	/**
+	 * Remembers the session negotiated with the car in --sessionCache, when set, so
+	 * later starts skip the protocol search and the supported PIDs requests.
+	 */
 	@Bean
-	@Transformer(inputChannel = "replies", outputChannel = "results")
-	public ObjectToStringTransformer transformer() {
-		ObjectToStringTransformer transformer = new ObjectToStringTransformer();
+	public OBD2Controller controller(@Value("${sessionCache:}") String sessionCache,
+									 @Value("${dongleHost:192.168.0.10}") String dongleHost,
+									 @Value("${donglePort:35000}") int donglePort) throws IOException {
+		OBD2Controller controller = new OBD2Controller();
 
-		return transformer;
-	}
+		if(!sessionCache.isEmpty()) {
+			controller.setSessionCache(new OBD2SessionCache(new File(sessionCache)), dongleHost + ":" + donglePort);
+		}
 
-	@Bean
-	public OBD2Controller controller() {
-		return new OBD2Controller();
+		return controller;
 	}
 
     public static void main(String[] args) throws Exception {
+		if(FleetMain.isFleet(args)) {
+			FleetMain.main(args);
+			return;
+		}
+
 		ApplicationContext context = SpringApplication.run(Main.class, args);
 		OBD2Controller controller = context.getBean(OBD2Controller.class);
+		CarStateRingBuffer samples = context.getBean(CarStateRingBuffer.class);
+
+		Environment environment = context.getEnvironment();
+		String vin = resolveVin(controller, environment);
+
+		System.out.println("The car's VIN: " + vin);
+
+		System.out.println(CarState.CSV_HEADER);
 
-		System.out.println("The car's VIN: " + controller.getVin());
+		Consumer<CarState> consumer = System.out::println;
+		long metricsInterval = environment.getProperty("metricsInterval", Long.class, 0L);
+		OBD2PollingMetrics metrics = metricsInterval > 0 ? OBD2PollingMetrics.reportedEvery(metricsInterval) : null;
+		JournalUplink uplink = JournalUplink.create(environment, context.getBean(RestTemplate.class));
 
-		System.out.println("LONGITUDE,LATITUDE,RPM,SPEED(MPH),FUEL SYSTEM STATUS,ENGINE LOAD,COOLANT TEMP,SHORT TERM FUEL PERCENT,LONG TERM FUEL PERCENT,INTAKE PRESSURE,INTAKE AIR TEMP,MAF RATE,THROTTLE POSITION,OBD VERSION,RUNNING TIME(SECONDS),FUEL LEVEL,RELATIVE THROTTLE POSITION,ABSOLUTE THROTTLE POSITION B,ACCELERATOR POSITION D,ACCELERATOR POSITION E");
+		if(uplink != null) {
+			CarStateJournal journal = uplink.open(uplink.getDirectory(), vin);
+
+			consumer = consumer.andThen(state -> {
+				try {
+					journal.append(state);
+				}
+				catch (IOException e) {
+					System.err.println("Unable to journal the sample: " + e.getMessage());
+				}
+			});
+		}
+
+		if(metrics != null) {
+			controller.setMetrics(metrics);
+
+			Consumer<CarState> output = consumer;
+			consumer = state -> {
+				long start = System.nanoTime();
+				output.accept(state);
+				metrics.recordOutput(System.nanoTime() - start);
+			};
+		}
+
+		Consumer<CarState> sampleConsumer = consumer;
+
+		// Print the samples from another thread so the sampling loop never waits on the console
+		Thread printer = new Thread(() -> {
+			while(true) {
+				if(samples.poll(sampleConsumer, samples.getCapacity()) == 0) {
+					try {
+						Thread.sleep(100);
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "car-state-printer");
+		printer.setDaemon(true);
+		printer.start();
+
+		PipelinedOBD2Gateway gateway = context.getBean(PipelinedOBD2Gateway.class);
+		ExponentialBackOff reconnectBackOff = new ExponentialBackOff(
+				environment.getProperty("reconnectDelay", Long.class, 500L), 2);
+		reconnectBackOff.setMaxInterval(environment.getProperty("maxReconnectDelay", Long.class, 30000L));
 
 		while(true) {
 
-			controller.getCarState();
-			Thread.sleep(1000);
+			try {
+				controller.getCarState();
+			}
+			catch (RuntimeException e) {
+				reconnect(controller, gateway, reconnectBackOff.start(), e);
+				continue;
+			}
+
+			long wait = controller.getNextSampleTime() - System.currentTimeMillis();
+
+			if(wait > 0) {
+				Thread.sleep(wait);
+			}
 		}
     }
+
+	/**
+	 * @return the VIN of the car or, when it reports none, the address of its dongle
+	 */
+	private static String resolveVin(OBD2Controller controller, Environment environment) {
+		try {
+			return controller.getVin();
+		}
+		catch (IllegalStateException e) {
+			String dongle = environment.getProperty("dongleHost", "192.168.0.10") + ":" +
+					environment.getProperty("donglePort", "35000");
+			System.err.println("Identifying the car by its dongle " + dongle + ": " + e.getMessage());
+
+			return dongle;
+		}
+	}
+
+	/**
+	 * Resets the connection to the dongle and brings the session back up, waiting
+	 * longer and longer between attempts until it succeeds.
+	 */
+	private static void reconnect(OBD2Controller controller, PipelinedOBD2Gateway gateway, BackOffExecution backOff,
+			RuntimeException cause) throws InterruptedException {
+		RuntimeException error = cause;
+
+		while(true) {
+			long delay = backOff.nextBackOff();
+			System.err.println("Lost the dongle, reconnecting in " + delay + "ms: " + error);
+			Thread.sleep(delay);
+
+			try {
+				gateway.reset();
+				controller.connect();
+				return;
+			}
+			catch (RuntimeException e) {
+				error = e;
+			}
+		}
+	}
 }
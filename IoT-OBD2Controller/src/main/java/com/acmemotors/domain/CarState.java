@@ -16,52 +16,337 @@
 package com.acmemotors.domain;
 
 /**
+ * One sample of the state of the car.  Every value is a primitive (or an enum constant)
+ * so instances have a fixed layout and can be preallocated and overwritten sample after
+ * sample, see {@link CarStateRingBuffer}.  Values that were not read are
+ * {@link #NOT_READ} for integer values, NaN for decimal values and null for the OBD
+ * standard.  The sentinel is outside of the range of every PID since some values, such
+ * as the temperatures, are negative below freezing.
+ *
  * @author mminella
  */
 public class CarState {
 
-	private final int speed;
-	private final int oilTemp;
-	private final int fuelLevel;
-	private final int throttlePosition;
-	private final int rpm;
-	private final FuelSystemStatus fuelSystemStatus;
+	/**
+	 * Held by the integer values that were not read.
+	 */
+	public static final int NOT_READ = Integer.MIN_VALUE;
 
-	public CarState(FuelSystemStatus fuelSystemStatus, int speed, int oilTemp, int fuelLevel, int throttlePosition, int rpm) {
-		this.speed = speed;
-		this.oilTemp = oilTemp;
-		this.fuelLevel = fuelLevel;
-		this.throttlePosition = throttlePosition;
+	/**
+	 * The header of the columns of {@link #toString()}.
+	 */
+	public static final String CSV_HEADER = "LONGITUDE,LATITUDE,RPM,SPEED(MPH),FUEL SYSTEM STATUS,ENGINE LOAD,COOLANT TEMP,SHORT TERM FUEL PERCENT,LONG TERM FUEL PERCENT,INTAKE PRESSURE,INTAKE AIR TEMP,MAF RATE,THROTTLE POSITION,OBD VERSION,RUNNING TIME(SECONDS),FUEL LEVEL,RELATIVE THROTTLE POSITION,ABSOLUTE THROTTLE POSITION B,ACCELERATOR POSITION D,ACCELERATOR POSITION E";
+
+	private long timestamp;
+	private double latitude;
+	private double longitude;
+	private int rpm;
+	private int speed;
+	private int fuelSystemStatus;
+	private int engineLoad;
+	private int coolantTemp;
+	private double shortTermFuelPercent;
+	private double longTermFuelPercent;
+	private int intakePressure;
+	private int intakeAirTemp;
+	private double mafRate;
+	private int throttlePosition;
+	private OBDVersion obdStandard;
+	private int runningTime;
+	private int fuelLevel;
+	private int relativeThrottlePosition;
+	private int absoluteThrottlePositionB;
+	private int acceleratorPedalPositionD;
+	private int acceleratorPedalPositionE;
+
+	public CarState() {
+		clear();
+	}
+
+	/**
+	 * Resets every value to not read.
+	 */
+	public void clear() {
+		timestamp = 0;
+		latitude = Double.NaN;
+		longitude = Double.NaN;
+		rpm = NOT_READ;
+		speed = NOT_READ;
+		fuelSystemStatus = NOT_READ;
+		engineLoad = NOT_READ;
+		coolantTemp = NOT_READ;
+		shortTermFuelPercent = Double.NaN;
+		longTermFuelPercent = Double.NaN;
+		intakePressure = NOT_READ;
+		intakeAirTemp = NOT_READ;
+		mafRate = Double.NaN;
+		throttlePosition = NOT_READ;
+		obdStandard = null;
+		runningTime = NOT_READ;
+		fuelLevel = NOT_READ;
+		relativeThrottlePosition = NOT_READ;
+		absoluteThrottlePositionB = NOT_READ;
+		acceleratorPedalPositionD = NOT_READ;
+		acceleratorPedalPositionE = NOT_READ;
+	}
+
+	/**
+	 * Copies every value of another sample.
+	 *
+	 * @param other the sample to copy
+	 */
+	public void copyFrom(CarState other) {
+		timestamp = other.timestamp;
+		latitude = other.latitude;
+		longitude = other.longitude;
+		rpm = other.rpm;
+		speed = other.speed;
+		fuelSystemStatus = other.fuelSystemStatus;
+		engineLoad = other.engineLoad;
+		coolantTemp = other.coolantTemp;
+		shortTermFuelPercent = other.shortTermFuelPercent;
+		longTermFuelPercent = other.longTermFuelPercent;
+		intakePressure = other.intakePressure;
+		intakeAirTemp = other.intakeAirTemp;
+		mafRate = other.mafRate;
+		throttlePosition = other.throttlePosition;
+		obdStandard = other.obdStandard;
+		runningTime = other.runningTime;
+		fuelLevel = other.fuelLevel;
+		relativeThrottlePosition = other.relativeThrottlePosition;
+		absoluteThrottlePositionB = other.absoluteThrottlePositionB;
+		acceleratorPedalPositionD = other.acceleratorPedalPositionD;
+		acceleratorPedalPositionE = other.acceleratorPedalPositionE;
+	}
+
+	/**
+	 * @return the time, in milliseconds, the sample was taken
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public void setLatitude(double latitude) {
+		this.latitude = latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public void setLongitude(double longitude) {
+		this.longitude = longitude;
+	}
+
+	public int getRpm() {
+		return rpm;
+	}
+
+	public void setRpm(int rpm) {
 		this.rpm = rpm;
-		this.fuelSystemStatus = fuelSystemStatus;
 	}
 
+	/**
+	 * @return the speed in MPH
+	 */
 	public int getSpeed() {
 		return speed;
 	}
 
-	public int getOilTemp() {
-		return oilTemp;
+	public void setSpeed(int speed) {
+		this.speed = speed;
 	}
 
-	public int getFuelLevel() {
-		return fuelLevel;
+	/**
+	 * @return the raw status of the first fuel system (one bit per status)
+	 */
+	public int getFuelSystemStatusCode() {
+		return fuelSystemStatus;
+	}
+
+	public void setFuelSystemStatusCode(int fuelSystemStatus) {
+		this.fuelSystemStatus = fuelSystemStatus;
+	}
+
+	/**
+	 * @return the status of the first fuel system, null if not read or unknown
+	 */
+	public FuelSystemStatus getFuelSystemStatus() {
+		switch (fuelSystemStatus) {
+			case 1: return FuelSystemStatus.OPEN_LOOP_INSUFFICIENT_TEMP;
+			case 2: return FuelSystemStatus.CLOSED_LOOP;
+			case 4: return FuelSystemStatus.OPEN_LOOP_ENGINE_LOAD;
+			case 8: return FuelSystemStatus.OPEN_LOOP_SYSTEM_FAILURE;
+			case 16: return FuelSystemStatus.CLOSED_LOOP_WITH_FAULT;
+			default: return null;
+		}
+	}
+
+	public int getEngineLoad() {
+		return engineLoad;
+	}
+
+	public void setEngineLoad(int engineLoad) {
+		this.engineLoad = engineLoad;
+	}
+
+	public int getCoolantTemp() {
+		return coolantTemp;
+	}
+
+	public void setCoolantTemp(int coolantTemp) {
+		this.coolantTemp = coolantTemp;
+	}
+
+	public double getShortTermFuelPercent() {
+		return shortTermFuelPercent;
+	}
+
+	public void setShortTermFuelPercent(double shortTermFuelPercent) {
+		this.shortTermFuelPercent = shortTermFuelPercent;
+	}
+
+	public double getLongTermFuelPercent() {
+		return longTermFuelPercent;
+	}
+
+	public void setLongTermFuelPercent(double longTermFuelPercent) {
+		this.longTermFuelPercent = longTermFuelPercent;
+	}
+
+	public int getIntakePressure() {
+		return intakePressure;
+	}
+
+	public void setIntakePressure(int intakePressure) {
+		this.intakePressure = intakePressure;
+	}
+
+	public int getIntakeAirTemp() {
+		return intakeAirTemp;
+	}
+
+	public void setIntakeAirTemp(int intakeAirTemp) {
+		this.intakeAirTemp = intakeAirTemp;
+	}
+
+	public double getMafRate() {
+		return mafRate;
+	}
+
+	public void setMafRate(double mafRate) {
+		this.mafRate = mafRate;
 	}
 
 	public int getThrottlePosition() {
 		return throttlePosition;
 	}
 
-	public int getRpm() {
-		return rpm;
+	public void setThrottlePosition(int throttlePosition) {
+		this.throttlePosition = throttlePosition;
 	}
 
-	public FuelSystemStatus getFuelSystemStatus() {
-		return fuelSystemStatus;
+	public OBDVersion getObdStandard() {
+		return obdStandard;
+	}
+
+	public void setObdStandard(OBDVersion obdStandard) {
+		this.obdStandard = obdStandard;
+	}
+
+	/**
+	 * @return the time since the engine started, in seconds
+	 */
+	public int getRunningTime() {
+		return runningTime;
+	}
+
+	public void setRunningTime(int runningTime) {
+		this.runningTime = runningTime;
+	}
+
+	public int getFuelLevel() {
+		return fuelLevel;
+	}
+
+	public void setFuelLevel(int fuelLevel) {
+		this.fuelLevel = fuelLevel;
+	}
+
+	public int getRelativeThrottlePosition() {
+		return relativeThrottlePosition;
+	}
+
+	public void setRelativeThrottlePosition(int relativeThrottlePosition) {
+		this.relativeThrottlePosition = relativeThrottlePosition;
+	}
+
+	public int getAbsoluteThrottlePositionB() {
+		return absoluteThrottlePositionB;
+	}
+
+	public void setAbsoluteThrottlePositionB(int absoluteThrottlePositionB) {
+		this.absoluteThrottlePositionB = absoluteThrottlePositionB;
+	}
+
+	public int getAcceleratorPedalPositionD() {
+		return acceleratorPedalPositionD;
+	}
+
+	public void setAcceleratorPedalPositionD(int acceleratorPedalPositionD) {
+		this.acceleratorPedalPositionD = acceleratorPedalPositionD;
+	}
+
+	public int getAcceleratorPedalPositionE() {
+		return acceleratorPedalPositionE;
 	}
 
+	public void setAcceleratorPedalPositionE(int acceleratorPedalPositionE) {
+		this.acceleratorPedalPositionE = acceleratorPedalPositionE;
+	}
+
+	/**
+	 * @return the sample as a CSV line, in the order of the columns printed by
+	 * 		{@link com.acmemotors.Main}, the values not read being empty
+	 */
 	@Override
 	public String toString() {
-		return String.format("speed = %d\noil temperature = %d\nfuel level = %d\nthrottle level = %d\nrpm = %d", speed, oilTemp, fuelLevel, throttlePosition, rpm);
+		return String.join(",",
+				csv(longitude),
+				csv(latitude),
+				csv(rpm),
+				csv(speed),
+				csv(fuelSystemStatus),
+				csv(engineLoad),
+				csv(coolantTemp),
+				csv(shortTermFuelPercent),
+				csv(longTermFuelPercent),
+				csv(intakePressure),
+				csv(intakeAirTemp),
+				csv(mafRate),
+				csv(throttlePosition),
+				obdStandard == null ? "" : obdStandard.toString(),
+				csv(runningTime),
+				csv(fuelLevel),
+				csv(relativeThrottlePosition),
+				csv(absoluteThrottlePositionB),
+				csv(acceleratorPedalPositionD),
+				csv(acceleratorPedalPositionE));
+	}
+
+	private static String csv(int value) {
+		return value == NOT_READ ? "" : String.valueOf(value);
+	}
+
+	private static String csv(double value) {
+		return Double.isNaN(value) ? "" : String.format("%f", value);
 	}
 }
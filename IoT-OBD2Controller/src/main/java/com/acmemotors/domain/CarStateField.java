@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The values of a {@link CarState} as sent to the server, in the order and with the
+ * names of the JSON records the car simulator produces.  Every value is read and
+ * written as a double, NaN meaning not read, so the values can be processed generically
+ * (serialized, compared, set from the PIDs decoded, etc).
+ *
+ * @author Michael Minella
+ */
+public enum CarStateField {
+
+	LATITUDE("latitude", Format.DECIMAL, 0.00001,
+			CarState::getLatitude, CarState::setLatitude),
+	LONGITUDE("longitude", Format.DECIMAL, 0.00001,
+			CarState::getLongitude, CarState::setLongitude),
+	RPM("rpm", Format.INTEGER, 50,
+			state -> integer(state.getRpm()), (state, value) -> state.setRpm(integer(value))),
+	VEHICLE_SPEED("vehicle_speed", Format.INTEGER, 1,
+			state -> integer(state.getSpeed()), (state, value) -> state.setSpeed(integer(value))),
+	FUEL_SYSTEM_STATUS("fuel_system_status", Format.ARRAY, 0,
+			state -> integer(state.getFuelSystemStatusCode()),
+			(state, value) -> state.setFuelSystemStatusCode(integer(value))),
+	ENGINE_LOAD("engine_load", Format.INTEGER, 2,
+			state -> integer(state.getEngineLoad()), (state, value) -> state.setEngineLoad(integer(value))),
+	COOLANT_TEMP("coolant_temp", Format.INTEGER, 1,
+			state -> integer(state.getCoolantTemp()), (state, value) -> state.setCoolantTemp(integer(value))),
+	SHORT_TERM_FUEL("short_term_fuel", Format.DECIMAL, 1,
+			CarState::getShortTermFuelPercent, CarState::setShortTermFuelPercent),
+	LONG_TERM_FUEL("long_term_fuel", Format.DECIMAL, 1,
+			CarState::getLongTermFuelPercent, CarState::setLongTermFuelPercent),
+	INTAKE_MANIFOLD_PRESSURE("intake_manifold_pressure", Format.INTEGER, 1,
+			state -> integer(state.getIntakePressure()), (state, value) -> state.setIntakePressure(integer(value))),
+	INTAKE_AIR_TEMP("intake_air_temp", Format.INTEGER, 1,
+			state -> integer(state.getIntakeAirTemp()), (state, value) -> state.setIntakeAirTemp(integer(value))),
+	MAF_AIRFLOW("maf_airflow", Format.DECIMAL, 0.5,
+			CarState::getMafRate, CarState::setMafRate),
+	THROTTLE_POSITION("throttle_position", Format.INTEGER, 1,
+			state -> integer(state.getThrottlePosition()), (state, value) -> state.setThrottlePosition(integer(value))),
+	OBD_STANDARDS("obd_standards", Format.CODE, 0,
+			state -> state.getObdStandard() == null ? Double.NaN : state.getObdStandard().getCode(),
+			(state, value) -> state.setObdStandard(Double.isNaN(value) ? null : OBDVersion.fromCode((int) value))),
+	TIME_SINCE_ENGINE_START("time_since_engine_start", Format.INTEGER, 5,
+			state -> integer(state.getRunningTime()), (state, value) -> state.setRunningTime(integer(value))),
+	FUEL_LEVEL_INPUT("fuel_level_input", Format.INTEGER, 1,
+			state -> integer(state.getFuelLevel()), (state, value) -> state.setFuelLevel(integer(value))),
+	RELATIVE_THROTTLE_POS("relative_throttle_pos", Format.INTEGER, 1,
+			state -> integer(state.getRelativeThrottlePosition()),
+			(state, value) -> state.setRelativeThrottlePosition(integer(value))),
+	ABSOLUTE_THROTTLE_POS_B("absolute_throttle_pos_b", Format.INTEGER, 1,
+			state -> integer(state.getAbsoluteThrottlePositionB()),
+			(state, value) -> state.setAbsoluteThrottlePositionB(integer(value))),
+	ACCELERATOR_THROTTLE_POS_D("accelerator_throttle_pos_d", Format.INTEGER, 1,
+			state -> integer(state.getAcceleratorPedalPositionD()),
+			(state, value) -> state.setAcceleratorPedalPositionD(integer(value))),
+	ACCELERATOR_THROTTLE_POS_E("accelerator_throttle_pos_e", Format.INTEGER, 1,
+			state -> integer(state.getAcceleratorPedalPositionE()),
+			(state, value) -> state.setAcceleratorPedalPositionE(integer(value)));
+
+	/**
+	 * How a value is written in JSON.  Values not read are written as empty strings,
+	 * like the car simulator does.
+	 */
+	public enum Format {
+		INTEGER,
+		DECIMAL,
+		/**
+		 * A one element array, the status of the first fuel system
+		 */
+		ARRAY,
+		/**
+		 * The code of the OBD standard, as a string
+		 */
+		CODE
+	}
+
+	private static final Map<String, CarStateField> BY_NAME = new HashMap<>();
+
+	static {
+		for (CarStateField field : values()) {
+			BY_NAME.put(field.name, field);
+		}
+	}
+
+	private final String name;
+
+	private final Format format;
+
+	private final double deadband;
+
+	private final ToDoubleFunction<CarState> getter;
+
+	private final ObjDoubleConsumer<CarState> setter;
+
+	private CarStateField(String name, Format format, double deadband, ToDoubleFunction<CarState> getter,
+			ObjDoubleConsumer<CarState> setter) {
+		this.name = name;
+		this.format = format;
+		this.deadband = deadband;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	/**
+	 * @param name the JSON name of a field
+	 * @return the field, null if unknown
+	 */
+	public static CarStateField forName(String name) {
+		return BY_NAME.get(name);
+	}
+
+	/**
+	 * @return the name of the field in the JSON records
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return the default change below which the value is considered unchanged
+	 */
+	public double getDeadband() {
+		return deadband;
+	}
+
+	/**
+	 * @param state the sample
+	 * @return the value, NaN if not read
+	 */
+	public double get(CarState state) {
+		return getter.applyAsDouble(state);
+	}
+
+	/**
+	 * @param state the sample
+	 * @param value the value, NaN if not read
+	 */
+	public void set(CarState state, double value) {
+		setter.accept(state, value);
+	}
+
+	/**
+	 * Appends the value, written in the format of the field, to a JSON record.
+	 *
+	 * @param state the sample
+	 * @param json the record
+	 */
+	public void appendJson(CarState state, StringBuilder json) {
+		json.append(",\"").append(name).append("\":");
+
+		double value = get(state);
+
+		if(format == Format.ARRAY) {
+			json.append('[');
+
+			if(!Double.isNaN(value)) {
+				json.append((long) value);
+			}
+
+			json.append(']');
+		}
+		else if(Double.isNaN(value)) {
+			json.append("\"\"");
+		}
+		else if(format == Format.CODE) {
+			json.append('"').append((long) value).append('"');
+		}
+		else if(format == Format.INTEGER) {
+			json.append((long) value);
+		}
+		else {
+			json.append(value);
+		}
+	}
+
+	private static double integer(int value) {
+		return value == CarState.NOT_READ ? Double.NaN : value;
+	}
+
+	private static int integer(double value) {
+		return Double.isNaN(value) ? CarState.NOT_READ : (int) Math.round(value);
+	}
+}
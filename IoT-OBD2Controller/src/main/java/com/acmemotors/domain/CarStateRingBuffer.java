@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.util.Assert;
+
+/**
+ * Preallocated ring of {@link CarState} samples handed over from the thread sampling
+ * the car to the thread consuming the samples.  The sampling thread fills the slot
+ * returned by {@link #next()} and makes it visible with {@link #publish()}; the
+ * consuming thread reads the published samples in batches with {@link #poll}.  No
+ * object is created once the ring is built.
+ *
+ * There must be a single sampling thread and a single consuming thread.  When the
+ * consumer falls behind and the ring is full, new samples are dropped (and counted)
+ * rather than overwriting samples the consumer may be reading.
+ *
+ * @author Michael Minella
+ */
+public class CarStateRingBuffer {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final CarState[] slots;
+
+	private final int mask;
+
+	/**
+	 * Sample written when the ring is full, never published.
+	 */
+	private final CarState overflow = new CarState();
+
+	/**
+	 * Sequence of the last published sample, written by the sampling thread.
+	 */
+	private final AtomicLong published = new AtomicLong(-1);
+
+	/**
+	 * Sequence of the last consumed sample, written by the consuming thread.
+	 */
+	private final AtomicLong consumed = new AtomicLong(-1);
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private long claimed = -1;
+
+	public CarStateRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of samples held, rounded up to a power of two
+	 */
+	public CarStateRingBuffer(int capacity) {
+		Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+
+		int size = Integer.highestOneBit(capacity);
+
+		if(size < capacity) {
+			size <<= 1;
+		}
+
+		this.slots = new CarState[size];
+		this.mask = size - 1;
+
+		for (int i = 0; i < size; i++) {
+			slots[i] = new CarState();
+		}
+	}
+
+	/**
+	 * Returns the cleared slot of the next sample.  When the ring is full, a slot that
+	 * is never published is returned so the sample can be taken anyway.
+	 *
+	 * @return the sample to fill
+	 */
+	public CarState next() {
+		long sequence = published.get() + 1;
+
+		if(sequence - consumed.get() > slots.length) {
+			claimed = -1;
+			overflow.clear();
+			return overflow;
+		}
+
+		claimed = sequence;
+
+		CarState state = slots[(int) (sequence & mask)];
+		state.clear();
+
+		return state;
+	}
+
+	/**
+	 * Makes the sample returned by the last call to {@link #next()} visible to the
+	 * consumer.
+	 */
+	public void publish() {
+		if(claimed < 0) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		published.lazySet(claimed);
+		claimed = -1;
+	}
+
+	/**
+	 * Hands the published samples not consumed yet to the consumer, oldest first.  The
+	 * samples must not be kept past the call (copy them with
+	 * {@link CarState#copyFrom(CarState)} if needed) since their slots are reused.
+	 *
+	 * @param consumer receives each sample
+	 * @param maxSamples the maximum number of samples to consume
+	 * @return the number of samples consumed
+	 */
+	public int poll(Consumer<CarState> consumer, int maxSamples) {
+		long first = consumed.get() + 1;
+		long last = Math.min(published.get(), first + maxSamples - 1);
+
+		for (long sequence = first; sequence <= last; sequence++) {
+			consumer.accept(slots[(int) (sequence & mask)]);
+		}
+
+		if(last >= first) {
+			consumed.lazySet(last);
+		}
+
+		return (int) Math.max(0, last - first + 1);
+	}
+
+	/**
+	 * @return the number of samples published and not consumed yet
+	 */
+	public int size() {
+		return (int) (published.get() - consumed.get());
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * @return the number of samples dropped because the ring was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
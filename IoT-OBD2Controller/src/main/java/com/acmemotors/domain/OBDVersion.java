@@ -16,35 +16,66 @@
 package com.acmemotors.domain;
 
 /**
+ * The OBD standards a car may conform to, as reported by PID 01 1C.
+ *
  * @author mminella
  */
 public enum OBDVersion {
-	OBD_II,
-	OBD,
-	OBD_AND_OBD_II,
-	OBD_I,
-	NOT_OBD,
-	EOBD,
-	EOBD_AND_OBD_II,
-	EOBD_AND_OBD,
-	EOBD_OBD_AND_OBD_II,
-	JOBD,
-	JOBD_AND_OBD_II,
-	JOBD_AND_EOBD,
-	JOBD_EOBD_AND_OBD_II,
-	EMD,
-	EMD_PLUS,
-	HD_OBD_C,
-	HD_OBD,
-	WWH_OBD,
-	HD_EOBD_I,
-	HD_EOBD_I_N,
-	HD_EOBD_II,
-	HD_EOBD_II_N,
-	OBDBr_1,
-	OBDBr_2,
-	KOBD,
-	IOBD_I,
-	IOBD_II,
-	HD_EOBD_IV;
+	OBD_II(1),
+	OBD(2),
+	OBD_AND_OBD_II(3),
+	OBD_I(4),
+	NOT_OBD(5),
+	EOBD(6),
+	EOBD_AND_OBD_II(7),
+	EOBD_AND_OBD(8),
+	EOBD_OBD_AND_OBD_II(9),
+	JOBD(10),
+	JOBD_AND_OBD_II(11),
+	JOBD_AND_EOBD(12),
+	JOBD_EOBD_AND_OBD_II(13),
+	EMD(17),
+	EMD_PLUS(18),
+	HD_OBD_C(19),
+	HD_OBD(20),
+	WWH_OBD(21),
+	HD_EOBD_I(23),
+	HD_EOBD_I_N(24),
+	HD_EOBD_II(25),
+	HD_EOBD_II_N(26),
+	OBDBr_1(28),
+	OBDBr_2(29),
+	KOBD(30),
+	IOBD_I(31),
+	IOBD_II(32),
+	HD_EOBD_IV(33);
+
+	private static final OBDVersion[] BY_CODE = new OBDVersion[256];
+
+	static {
+		for (OBDVersion version : values()) {
+			BY_CODE[version.code] = version;
+		}
+	}
+
+	private final int code;
+
+	private OBDVersion(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * @return the value of PID 01 1C for the standard
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * @param code the value of PID 01 1C
+	 * @return the standard, null if the code is reserved or unknown
+	 */
+	public static OBDVersion fromCode(int code) {
+		return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+	}
 }
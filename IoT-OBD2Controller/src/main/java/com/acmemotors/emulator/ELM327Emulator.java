@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.util.List;
+
+/**
+ * Emulates the command processing of a single ELM327 dongle: the AT commands of
+ * {@link com.acmemotors.obd2.OBD2Command} (echo, line feeds, headers, protocol, etc)
+ * and the OBD 2 requests, which are answered by a {@link ResponseSource}.  Replies are
+ * formatted the way the dongle formats them: the echo of the command, one line per
+ * frame, a blank line and the '&gt;' prompt, lines ending with a carriage return
+ * (followed by a line feed when line feeds are on).  With headers off, the CAN header
+ * and the PCI byte of single frames are left out.
+ *
+ * Instances are not thread safe, each emulated dongle has its own.
+ *
+ * @author Michael Minella
+ */
+public class ELM327Emulator {
+
+	public static final String VERSION = "ELM327 v1.5";
+
+	private static final String OK = "OK";
+
+	private static final String UNKNOWN = "?";
+
+	private static final String NO_DATA = "NO DATA";
+
+	private static final int EXTENDED_HEADER_TOKENS = 4;
+
+	private final ResponseSource source;
+
+	private boolean echo;
+
+	private boolean linefeeds;
+
+	private boolean headers;
+
+	private int protocol;
+
+	public ELM327Emulator(ResponseSource source) {
+		this.source = source;
+		reset();
+	}
+
+	/**
+	 * @param command the command received, without the trailing carriage return
+	 * @return the reply, prompt included
+	 */
+	public String process(String command) {
+		String compact = compact(command);
+
+		StringBuilder reply = new StringBuilder(128);
+
+		if(echo) {
+			line(reply, command);
+		}
+
+		if(compact.startsWith("AT")) {
+			processAt(compact.substring(2), reply);
+		}
+		else if(isObdRequest(compact)) {
+			processObd(spaced(compact), reply);
+		}
+		else {
+			line(reply, UNKNOWN);
+		}
+
+		line(reply, "");
+
+		return reply.append('>').toString();
+	}
+
+	private void processAt(String at, StringBuilder reply) {
+		if(at.equals("Z")) {
+			reset();
+			line(reply, "");
+			line(reply, VERSION);
+			return;
+		}
+		else if(at.equals("D")) {
+			reset();
+		}
+		else if(at.equals("I")) {
+			line(reply, VERSION);
+			return;
+		}
+		else if(at.equals("DPN")) {
+			line(reply, protocol == 0 ? "A6" : Integer.toHexString(protocol).toUpperCase());
+			return;
+		}
+		else if(at.equals("E0") || at.equals("E1")) {
+			echo = at.endsWith("1");
+		}
+		else if(at.equals("L0") || at.equals("L1")) {
+			linefeeds = at.endsWith("1");
+		}
+		else if(at.equals("H0") || at.equals("H1")) {
+			headers = at.endsWith("1");
+		}
+		else if(at.matches("(TP|SP)A?[0-9A-C]")) {
+			protocol = Integer.parseInt(at.substring(at.length() - 1), 16);
+		}
+		else if(!at.matches("M[01]|CAF[01]|AL|NL|SH[0-9A-F]{3,8}|CP[0-9A-F]{2}|S[01]|ST[0-9A-F]{2}")) {
+			// Not a command known by an ELM327, e.g. the STN11xx specific commands
+			line(reply, UNKNOWN);
+			return;
+		}
+
+		line(reply, OK);
+	}
+
+	private void processObd(String request, StringBuilder reply) {
+		List<String> frames = source.respond(request);
+
+		if(frames.isEmpty()) {
+			line(reply, NO_DATA);
+			return;
+		}
+
+		for (String frame : frames) {
+			line(reply, (headers ? frame : stripHeader(frame)) + " ");
+		}
+	}
+
+	private void line(StringBuilder reply, String line) {
+		reply.append(line).append('\r');
+
+		if(linefeeds) {
+			reply.append('\n');
+		}
+	}
+
+	private void reset() {
+		echo = true;
+		linefeeds = false;
+		headers = false;
+		protocol = 0;
+	}
+
+	/**
+	 * @param frame a frame starting with a 29 bit (<code>18 DA F1 11</code>) or an 11
+	 * 		bit (<code>7E8</code>) CAN header
+	 * @return the frame without its header, nor its PCI byte if it is a single frame
+	 */
+	private static String stripHeader(String frame) {
+		int index = frame.indexOf(' ');
+		// An 11 bit header is a single token of three hex digits
+		int tokens = index == 3 ? 1 : EXTENDED_HEADER_TOKENS;
+
+		for (int i = 1; i < tokens && index >= 0; i++) {
+			index = frame.indexOf(' ', index + 1);
+		}
+
+		if(index < 0) {
+			return frame;
+		}
+
+		// The high nibble of the PCI byte is 0 for a single frame
+		if(frame.charAt(index + 1) == '0') {
+			index = frame.indexOf(' ', index + 1);
+		}
+
+		return index < 0 ? "" : frame.substring(index + 1);
+	}
+
+	/**
+	 * @param command a command as received, e.g. <code>010c</code>
+	 * @return the command in upper case, without spaces
+	 */
+	static String compact(String command) {
+		return command.trim().toUpperCase().replace(" ", "");
+	}
+
+	/**
+	 * @param compact a command returned by {@link #compact}
+	 * @return true if the command is an OBD request: whole bytes, mode and PID at least
+	 */
+	static boolean isObdRequest(String compact) {
+		return isHex(compact) && compact.length() % 2 == 0 && compact.length() >= 4;
+	}
+
+	/**
+	 * @param compact an OBD request returned by {@link #compact}
+	 * @return the request as passed to the {@link ResponseSource}, its bytes separated by
+	 * 		spaces
+	 */
+	static String spaced(String compact) {
+		StringBuilder request = new StringBuilder(compact.length() * 3 / 2);
+
+		for (int i = 0; i < compact.length(); i += 2) {
+			if(i > 0) {
+				request.append(' ');
+			}
+
+			request.append(compact, i, i + 2);
+		}
+
+		return request.toString();
+	}
+
+	private static boolean isHex(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if(Character.digit(value.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+
+		return !value.isEmpty();
+	}
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.core.env.CommandLinePropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.util.Assert;
+
+/**
+ * Serves emulated ELM327 dongles over TCP so the controller can be run and load tested
+ * without a car.  Every connection accepted is a separate dongle, with its own
+ * {@link ELM327Emulator} and {@link ResponseSource}, so hundreds of controllers can
+ * connect to the same port.  All the connections are served by a single selector
+ * thread.
+ *
+ * OBD 2 requests are answered after a latency plus a random jitter, AT commands right
+ * away.  Like a real dongle, a character (other than a line feed) received while a
+ * request is being processed aborts it: the dongle replies <code>STOPPED</code>
+ * instead.
+ *
+ * To emulate dongles from the command line:
+ *
+ * <code>
+ * $ java -cp &lt;CLASSPATH&gt; com.acmemotors.emulator.ELM327EmulatorServer --port=35000 --latency=50 --jitter=20 [--capture=session.txt]
+ * </code>
+ *
+ * and start the controller with <code>--dongleHost=localhost</code>.
+ *
+ * @author Michael Minella
+ */
+public class ELM327EmulatorServer implements Lifecycle {
+
+	private static final byte[] STOPPED = "STOPPED\r\r>".getBytes(StandardCharsets.US_ASCII);
+
+	private final InetSocketAddress address;
+
+	private final IntFunction<ResponseSource> sources;
+
+	private final long latency;
+
+	private final long jitter;
+
+	private final Random random = new Random(0);
+
+	private final PriorityQueue<Dongle> pendingReplies =
+			new PriorityQueue<>((a, b) -> Long.compare(a.replyTime, b.replyTime));
+
+	private Selector selector;
+
+	private ServerSocketChannel server;
+
+	private Thread thread;
+
+	private volatile boolean running;
+
+	private int connections;
+
+	/**
+	 * @param port the port to listen to, 0 for any free port
+	 * @param sources creates the source of the responses of each dongle, given the
+	 * 		number of the connection (starting at 0)
+	 * @param latency the time, in milliseconds, it takes to answer an OBD 2 request
+	 * @param jitter the maximum time, in milliseconds, randomly added to the latency
+	 */
+	public ELM327EmulatorServer(int port, IntFunction<ResponseSource> sources, long latency, long jitter) {
+		Assert.isTrue(latency >= 0 && jitter >= 0, "latency and jitter cannot be negative");
+
+		this.address = new InetSocketAddress("localhost", port);
+		this.sources = sources;
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * @param number the number of the dongle
+	 * @return the VIN reported by the synthetic dongle with the number
+	 */
+	public static String vin(int number) {
+		return String.format("1ACME%012d", number);
+	}
+
+	@Override
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		try {
+			selector = Selector.open();
+			server = ServerSocketChannel.open();
+			server.bind(address);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to listen on " + address, e);
+		}
+
+		running = true;
+		thread = new Thread(this::run, "elm327-emulator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		selector.wakeup();
+
+		try {
+			thread.join();
+
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+
+			selector.close();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			// Closing anyway
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the port the dongles are served on
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	private void run() {
+		while(running) {
+			try {
+				Dongle next = pendingReplies.peek();
+				long now = System.currentTimeMillis();
+
+				if(next == null) {
+					selector.select();
+				}
+				else if(next.replyTime > now) {
+					selector.select(next.replyTime - now);
+				}
+				else {
+					selector.selectNow();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if(!key.isValid()) {
+							continue;
+						}
+
+						if(key.isAcceptable()) {
+							accept();
+						}
+						else {
+							Dongle dongle = (Dongle) key.attachment();
+
+							if(key.isReadable()) {
+								dongle.read();
+							}
+
+							if(key.isValid() && key.isWritable()) {
+								dongle.flush();
+							}
+						}
+					}
+					catch (IOException e) {
+						pendingReplies.remove(key.attachment());
+						key.channel().close();
+					}
+				}
+
+				now = System.currentTimeMillis();
+
+				while(!pendingReplies.isEmpty() && pendingReplies.peek().replyTime <= now) {
+					Dongle dongle = pendingReplies.poll();
+
+					try {
+						dongle.write(dongle.reply);
+					}
+					catch (IOException e) {
+						dongle.channel.close();
+					}
+				}
+			}
+			catch (IOException e) {
+				if(running) {
+					throw new IllegalStateException("Dongle emulation failed", e);
+				}
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = server.accept();
+
+		if(channel == null) {
+			return;
+		}
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		Dongle dongle = new Dongle(channel, new ELM327Emulator(sources.apply(connections++)));
+		dongle.key = channel.register(selector, SelectionKey.OP_READ, dongle);
+	}
+
+	private class Dongle {
+
+		private final SocketChannel channel;
+
+		private final ELM327Emulator emulator;
+
+		private final ByteBuffer input = ByteBuffer.allocate(256);
+
+		private final StringBuilder command = new StringBuilder();
+
+		private ByteBuffer output = ByteBuffer.allocate(0);
+
+		private SelectionKey key;
+
+		private String lastCommand = "";
+
+		private byte[] reply;
+
+		private long replyTime;
+
+		private Dongle(SocketChannel channel, ELM327Emulator emulator) {
+			this.channel = channel;
+			this.emulator = emulator;
+		}
+
+		private void read() throws IOException {
+			input.clear();
+
+			if(channel.read(input) < 0) {
+				throw new IOException("Connection closed");
+			}
+
+			input.flip();
+
+			while(input.hasRemaining()) {
+				char c = (char) input.get();
+
+				if(c == '\n') {
+					// Sent after the carriage return by some clients, ignored by the dongle
+					continue;
+				}
+
+				if(reply != null && pendingReplies.remove(this)) {
+					write(STOPPED);
+				}
+
+				if(c == '\r') {
+					process();
+				}
+				else {
+					command.append(c);
+				}
+			}
+		}
+
+		private void process() throws IOException {
+			// An empty command repeats the previous one
+			String received = command.length() == 0 ? lastCommand : command.toString();
+			command.setLength(0);
+			lastCommand = received;
+
+			byte[] bytes = emulator.process(received).getBytes(StandardCharsets.US_ASCII);
+
+			if(received.trim().toUpperCase().startsWith("AT") || (latency == 0 && jitter == 0)) {
+				write(bytes);
+			}
+			else {
+				reply = bytes;
+				replyTime = System.currentTimeMillis() + latency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+				pendingReplies.add(this);
+			}
+		}
+
+		private void write(byte[] bytes) throws IOException {
+			reply = null;
+
+			if(output.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(output.remaining() + bytes.length);
+				larger.put(output).put(bytes).flip();
+				output = larger;
+			}
+			else {
+				output = ByteBuffer.wrap(bytes);
+			}
+
+			flush();
+		}
+
+		private void flush() throws IOException {
+			channel.write(output);
+
+			key.interestOps(output.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLinePropertySource<?> options = new SimpleCommandLinePropertySource(args);
+
+		int port = Integer.parseInt(option(options, "port", "35000"));
+		long latency = Long.parseLong(option(options, "latency", "50"));
+		long jitter = Long.parseLong(option(options, "jitter", "20"));
+		String capture = options.getProperty("capture");
+
+		IntFunction<ResponseSource> sources;
+
+		if(capture != null) {
+			Map<String, List<List<String>>> recording;
+
+			try (InputStream inputStream = new FileInputStream(capture)) {
+				recording = RecordedResponseSource.read(inputStream);
+			}
+
+			sources = number -> new RecordedResponseSource(recording, number);
+		}
+		else {
+			sources = number -> new SyntheticResponseSource(number, vin(number));
+		}
+
+		ELM327EmulatorServer emulator = new ELM327EmulatorServer(port, sources, latency, jitter);
+		emulator.start();
+
+		System.out.println("Emulating ELM327 dongles on port " + emulator.getPort());
+
+		emulator.thread.join();
+	}
+
+	private static String option(CommandLinePropertySource<?> options, String name, String defaultValue) {
+		return options.containsProperty(name) ? options.getProperty(name) : defaultValue;
+	}
+}
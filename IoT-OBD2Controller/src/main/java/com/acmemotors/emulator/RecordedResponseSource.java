@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.acmemotors.integration.OBD2Framer;
+
+/**
+ * Replays the responses of a session recorded with echo and headers on (the raw bytes
+ * received from a dongle, e.g. with <code>nc</code>).  Each request is answered with
+ * the responses recorded for the same request, in the order they were recorded, going
+ * back to the first one once they have all been replayed.  Requests that were never
+ * recorded are not answered.
+ *
+ * The recorded responses are shared, only the position in each of them is kept per
+ * instance, so many emulated dongles can replay the same capture.
+ *
+ * @author Michael Minella
+ */
+public class RecordedResponseSource implements ResponseSource {
+
+	private static final String NO_DATA = "NO DATA";
+
+	private final Map<String, List<List<String>>> recording;
+
+	private final Map<String, Integer> positions = new HashMap<>();
+
+	/**
+	 * @param recording the responses by request, as returned by {@link #read}
+	 * @param offset the number of responses to skip for every request, so dongles
+	 * 		sharing a capture do not report the same values at the same time
+	 */
+	public RecordedResponseSource(Map<String, List<List<String>>> recording, int offset) {
+		this.recording = recording;
+
+		for (Map.Entry<String, List<List<String>>> responses : recording.entrySet()) {
+			positions.put(responses.getKey(), offset % responses.getValue().size());
+		}
+	}
+
+	@Override
+	public List<String> respond(String request) {
+		List<List<String>> responses = recording.get(request);
+
+		if(responses == null) {
+			return Collections.emptyList();
+		}
+
+		int position = positions.get(request);
+		positions.put(request, (position + 1) % responses.size());
+
+		return responses.get(position);
+	}
+
+	/**
+	 * Reads a capture.  Only the OBD requests are kept, the AT commands are skipped.
+	 *
+	 * @param capture the bytes received from the dongle
+	 * @return the responses by request
+	 * @throws IOException if the capture cannot be read
+	 */
+	public static Map<String, List<List<String>>> read(InputStream capture) throws IOException {
+		Map<String, List<List<String>>> recording = new HashMap<>();
+		OBD2Framer framer = new OBD2Framer();
+
+		ByteBuffer frame;
+
+		while((frame = framer.nextFrame(capture)) != null) {
+			byte[] bytes = new byte[frame.remaining() - 1];
+			frame.get(bytes);
+
+			String[] lines = new String(bytes, StandardCharsets.US_ASCII).split("\n");
+			String compact = ELM327Emulator.compact(lines[0]);
+
+			if(!ELM327Emulator.isObdRequest(compact)) {
+				continue;
+			}
+
+			// Keyed as the emulator looks requests up, however they were typed
+			String request = ELM327Emulator.spaced(compact);
+
+			List<String> response = new ArrayList<>();
+
+			for (int i = 1; i < lines.length; i++) {
+				String line = lines[i].trim();
+
+				if(!line.isEmpty() && !NO_DATA.equals(line)) {
+					response.add(line);
+				}
+			}
+
+			List<List<String>> responses = recording.get(request);
+
+			if(responses == null) {
+				responses = new ArrayList<>();
+				recording.put(request, responses);
+			}
+
+			responses.add(response);
+		}
+
+		return recording;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.util.List;
+
+/**
+ * Provides the CAN frames an emulated car answers OBD 2 requests with.
+ *
+ * @author Michael Minella
+ */
+public interface ResponseSource {
+
+	/**
+	 * @param request the OBD 2 request, upper case hex bytes separated by single spaces
+	 * 		(e.g. <code>01 0C 0D</code>)
+	 * @return the frames of the response, each one a line of hex bytes starting with the
+	 * 		29 bit (<code>18 DA F1 11</code>) or 11 bit (<code>7E8</code>) CAN header, or
+	 * 		an empty list if the car does not answer the request
+	 */
+	List<String> respond(String request);
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+import com.acmemotors.obd2.OBD2Command;
+
+/**
+ * Answers requests with values computed from a simple driving cycle: the speed follows
+ * a slow sine wave per car, the RPM, throttle, load and MAF follow the speed, the engine
+ * warms up and the fuel level slowly drops.  Every car is seeded so that a fleet of
+ * emulated dongles does not report identical values.
+ *
+ * Every mode 01 PID listed in {@link OBD2Command} is supported, along with the VIN,
+ * calibration ID, CVN and ECU name (mode 09 02, 04, 06 and 0A).  Responses come from a
+ * single ECU (header <code>18 DA F1 11</code>) and are split into ISO 15765-2 frames
+ * when longer than seven bytes.
+ *
+ * @author Michael Minella
+ */
+public class SyntheticResponseSource implements ResponseSource {
+
+	private static final String HEADER = "18 DA F1 11";
+
+	private static final int MAX_SINGLE_FRAME_BYTES = 7;
+
+	private static final boolean[] SUPPORTED = new boolean[256];
+
+	private static final int HIGHEST_SUPPORTED;
+
+	static {
+		int highest = 0;
+
+		for (OBD2Command command : OBD2Command.values()) {
+			if(command.getMode() == 1 && command.getPid() % 0x20 != 0) {
+				SUPPORTED[command.getPid()] = true;
+				highest = Math.max(highest, command.getPid());
+			}
+		}
+
+		HIGHEST_SUPPORTED = highest;
+	}
+
+	private final String vin;
+
+	private final LongSupplier clock;
+
+	private final long start;
+
+	private final Random random;
+
+	private final double phase;
+
+	private final double cruiseSpeed;
+
+	/**
+	 * @param seed seed of the values reported by the car
+	 * @param vin the 17 character VIN of the car
+	 */
+	public SyntheticResponseSource(long seed, String vin) {
+		this(seed, vin, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param seed seed of the values reported by the car
+	 * @param vin the 17 character VIN of the car
+	 * @param clock the time, in milliseconds, the driving cycle is computed for
+	 */
+	public SyntheticResponseSource(long seed, String vin, LongSupplier clock) {
+		Assert.isTrue(vin != null && vin.length() == 17, "A VIN has 17 characters");
+
+		this.vin = vin;
+		this.clock = clock;
+		this.start = clock.getAsLong();
+		this.random = new Random(seed);
+		this.phase = random.nextDouble() * 2 * Math.PI;
+		this.cruiseSpeed = 40 + random.nextInt(60);
+	}
+
+	@Override
+	public List<String> respond(String request) {
+		int[] bytes = parse(request);
+
+		if(bytes == null || bytes.length < 2) {
+			return Collections.emptyList();
+		}
+
+		if(bytes[0] == 0x01) {
+			return respondMode01(bytes);
+		}
+		else if(bytes[0] == 0x09 && bytes.length == 2) {
+			return respondMode09(bytes[1]);
+		}
+
+		return Collections.emptyList();
+	}
+
+	private List<String> respondMode01(int[] request) {
+		double seconds = (clock.getAsLong() - start) / 1000.0;
+		int[] payload = new int[1 + (request.length - 1) * 5];
+		int length = 0;
+
+		payload[length++] = 0x41;
+
+		for (int i = 1; i < request.length; i++) {
+			int pid = request[i];
+			int count = data(pid, seconds, payload, length + 1);
+
+			if(count >= 0) {
+				payload[length] = pid;
+				length += 1 + count;
+			}
+		}
+
+		return length == 1 ? Collections.<String>emptyList() : frames(payload, length);
+	}
+
+	private List<String> respondMode09(int pid) {
+		byte[] value;
+
+		switch (pid) {
+			case 0x02: value = vin.getBytes(StandardCharsets.US_ASCII); break;
+			case 0x04: value = ("ACME" + vin.substring(5)).getBytes(StandardCharsets.US_ASCII); break;
+			case 0x06: value = new byte[] {(byte) vin.hashCode(), (byte) (vin.hashCode() >> 8), 0x15, 0x42}; break;
+			case 0x0A: value = Arrays.copyOf("ECM-EngineControl".getBytes(StandardCharsets.US_ASCII), 20); break;
+			default: return Collections.emptyList();
+		}
+
+		int[] payload = new int[3 + value.length];
+		payload[0] = 0x49;
+		payload[1] = pid;
+		payload[2] = 0x01;
+
+		for (int i = 0; i < value.length; i++) {
+			payload[3 + i] = value[i] & 0xFF;
+		}
+
+		return frames(payload, payload.length);
+	}
+
+	/**
+	 * Writes the data bytes of a mode 01 PID.
+	 *
+	 * @return the number of bytes written, -1 if the PID is not supported
+	 */
+	private int data(int pid, double seconds, int[] out, int offset) {
+		double speed = Math.max(0, cruiseSpeed + 40 * Math.sin(phase + seconds * 2 * Math.PI / 120) + noise(2));
+		double throttle = Math.min(100, 12 + speed / 2 + noise(3));
+		int rpm = (int) (750 + speed * 28 + noise(50));
+
+		if(pid % 0x20 == 0) {
+			return bitmap(pid, out, offset);
+		}
+
+		if(!SUPPORTED[pid]) {
+			return -1;
+		}
+
+		switch (pid) {
+			case 0x03: return bytes(out, offset, 2, 0x0200);
+			case 0x04: return bytes(out, offset, 1, percent(throttle * 0.8));
+			case 0x05: return bytes(out, offset, 1, 40 + (int) Math.min(90, 20 + seconds / 6));
+			case 0x06: return bytes(out, offset, 1, 128 + (int) noise(3));
+			case 0x07: return bytes(out, offset, 1, 128 + (int) noise(1));
+			case 0x0B: return bytes(out, offset, 1, (int) (30 + throttle * 0.7));
+			case 0x0C: return bytes(out, offset, 2, rpm * 4);
+			case 0x0D: return bytes(out, offset, 1, (int) speed);
+			case 0x0F: return bytes(out, offset, 1, 40 + 25);
+			case 0x10: return bytes(out, offset, 2, (int) (rpm * 0.6 + throttle * 10));
+			case 0x11:
+			case 0x45:
+			case 0x47:
+			case 0x49:
+			case 0x4A: return bytes(out, offset, 1, percent(throttle));
+			case 0x1C: return bytes(out, offset, 1, 1);
+			case 0x1F: return bytes(out, offset, 2, (int) Math.min(0xFFFF, seconds));
+			case 0x21: return bytes(out, offset, 2, 0);
+			case 0x2F: return bytes(out, offset, 1, percent(Math.max(5, 80 - seconds / 360)));
+			case 0x33: return bytes(out, offset, 1, 101);
+			case 0x3C: return bytes(out, offset, 2, (int) ((400 + throttle * 3 + 40) * 10));
+			case 0x42: return bytes(out, offset, 2, 14000 + (int) noise(100));
+			default: return -1;
+		}
+	}
+
+	/**
+	 * Supported PID bitmap of the range starting after the given PID, the last bit
+	 * indicating whether the next range is supported.
+	 */
+	private int bitmap(int base, int[] out, int offset) {
+		if(base > HIGHEST_SUPPORTED) {
+			return -1;
+		}
+
+		int bits = 0;
+
+		for (int i = 1; i <= 32 && base + i < 256; i++) {
+			if(SUPPORTED[base + i] || (i == 32 && base + i <= HIGHEST_SUPPORTED)) {
+				bits |= 0x80000000 >>> (i - 1);
+			}
+		}
+
+		return bytes(out, offset, 4, bits);
+	}
+
+	private double noise(double amplitude) {
+		return (random.nextDouble() * 2 - 1) * amplitude;
+	}
+
+	private static int percent(double percent) {
+		return (int) Math.max(0, Math.min(255, percent * 255 / 100));
+	}
+
+	private static int bytes(int[] out, int offset, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			out[offset + i] = (value >>> (8 * (count - 1 - i))) & 0xFF;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Splits a payload into single, first and consecutive frames.
+	 */
+	static List<String> frames(int[] payload, int length) {
+		List<String> frames = new ArrayList<>();
+
+		if(length <= MAX_SINGLE_FRAME_BYTES) {
+			frames.add(frame(HEADER, String.format("%02X", length), payload, 0, length, 0));
+			return frames;
+		}
+
+		frames.add(frame(HEADER, String.format("1%01X %02X", length >> 8, length & 0xFF), payload, 0, 6, 0));
+
+		int sequence = 1;
+
+		for (int offset = 6; offset < length; offset += 7) {
+			int count = Math.min(7, length - offset);
+			frames.add(frame(HEADER, String.format("2%01X", sequence & 0x0F), payload, offset, count, 7 - count));
+			sequence++;
+		}
+
+		return frames;
+	}
+
+	private static String frame(String header, String pci, int[] payload, int offset, int count, int padding) {
+		StringBuilder frame = new StringBuilder(header.length() + 3 * (count + padding + 2));
+		frame.append(header).append(' ').append(pci);
+
+		for (int i = 0; i < count; i++) {
+			frame.append(String.format(" %02X", payload[offset + i]));
+		}
+
+		for (int i = 0; i < padding; i++) {
+			frame.append(" 00");
+		}
+
+		return frame.toString();
+	}
+
+	/**
+	 * @return the bytes of the request, null if it is not made of hex bytes
+	 */
+	private static int[] parse(String request) {
+		String[] tokens = request.trim().split("\\s+");
+		int[] bytes = new int[tokens.length];
+
+		for (int i = 0; i < tokens.length; i++) {
+			if(tokens[i].length() != 2) {
+				return null;
+			}
+
+			try {
+				bytes[i] = Integer.parseInt(tokens[i], 16);
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		return bytes;
+	}
+}
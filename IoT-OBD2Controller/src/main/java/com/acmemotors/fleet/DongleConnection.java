@@ -0,0 +1,306 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.messaging.MessagingException;
+
+import com.acmemotors.integration.OBD2Framer;
+import com.acmemotors.integration.OBD2Gateway;
+
+/**
+ * {@link OBD2Gateway} to one dongle served by a {@link DongleEventLoop}.  Like the
+ * {@link com.acmemotors.integration.PipelinedOBD2Gateway}, commands are queued and only
+ * the oldest one is on the wire since an ELM327 aborts the command it works on when it
+ * receives a new character; the next one is written as soon as the prompt ending the
+ * reply is read.  Unlike it, nothing ever blocks: when the queue is full the command
+ * fails right away, and the connection is closed (failing every queued command) when a
+ * reply does not come within the reply timeout.  A reply only completes the oldest
+ * command once it was written, and the prompt the dongle sends alone on connection
+ * completes none.
+ *
+ * @author Michael Minella
+ */
+public class DongleConnection implements OBD2Gateway {
+
+	private static final byte[] END_OF_COMMAND = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	private final DongleEventLoop loop;
+
+	private final InetSocketAddress address;
+
+	private final int maxPending;
+
+	private final long replyTimeout;
+
+	private final OBD2Framer framer = new OBD2Framer();
+
+	private final Object monitor = new Object();
+
+	private final Deque<PendingCommand> pending = new ArrayDeque<>();
+
+	private SocketChannel channel;
+
+	private SelectionKey key;
+
+	private ByteBuffer output;
+
+	private long writtenAt;
+
+	private volatile Throwable closed;
+
+	DongleConnection(DongleEventLoop loop, InetSocketAddress address, int maxPending, long replyTimeout) {
+		this.loop = loop;
+		this.address = address;
+		this.maxPending = maxPending;
+		this.replyTimeout = replyTimeout;
+	}
+
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	@Override
+	public String send(String message) {
+		try {
+			return sendAsync(message).get(replyTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			throw new MessageTimeoutException("No reply received for " + message + " within " + replyTimeout + "ms");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting for a reply to " + message, e);
+		}
+		catch (ExecutionException e) {
+			throw new MessagingException("Unable to send " + message, e.getCause());
+		}
+	}
+
+	@Override
+	public CompletableFuture<String> sendAsync(String message) {
+		PendingCommand command = new PendingCommand(message);
+
+		synchronized (monitor) {
+			if(closed != null) {
+				command.reply.completeExceptionally(closed);
+			}
+			else if(pending.size() >= maxPending) {
+				command.reply.completeExceptionally(new IllegalStateException(
+						maxPending + " commands already wait for a reply from " + address));
+			}
+			else {
+				pending.addLast(command);
+
+				if(pending.size() == 1) {
+					loop.execute(this::writeNext);
+				}
+			}
+		}
+
+		return command.reply;
+	}
+
+	/**
+	 * Closes the connection, failing the commands waiting for a reply.
+	 */
+	public void close() {
+		loop.execute(() -> close(new IOException("Connection to " + address + " closed")));
+	}
+
+	public boolean isClosed() {
+		return closed != null;
+	}
+
+	void register(SocketChannel channel, Selector selector) throws IOException {
+		this.channel = channel;
+		this.key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+	}
+
+	/**
+	 * Handles the IO events of the connection, on the loop thread.
+	 */
+	void process(SelectionKey key) {
+		try {
+			if(key.isConnectable()) {
+				channel.finishConnect();
+				key.interestOps(SelectionKey.OP_READ);
+				writeNext();
+			}
+
+			if(key.isValid() && key.isWritable()) {
+				flush();
+			}
+
+			if(key.isValid() && key.isReadable()) {
+				read();
+			}
+		}
+		catch (IOException e) {
+			close(e);
+		}
+	}
+
+	void checkTimeout(long now) {
+		if(output != null && now - writtenAt > replyTimeout) {
+			close(new IOException("No reply from " + address + " within " + replyTimeout + "ms"));
+		}
+	}
+
+	void close(Throwable cause) {
+		synchronized (monitor) {
+			if(closed != null) {
+				return;
+			}
+
+			closed = cause;
+		}
+
+		if(key != null) {
+			key.cancel();
+		}
+
+		try {
+			if(channel != null) {
+				channel.close();
+			}
+		}
+		catch (IOException e) {
+			// Closing anyway
+		}
+
+		PendingCommand command;
+
+		while((command = poll()) != null) {
+			command.reply.completeExceptionally(cause);
+		}
+	}
+
+	private void read() throws IOException {
+		ByteBuffer frame;
+
+		while((frame = framer.pollFrame(channel)) != null) {
+			byte[] bytes = new byte[frame.remaining()];
+			frame.get(bytes);
+			String reply = new String(bytes, StandardCharsets.US_ASCII);
+
+			PendingCommand completed = pollWritten(reply);
+
+			if(completed == null) {
+				// Not a reply to the command on the wire: the prompt sent by the dongle on connection
+				continue;
+			}
+
+			output = null;
+			writeNext();
+
+			completed.reply.complete(reply);
+		}
+	}
+
+	/**
+	 * Writes the oldest command if it was not written yet and the connection is
+	 * established.
+	 */
+	private void writeNext() {
+		if(output != null || key == null || !channel.isConnected() || closed != null) {
+			return;
+		}
+
+		PendingCommand next;
+
+		synchronized (monitor) {
+			next = pending.peekFirst();
+		}
+
+		if(next == null) {
+			return;
+		}
+
+		next.written = true;
+
+		byte[] command = next.command.getBytes(StandardCharsets.US_ASCII);
+		output = ByteBuffer.allocate(command.length + END_OF_COMMAND.length);
+		output.put(command).put(END_OF_COMMAND).flip();
+		writtenAt = System.currentTimeMillis();
+
+		try {
+			flush();
+		}
+		catch (IOException e) {
+			close(e);
+		}
+	}
+
+	private void flush() throws IOException {
+		channel.write(output);
+
+		key.interestOps(output.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * @param reply a reply read from the dongle
+	 * @return the command answered by the reply, removed from the queue, null if the
+	 * 		oldest command was not written yet or the reply is the prompt alone
+	 */
+	private PendingCommand pollWritten(String reply) {
+		synchronized (monitor) {
+			PendingCommand oldest = pending.peekFirst();
+
+			if(oldest == null || !oldest.written || OBD2Framer.isPromptOnly(reply)) {
+				return null;
+			}
+
+			return pending.pollFirst();
+		}
+	}
+
+	private PendingCommand poll() {
+		synchronized (monitor) {
+			return pending.pollFirst();
+		}
+	}
+
+	private static class PendingCommand {
+
+		private final String command;
+
+		private final CompletableFuture<String> reply = new CompletableFuture<>();
+
+		/**
+		 * Whether the command was written to the dongle, only used on the loop thread.
+		 */
+		private boolean written;
+
+		private PendingCommand(String command) {
+			this.command = command;
+		}
+	}
+}
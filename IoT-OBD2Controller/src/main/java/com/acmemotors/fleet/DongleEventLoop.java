@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.springframework.context.Lifecycle;
+
+/**
+ * Single thread serving the connections to many dongles through one selector, so the
+ * number of threads does not grow with the number of cars.  Every read and write of a
+ * {@link DongleConnection} happens on this thread; other threads hand work over with
+ * {@link #execute(Runnable)}.
+ *
+ * @author Michael Minella
+ */
+public class DongleEventLoop implements Lifecycle {
+
+	/**
+	 * Longest time, in milliseconds, the loop waits for IO before checking timeouts
+	 */
+	private static final long TICK = 100;
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private Selector selector;
+
+	private Thread thread;
+
+	private volatile boolean running;
+
+	@Override
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		try {
+			selector = Selector.open();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to open a selector", e);
+		}
+
+		running = true;
+		thread = new Thread(this::run, "dongle-event-loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		selector.wakeup();
+
+		try {
+			thread.join(1000);
+			selector.close();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			// Closing anyway
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Opens a connection to a dongle.  The address is resolved on the calling thread,
+	 * the connection is then established in the background: commands sent before are
+	 * written once connected.
+	 *
+	 * @param address the address of the dongle
+	 * @param maxPending the maximum number of commands waiting for a reply
+	 * @param replyTimeout the time, in milliseconds, after which a command without
+	 * 		reply fails and the connection is closed
+	 * @return the connection
+	 */
+	public DongleConnection connect(InetSocketAddress address, int maxPending, long replyTimeout) {
+		DongleConnection connection = new DongleConnection(this, address, maxPending, replyTimeout);
+		// Looked up here rather than on the loop thread, which would stall every dongle
+		InetSocketAddress remote = address.isUnresolved() ?
+				new InetSocketAddress(address.getHostString(), address.getPort()) : address;
+
+		execute(() -> {
+			try {
+				SocketChannel channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				// Registered first so the channel is closed along with the connection
+				connection.register(channel, selector);
+				channel.connect(remote);
+			}
+			catch (IOException | RuntimeException e) {
+				// e.g. UnresolvedAddressException when the host is unknown
+				connection.close(e);
+			}
+		});
+
+		return connection;
+	}
+
+	/**
+	 * Runs the task on the loop thread.
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+
+		if(Thread.currentThread() != thread) {
+			selector.wakeup();
+		}
+	}
+
+	private void run() {
+		try {
+			while(running) {
+				Runnable task;
+
+				while((task = tasks.poll()) != null) {
+					try {
+						task.run();
+					}
+					catch (RuntimeException e) {
+						System.err.println("Dongle event loop task failed: " + e);
+					}
+				}
+
+				selector.select(TICK);
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					DongleConnection connection = (DongleConnection) key.attachment();
+
+					try {
+						connection.process(key);
+					}
+					catch (RuntimeException e) {
+						// e.g. CancelledKeyException, only this dongle is affected
+						connection.close(e);
+					}
+				}
+
+				long now = System.currentTimeMillis();
+
+				for (SelectionKey key : selector.keys()) {
+					DongleConnection connection = (DongleConnection) key.attachment();
+
+					try {
+						connection.checkTimeout(now);
+					}
+					catch (RuntimeException e) {
+						connection.close(e);
+					}
+				}
+			}
+		}
+		catch (IOException | ClosedSelectorException e) {
+			if(running) {
+				System.err.println("Dongle event loop failed: " + e.getMessage());
+			}
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				((DongleConnection) key.attachment()).close(new IOException("Event loop stopped"));
+			}
+		}
+	}
+}
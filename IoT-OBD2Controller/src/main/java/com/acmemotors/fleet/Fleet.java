@@ -0,0 +1,431 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.springframework.context.Lifecycle;
+import org.springframework.util.Assert;
+import org.springframework.util.backoff.BackOffExecution;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateRingBuffer;
+import com.acmemotors.gps.GpsSource;
+import com.acmemotors.integration.PipelinedOBD2Gateway;
+import com.acmemotors.obd2.OBD2Controller;
+import com.acmemotors.obd2.OBD2PollingMetrics;
+import com.acmemotors.obd2.OBD2SessionCache;
+
+/**
+ * Polls many cars from one process, for a depot gateway talking to the dongles of a
+ * whole fleet.  Each car gets its own {@link OBD2Controller} and polling loop, but the
+ * expensive parts are shared:
+ *
+ * <ul>
+ *     <li>every dongle connection is served by a single {@link DongleEventLoop} thread,</li>
+ *     <li>the replies are decoded by a small pool of worker threads, each with its own
+ *     decoder, and a car's next poll is scheduled on that pool rather than waited for
+ *     by a dedicated thread,</li>
+ *     <li>one uplink thread drains the samples of every car, tagged with its VIN.</li>
+ * </ul>
+ *
+ * The memory used per car is bounded: its connection buffers, its polling state and
+ * its ring of samples.  A car whose dongle fails or stops answering is reconnected
+ * without affecting the others, after a delay doubling on every failure until the car
+ * is polled again.  With an {@link OBD2SessionCache}, known cars are brought back up
+ * without the protocol search and the supported PIDs requests.
+ *
+ * @author Michael Minella
+ */
+public class Fleet implements Lifecycle {
+
+	public static final int DEFAULT_SAMPLE_BUFFER_SIZE = 64;
+
+	public static final long DEFAULT_RECONNECT_DELAY = 5000;
+
+	public static final long DEFAULT_MAX_RECONNECT_DELAY = 300000;
+
+	public static final int DEFAULT_CONNECT_THREADS = 16;
+
+	private final List<InetSocketAddress> dongles;
+
+	private final GpsSource gps;
+
+	private final BiConsumer<String, CarState> uplink;
+
+	private final int threads;
+
+	private int connectThreads = DEFAULT_CONNECT_THREADS;
+
+	private int sampleBufferSize = DEFAULT_SAMPLE_BUFFER_SIZE;
+
+	private int maxPendingCommands = PipelinedOBD2Gateway.DEFAULT_MAX_PENDING;
+
+	private long replyTimeout = PipelinedOBD2Gateway.DEFAULT_REPLY_TIMEOUT;
+
+	private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+	private long maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+
+	private ExponentialBackOff reconnectBackOff;
+
+	private OBD2SessionCache sessionCache;
+
+	private OBD2PollingMetrics metrics;
+
+	private DongleEventLoop loop;
+
+	private ScheduledExecutorService workers;
+
+	private ExecutorService connector;
+
+	private Thread uplinkThread;
+
+	private Vehicle[] vehicles;
+
+	private volatile boolean running;
+
+	/**
+	 * @param dongles the addresses of the dongles, one per car
+	 * @param gps the source of the location set on every sample
+	 * @param uplink receives the VIN of the car and each of its samples, on a single
+	 * 		thread; the sample must not be kept past the call
+	 * @param threads the number of threads decoding replies and scheduling the polls
+	 */
+	public Fleet(List<InetSocketAddress> dongles, GpsSource gps, BiConsumer<String, CarState> uplink, int threads) {
+		Assert.notEmpty(dongles, "At least one dongle is required");
+		Assert.isTrue(threads > 0, "threads must be positive");
+
+		this.dongles = dongles;
+		this.gps = gps;
+		this.uplink = uplink;
+		this.threads = threads;
+	}
+
+	/**
+	 * Parses a list of dongle addresses such as
+	 * <code>10.0.0.10:35000,10.0.0.11:35000</code>.  An address followed by
+	 * <code>*count</code> (<code>localhost:35000*200</code>) is repeated, which is
+	 * useful against the emulator where every connection is a separate car.
+	 *
+	 * @param dongles the addresses, separated by commas or line breaks
+	 * @return the addresses
+	 */
+	public static List<InetSocketAddress> parseDongles(String dongles) {
+		List<InetSocketAddress> addresses = new ArrayList<>();
+
+		for (String dongle : dongles.split("[,\\s]+")) {
+			if(dongle.isEmpty()) {
+				continue;
+			}
+
+			int count = 1;
+			int star = dongle.indexOf('*');
+
+			if(star > 0) {
+				count = Integer.parseInt(dongle.substring(star + 1));
+				dongle = dongle.substring(0, star);
+			}
+
+			int colon = dongle.lastIndexOf(':');
+			Assert.isTrue(colon > 0, "Invalid dongle address " + dongle + ", expected host:port");
+
+			InetSocketAddress address = InetSocketAddress.createUnresolved(dongle.substring(0, colon),
+					Integer.parseInt(dongle.substring(colon + 1)));
+
+			for (int i = 0; i < count; i++) {
+				addresses.add(address);
+			}
+		}
+
+		return addresses;
+	}
+
+	/**
+	 * @param connectThreads the number of cars initialized (connection script,
+	 * 		supported PIDs, VIN) at the same time
+	 */
+	public void setConnectThreads(int connectThreads) {
+		this.connectThreads = connectThreads;
+	}
+
+	/**
+	 * @param sampleBufferSize the number of samples buffered per car for the uplink
+	 */
+	public void setSampleBufferSize(int sampleBufferSize) {
+		this.sampleBufferSize = sampleBufferSize;
+	}
+
+	public void setMaxPendingCommands(int maxPendingCommands) {
+		this.maxPendingCommands = maxPendingCommands;
+	}
+
+	/**
+	 * @param replyTimeout the time, in milliseconds, after which a dongle that did not
+	 * 		reply is reconnected
+	 */
+	public void setReplyTimeout(long replyTimeout) {
+		this.replyTimeout = replyTimeout;
+	}
+
+	/**
+	 * @param reconnectDelay the time, in milliseconds, waited before reconnecting a
+	 * 		dongle that failed for the first time
+	 */
+	public void setReconnectDelay(long reconnectDelay) {
+		this.reconnectDelay = reconnectDelay;
+	}
+
+	/**
+	 * @param maxReconnectDelay the maximum time, in milliseconds, waited before
+	 * 		reconnecting a dongle that keeps failing
+	 */
+	public void setMaxReconnectDelay(long maxReconnectDelay) {
+		this.maxReconnectDelay = maxReconnectDelay;
+	}
+
+	/**
+	 * @param sessionCache remembers the sessions negotiated with the cars, null (the
+	 * 		default) to negotiate on every connection
+	 */
+	public void setSessionCache(OBD2SessionCache sessionCache) {
+		this.sessionCache = sessionCache;
+	}
+
+	/**
+	 * @param metrics records the latencies of the polling loops of every car, null (the
+	 * 		default) to record nothing
+	 */
+	public void setMetrics(OBD2PollingMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		running = true;
+
+		reconnectBackOff = new ExponentialBackOff(reconnectDelay, 2);
+		reconnectBackOff.setMaxInterval(Math.max(reconnectDelay, maxReconnectDelay));
+
+		loop = new DongleEventLoop();
+		loop.start();
+
+		workers = Executors.newScheduledThreadPool(threads, daemonThreads("fleet-worker-"));
+		connector = Executors.newFixedThreadPool(connectThreads, daemonThreads("fleet-connector-"));
+
+		vehicles = new Vehicle[dongles.size()];
+
+		for (int i = 0; i < vehicles.length; i++) {
+			Vehicle vehicle = new Vehicle(dongles.get(i), i);
+			vehicles[i] = vehicle;
+			connector.execute(() -> connect(vehicle));
+		}
+
+		uplinkThread = new Thread(this::drain, "fleet-uplink");
+		uplinkThread.setDaemon(true);
+		uplinkThread.start();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		connector.shutdownNow();
+		workers.shutdownNow();
+		loop.stop();
+		uplinkThread.interrupt();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the number of cars connected and polled
+	 */
+	public int getConnectedCount() {
+		int count = 0;
+
+		for (Vehicle vehicle : vehicles) {
+			if(vehicle.vin != null && !vehicle.connection.isClosed()) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Opens the connection to a car and runs the connection script, on a connector
+	 * thread since it waits for the replies.
+	 */
+	private void connect(Vehicle vehicle) {
+		try {
+			vehicle.connection = loop.connect(vehicle.address, maxPendingCommands, replyTimeout);
+
+			OBD2Controller controller = new OBD2Controller(vehicle.connection, gps, vehicle.samples);
+			controller.setMetrics(metrics);
+
+			if(sessionCache != null) {
+				controller.setSessionCache(sessionCache, vehicle.id);
+			}
+
+			controller.afterPropertiesSet();
+			vehicle.vin = resolveVin(controller, vehicle);
+			vehicle.controller = controller;
+
+			workers.execute(() -> poll(vehicle));
+		}
+		catch (Exception e) {
+			reconnect(vehicle, e);
+		}
+	}
+
+	/**
+	 * @return the VIN of the car or, when it reports none, the id of its dongle
+	 */
+	private static String resolveVin(OBD2Controller controller, Vehicle vehicle) {
+		try {
+			return controller.getVin();
+		}
+		catch (IllegalStateException e) {
+			return vehicle.id;
+		}
+	}
+
+	/**
+	 * Queues the requests due for a car and, once their replies are decoded,
+	 * schedules its next poll.
+	 */
+	private void poll(Vehicle vehicle) {
+		if(!running) {
+			return;
+		}
+
+		vehicle.controller.getCarStateAsync(workers).whenComplete((state, error) -> {
+			if(error != null) {
+				reconnect(vehicle, error);
+			}
+			else if(running) {
+				vehicle.reconnectDelays = null;
+				long wait = vehicle.controller.getNextSampleTime() - System.currentTimeMillis();
+				workers.schedule(() -> poll(vehicle), Math.max(0, wait), TimeUnit.MILLISECONDS);
+			}
+		});
+	}
+
+	private void reconnect(Vehicle vehicle, Throwable error) {
+		if(vehicle.connection != null) {
+			vehicle.connection.close();
+		}
+
+		if(!running) {
+			return;
+		}
+
+		if(vehicle.reconnectDelays == null) {
+			vehicle.reconnectDelays = reconnectBackOff.start();
+		}
+
+		long delay = vehicle.reconnectDelays.nextBackOff();
+
+		System.err.println("Lost the dongle at " + vehicle.address + ", reconnecting in " + delay + "ms: " + error);
+
+		workers.schedule(() -> connector.execute(() -> connect(vehicle)), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Hands the samples of every car over to the uplink.
+	 */
+	private void drain() {
+		while(running) {
+			int count = 0;
+
+			for (Vehicle vehicle : vehicles) {
+				count += vehicle.samples.poll(vehicle.sink, sampleBufferSize);
+			}
+
+			if(count == 0) {
+				try {
+					Thread.sleep(100);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private class Vehicle {
+
+		private final InetSocketAddress address;
+
+		/**
+		 * Identifies the dongle in the session cache: its address and its index in the
+		 * list, several cars (such as emulated ones) sharing an address
+		 */
+		private final String id;
+
+		private final CarStateRingBuffer samples = new CarStateRingBuffer(sampleBufferSize);
+
+		private final Consumer<CarState> sink = state -> uplink.accept(this.vin, state);
+
+		private volatile DongleConnection connection;
+
+		private volatile OBD2Controller controller;
+
+		private volatile String vin;
+
+		/**
+		 * Delays before the next reconnections, null while the car is polled
+		 */
+		private volatile BackOffExecution reconnectDelays;
+
+		private Vehicle(InetSocketAddress address, int index) {
+			this.address = address;
+			this.id = address.getHostString() + ":" + address.getPort() + "#" + index;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.springframework.core.env.CommandLinePropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.core.env.PropertySourcesPropertyResolver;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.gps.GpsSource;
+import com.acmemotors.gps.NmeaGpsSource;
+import com.acmemotors.integration.PipelinedOBD2Gateway;
+import com.acmemotors.journal.CarStateJournal;
+import com.acmemotors.journal.JournalUplink;
+import com.acmemotors.obd2.OBD2PollingMetrics;
+import com.acmemotors.obd2.OBD2SessionCache;
+
+/**
+ * Runs a {@link Fleet} from the command line.  {@link com.acmemotors.Main} hands over
+ * to it when a list of dongles is given:
+ *
+ * <code>
+ * $ java -jar IoT-OBD2Controller.jar --dongles=10.0.0.10:35000,10.0.0.11:35000 \
+ *     [--donglesFile=dongles.txt] [--fleetThreads=4]
+ * </code>
+ *
+ * Every sample is printed prefixed with the VIN of its car.  With --journalDirectory
+ * and --ingestUrl, the samples of each car are also journaled in a directory named
+ * after its VIN and uploaded by a single uploader thread, with the options of the
+ * single car mode (see {@link JournalUplink}).
+ * --gpsHost/--gpsPort or --gpsDevice set the location of the depot on every sample.
+ * --maxPendingCommands and --replyTimeout bound the commands queued on each dongle and
+ * the time it has to reply, as in the single car mode.
+ * --sessionCache=&lt;FILE&gt; remembers the session negotiated with each car, and
+ * --reconnectDelay/--maxReconnectDelay bound the delays between reconnections.
+ * With --metricsInterval, the latencies of the polling loops of the whole fleet are
+ * printed to the standard error every --metricsInterval milliseconds.
+ *
+ * @author Michael Minella
+ */
+public final class FleetMain {
+
+	private FleetMain() {
+	}
+
+	/**
+	 * @param args the command line arguments
+	 * @return true if the arguments list dongles
+	 */
+	public static boolean isFleet(String[] args) {
+		CommandLinePropertySource<?> options = new SimpleCommandLinePropertySource(args);
+
+		return options.containsProperty("dongles") || options.containsProperty("donglesFile");
+	}
+
+	public static void main(String[] args) throws Exception {
+		MutablePropertySources sources = new MutablePropertySources();
+		sources.addFirst(new SimpleCommandLinePropertySource(args));
+		PropertyResolver options = new PropertySourcesPropertyResolver(sources);
+
+		String dongles = options.getProperty("dongles", "");
+
+		if(options.containsProperty("donglesFile")) {
+			dongles += "\n" + new String(Files.readAllBytes(new File(options.getProperty("donglesFile")).toPath()),
+					StandardCharsets.UTF_8);
+		}
+
+		List<InetSocketAddress> addresses = Fleet.parseDongles(dongles);
+
+		GpsSource gps = () -> null;
+
+		if(options.containsProperty("gpsDevice")) {
+			NmeaGpsSource source = new NmeaGpsSource(new File(options.getProperty("gpsDevice")));
+			source.start();
+			gps = source;
+		}
+		else if(options.containsProperty("gpsHost")) {
+			NmeaGpsSource source = new NmeaGpsSource(options.getProperty("gpsHost"),
+					options.getProperty("gpsPort", Integer.class, 11123));
+			source.start();
+			gps = source;
+		}
+
+		Fleet fleet = new Fleet(addresses, gps, uplink(options),
+				options.getProperty("fleetThreads", Integer.class, Runtime.getRuntime().availableProcessors()));
+		fleet.setSampleBufferSize(options.getProperty("sampleBufferSize", Integer.class, Fleet.DEFAULT_SAMPLE_BUFFER_SIZE));
+		fleet.setMaxPendingCommands(options.getProperty("maxPendingCommands", Integer.class,
+				PipelinedOBD2Gateway.DEFAULT_MAX_PENDING));
+		fleet.setReplyTimeout(options.getProperty("replyTimeout", Long.class, PipelinedOBD2Gateway.DEFAULT_REPLY_TIMEOUT));
+
+		if(options.containsProperty("sessionCache")) {
+			fleet.setSessionCache(new OBD2SessionCache(new File(options.getProperty("sessionCache"))));
+		}
+
+		fleet.setReconnectDelay(options.getProperty("reconnectDelay", Long.class, Fleet.DEFAULT_RECONNECT_DELAY));
+		fleet.setMaxReconnectDelay(options.getProperty("maxReconnectDelay", Long.class, Fleet.DEFAULT_MAX_RECONNECT_DELAY));
+
+		long metricsInterval = options.getProperty("metricsInterval", Long.class, 0L);
+
+		if(metricsInterval > 0) {
+			fleet.setMetrics(OBD2PollingMetrics.reportedEvery(metricsInterval));
+		}
+
+		fleet.start();
+
+		System.out.println("Polling " + addresses.size() + " dongles");
+		System.out.println("VIN," + CarState.CSV_HEADER);
+
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Prints the samples and, when --journalDirectory is set, journals them per car.
+	 */
+	private static BiConsumer<String, CarState> uplink(PropertyResolver options) {
+		JournalUplink uplink = JournalUplink.create(options, new RestTemplate());
+
+		if(uplink == null) {
+			return (vin, state) -> System.out.println(vin + "," + state);
+		}
+
+		Map<String, CarStateJournal> journals = new HashMap<>();
+
+		// Only called from the uplink thread of the fleet
+		return (vin, state) -> {
+			System.out.println(vin + "," + state);
+
+			try {
+				CarStateJournal journal = journals.get(vin);
+
+				if(journal == null) {
+					journal = uplink.open(new File(uplink.getDirectory(), vin), vin);
+					journals.put(vin, journal);
+				}
+
+				journal.append(state);
+			}
+			catch (IOException e) {
+				System.err.println("Unable to journal the sample of " + vin + ": " + e.getMessage());
+			}
+		};
+	}
+}
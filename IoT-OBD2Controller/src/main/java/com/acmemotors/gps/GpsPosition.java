@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+/**
+ * A fix of the GPS.  Instances are immutable so the latest fix can be handed from the
+ * thread reading the GPS to the sampling thread by publishing a reference.
+ *
+ * @author Michael Minella
+ */
+public final class GpsPosition {
+
+	private final double latitude;
+
+	private final double longitude;
+
+	private final long timestamp;
+
+	/**
+	 * @param latitude the latitude in decimal degrees, negative south of the equator
+	 * @param longitude the longitude in decimal degrees, negative west of Greenwich
+	 * @param timestamp the time, in milliseconds, the fix was received
+	 */
+	public GpsPosition(double latitude, double longitude, long timestamp) {
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.timestamp = timestamp;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	/**
+	 * @return the time, in milliseconds, the fix was received
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return latitude + "," + longitude;
+	}
+}
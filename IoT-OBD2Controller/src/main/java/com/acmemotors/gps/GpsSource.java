@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+/**
+ * Source of the location of the car.  Implementations track the GPS in the background
+ * so reading the location never waits on the GPS.
+ *
+ * @author Michael Minella
+ */
+public interface GpsSource {
+
+	/**
+	 * @return the latest fix, null if the GPS has not reported any yet
+	 */
+	GpsPosition getPosition();
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+
+import org.springframework.context.Lifecycle;
+
+/**
+ * {@link GpsSource} reading the NMEA sentences streamed by a GPS, either over TCP (GPS
+ * apps such as GPS2IP) or from a device or file (a serial GPS such as
+ * <code>/dev/ttyUSB0</code>).  A background thread parses the sentences with a
+ * {@link NmeaReader} and publishes each fix through a volatile reference, so
+ * {@link #getPosition()} is a single read that never blocks.
+ *
+ * The connection is reopened after a delay when it fails, the GPS goes silent for the
+ * read timeout or the file ends.
+ *
+ * @author Michael Minella
+ */
+public class NmeaGpsSource implements GpsSource, Lifecycle {
+
+	public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+	public static final long DEFAULT_RECONNECT_DELAY = 1000;
+
+	private final String description;
+
+	private final Callable<InputStream> opener;
+
+	private final NmeaReader reader = new NmeaReader();
+
+	private long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+	private volatile GpsPosition position;
+
+	private volatile InputStream input;
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	/**
+	 * @param host the host streaming the sentences
+	 * @param port the port streaming the sentences
+	 */
+	public NmeaGpsSource(String host, int port) {
+		this.description = host + ":" + port;
+		this.opener = () -> {
+			Socket socket = new Socket();
+
+			try {
+				socket.connect(new InetSocketAddress(host, port), DEFAULT_READ_TIMEOUT);
+				socket.setSoTimeout(DEFAULT_READ_TIMEOUT);
+				return socket.getInputStream();
+			}
+			catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+		};
+	}
+
+	/**
+	 * @param device the device or file the sentences are read from
+	 */
+	public NmeaGpsSource(File device) {
+		this.description = device.getPath();
+		this.opener = () -> new FileInputStream(device);
+	}
+
+	/**
+	 * @param reconnectDelay the time, in milliseconds, waited before reopening the
+	 * 		connection
+	 */
+	public void setReconnectDelay(long reconnectDelay) {
+		this.reconnectDelay = reconnectDelay;
+	}
+
+	@Override
+	public GpsPosition getPosition() {
+		return position;
+	}
+
+	@Override
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+
+		running = true;
+		thread = new Thread(this::run, "gps-reader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		close();
+		thread.interrupt();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void run() {
+		while(running) {
+			try {
+				input = opener.call();
+
+				reader.read(input, latest -> position = latest);
+			}
+			catch (Exception e) {
+				if(running) {
+					System.err.println("Unable to read the GPS at " + description + ": " + e.getMessage());
+				}
+			}
+			finally {
+				close();
+			}
+
+			try {
+				Thread.sleep(reconnectDelay);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void close() {
+		InputStream current = input;
+
+		if(current != null) {
+			try {
+				current.close();
+			}
+			catch (IOException e) {
+				// Already closed
+			}
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Streaming reader of the NMEA 0183 sentences sent by a GPS.  Bytes are fed as they
+ * are received, either one at a time with {@link #accept(byte)} or from a stream with
+ * {@link #read(InputStream, Consumer)}, and a {@link GpsPosition} is returned for every
+ * GGA (fix data) or RMC (recommended minimum) sentence reporting a valid fix, whatever
+ * the talker (GP, GN, GL...).  Other sentences, sentences without a fix and sentences
+ * with a wrong checksum are ignored.
+ *
+ * Sentences are scanned in place in a reused buffer: no object other than the
+ * positions is created.  Not thread safe.
+ *
+ * @author Michael Minella
+ */
+public class NmeaReader {
+
+	/**
+	 * NMEA limits sentences to 82 characters, some receivers send longer proprietary ones
+	 */
+	static final int MAX_SENTENCE_LENGTH = 128;
+
+	private static final int MAX_FIELDS = 24;
+
+	private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10};
+
+	private final LongSupplier clock;
+
+	private final byte[] sentence = new byte[MAX_SENTENCE_LENGTH];
+
+	private final byte[] chunk = new byte[512];
+
+	private final int[] fieldStarts = new int[MAX_FIELDS];
+
+	private final int[] fieldEnds = new int[MAX_FIELDS];
+
+	private int length;
+
+	private boolean overflow;
+
+	public NmeaReader() {
+		this(System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock returns the time, in milliseconds, set on the positions read
+	 */
+	public NmeaReader(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Reads sentences until the end of the stream.
+	 *
+	 * @param input the stream of sentences
+	 * @param consumer receives the position of every sentence reporting a fix
+	 * @throws IOException if the stream cannot be read
+	 */
+	public void read(InputStream input, Consumer<GpsPosition> consumer) throws IOException {
+		int count;
+
+		while((count = input.read(chunk)) >= 0) {
+			for (int i = 0; i < count; i++) {
+				GpsPosition position = accept(chunk[i]);
+
+				if(position != null) {
+					consumer.accept(position);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param b the next byte received from the GPS
+	 * @return the position reported by the sentence ended by the byte, null if the byte
+	 * 		does not end a sentence reporting a fix
+	 */
+	public GpsPosition accept(byte b) {
+		if(b == '$') {
+			// Start of a sentence, also resynchronizes after garbage
+			sentence[0] = b;
+			length = 1;
+			overflow = false;
+			return null;
+		}
+
+		if(b == '\r' || b == '\n') {
+			GpsPosition position = length > 0 && !overflow ? parse() : null;
+			length = 0;
+			return position;
+		}
+
+		if(length == 0) {
+			return null;
+		}
+
+		if(length == sentence.length) {
+			overflow = true;
+		}
+		else {
+			sentence[length++] = b;
+		}
+
+		return null;
+	}
+
+	private GpsPosition parse() {
+		int end = length;
+
+		if(end > 3 && sentence[end - 3] == '*') {
+			end -= 3;
+
+			int checksum = 0;
+
+			for (int i = 1; i < end; i++) {
+				checksum ^= sentence[i];
+			}
+
+			if(checksum != (hex(sentence[end + 1]) << 4 | hex(sentence[end + 2]))) {
+				return null;
+			}
+		}
+
+		int fields = 0;
+		fieldStarts[0] = 1;
+
+		for (int i = 1; i < end && fields < MAX_FIELDS - 1; i++) {
+			if(sentence[i] == ',') {
+				fieldEnds[fields++] = i;
+				fieldStarts[fields] = i + 1;
+			}
+		}
+
+		fieldEnds[fields++] = end;
+
+		if(fields < 7 || fieldEnds[0] - fieldStarts[0] != 5) {
+			return null;
+		}
+
+		int type = fieldStarts[0] + 2;
+
+		if(is(type, 'G', 'G', 'A')) {
+			// $--GGA,time,lat,N/S,lon,E/W,quality,...
+			if(fieldEnds[6] == fieldStarts[6] || sentence[fieldStarts[6]] == '0') {
+				return null;
+			}
+
+			return position(2);
+		}
+		else if(is(type, 'R', 'M', 'C')) {
+			// $--RMC,time,status,lat,N/S,lon,E/W,...
+			if(fieldEnds[2] == fieldStarts[2] || sentence[fieldStarts[2]] != 'A') {
+				return null;
+			}
+
+			return position(3);
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param field the index of the latitude field, followed by the hemisphere, the
+	 * 		longitude and its hemisphere
+	 */
+	private GpsPosition position(int field) {
+		double latitude = coordinate(field, 'S');
+		double longitude = coordinate(field + 2, 'W');
+
+		if(Double.isNaN(latitude) || Double.isNaN(longitude)) {
+			return null;
+		}
+
+		return new GpsPosition(latitude, longitude, clock.getAsLong());
+	}
+
+	/**
+	 * Converts a (d)ddmm.mmmm field and its hemisphere to decimal degrees.
+	 */
+	private double coordinate(int field, char negativeHemisphere) {
+		double value = decimal(fieldStarts[field], fieldEnds[field]);
+
+		if(Double.isNaN(value) || fieldEnds[field + 1] == fieldStarts[field + 1]) {
+			return Double.NaN;
+		}
+
+		int degrees = (int) (value / 100);
+		double coordinate = degrees + (value - degrees * 100) / 60;
+
+		return sentence[fieldStarts[field + 1]] == negativeHemisphere ? -coordinate : coordinate;
+	}
+
+	private double decimal(int start, int end) {
+		long digits = 0;
+		int decimals = -1;
+
+		for (int i = start; i < end; i++) {
+			byte b = sentence[i];
+
+			if(b == '.' && decimals < 0) {
+				decimals = 0;
+			}
+			else if(b >= '0' && b <= '9') {
+				// Decimals past the precision of the table are dropped
+				if(decimals < POWERS_OF_TEN.length - 1) {
+					digits = digits * 10 + (b - '0');
+
+					if(decimals >= 0) {
+						decimals++;
+					}
+				}
+			}
+			else {
+				return Double.NaN;
+			}
+		}
+
+		if(start == end) {
+			return Double.NaN;
+		}
+
+		return digits / POWERS_OF_TEN[Math.max(decimals, 0)];
+	}
+
+	private boolean is(int offset, char a, char b, char c) {
+		return sentence[offset] == a && sentence[offset + 1] == b && sentence[offset + 2] == c;
+	}
+
+	private static int hex(byte b) {
+		if(b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		else if(b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		}
+		else if(b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+
+		return -256;
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.integration;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.springframework.util.Assert;
+
+/**
+ * Splits the byte stream coming from an ELM327 dongle into replies, each reply ending
+ * with the '&gt;' prompt.  Bytes are read in chunks into a reusable buffer and each
+ * reply is returned as a slice of that buffer, so the bytes are never copied and the
+ * buffer is only reallocated when a reply outgrows it.  Carriage returns, which the
+ * dongle ends its lines with, are translated to line feeds while scanning for the
+ * prompt.
+ *
+ * Bytes read past the prompt are kept for the next reply.  The slice returned is only
+ * valid until the next call and must not be modified.  Instances are not thread safe:
+ * use one framer per connection.
+ *
+ * @author Michael Minella
+ */
+public class OBD2Framer {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+
+	private static final byte PROMPT = '>';
+
+	private final int maxFrameSize;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Number of bytes at the start of the buffer already scanned for the prompt.
+	 */
+	private int scanned;
+
+	/**
+	 * Length of the frame returned by the previous call, discarded by the next one.
+	 */
+	private int frameLength;
+
+	public OBD2Framer() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	/**
+	 * @param capacity the initial size of the buffer
+	 * @param maxFrameSize the size past which a reply without a prompt is considered
+	 * 		garbage
+	 */
+	public OBD2Framer(int capacity, int maxFrameSize) {
+		Assert.isTrue(capacity > 0, "capacity must be positive");
+		Assert.isTrue(maxFrameSize >= capacity, "maxFrameSize must be at least the capacity");
+
+		this.buffer = ByteBuffer.allocate(capacity);
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Reads the next reply from a stream, reading as many bytes at once as the stream
+	 * has available.
+	 *
+	 * @param inputStream the stream to read
+	 * @return the reply, prompt included, or null if the stream ended between replies
+	 * @throws IOException if the stream ends in the middle of a reply or the reply is
+	 * 		too large
+	 */
+	public ByteBuffer nextFrame(InputStream inputStream) throws IOException {
+		discardFrame();
+
+		int end;
+
+		while((end = scan()) < 0) {
+			ensureCapacity();
+
+			int count = inputStream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+			if(count < 0) {
+				return endOfStream();
+			}
+
+			buffer.position(buffer.position() + count);
+		}
+
+		return frame(end);
+	}
+
+	/**
+	 * Reads the next reply from a stream like {@link #nextFrame(InputStream)}, along
+	 * with the replies already read past it, so a reply that came in the same chunk is
+	 * not held back until more bytes are read.
+	 *
+	 * @param inputStream the stream to read
+	 * @return the replies, each one ending with the prompt, or null if the stream ended
+	 * 		between replies
+	 * @throws IOException if the stream ends in the middle of a reply or the reply is
+	 * 		too large
+	 */
+	public ByteBuffer nextFrames(InputStream inputStream) throws IOException {
+		if(nextFrame(inputStream) == null) {
+			return null;
+		}
+
+		int end = frameLength;
+		int next;
+
+		while((next = scan()) >= 0) {
+			end = next;
+		}
+
+		return frame(end);
+	}
+
+	/**
+	 * Reads the next reply from a blocking channel.
+	 *
+	 * @param channel the channel to read
+	 * @return the reply, prompt included, or null if the channel reached the end of the
+	 * 		stream between replies
+	 * @throws IOException if the channel reaches the end of the stream in the middle of
+	 * 		a reply or the reply is too large
+	 */
+	public ByteBuffer nextFrame(ReadableByteChannel channel) throws IOException {
+		discardFrame();
+
+		int end;
+
+		while((end = scan()) < 0) {
+			ensureCapacity();
+
+			if(channel.read(buffer) < 0) {
+				return endOfStream();
+			}
+		}
+
+		return frame(end);
+	}
+
+	/**
+	 * Reads the bytes available on a non-blocking channel, without waiting for more.
+	 *
+	 * @param channel the channel to read
+	 * @return the next reply, prompt included, or null if it has not been fully
+	 * 		received yet
+	 * @throws IOException if the channel reached the end of the stream or the reply is
+	 * 		too large
+	 */
+	public ByteBuffer pollFrame(ReadableByteChannel channel) throws IOException {
+		discardFrame();
+
+		int end;
+
+		while((end = scan()) < 0) {
+			ensureCapacity();
+
+			int count = channel.read(buffer);
+
+			if(count < 0) {
+				throw new EOFException("Connection closed by the dongle");
+			}
+			else if(count == 0) {
+				return null;
+			}
+		}
+
+		return frame(end);
+	}
+
+	/**
+	 * @return the number of bytes read past the last reply returned
+	 */
+	public int getBufferedBytes() {
+		return buffer.position() - frameLength;
+	}
+
+	/**
+	 * Tells whether a reply is nothing but the prompt, as sent by the dongle when it is
+	 * ready after a connection or a reset.  A reply to a command always holds something
+	 * before the prompt (the echo, OK, ?, the data or NO DATA), so such a reply answers
+	 * no command.
+	 *
+	 * @param reply the reply, prompt included
+	 * @return true if the reply holds only whitespace before the prompt
+	 */
+	public static boolean isPromptOnly(CharSequence reply) {
+		int length = reply.length();
+
+		if(length == 0 || reply.charAt(length - 1) != PROMPT) {
+			return false;
+		}
+
+		for (int i = 0; i < length - 1; i++) {
+			if(!Character.isWhitespace(reply.charAt(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Scans the bytes not scanned yet for the prompt.
+	 *
+	 * @return the index following the prompt, -1 if there is none
+	 */
+	private int scan() {
+		byte[] bytes = buffer.array();
+		int offset = buffer.arrayOffset();
+		int limit = buffer.position();
+
+		while(scanned < limit) {
+			byte b = bytes[offset + scanned++];
+
+			if(b == PROMPT) {
+				return scanned;
+			}
+			else if(b == '\r') {
+				bytes[offset + scanned - 1] = '\n';
+			}
+		}
+
+		return -1;
+	}
+
+	private ByteBuffer frame(int end) {
+		frameLength = end;
+
+		ByteBuffer frame = buffer.duplicate();
+		frame.position(0);
+		frame.limit(end);
+
+		return frame.slice();
+	}
+
+	/**
+	 * Moves the bytes read past the previous frame to the start of the buffer.
+	 */
+	private void discardFrame() {
+		if(frameLength > 0) {
+			buffer.limit(buffer.position());
+			buffer.position(frameLength);
+			buffer.compact();
+
+			scanned -= frameLength;
+			frameLength = 0;
+		}
+	}
+
+	private void ensureCapacity() throws IOException {
+		if(buffer.hasRemaining()) {
+			return;
+		}
+
+		if(buffer.capacity() >= maxFrameSize) {
+			throw new IOException("No prompt found in the last " + buffer.capacity() + " bytes");
+		}
+
+		ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxFrameSize));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+	private ByteBuffer endOfStream() throws IOException {
+		if(buffer.position() > 0) {
+			throw new IOException("Socket closed during message assembly");
+		}
+
+		return null;
+	}
+}
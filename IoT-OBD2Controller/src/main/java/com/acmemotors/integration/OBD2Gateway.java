@@ -15,15 +15,31 @@
  */
 package com.acmemotors.integration;
 
-import org.springframework.integration.annotation.Gateway;
-import org.springframework.integration.annotation.MessagingGateway;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * Sends commands to the OBD 2 dongle.
+ *
  * @author mminella
  */
-@MessagingGateway(name="OBD2Gateway")
 public interface OBD2Gateway {
 
-	@Gateway(requestChannel = "requests", replyChannel = "results")
+	/**
+	 * Sends the command and waits for the dongle's reply.
+	 *
+	 * @param message the command
+	 * @return the full reply, up to and including the prompt
+	 */
 	String send(String message);
+
+	/**
+	 * Sends the command without waiting for the reply.  Implementations that can not
+	 * overlap the wait with other work simply block.
+	 *
+	 * @param message the command
+	 * @return the future reply
+	 */
+	default CompletableFuture<String> sendAsync(String message) {
+		return CompletableFuture.completedFuture(send(message));
+	}
 }
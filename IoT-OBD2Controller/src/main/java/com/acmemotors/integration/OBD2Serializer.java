@@ -17,16 +17,25 @@ package com.acmemotors.integration;
 
 import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * @author mminella
  */
 public class OBD2Serializer implements Serializer<String>, Deserializer<String>{
 
+	private final Map<InputStream, OBD2Framer> framers =
+			Collections.synchronizedMap(new WeakHashMap<InputStream, OBD2Framer>());
+
 	/**
 	 * Convert a CustomOrder object into a byte-stream
 	 *
@@ -41,47 +50,35 @@ public class OBD2Serializer implements Serializer<String>, Deserializer<String>{
 	}
 
 	/**
-	 * Convert a raw byte stream into a CustomOrder
+	 * Reads the next replies from the dongle.  The stream is read in chunks by a
+	 * {@link OBD2Framer} kept for each connection, which also keeps the bytes read past
+	 * the last prompt for the next call.  Every reply complete in the bytes read is
+	 * returned: the NIO connections only call the deserializer again when the socket
+	 * has bytes available, so a reply left in the framer would wait for the dongle to
+	 * send something else.
 	 *
 	 * @param inputStream
-	 * @return
+	 * @return the replies, each one ending with the prompt, with carriage returns
+	 * 		translated to line feeds
 	 * @throws IOException
 	 */
 	@Override
 	public String deserialize(InputStream inputStream) throws IOException {
-		StringBuilder builder = new StringBuilder();
-
-		int c;
-		while(true) {
-			c = inputStream.read();
-			checkClosure(c);
-
-			if(c == '\r') {
-				c = '\n';
-			}
+		OBD2Framer framer = framers.get(inputStream);
 
-			builder.append((char)c);
-
-			if(c == '>') {
-				break;
-			}
+		if(framer == null) {
+			framer = new OBD2Framer();
+			framers.put(inputStream, framer);
 		}
 
-		return builder.toString();
-	}
+		ByteBuffer frame = framer.nextFrames(inputStream);
 
-	/**
-	 * Check whether the byte passed in is the "closed socket" byte
-	 * Note, I put this in here just as an example, but you could just extend the
-	 * {@link org.springframework.integration.ip.tcp.serializer.AbstractByteArraySerializer} class
-	 * which has this method
-	 *
-	 * @param bite
-	 * @throws IOException
-	 */
-	protected void checkClosure(int bite) throws IOException {
-		if (bite < 0) {
-			throw new IOException("Socket closed during message assembly");
+		if(frame == null) {
+			framers.remove(inputStream);
+			throw new SoftEndOfStreamException("Socket closed between replies");
 		}
+
+		return new String(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(),
+				StandardCharsets.US_ASCII);
 	}
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.integration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpConnection;
+import org.springframework.integration.ip.tcp.connection.TcpListener;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.util.Assert;
+
+/**
+ * Non-blocking {@link OBD2Gateway} that talks to the dongle directly through a client
+ * connection factory instead of a request/reply gateway.  Callers hand commands over
+ * with {@link #sendAsync(String)} and get a future back immediately, leaving them free
+ * to do other work (decoding the previous reply, looking up the GPS position, etc)
+ * while the dongle processes the command.
+ *
+ * An ELM327 aborts the command it is working on whenever it receives a new character,
+ * so only one command is ever on the wire.  The others wait in a bounded queue and are
+ * written as soon as the '&gt;' prompt ending the previous reply is received.  Since
+ * replies come back in the order the commands were written, each reply is correlated
+ * with the oldest outstanding command, provided it was written.  A reply made of the
+ * prompt alone, which the dongle sends when it is ready after a connection and which
+ * can arrive after the first command was written, answers no command and is dropped.
+ * A message can hold several replies read together (see {@link OBD2Serializer}), each
+ * one answering its own command.  When the queue is full, {@link #sendAsync} blocks
+ * until a reply frees a slot.
+ *
+ * @author Michael Minella
+ */
+public class PipelinedOBD2Gateway implements OBD2Gateway, TcpListener, InitializingBean {
+
+	public static final int DEFAULT_MAX_PENDING = 8;
+
+	public static final long DEFAULT_REPLY_TIMEOUT = 5000;
+
+	private final AbstractClientConnectionFactory connectionFactory;
+
+	private final Object monitor = new Object();
+
+	private final Deque<PendingCommand> pending = new ArrayDeque<>();
+
+	private final Semaphore slots;
+
+	private final int maxPending;
+
+	private long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+
+	public PipelinedOBD2Gateway(AbstractClientConnectionFactory connectionFactory) {
+		this(connectionFactory, DEFAULT_MAX_PENDING);
+	}
+
+	/**
+	 * @param connectionFactory factory providing the connection to the dongle
+	 * @param maxPending the maximum number of commands waiting for a reply, the one on
+	 * 		the wire included
+	 */
+	public PipelinedOBD2Gateway(AbstractClientConnectionFactory connectionFactory, int maxPending) {
+		Assert.notNull(connectionFactory, "A connection factory is required");
+		Assert.isTrue(maxPending > 0, "maxPending must be positive");
+
+		this.connectionFactory = connectionFactory;
+		this.maxPending = maxPending;
+		this.slots = new Semaphore(maxPending);
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		connectionFactory.registerListener(this);
+
+		if(!connectionFactory.isRunning()) {
+			connectionFactory.start();
+		}
+	}
+
+	/**
+	 * @param replyTimeout the time, in milliseconds, {@link #send(String)} waits for a
+	 * 		reply before resetting the connection
+	 */
+	public void setReplyTimeout(long replyTimeout) {
+		this.replyTimeout = replyTimeout;
+	}
+
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * Sends a command and waits for its reply.  When no reply comes in time the
+	 * connection is {@link #reset()}: the command would otherwise stay on the wire,
+	 * holding back every command sent after it.
+	 */
+	@Override
+	public String send(String message) {
+		try {
+			return sendAsync(message).get(replyTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			reset();
+			throw new MessageTimeoutException("No reply received for " + message + " within " + replyTimeout + "ms");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting for a reply to " + message, e);
+		}
+		catch (ExecutionException e) {
+			throw new MessagingException("Unable to send " + message, e.getCause());
+		}
+	}
+
+	@Override
+	public CompletableFuture<String> sendAsync(String message) {
+		try {
+			slots.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting to send " + message, e);
+		}
+
+		PendingCommand command = new PendingCommand(message);
+
+		synchronized (monitor) {
+			pending.addLast(command);
+
+			if(pending.size() == 1) {
+				write(command);
+			}
+		}
+
+		return command.reply;
+	}
+
+	@Override
+	public boolean onMessage(Message<?> message) {
+		if(message instanceof ErrorMessage) {
+			PendingCommand completed = poll(null);
+
+			if(completed != null) {
+				completed.reply.completeExceptionally(((ErrorMessage) message).getPayload());
+			}
+
+			return false;
+		}
+
+		// The replies read together by the OBD2Serializer come in one message
+		String replies = payloadAsString(message.getPayload());
+		int start = 0;
+
+		while(start < replies.length()) {
+			int end = replies.indexOf('>', start);
+			end = end < 0 ? replies.length() : end + 1;
+
+			String reply = replies.substring(start, end);
+			PendingCommand completed = poll(reply);
+
+			if(completed != null) {
+				completed.reply.complete(reply);
+			}
+
+			start = end;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Drops the connection to the dongle, failing every outstanding command, so the
+	 * next command is written on a new connection.  Used to recover from a dongle that
+	 * stopped answering.
+	 */
+	public void reset() {
+		connectionFactory.stop();
+		failAll(new MessagingException("The connection to the dongle was reset"));
+		connectionFactory.start();
+	}
+
+	/**
+	 * Writes the command to the dongle.  On failure every outstanding command is
+	 * failed since the replies can no longer be correlated.
+	 */
+	private void write(PendingCommand command) {
+		try {
+			TcpConnection connection = connectionFactory.getConnection();
+			command.written = true;
+			connection.send(MessageBuilder.withPayload(command.command).build());
+		}
+		catch (Exception e) {
+			failAll(e);
+		}
+	}
+
+	/**
+	 * Removes the command answered by a reply and writes the next one, keeping the
+	 * dongle busy before the reply is handed over.
+	 *
+	 * @param reply the reply, null for an error
+	 * @return the command answered, null if the reply answers none
+	 */
+	private PendingCommand poll(String reply) {
+		synchronized (monitor) {
+			PendingCommand completed = pending.peekFirst();
+
+			if(completed == null || !completed.written || (reply != null && OBD2Framer.isPromptOnly(reply))) {
+				// Not a reply to the command on the wire: the prompt sent by the dongle on connection
+				return null;
+			}
+
+			pending.pollFirst();
+			slots.release();
+
+			if(!pending.isEmpty()) {
+				write(pending.peekFirst());
+			}
+
+			return completed;
+		}
+	}
+
+	private void failAll(Exception cause) {
+		synchronized (monitor) {
+			PendingCommand command;
+
+			while((command = pending.pollFirst()) != null) {
+				slots.release();
+				command.reply.completeExceptionally(cause);
+			}
+		}
+	}
+
+	private static String payloadAsString(Object payload) {
+		if(payload instanceof byte[]) {
+			return new String((byte[]) payload, StandardCharsets.US_ASCII);
+		}
+
+		return payload.toString();
+	}
+
+	private static class PendingCommand {
+
+		private final String command;
+
+		private final CompletableFuture<String> reply = new CompletableFuture<>();
+
+		/**
+		 * Whether the command was handed to the connection, guarded by the monitor.
+		 */
+		private boolean written;
+
+		private PendingCommand(String command) {
+			this.command = command;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import java.nio.ByteBuffer;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.OBDVersion;
+
+/**
+ * Fixed size binary layout of a {@link CarState} (big endian):
+ *
+ * <pre>
+ * timestamp                                   8 bytes
+ * latitude, longitude                         2 x 8 bytes
+ * running time                                4 bytes
+ * short/long term fuel percent, MAF rate      3 x 4 bytes (float)
+ * rpm, speed, fuel system status, load,
+ * coolant temp, intake pressure, intake air
+ * temp, throttle, OBD standard, fuel level,
+ * relative throttle, absolute throttle B,
+ * accelerator pedal D and E                   14 x 2 bytes
+ * </pre>
+ *
+ * The OBD standard is written as its {@link OBDVersion#getCode() code}, the value of
+ * PID 01 1C, so that the journals do not depend on the order of the constants, -1 when
+ * not read.  The 2 byte values not read are written as {@link Short#MIN_VALUE}, outside of
+ * the range of every PID, and the other values as is ({@link CarState#NOT_READ} or NaN
+ * when not read).
+ *
+ * @author Michael Minella
+ */
+public final class CarStateCodec {
+
+	public static final int RECORD_SIZE = 68;
+
+	private CarStateCodec() {
+	}
+
+	/**
+	 * Writes the sample at the current position of the buffer.
+	 */
+	public static void encode(CarState state, ByteBuffer buffer) {
+		buffer.putLong(state.getTimestamp());
+		buffer.putDouble(state.getLatitude());
+		buffer.putDouble(state.getLongitude());
+		buffer.putInt(state.getRunningTime());
+		buffer.putFloat((float) state.getShortTermFuelPercent());
+		buffer.putFloat((float) state.getLongTermFuelPercent());
+		buffer.putFloat((float) state.getMafRate());
+		buffer.putShort(encodeShort(state.getRpm()));
+		buffer.putShort(encodeShort(state.getSpeed()));
+		buffer.putShort(encodeShort(state.getFuelSystemStatusCode()));
+		buffer.putShort(encodeShort(state.getEngineLoad()));
+		buffer.putShort(encodeShort(state.getCoolantTemp()));
+		buffer.putShort(encodeShort(state.getIntakePressure()));
+		buffer.putShort(encodeShort(state.getIntakeAirTemp()));
+		buffer.putShort(encodeShort(state.getThrottlePosition()));
+		buffer.putShort((short) (state.getObdStandard() == null ? -1 : state.getObdStandard().getCode()));
+		buffer.putShort(encodeShort(state.getFuelLevel()));
+		buffer.putShort(encodeShort(state.getRelativeThrottlePosition()));
+		buffer.putShort(encodeShort(state.getAbsoluteThrottlePositionB()));
+		buffer.putShort(encodeShort(state.getAcceleratorPedalPositionD()));
+		buffer.putShort(encodeShort(state.getAcceleratorPedalPositionE()));
+	}
+
+	/**
+	 * Reads the sample at the current position of the buffer.
+	 */
+	public static void decode(ByteBuffer buffer, CarState state) {
+		state.setTimestamp(buffer.getLong());
+		state.setLatitude(buffer.getDouble());
+		state.setLongitude(buffer.getDouble());
+		state.setRunningTime(buffer.getInt());
+		state.setShortTermFuelPercent(buffer.getFloat());
+		state.setLongTermFuelPercent(buffer.getFloat());
+		state.setMafRate(buffer.getFloat());
+		state.setRpm(decodeShort(buffer.getShort()));
+		state.setSpeed(decodeShort(buffer.getShort()));
+		state.setFuelSystemStatusCode(decodeShort(buffer.getShort()));
+		state.setEngineLoad(decodeShort(buffer.getShort()));
+		state.setCoolantTemp(decodeShort(buffer.getShort()));
+		state.setIntakePressure(decodeShort(buffer.getShort()));
+		state.setIntakeAirTemp(decodeShort(buffer.getShort()));
+		state.setThrottlePosition(decodeShort(buffer.getShort()));
+
+		state.setObdStandard(OBDVersion.fromCode(buffer.getShort()));
+
+		state.setFuelLevel(decodeShort(buffer.getShort()));
+		state.setRelativeThrottlePosition(decodeShort(buffer.getShort()));
+		state.setAbsoluteThrottlePositionB(decodeShort(buffer.getShort()));
+		state.setAcceleratorPedalPositionD(decodeShort(buffer.getShort()));
+		state.setAcceleratorPedalPositionE(decodeShort(buffer.getShort()));
+	}
+
+	private static short encodeShort(int value) {
+		return value == CarState.NOT_READ ? Short.MIN_VALUE : (short) value;
+	}
+
+	private static int decodeShort(short value) {
+		return value == Short.MIN_VALUE ? CarState.NOT_READ : value;
+	}
+}
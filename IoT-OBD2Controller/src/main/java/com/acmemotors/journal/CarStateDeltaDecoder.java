@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+
+/**
+ * Rebuilds the full records of the cars from the keyframes and change records written
+ * by {@link CarStateDeltaEncoder}, for the consumers expecting a value for every field.
+ * The last state of each car is kept and updated with the values of each record.
+ * Change records of a car received before its first keyframe cannot be rebuilt and are
+ * dropped.
+ *
+ * Only the flat JSON written by the encoder is read (no nesting, no escapes).  Not
+ * thread safe.
+ *
+ * @author Michael Minella
+ */
+public class CarStateDeltaDecoder {
+
+	private final Map<String, CarState> states = new HashMap<>();
+
+	/**
+	 * @param line a keyframe or a change record
+	 * @return the full record of the car, in the layout of the car simulator, null if
+	 * 		no keyframe of the car was read yet
+	 */
+	public String decode(String line) {
+		String vin = null;
+		boolean keyframe = false;
+		long timestamp = 0;
+		double[] values = new double[CarStateField.values().length];
+		boolean[] present = new boolean[values.length];
+
+		int position = line.indexOf('{') + 1;
+
+		while(position > 0 && position < line.length()) {
+			int nameStart = line.indexOf('"', position) + 1;
+
+			if(nameStart == 0) {
+				break;
+			}
+
+			int nameEnd = line.indexOf('"', nameStart);
+			String name = line.substring(nameStart, nameEnd);
+			int valueStart = line.indexOf(':', nameEnd) + 1;
+			int valueEnd;
+			String value;
+
+			if(line.charAt(valueStart) == '"') {
+				valueEnd = line.indexOf('"', valueStart + 1) + 1;
+				value = line.substring(valueStart + 1, valueEnd - 1);
+			}
+			else if(line.charAt(valueStart) == '[') {
+				valueEnd = line.indexOf(']', valueStart) + 1;
+				value = line.substring(valueStart + 1, valueEnd - 1).trim();
+			}
+			else {
+				valueEnd = valueStart;
+
+				while(valueEnd < line.length() && line.charAt(valueEnd) != ',' && line.charAt(valueEnd) != '}') {
+					valueEnd++;
+				}
+
+				value = line.substring(valueStart, valueEnd).trim();
+			}
+
+			if("vin".equals(name)) {
+				vin = value;
+			}
+			else if("timestamp".equals(name)) {
+				timestamp = Long.parseLong(value);
+			}
+			else if("keyframe".equals(name)) {
+				keyframe = Boolean.parseBoolean(value);
+			}
+			else {
+				CarStateField field = CarStateField.forName(name);
+
+				if(field != null) {
+					values[field.ordinal()] = value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+					present[field.ordinal()] = true;
+				}
+			}
+
+			position = valueEnd + 1;
+		}
+
+		if(vin == null) {
+			throw new IllegalArgumentException("No VIN in " + line);
+		}
+
+		CarState state = states.get(vin);
+
+		if(keyframe && state == null) {
+			state = new CarState();
+			states.put(vin, state);
+		}
+		else if(keyframe) {
+			state.clear();
+		}
+		else if(state == null) {
+			return null;
+		}
+
+		state.setTimestamp(timestamp);
+
+		for (CarStateField field : CarStateField.values()) {
+			if(present[field.ordinal()]) {
+				field.set(state, values[field.ordinal()]);
+			}
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\"vin\":\"").append(vin).append("\",\"timestamp\":").append(timestamp);
+
+		for (CarStateField field : CarStateField.values()) {
+			field.appendJson(state, json);
+		}
+
+		return json.append('}').toString();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+
+/**
+ * Writes the samples of a car as change records rather than full records to cut the
+ * bytes sent to the server.  A value is only written when it moved by more than the
+ * deadband of its field since the value last written, so slow drifts are still sent
+ * once they add up.  A keyframe holding every value (and <code>"keyframe":true</code>)
+ * is written first, after {@link #reset()} and then every <code>keyframeInterval</code>
+ * milliseconds of samples so a consumer joining late, or having lost records, is back
+ * in sync quickly.  {@link CarStateDeltaDecoder} rebuilds the full records.
+ *
+ * A change record holds the VIN, the timestamp and the changed values; a value no
+ * longer read is written as an empty string.  Nothing is written for a sample where
+ * no value changed.
+ *
+ * @author Michael Minella
+ */
+public class CarStateDeltaEncoder {
+
+	public static final long DEFAULT_KEYFRAME_INTERVAL = 60000;
+
+	private static final CarStateField[] FIELDS = CarStateField.values();
+
+	private final long keyframeInterval;
+
+	private final double[] deadbands = new double[FIELDS.length];
+
+	/**
+	 * Values last written, the reference of the deadbands.
+	 */
+	private final double[] written = new double[FIELDS.length];
+
+	private long keyframe;
+
+	private boolean keyframeNeeded = true;
+
+	public CarStateDeltaEncoder() {
+		this(DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * @param keyframeInterval the time, in milliseconds of sample timestamps, between
+	 * 		two keyframes
+	 */
+	public CarStateDeltaEncoder(long keyframeInterval) {
+		Assert.isTrue(keyframeInterval > 0, "keyframeInterval must be positive");
+
+		this.keyframeInterval = keyframeInterval;
+
+		for (CarStateField field : FIELDS) {
+			deadbands[field.ordinal()] = field.getDeadband();
+		}
+	}
+
+	/**
+	 * @param field the field
+	 * @param deadband the change up to which the value is considered unchanged, 0 to
+	 * 		write every change
+	 */
+	public void setDeadband(CarStateField field, double deadband) {
+		Assert.isTrue(deadband >= 0, "deadband must not be negative");
+
+		deadbands[field.ordinal()] = deadband;
+	}
+
+	/**
+	 * Overrides the deadbands of some fields.
+	 *
+	 * @param deadbands comma separated <code>field=deadband</code> pairs, using the
+	 * 		JSON names of the fields (<code>rpm=25,vehicle_speed=2</code>)
+	 */
+	public void setDeadbands(String deadbands) {
+		for (String deadband : StringUtils.commaDelimitedListToStringArray(deadbands)) {
+			String[] pair = deadband.trim().split("=");
+			Assert.isTrue(pair.length == 2, "Expected field=deadband but got " + deadband);
+
+			CarStateField field = CarStateField.forName(pair[0].trim());
+			Assert.notNull(field, "Unknown field " + pair[0]);
+
+			setDeadband(field, Double.parseDouble(pair[1].trim()));
+		}
+	}
+
+	/**
+	 * Makes the next sample a keyframe.
+	 */
+	public void reset() {
+		keyframeNeeded = true;
+	}
+
+	/**
+	 * Writes a sample as a line of JSON, a keyframe or the values changed since the
+	 * last values written.
+	 *
+	 * @param vin the VIN of the car
+	 * @param state the sample
+	 * @param json the line is appended to it
+	 * @return false if no value changed and nothing was written
+	 */
+	public boolean encode(String vin, CarState state, StringBuilder json) {
+		if(keyframeNeeded || state.getTimestamp() - keyframe >= keyframeInterval) {
+			json.append("{\"vin\":\"").append(vin).append("\",\"timestamp\":").append(state.getTimestamp());
+
+			for (CarStateField field : FIELDS) {
+				written[field.ordinal()] = field.get(state);
+				field.appendJson(state, json);
+			}
+
+			json.append(",\"keyframe\":true}\n");
+			keyframe = state.getTimestamp();
+			keyframeNeeded = false;
+
+			return true;
+		}
+
+		int start = json.length();
+		boolean changed = false;
+		json.append("{\"vin\":\"").append(vin).append("\",\"timestamp\":").append(state.getTimestamp());
+
+		for (CarStateField field : FIELDS) {
+			double value = field.get(state);
+
+			if(moved(written[field.ordinal()], value, deadbands[field.ordinal()])) {
+				written[field.ordinal()] = value;
+				field.appendJson(state, json);
+				changed = true;
+			}
+		}
+
+		if(!changed) {
+			json.setLength(start);
+			return false;
+		}
+
+		json.append("}\n");
+
+		return true;
+	}
+
+	private static boolean moved(double previous, double value, double deadband) {
+		if(Double.isNaN(previous) || Double.isNaN(value)) {
+			return Double.isNaN(previous) != Double.isNaN(value);
+		}
+
+		return deadband == 0 ? previous != value : Math.abs(value - previous) > deadband;
+	}
+}
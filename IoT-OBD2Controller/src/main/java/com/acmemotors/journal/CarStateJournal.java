@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.Assert;
+
+import com.acmemotors.domain.CarState;
+
+/**
+ * Append only journal of {@link CarState} samples kept on the device so no sample is
+ * lost while the car has no connectivity.  Samples are appended to a memory mapped
+ * segment file in the {@link CarStateCodec} layout, each record followed by a commit
+ * byte so a record half written when the device lost power is ignored.  When the
+ * segment is full or older than the maximum age it is rolled: its records are gzipped
+ * into a sealed segment and a new segment is started.  Sealed segments are read, oldest
+ * first, by the {@link JournalUploader} and deleted once uploaded.
+ *
+ * Segments left behind by a previous run are sealed when the journal is opened.
+ * Samples are appended by a single thread; sealed segments may be read and deleted by
+ * another one.
+ *
+ * @author Michael Minella
+ */
+public class CarStateJournal {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+	public static final long DEFAULT_MAX_SEGMENT_AGE = 60000;
+
+	static final String ACTIVE_SUFFIX = ".log";
+
+	static final String SEALED_SUFFIX = ".log.gz";
+
+	private static final int MAGIC = 0x4F424432;
+
+	private static final short VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final int ENTRY_SIZE = CarStateCodec.RECORD_SIZE + 1;
+
+	private static final byte COMMITTED = 1;
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final long maxSegmentAge;
+
+	private File segment;
+
+	private MappedByteBuffer buffer;
+
+	private long segmentStart;
+
+	private long nextSegment;
+
+	/**
+	 * @param directory the directory holding the segments, created if needed
+	 * @param segmentSize the size, in bytes, of a segment before it is sealed
+	 * @param maxSegmentAge the time, in milliseconds, after which a segment holding at
+	 * 		least one sample is sealed
+	 * @throws IOException if the segments left by a previous run cannot be sealed
+	 */
+	public CarStateJournal(File directory, int segmentSize, long maxSegmentAge) throws IOException {
+		Assert.isTrue(segmentSize >= HEADER_SIZE + ENTRY_SIZE, "A segment must hold at least one sample");
+		Assert.isTrue(directory.isDirectory() || directory.mkdirs(), "Unable to create " + directory);
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegmentAge = maxSegmentAge;
+
+		for (File active : list(ACTIVE_SUFFIX)) {
+			nextSegment = Math.max(nextSegment, number(active) + 1);
+			seal(active, validLength(active));
+		}
+
+		for (File sealed : list(SEALED_SUFFIX)) {
+			nextSegment = Math.max(nextSegment, number(sealed) + 1);
+		}
+	}
+
+	public CarStateJournal(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENT_AGE);
+	}
+
+	/**
+	 * Appends a sample, rolling the segment first if it is full or too old.
+	 *
+	 * @param state the sample
+	 * @throws IOException if the segment cannot be created or sealed
+	 */
+	public synchronized void append(CarState state) throws IOException {
+		if(buffer != null && buffer.remaining() < ENTRY_SIZE) {
+			roll();
+		}
+		else {
+			rollIfExpired();
+		}
+
+		if(buffer == null) {
+			open();
+		}
+
+		int position = buffer.position();
+		CarStateCodec.encode(state, buffer);
+		buffer.put((byte) 0);
+
+		// Written last, so a partially written record is never read back
+		buffer.put(position + CarStateCodec.RECORD_SIZE, COMMITTED);
+	}
+
+	/**
+	 * Seals the current segment if it is older than the maximum age.  Called on every
+	 * append, and by the {@link JournalUploader} before each upload so the last samples
+	 * of a car that stopped sampling (engine off, dongle lost) are not left unsealed
+	 * until the next sample.
+	 *
+	 * @throws IOException if the segment cannot be sealed
+	 */
+	public synchronized void rollIfExpired() throws IOException {
+		if(buffer != null && System.currentTimeMillis() - segmentStart >= maxSegmentAge) {
+			roll();
+		}
+	}
+
+	/**
+	 * Seals the current segment, if it holds any sample.
+	 *
+	 * @throws IOException if the segment cannot be sealed
+	 */
+	public synchronized void roll() throws IOException {
+		if(buffer == null) {
+			return;
+		}
+
+		int length = buffer.position();
+		buffer.force();
+		buffer = null;
+
+		seal(segment, length);
+		segment = null;
+	}
+
+	/**
+	 * @return the sealed segments, oldest first
+	 */
+	public List<File> getSealedSegments() {
+		return list(SEALED_SUFFIX);
+	}
+
+	/**
+	 * Reads the samples of a sealed segment.  The same {@link CarState} instance is
+	 * handed to the consumer for every sample.
+	 *
+	 * @param segment the sealed segment
+	 * @param consumer receives each sample
+	 * @return the number of samples read
+	 * @throws IOException if the segment cannot be read
+	 */
+	public static int read(File segment, Consumer<CarState> consumer) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(segment))))) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			input.readFully(header.array());
+
+			if(header.getInt() != MAGIC || header.getShort() != VERSION || header.getShort() != CarStateCodec.RECORD_SIZE) {
+				throw new IOException(segment + " is not a journal segment");
+			}
+
+			ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+			CarState state = new CarState();
+			int count = 0;
+
+			while(true) {
+				try {
+					input.readFully(entry.array());
+				}
+				catch (EOFException e) {
+					return count;
+				}
+
+				entry.clear();
+				CarStateCodec.decode(entry, state);
+				consumer.accept(state);
+				count++;
+			}
+		}
+	}
+
+	private void open() throws IOException {
+		segment = new File(directory, String.format("%016d%s", nextSegment++, ACTIVE_SUFFIX));
+		segmentStart = System.currentTimeMillis();
+
+		try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short) CarStateCodec.RECORD_SIZE);
+		buffer.putLong(segmentStart);
+	}
+
+	/**
+	 * Gzips the committed records of an active segment into a sealed segment and
+	 * deletes the active one.  The sealed segment is written under a temporary name so
+	 * readers never see it incomplete.
+	 */
+	private void seal(File active, int length) throws IOException {
+		if(length > HEADER_SIZE) {
+			File sealed = new File(directory, active.getName().replace(ACTIVE_SUFFIX, SEALED_SUFFIX));
+			File temporary = new File(directory, sealed.getName() + ".tmp");
+
+			try (RandomAccessFile file = new RandomAccessFile(active, "r");
+				 OutputStream output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				byte[] chunk = new byte[64 * 1024];
+				int remaining = length;
+
+				while(remaining > 0) {
+					int count = file.read(chunk, 0, Math.min(chunk.length, remaining));
+
+					if(count < 0) {
+						break;
+					}
+
+					output.write(chunk, 0, count);
+					remaining -= count;
+				}
+			}
+
+			if(!temporary.renameTo(sealed)) {
+				throw new IOException("Unable to seal " + active);
+			}
+		}
+
+		if(!active.delete()) {
+			throw new IOException("Unable to delete " + active);
+		}
+	}
+
+	/**
+	 * @return the length of the header and of the records committed in an active
+	 * 		segment left by a previous run
+	 */
+	private static int validLength(File active) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(active, "r")) {
+			if(file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+				return 0;
+			}
+
+			long position = HEADER_SIZE;
+
+			while(position + ENTRY_SIZE <= file.length()) {
+				file.seek(position + ENTRY_SIZE - 1);
+
+				if(file.readByte() != COMMITTED) {
+					break;
+				}
+
+				position += ENTRY_SIZE;
+			}
+
+			return (int) position;
+		}
+	}
+
+	private List<File> list(String suffix) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+
+		if(files == null) {
+			return Arrays.asList();
+		}
+
+		Arrays.sort(files);
+
+		return Arrays.asList(files);
+	}
+
+	private static long number(File segment) {
+		return Long.parseLong(segment.getName().substring(0, segment.getName().indexOf('.')));
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.web.client.RestOperations;
+
+/**
+ * Journals the samples of one or more cars and uploads them from a single daemon
+ * thread, configured from the command line options shared by the single car and fleet
+ * modes:
+ *
+ * <ul>
+ *     <li>--journalDirectory: where the journals are kept, samples are not journaled
+ *     without it</li>
+ *     <li>--journalSegmentSize and --journalSegmentAge: see {@link CarStateJournal}</li>
+ *     <li>--ingestUrl, --uploadBatchSize and --uploadInterval: where, by how many
+ *     samples and how often the journals are uploaded</li>
+ *     <li>--uplinkDeltas, --keyframeInterval and --deadbands: see
+ *     {@link CarStateDeltaEncoder}</li>
+ * </ul>
+ *
+ * @author Michael Minella
+ */
+public class JournalUplink {
+
+	private final File directory;
+
+	private final PropertyResolver options;
+
+	private final RestOperations restTemplate;
+
+	private final List<JournalUploader> uploaders = new CopyOnWriteArrayList<>();
+
+	private final ScheduledExecutorService executor;
+
+	private JournalUplink(File directory, PropertyResolver options, RestOperations restTemplate) {
+		this.directory = directory;
+		this.options = options;
+		this.restTemplate = restTemplate;
+
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-uploader");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		executor.scheduleWithFixedDelay(this::upload, 0, options.getProperty("uploadInterval", Long.class, 10000L),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param options the command line options
+	 * @param restTemplate used to POST the samples
+	 * @return the uplink, null if --journalDirectory is not set
+	 */
+	public static JournalUplink create(PropertyResolver options, RestOperations restTemplate) {
+		String directory = options.getProperty("journalDirectory", "");
+
+		return directory.isEmpty() ? null : new JournalUplink(new File(directory), options, restTemplate);
+	}
+
+	/**
+	 * @return the directory given by --journalDirectory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Opens a journal and schedules its upload.
+	 *
+	 * @param directory the directory of the journal
+	 * @param vin the VIN of the car journaled
+	 * @return the journal
+	 * @throws IOException if the journal cannot be opened
+	 */
+	public CarStateJournal open(File directory, String vin) throws IOException {
+		CarStateJournal journal = new CarStateJournal(directory,
+				options.getProperty("journalSegmentSize", Integer.class, CarStateJournal.DEFAULT_SEGMENT_SIZE),
+				options.getProperty("journalSegmentAge", Long.class, CarStateJournal.DEFAULT_MAX_SEGMENT_AGE));
+
+		JournalUploader uploader = new JournalUploader(journal, restTemplate,
+				options.getProperty("ingestUrl", "http://localhost:9000"), vin,
+				options.getProperty("uploadBatchSize", Integer.class, JournalUploader.DEFAULT_BATCH_SIZE));
+
+		if(options.getProperty("uplinkDeltas", Boolean.class, false)) {
+			CarStateDeltaEncoder encoder = new CarStateDeltaEncoder(options.getProperty("keyframeInterval",
+					Long.class, CarStateDeltaEncoder.DEFAULT_KEYFRAME_INTERVAL));
+			encoder.setDeadbands(options.getProperty("deadbands", ""));
+			uploader.setDeltaEncoder(encoder);
+		}
+
+		uploaders.add(uploader);
+
+		return journal;
+	}
+
+	/**
+	 * Stops uploading the journals, the samples not uploaded yet are uploaded by the next
+	 * run.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Uploads the journals in turn.  Nothing is thrown so that a failing journal neither
+	 * stops the others nor cancels the next runs.
+	 */
+	private void upload() {
+		for (JournalUploader uploader : uploaders) {
+			try {
+				uploader.upload();
+			}
+			catch (IOException e) {
+				System.err.println("Unable to upload the journal: " + e.getMessage());
+			}
+			catch (RuntimeException e) {
+				System.err.println("Unexpected failure uploading the journal: " + e);
+			}
+		}
+	}
+}
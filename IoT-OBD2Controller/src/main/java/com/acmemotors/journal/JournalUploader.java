@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+
+/**
+ * Uploads the sealed segments of a {@link CarStateJournal} to the ingest HTTP endpoint,
+ * oldest first.  Samples are sent as newline delimited JSON, using the field names of
+ * the car simulator, in batches of up to <code>batchSize</code> samples per POST so
+ * that catching up after a long loss of connectivity takes a few large requests rather
+ * than one request per sample.
+ *
+ * A segment is deleted once all of its samples were uploaded.  When a POST fails the
+ * upload stops and resumes with the same batch on the next call to {@link #upload()};
+ * samples may therefore be sent more than once if the device restarts in between.
+ *
+ * With a {@link CarStateDeltaEncoder}, samples are sent as change records instead of
+ * full records.  Each batch starts with a keyframe so a batch sent again after a
+ * failure, or received after a lost one, can be decoded on its own.
+ *
+ * @author Michael Minella
+ */
+public class JournalUploader {
+
+	public static final int DEFAULT_BATCH_SIZE = 5000;
+
+	private static final MediaType NDJSON = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+
+	private final CarStateJournal journal;
+
+	private final RestOperations restTemplate;
+
+	private final String ingestUrl;
+
+	private final String vin;
+
+	private final int batchSize;
+
+	private final StringBuilder batch = new StringBuilder();
+
+	private final HttpHeaders headers = new HttpHeaders();
+
+	private CarStateDeltaEncoder encoder;
+
+	/**
+	 * Segment partially uploaded and number of its samples uploaded.
+	 */
+	private File segment;
+
+	private int uploaded;
+
+	/**
+	 * @param journal the journal to upload
+	 * @param restTemplate used to POST the batches
+	 * @param ingestUrl the URL of the ingest endpoint
+	 * @param vin the VIN of the car, added to every sample
+	 * @param batchSize the maximum number of samples sent per POST
+	 */
+	public JournalUploader(CarStateJournal journal, RestOperations restTemplate, String ingestUrl, String vin,
+			int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+
+		this.journal = journal;
+		this.restTemplate = restTemplate;
+		this.ingestUrl = ingestUrl;
+		this.vin = vin;
+		this.batchSize = batchSize;
+		this.headers.setContentType(NDJSON);
+	}
+
+	/**
+	 * @param encoder writes the samples as change records, null (the default) to send
+	 * 		full records
+	 */
+	public void setDeltaEncoder(CarStateDeltaEncoder encoder) {
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Seals the current segment of the journal if it is too old, then uploads every
+	 * sealed segment, stopping at the first failure.
+	 *
+	 * @return the number of samples uploaded
+	 * @throws IOException if a segment cannot be sealed, read or deleted
+	 */
+	public synchronized int upload() throws IOException {
+		journal.rollIfExpired();
+
+		int total = 0;
+
+		for (File sealed : journal.getSealedSegments()) {
+			if(!sealed.equals(segment)) {
+				segment = sealed;
+				uploaded = 0;
+			}
+
+			int before = uploaded;
+			boolean complete = uploadSegment(sealed);
+			total += uploaded - before;
+
+			if(!complete) {
+				return total;
+			}
+
+			if(!sealed.delete()) {
+				throw new IOException("Unable to delete " + sealed);
+			}
+
+			segment = null;
+			uploaded = 0;
+		}
+
+		return total;
+	}
+
+	/**
+	 * Sends the samples of a segment not uploaded yet, advancing {@link #uploaded}
+	 * after each successful POST.
+	 *
+	 * @return true if every sample of the segment was uploaded
+	 */
+	private boolean uploadSegment(File sealed) throws IOException {
+		final int skip = uploaded;
+		final int[] read = {0};
+		final int[] pending = {0};
+		final boolean[] failed = {false};
+
+		batch.setLength(0);
+
+		CarStateJournal.read(sealed, state -> {
+			if(failed[0] || read[0]++ < skip) {
+				return;
+			}
+
+			if(encoder == null) {
+				appendJson(state, batch);
+			}
+			else {
+				if(pending[0] == 0) {
+					encoder.reset();
+				}
+
+				encoder.encode(vin, state, batch);
+			}
+
+			if(++pending[0] == batchSize) {
+				failed[0] = !post(pending);
+			}
+		});
+
+		return !failed[0] && (pending[0] == 0 || post(pending));
+	}
+
+	private boolean post(int[] pending) {
+		try {
+			restTemplate.postForObject(ingestUrl, new HttpEntity<>(batch.toString(), headers), String.class);
+		}
+		catch (RestClientException e) {
+			return false;
+		}
+
+		uploaded += pending[0];
+		pending[0] = 0;
+		batch.setLength(0);
+
+		return true;
+	}
+
+	/**
+	 * Writes a sample as a line of JSON.  Values not read are written as empty strings,
+	 * like the car simulator does.
+	 */
+	void appendJson(CarState state, StringBuilder json) {
+		json.append("{\"vin\":\"").append(vin).append("\",\"timestamp\":").append(state.getTimestamp());
+
+		for (CarStateField field : CarStateField.values()) {
+			field.appendJson(state, json);
+		}
+
+		json.append("}\n");
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * Groups mode 01 PIDs into multi-PID requests.  The CAN protocols allow up to six PIDs
+ * in a single request (e.g. <code>01 0C 0D 05 04 0B 0F</code>), each ECU answering
+ * with a single, possibly multi-frame, message containing every PID it supports.
+ *
+ * PIDs whose response length is not fixed (see {@link OBD2Command#isVariableLength()})
+ * are placed last in their request, at most one per request, so the response can
+ * still be split unambiguously by {@link OBD2Readings}.
+ *
+ * @author Michael Minella
+ */
+public class OBD2BatchPlanner {
+
+	public static final int MAX_PIDS_PER_REQUEST = 6;
+
+	private final int maxPidsPerRequest;
+
+	public OBD2BatchPlanner() {
+		this(MAX_PIDS_PER_REQUEST);
+	}
+
+	/**
+	 * @param maxPidsPerRequest the number of PIDs to put in each request (1 disables
+	 * 		batching for dongles that do not support multi-PID requests)
+	 */
+	public OBD2BatchPlanner(int maxPidsPerRequest) {
+		Assert.isTrue(maxPidsPerRequest > 0 && maxPidsPerRequest <= MAX_PIDS_PER_REQUEST,
+				"maxPidsPerRequest must be between 1 and " + MAX_PIDS_PER_REQUEST);
+
+		this.maxPidsPerRequest = maxPidsPerRequest;
+	}
+
+	/**
+	 * @param commands the mode 01 PIDs to be read
+	 * @return the requests to send in order to read all the PIDs
+	 */
+	public List<Batch> plan(Collection<OBD2Command> commands) {
+		LinkedList<OBD2Command> fixed = new LinkedList<>();
+		LinkedList<OBD2Command> variable = new LinkedList<>();
+
+		for (OBD2Command command : commands) {
+			Assert.isTrue(command.getMode() == 1 && command.getResponseBytes() > 0,
+					command + " is not a mode 01 PID with a known response length");
+
+			if(command.isVariableLength()) {
+				variable.add(command);
+			}
+			else {
+				fixed.add(command);
+			}
+		}
+
+		List<Batch> batches = new ArrayList<>();
+
+		while(!fixed.isEmpty() || !variable.isEmpty()) {
+			List<OBD2Command> batch = new ArrayList<>(maxPidsPerRequest);
+			int fixedSlots = variable.isEmpty() ? maxPidsPerRequest : maxPidsPerRequest - 1;
+
+			while(!fixed.isEmpty() && batch.size() < fixedSlots) {
+				batch.add(fixed.removeFirst());
+			}
+
+			if(!variable.isEmpty() && batch.size() < maxPidsPerRequest) {
+				batch.add(variable.removeFirst());
+			}
+
+			batches.add(new Batch(batch));
+		}
+
+		return batches;
+	}
+
+	/**
+	 * @param fixed the number of fixed length PIDs to be read
+	 * @param variable the number of variable length PIDs to be read
+	 * @return the number of requests {@link #plan} returns for these PIDs
+	 */
+	public int countBatches(int fixed, int variable) {
+		int all = fixed + variable;
+
+		return Math.max(variable, (all + maxPidsPerRequest - 1) / maxPidsPerRequest);
+	}
+
+	/**
+	 * A single multi-PID request.
+	 */
+	public static class Batch {
+
+		private final List<OBD2Command> commands;
+
+		private final String command;
+
+		Batch(List<OBD2Command> commands) {
+			this.commands = Collections.unmodifiableList(commands);
+
+			StringBuilder builder = new StringBuilder("01");
+
+			for (OBD2Command curCommand : commands) {
+				builder.append(' ').append(curCommand.getCommand().substring(3));
+			}
+
+			this.command = builder.toString();
+		}
+
+		/**
+		 * @return the text to send to the dongle
+		 */
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return the PIDs read by this request
+		 */
+		public List<OBD2Command> getCommands() {
+			return commands;
+		}
+
+		@Override
+		public String toString() {
+			return command;
+		}
+	}
+}
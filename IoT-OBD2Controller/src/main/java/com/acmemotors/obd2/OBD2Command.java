@@ -36,13 +36,13 @@ public enum OBD2Command {
 	TRY_PROTOCOL_7("AT TP7", false),
 	GET_VIN("09 02", true),
 	SET_DEFAULTS("AT D", false),
-	GET_PIDS_SUPPORTED_00("01 00", true),
-	GET_PIDS_SUPPORTED_20("01 20", true),
-	GET_PIDS_SUPPORTED_40("01 40", true),
-	GET_PIDS_SUPPORTED_60("01 60", true),
-	GET_PIDS_SUPPORTED_80("01 80", true),
-	GET_PIDS_SUPPORTED_A0("01 A0", true),
-	GET_PIDS_SUPPORTED_C0("01 C0", true),
+	GET_PIDS_SUPPORTED_00("01 00", true, 4),
+	GET_PIDS_SUPPORTED_20("01 20", true, 4),
+	GET_PIDS_SUPPORTED_40("01 40", true, 4),
+	GET_PIDS_SUPPORTED_60("01 60", true, 4),
+	GET_PIDS_SUPPORTED_80("01 80", true, 4),
+	GET_PIDS_SUPPORTED_A0("01 A0", true, 4),
+	GET_PIDS_SUPPORTED_C0("01 C0", true, 4),
 	DESCRIBE_PROTOCOL_BY_NUMBER("AT DPN", false),
 	BBBBBBBBBBB("AT STD7D", false),
 	ALLOW_LONG_BYTE_MESSAGE("AT AL", false),
@@ -51,35 +51,59 @@ public enum OBD2Command {
 	SET_CAN_PRIORITY("AT CP18", false),
 	GET_CALIBRATION_ID("09 04", true),
 	GET_CALIBRATION_VERIFICATION_NUMBERS("09 06", true),
-	GET_FUEL_SYSTEM_STATUS("01 03", true),
-	GET_ENGINE_LOAD("01 04", true),
-	GET_COOLANT_TEMP("01 05", true),
-	GET_SHORT_TERM_FUEL_PERCENT("01 06", true),
-	GET_LONG_TERM_FUEL_PERCENT("01 07", true),
-	GET_INTAKE_ABSOLUTE_PRESSURE("01 0B", true),
-	GET_RPM("01 0C", true),
-	GET_SPEED("01 0D", true),
-	GET_INTAKE_AIR_TEMP("01 0F", true),
-	GET_MAF_FLOW_RATE("01 10", true),
-	GET_THROTTLE_POSITION("01 11", true),
-	GET_OBD_STANDARD("01 1C", true),
-	GET_RUN_TIME_SINCE_START("01 1F", true),
-	GET_DISTANCE_WITH_CHECK_ENGINE("01 21", true),
-	GET_FUEL_LEVEL("01 2F", true),
-	GET_BAROMETRIC_PRESSURE("01 33", true),
-	GET_CATALYST_TEMP("01 3C", true),
-	GET_CONTROL_MODULE_VOLTAGE("01 42", true),
-	GET_RELATIVE_THROTTLE_POSITION("01 45", true),
-	GET_ABSOLUTE_THROTTLE_POSITION_B("01 47", true),
-	GET_ACCELERATOR_PEDAL_POSITION_D("01 49", true),
-	GET_ACCELERATOR_PEDAL_POSITION_E("01 4A", true);
+	GET_ECU_NAME("09 0A", true),
+	GET_FUEL_SYSTEM_STATUS("01 03", true, 2),
+	GET_ENGINE_LOAD("01 04", true, 1),
+	GET_COOLANT_TEMP("01 05", true, 1),
+	GET_SHORT_TERM_FUEL_PERCENT("01 06", true, 1, true),
+	GET_LONG_TERM_FUEL_PERCENT("01 07", true, 1, true),
+	GET_INTAKE_ABSOLUTE_PRESSURE("01 0B", true, 1),
+	GET_RPM("01 0C", true, 2),
+	GET_SPEED("01 0D", true, 1),
+	GET_INTAKE_AIR_TEMP("01 0F", true, 1),
+	GET_MAF_FLOW_RATE("01 10", true, 2),
+	GET_THROTTLE_POSITION("01 11", true, 1),
+	GET_OBD_STANDARD("01 1C", true, 1),
+	GET_RUN_TIME_SINCE_START("01 1F", true, 2),
+	GET_DISTANCE_WITH_CHECK_ENGINE("01 21", true, 2),
+	GET_FUEL_LEVEL("01 2F", true, 1),
+	GET_BAROMETRIC_PRESSURE("01 33", true, 1),
+	GET_CATALYST_TEMP("01 3C", true, 2),
+	GET_CONTROL_MODULE_VOLTAGE("01 42", true, 2),
+	GET_RELATIVE_THROTTLE_POSITION("01 45", true, 1),
+	GET_ABSOLUTE_THROTTLE_POSITION_B("01 47", true, 1),
+	GET_ACCELERATOR_PEDAL_POSITION_D("01 49", true, 1),
+	GET_ACCELERATOR_PEDAL_POSITION_E("01 4A", true, 1);
 
 	private final String command;
 	private final boolean odb2;
+	private final int mode;
+	private final int pid;
+	private final int responseBytes;
+	private final boolean variableLength;
 
 	private OBD2Command(String command, boolean odb2) {
+		this(command, odb2, 0);
+	}
+
+	private OBD2Command(String command, boolean odb2, int responseBytes) {
+		this(command, odb2, responseBytes, false);
+	}
+
+	/**
+	 * @param command the text sent to the dongle
+	 * @param odb2 true if the command is an OBD 2 request (as opposed to an AT command)
+	 * @param responseBytes number of data bytes returned for a mode 01 PID
+	 * @param variableLength true if the ECU may append optional bytes (e.g. bank 3 of
+	 * 		the fuel trims) after the first responseBytes
+	 */
+	private OBD2Command(String command, boolean odb2, int responseBytes, boolean variableLength) {
 		this.command = command;
 		this.odb2 = odb2;
+		this.mode = odb2 ? Integer.parseInt(command.substring(0, 2), 16) : -1;
+		this.pid = odb2 ? Integer.parseInt(command.substring(3), 16) : -1;
+		this.responseBytes = responseBytes;
+		this.variableLength = variableLength;
 	}
 
 	public String getCommand() {
@@ -89,4 +113,30 @@ public enum OBD2Command {
 	public boolean isOdb2() {
 		return odb2;
 	}
+
+	/**
+	 * @return the mode of the request (the first byte of the command), -1 for AT commands
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the PID (second byte of the command), -1 for AT commands
+	 */
+	public int getPid() {
+		return pid;
+	}
+
+	/**
+	 * @return the number of data bytes following the PID in a mode 01 response, 0 if
+	 * 		not known
+	 */
+	public int getResponseBytes() {
+		return responseBytes;
+	}
+
+	public boolean isVariableLength() {
+		return variableLength;
+	}
 }
@@ -16,18 +16,26 @@
 package com.acmemotors.obd2;
 
 import com.acmemotors.domain.CarState;
-import com.acmemotors.domain.OBDVersion;
+import com.acmemotors.domain.CarStateRingBuffer;
+import com.acmemotors.gps.GpsPosition;
+import com.acmemotors.gps.GpsSource;
 import com.acmemotors.integration.OBD2Gateway;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.web.client.RestOperations;
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.messaging.MessagingException;
 
-import java.math.BigInteger;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,6 +49,12 @@ import java.util.regex.Pattern;
  *     https://www.scantool.net/support/index.php?_m=knowledgebase&_a=viewarticle&kbarticleid=3&nav=0
  * </a>
  *
+ * With an {@link OBD2SessionCache}, the protocol and supported PIDs negotiated with a
+ * car are remembered.  The next time the dongle is connected to, the protocol is set
+ * directly and the connection script is queued in one go along with a VIN request;
+ * when the VIN matches the cached one, the protocol search and the supported PIDs
+ * requests are skipped.
+ *
  * @author Michael Minella
  */
 public class OBD2Controller implements InitializingBean {
@@ -48,8 +62,26 @@ public class OBD2Controller implements InitializingBean {
 	@Autowired
 	private OBD2Gateway gateway;
 
-	@Value("${gpsHost:192.168.1.2}")
-	private String gpsHost;
+	@Autowired
+	private GpsSource gps;
+
+	/**
+	 * Fixes older than this, in milliseconds, are not used (the GPS lost its signal)
+	 */
+	@Value("${gpsMaxAge:5000}")
+	private long gpsMaxAge = 5000;
+
+	@Value("${maxPidsPerRequest:6}")
+	private int maxPidsPerRequest = OBD2BatchPlanner.MAX_PIDS_PER_REQUEST;
+
+	@Value("${pollingIntervals:}")
+	private String pollingIntervals = "";
+
+	@Value("${roundTripsPerSecond:12}")
+	private double roundTripsPerSecond = 12;
+
+	@Value("${replyTimeout:5000}")
+	private long replyTimeout = 5000;
 
 	private static final Pattern NO_DATA = Pattern.compile("NO DATA");
 
@@ -63,6 +95,21 @@ public class OBD2Controller implements InitializingBean {
 		  OBD2Command.MEMORY_OFF,
 		  OBD2Command.TRY_PROTOCOL_7};
 
+	/**
+	 * Connection script when the protocol is known: no identification and the
+	 * protocol is set rather than searched for
+	 */
+	private static final OBD2Command[] CONNECTION_SCRIPT_RESUME = {
+		  OBD2Command.ECHO_ON,
+		  OBD2Command.LINEFEEDS_OFF,
+		  OBD2Command.AUTOMATIC_FORMATTING_ON,
+		  OBD2Command.HEADERS_ON,
+		  OBD2Command.MEMORY_OFF};
+
+	private static final String SET_PROTOCOL = "AT SP";
+
+	private static final Pattern PROTOCOL = Pattern.compile("^A?([1-9A-C])\\s*$", Pattern.MULTILINE);
+
 	private static final OBD2Command[] PIDS = {
 		  OBD2Command.GET_PIDS_SUPPORTED_00,
 		  OBD2Command.GET_PIDS_SUPPORTED_20,
@@ -74,343 +121,373 @@ public class OBD2Controller implements InitializingBean {
 	};
 
 	@Autowired
-	private RestOperations restTemplate;
+	private CarStateRingBuffer samples;
 
-	@Override
-	public void afterPropertiesSet() throws Exception {
-
-		for(OBD2Command curCommand : CONNECTION_SCRIPT_START) {
-			gateway.send(curCommand.getCommand());
-		}
+	/**
+	 * Decoders are only used while a response is processed, so controllers share one
+	 * per thread rather than holding one each
+	 */
+	private static final ThreadLocal<OBD2ResponseDecoder> DECODERS = ThreadLocal.withInitial(OBD2ResponseDecoder::new);
 
-		int pidOffset = 0;
-		List<String> pids = new ArrayList<>();
-		for(OBD2Command curCommand : PIDS) {
-			String response = gateway.send(curCommand.getCommand());
+	private final OBD2Readings readings = new OBD2Readings();
 
-			Matcher matcher = NO_DATA.matcher(response);
+	private OBD2PollingMetrics metrics;
 
-			if(matcher.find()) {
-				break;
-			}
+	private OBD2SessionCache sessionCache;
 
-			pids.addAll(decodePidsSupported(response, pidOffset));
+	private String dongle;
 
-			pidOffset += 32;
-		}
+	private String vin;
 
-		System.out.println("PIDs supported by this car are:");
-		System.out.println("-------------------------------");
+	private OBD2PidRegistry registry;
 
-		for (String pid : pids) {
-			System.out.println(pid);
-		}
+	private OBD2PollingScheduler scheduler;
 
-		System.out.println("-------------------------------");
+	public OBD2Controller() {
 	}
 
-	public String getVin() {
-		String response = gateway.send(OBD2Command.GET_VIN.getCommand());
-
-		String [] responseLines = response.split("\n");
+	/**
+	 * Creates a controller outside of a Spring context, with the default polling
+	 * settings.
+	 *
+	 * @param gateway the gateway to the dongle of the car
+	 * @param gps the source of the location of the car
+	 * @param samples the ring the samples are published to
+	 */
+	public OBD2Controller(OBD2Gateway gateway, GpsSource gps, CarStateRingBuffer samples) {
+		this.gateway = gateway;
+		this.gps = gps;
+		this.samples = samples;
+	}
 
-		StringBuilder vin = new StringBuilder(17);
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		connect();
+	}
 
-		String[] curLineElements = responseLines[1].split(" ");
+	/**
+	 * @param sessionCache remembers the sessions negotiated with the cars, null (the
+	 * 		default) to negotiate on every connection
+	 * @param dongle identifies the dongle in the cache, typically its host and port
+	 */
+	public void setSessionCache(OBD2SessionCache sessionCache, String dongle) {
+		this.sessionCache = sessionCache;
+		this.dongle = dongle;
+	}
 
-		for(int i = 9; i < curLineElements.length; i++) {
-			vin.append((char) Integer.parseInt(curLineElements[i], 16));
-		}
+	/**
+	 * Runs the connection script and finds out the PIDs supported by the car, from the
+	 * session cache when the car is known.  Called again to bring the session back up
+	 * after the dongle was lost.
+	 */
+	public void connect() {
+		vin = null;
 
-		for(int i = 2; i < responseLines.length; i++) {
-			curLineElements = responseLines[i].split(" ");
+		OBD2SessionCache.Session session = sessionCache == null ? null : sessionCache.get(dongle);
+		int[] bitmaps = session == null ? null : resume(session);
 
-			for(int j = 5; j < curLineElements.length; j++) {
-				vin.append((char) Integer.parseInt(curLineElements[j], 16));
-			}
+		if(bitmaps == null) {
+			bitmaps = negotiate();
 		}
 
-		return vin.toString();
+		registry = new OBD2PidRegistry(bitmaps);
+		scheduler = new OBD2PollingScheduler(registry.getCommands(),
+				OBD2PollingScheduler.parseIntervals(pollingIntervals),
+				new OBD2BatchPlanner(maxPidsPerRequest),
+				roundTripsPerSecond);
 	}
 
-	public List<String> decodePidsSupported(String response, int offset) {
-		List<String> pids = new ArrayList<>();
-
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
-
-		String[] elements = respsonseLines[1].split(" ");
+	/**
+	 * Queues the short connection script, the cached protocol and a VIN request
+	 * without waiting for each reply.
+	 *
+	 * @return the cached bitmaps, null if the car behind the dongle is not the cached one
+	 */
+	private int[] resume(OBD2SessionCache.Session session) {
+		List<CompletableFuture<String>> replies = new ArrayList<>();
 
-		for(int j = 7; j < elements.length; j++) {
-			pidString.append(elements[j]);
+		for(OBD2Command curCommand : CONNECTION_SCRIPT_RESUME) {
+			replies.add(gateway.sendAsync(curCommand.getCommand()));
 		}
 
-		BigInteger bigInt = new BigInteger(pidString.toString(), 16);
+		replies.add(gateway.sendAsync(SET_PROTOCOL + Integer.toHexString(session.getProtocol()).toUpperCase()));
+		CompletableFuture<String> vinReply = gateway.sendAsync(OBD2Command.GET_VIN.getCommand());
 
-		int j = 0;
-		for(int i = bigInt.bitLength() - 1; i >= 0; i--) {
-			int pidId = j + offset + 1;
+		String found;
 
-			if(bigInt.testBit(i)) {
-				pids.add(Integer.toHexString(pidId));
+		try {
+			for (CompletableFuture<String> reply : replies) {
+				await(reply);
 			}
 
-			j++;
+			found = decodeVin(await(vinReply));
+		}
+		catch (RuntimeException e) {
+			// NO DATA (not the cached protocol), too many commands queued, etc
+			found = null;
 		}
 
-		return pids;
-	}
+		if(!session.getVin().equals(found)) {
+			return null;
+		}
 
-	public CarState getCarState() {
+		vin = found;
 
-		int rpm = decodeRPM(gateway.send(OBD2Command.GET_RPM.getCommand()));
-		int speed = decodeSpeed(gateway.send(OBD2Command.GET_SPEED.getCommand()));
-		int [] fuelSystemStatus = decodeFuelSystemStatus(gateway.send(OBD2Command.GET_FUEL_SYSTEM_STATUS.getCommand()));
-		int load = decodeEngineLoad(gateway.send(OBD2Command.GET_ENGINE_LOAD.getCommand()));
-		int coolantTemp = decodeCoolantTemp(gateway.send(OBD2Command.GET_COOLANT_TEMP.getCommand()));
-		double shortTermFuelPercent = decodeFuelPercent(gateway.send(OBD2Command.GET_SHORT_TERM_FUEL_PERCENT.getCommand()));
-		double longTermFuelPercent = decodeFuelPercent(gateway.send(OBD2Command.GET_LONG_TERM_FUEL_PERCENT.getCommand()));
-		int intakePressure = decodeIntakePressure(gateway.send(OBD2Command.GET_INTAKE_ABSOLUTE_PRESSURE.getCommand()));
-		int intakeAirTemp = decodeIntakeAirTemp(gateway.send(OBD2Command.GET_INTAKE_AIR_TEMP.getCommand()));
-		double mafRate = decodeMafRate(gateway.send(OBD2Command.GET_MAF_FLOW_RATE.getCommand()));
-		int throttlePosition = decodeThrottlePosition(gateway.send(OBD2Command.GET_THROTTLE_POSITION.getCommand()));
-		OBDVersion standardVersion = decodeObdVersion(gateway.send(OBD2Command.GET_OBD_STANDARD.getCommand()));
-		int seconds = decodeRunningTime(gateway.send(OBD2Command.GET_RUN_TIME_SINCE_START.getCommand()));
-//		int speed = decodeSpeed(gateway.send(OBD2Command.GET_DISTANCE_WITH_CHECK_ENGINE.getCommand()));
-		int fuelLevel = decodePercentage(gateway.send(OBD2Command.GET_FUEL_LEVEL.getCommand()));
-//		int speed = decodeSpeed(gateway.send(OBD2Command.GET_BAROMETRIC_PRESSURE.getCommand()));
-//		int speed = decodeSpeed(gateway.send(OBD2Command.GET_CATALYST_TEMP.getCommand()));
-//		int speed = decodeSpeed(gateway.send(OBD2Command.GET_CONTROL_MODULE_VOLTAGE.getCommand()));
-		int relativeThrottlePosition = decodePercentage(gateway.send(OBD2Command.GET_RELATIVE_THROTTLE_POSITION.getCommand()));
-		int absoluteThrottlePositionB = decodePercentage(gateway.send(OBD2Command.GET_ABSOLUTE_THROTTLE_POSITION_B.getCommand()));
-		int acceleratorPedalD = decodePercentage(gateway.send(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_D.getCommand()));
-		int acceleratorPedalE = decodePercentage(gateway.send(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_E.getCommand()));
-
-//		CarState result = new CarState(fuelSystemStatus, speed, -1, -1, -1, rpm);
-
-		// REST calls are made to n iPhone running GPS Receiver HD
-		// https://itunes.apple.com/us/app/gps-receiver-hd/id397928381?mt=8
-		String currentLocation = restTemplate.getForObject("http://" + gpsHost, String.class);
-		Map<String, Double> location = formatLocation(currentLocation);
-		System.out.println(String.format("%f,%f,%d,%d,%s,%d,%d,%f,%f,%d,%d,%f,%d,%s,%d,%d,%d,%d,%d,%d",
-												location.get("Longitude"),
-												location.get("Latitude"),
-												rpm,
-												speed,
-												fuelSystemStatus[0], // Currently just outputting the first one since the simulator only consumes one
-												load,
-												coolantTemp,
-												shortTermFuelPercent,
-												longTermFuelPercent,
-												intakePressure,
-												intakeAirTemp,
-												mafRate,
-												throttlePosition,
-												standardVersion,
-												seconds,
-												fuelLevel,
-												relativeThrottlePosition,
-												absoluteThrottlePositionB,
-												acceleratorPedalD,
-												acceleratorPedalE));
-
-		return null;
+		return session.getBitmaps();
 	}
 
-	private int decodePercentage(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
-
-		String[] elements = respsonseLines[1].split(" ");
+	/**
+	 * Runs the full connection script, lets the dongle search for the protocol and
+	 * asks the car for the PIDs it supports, recording the session in the cache.
+	 *
+	 * @return the supported PIDs bitmaps
+	 */
+	private int[] negotiate() {
+		for(OBD2Command curCommand : CONNECTION_SCRIPT_START) {
+			gateway.send(curCommand.getCommand());
+		}
 
-		BigInteger a = new BigInteger(elements[7], 16);
+		int pidOffset = 0;
+		List<String> pids = new ArrayList<>();
+		int[] bitmaps = new int[PIDS.length];
+		int bitmapCount = 0;
+		for(OBD2Command curCommand : PIDS) {
+			String response = gateway.send(curCommand.getCommand());
 
-		return a.intValue() * 100 / 255;
-	}
+			Matcher matcher = NO_DATA.matcher(response);
 
-	protected int decodeRunningTime(String response) {
-		String [] respsonseLines = response.split("\n");
+			if(matcher.find()) {
+				break;
+			}
 
-		StringBuilder pidString = new StringBuilder();
+			OBD2ResponseDecoder decoder = DECODERS.get().decode(response);
 
-		String[] elements = respsonseLines[1].split(" ");
+			pids.addAll(decodePidsSupported(decoder, pidOffset));
+			bitmaps[bitmapCount++] = decoder.getDataWord(0);
 
-		BigInteger a = new BigInteger(elements[7], 16);
-		BigInteger b = new BigInteger(elements[8], 16);
+			pidOffset += 32;
+		}
 
-		return (a.intValue()*256)+b.intValue();
-	}
+		System.out.println("PIDs supported by this car are:");
+		System.out.println("-------------------------------");
 
-	protected OBDVersion decodeObdVersion(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		// Need to verify position
-		String[] elements = respsonseLines[1].split(" ");
-		int status = new BigInteger(elements[7], 16).intValue();
-
-		switch (status) {
-			case 1: return OBDVersion.OBD_II;
-			case 2: return OBDVersion.OBD;
-			case 3: return OBDVersion.OBD_AND_OBD_II;
-			case 4: return OBDVersion.OBD_I;
-			case 5: return OBDVersion.NOT_OBD;
-			case 6: return OBDVersion.EOBD;
-			case 7: return OBDVersion.EOBD_AND_OBD_II;
-			case 8: return OBDVersion.EOBD_AND_OBD;
-			case 9: return OBDVersion.EOBD_OBD_AND_OBD_II;
-			case 10: return OBDVersion.JOBD;
-			case 11: return OBDVersion.JOBD_AND_OBD_II;
-			case 12: return OBDVersion.JOBD_AND_EOBD;
-			case 13: return OBDVersion.JOBD_EOBD_AND_OBD_II;
-			case 17: return OBDVersion.EMD;
-			case 18: return OBDVersion.EMD_PLUS;
-			case 19: return OBDVersion.HD_OBD_C;
-			case 20: return OBDVersion.HD_OBD;
-			case 21: return OBDVersion.WWH_OBD;
-			case 23: return OBDVersion.HD_EOBD_I;
-			case 24: return OBDVersion.HD_EOBD_I_N;
-			case 25: return OBDVersion.HD_EOBD_II;
-			case 26: return OBDVersion.HD_EOBD_II_N;
-			case 28: return OBDVersion.OBDBr_1;
-			case 29: return OBDVersion.OBDBr_2;
-			case 30: return OBDVersion.KOBD;
-			case 31: return OBDVersion.IOBD_I;
-			case 32: return OBDVersion.IOBD_II;
-			case 33: return OBDVersion.HD_EOBD_IV;
-			default : throw new RuntimeException("Invalid value returned");
+		for (String pid : pids) {
+			System.out.println(pid);
 		}
-	}
 
-	private int decodeThrottlePosition(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
+		System.out.println("-------------------------------");
 
-		String[] elements = respsonseLines[1].split(" ");
+		bitmaps = Arrays.copyOf(bitmaps, bitmapCount);
+
+		if(sessionCache != null) {
+			Matcher protocol = PROTOCOL.matcher(gateway.send(OBD2Command.DESCRIBE_PROTOCOL_BY_NUMBER.getCommand()));
+
+			if(protocol.find()) {
+				try {
+					sessionCache.put(dongle, new OBD2SessionCache.Session(getVin(),
+							Integer.parseInt(protocol.group(1), 16), bitmaps));
+				}
+				catch (IOException e) {
+					System.err.println("Unable to save the session: " + e.getMessage());
+				}
+				catch (IllegalStateException e) {
+					// Sessions are keyed by VIN: a car without one is negotiated on every connection
+					System.err.println("Not caching the session: " + e.getMessage());
+				}
+			}
+		}
 
-		return Math.round(new BigInteger(elements[7], 16).intValue() * 100 / 255);
+		return bitmaps;
 	}
 
-	private double decodeMafRate(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
-
-		String[] elements = respsonseLines[1].split(" ");
-
-		BigInteger a = new BigInteger(elements[7], 16);
-		BigInteger b = new BigInteger(elements[8], 16);
-
-		return ((a.intValue()*256)+b.intValue())/100;
+	/**
+	 * @param metrics records the latencies of the polling loop, null (the default) to
+	 * 		record nothing
+	 */
+	public void setMetrics(OBD2PollingMetrics metrics) {
+		this.metrics = metrics;
 	}
 
-	private int decodeIntakeAirTemp(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
+	/**
+	 * @return the time, in milliseconds, at which {@link #getCarState()} should next be
+	 * 		called
+	 */
+	public long getNextSampleTime() {
+		return scheduler.getNextPollTime(System.currentTimeMillis());
+	}
 
-		String[] elements = respsonseLines[1].split(" ");
+	/**
+	 * @return the VIN of the car, only requested once per connection
+	 */
+	public String getVin() {
+		if(vin == null) {
+			vin = decodeVin(gateway.send(OBD2Command.GET_VIN.getCommand()));
+		}
 
-		return (int) Math.round((new BigInteger(elements[7], 16).intValue() - 40) * 1.8 + 32);
+		return vin;
 	}
 
-	protected int decodeIntakePressure(String response) {
-		String [] respsonseLines = response.split("\n");
+	/**
+	 * Requests vehicle information (mode 09) from every ECU.
+	 *
+	 * @param type the info type requested
+	 * @return the items sent by each ECU, keyed by the CAN header of the ECU
+	 */
+	public Map<Integer, List<String>> getVehicleInfo(OBD2VehicleInfo.InfoType type) {
+		return OBD2VehicleInfo.decode(DECODERS.get().decode(gateway.send(type.getCommand().getCommand())), type);
+	}
 
-		StringBuilder pidString = new StringBuilder();
+	private static String decodeVin(String response) {
+		String vin = OBD2VehicleInfo.decodeFirst(DECODERS.get().decode(response), OBD2VehicleInfo.InfoType.VIN);
 
-		String[] elements = respsonseLines[1].split(" ");
+		if(vin == null) {
+			throw new IllegalStateException("No VIN found in " + response);
+		}
 
-		return new BigInteger(elements[7], 16).intValue();
+		return vin;
 	}
 
-	protected double decodeFuelPercent(String response) {
-		String [] respsonseLines = response.split("\n");
+	public List<String> decodePidsSupported(String response, int offset) {
+		return decodePidsSupported(DECODERS.get().decode(response), offset);
+	}
 
-		StringBuilder pidString = new StringBuilder();
+	/**
+	 * @param decoder the decoded reply to a PIDs supported request
+	 * @param offset the PID before the first one of the bitmap
+	 * @return the PIDs supported, in hex
+	 */
+	public List<String> decodePidsSupported(OBD2ResponseDecoder decoder, int offset) {
+		List<String> pids = new ArrayList<>();
 
-		String[] elements = respsonseLines[1].split(" ");
+		int[] bitmap = {decoder.getDataWord(0)};
 
-		BigInteger a = new BigInteger(elements[7], 16);
+		for(int i = 1; i <= 32; i++) {
+			if(OBD2PidRegistry.isSupported(bitmap, i)) {
+				pids.add(Integer.toHexString(i + offset));
+			}
+		}
 
-		return a.intValue() - 40;
+		return pids;
 	}
 
-	protected int decodeCoolantTemp(String response) {
-		String [] respsonseLines = response.split("\n");
-
-		StringBuilder pidString = new StringBuilder();
+	/**
+	 * Reads the PIDs that are due according to the polling intervals and publishes a
+	 * sample holding the latest value of every PID to the ring of samples.
+	 *
+	 * @return the sample published, only valid until its slot of the ring is reused,
+	 * 		null if no PID was due
+	 */
+	public CarState getCarState() {
 
-		String[] elements = respsonseLines[1].split(" ");
+		long start = System.nanoTime();
+		long now = System.currentTimeMillis();
+		List<OBD2BatchPlanner.Batch> batches = scheduler.nextBatches(now);
 
-		BigInteger a = new BigInteger(elements[7], 16);
+		if(batches.isEmpty()) {
+			return null;
+		}
 
-		return a.intValue() - 40;
+		return record(now, start, send(batches));
 	}
 
-	protected int decodeEngineLoad(String response) {
-		String [] respsonseLines = response.split("\n");
+	/**
+	 * Same as {@link #getCarState()} without waiting for the replies: the requests are
+	 * queued and the replies decoded by the executor once they all arrived.  Calls must
+	 * not overlap: the next call is made once the returned future completes.
+	 *
+	 * @param executor runs the decoding of the replies
+	 * @return the future sample published, null if no PID was due
+	 */
+	public CompletableFuture<CarState> getCarStateAsync(Executor executor) {
 
-		StringBuilder pidString = new StringBuilder();
+		long start = System.nanoTime();
+		long now = System.currentTimeMillis();
+		List<OBD2BatchPlanner.Batch> batches = scheduler.nextBatches(now);
 
-		String[] elements = respsonseLines[1].split(" ");
+		if(batches.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
 
-		BigInteger a = new BigInteger(elements[7], 16);
+		List<CompletableFuture<String>> replies = send(batches);
 
-		return a.intValue() * 100 / 255;
+		return CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[replies.size()]))
+				.thenApplyAsync(ignored -> record(now, start, replies), executor);
 	}
 
 	/**
-	 * Formula taken from http://en.wikipedia.org/wiki/OBD-II_PIDs
-	 * @param response Full response for the 01 0C request
-	 * @return int value of the current RPMs
+	 * Queues every request up front so the dongle is never idle while the replies are
+	 * decoded.
 	 */
-	protected int decodeRPM(String response) {
-		String [] respsonseLines = response.split("\n");
+	private List<CompletableFuture<String>> send(List<OBD2BatchPlanner.Batch> batches) {
+		List<CompletableFuture<String>> replies = new ArrayList<>(batches.size());
 
-		StringBuilder pidString = new StringBuilder();
+		for (OBD2BatchPlanner.Batch batch : batches) {
+			CompletableFuture<String> reply = gateway.sendAsync(batch.getCommand());
 
-		String[] elements = respsonseLines[1].split(" ");
+			if(metrics != null) {
+				long sent = System.nanoTime();
+				reply.thenRun(() -> metrics.recordRoundTrip(batch.getCommands(), System.nanoTime() - sent));
+			}
 
-		BigInteger a = new BigInteger(elements[7], 16);
-		BigInteger b = new BigInteger(elements[8], 16);
+			replies.add(reply);
+		}
 
-		return ((a.intValue()*256)+b.intValue())/4;
+		return replies;
 	}
 
-	protected int decodeSpeed(String response) {
-		String [] respsonseLines = response.split("\n");
+	private CarState record(long now, long start, List<CompletableFuture<String>> replies) {
+		OBD2ResponseDecoder decoder = DECODERS.get();
 
-		String[] elements = respsonseLines[1].split(" ");
+		for (CompletableFuture<String> reply : replies) {
+			String response = await(reply);
+			long decodeStart = System.nanoTime();
 
-		return (int) Math.round(.621371 * new BigInteger(elements[7], 16).intValue());
-	}
+			readings.record(decoder.decode(response));
 
-	protected int[] decodeFuelSystemStatus(String response) {
-		String [] respsonseLines = response.split("\n");
+			if(metrics != null) {
+				metrics.recordDecode(System.nanoTime() - decodeStart);
+			}
+		}
 
-		String[] elements = respsonseLines[1].split(" ");
-		int [] statuses = new int[2];
-		statuses[0] = new BigInteger(elements[7], 16).intValue();
-		statuses[1] = new BigInteger(elements[8], 16).intValue();
+		CarState state = samples.next();
+		state.setTimestamp(now);
 
-		return statuses;
-	}
+		long gpsStart = System.nanoTime();
+		GpsPosition position = gps.getPosition();
+
+		if(metrics != null) {
+			metrics.recordGps(System.nanoTime() - gpsStart);
+		}
+
+		if(position != null && now - position.getTimestamp() <= gpsMaxAge) {
+			state.setLatitude(position.getLatitude());
+			state.setLongitude(position.getLongitude());
+		}
 
-	private Map<String, Double> formatLocation(String locationHtml) {
-		Map<String, Double> curLocation = new HashMap<>();
+		registry.apply(readings, state);
 
-		locationHtml = locationHtml.replaceAll("\n", "").replaceAll("<[^<]+?>", "");
-		Pattern pattern = Pattern.compile(".*Latitude(-?\\d+\\.\\d+)Longitude(-?\\d+\\.\\d+).*");
-		Matcher matcher = pattern.matcher(locationHtml);
+		samples.publish();
 
-		if(matcher.find()) {
-			curLocation.put("Latitude", Double.parseDouble(matcher.group(1)));
-			curLocation.put("Longitude", Double.parseDouble(matcher.group(2)));
+		if(metrics != null) {
+			metrics.recordSample(System.nanoTime() - start);
 		}
 
-		return curLocation;
+		return state;
+	}
+
+	private String await(CompletableFuture<String> reply) {
+		try {
+			return reply.get(replyTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			throw new MessageTimeoutException("No reply received from the dongle within " + replyTimeout + "ms");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting for a reply", e);
+		}
+		catch (ExecutionException e) {
+			throw new MessagingException("Unable to read the reply of the dongle", e.getCause());
+		}
 	}
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+
+/**
+ * Table of the mode 01 PIDs the controller reads: for each, the request, the
+ * {@link CarStateField} it sets and the formula turning the data bytes into its value.
+ * Formulas are taken from http://en.wikipedia.org/wiki/OBD-II_PIDs; speeds and intake
+ * temperatures are converted to MPH and Fahrenheit.
+ *
+ * @author Michael Minella
+ */
+public enum OBD2Pid {
+
+	RPM(OBD2Command.GET_RPM, CarStateField.RPM,
+			(a, b) -> ((a * 256) + b) / 4),
+	SPEED(OBD2Command.GET_SPEED, CarStateField.VEHICLE_SPEED,
+			(a, b) -> Math.round(.621371 * a)),
+	// Only the first fuel system since the simulator only consumes one
+	FUEL_SYSTEM_STATUS(OBD2Command.GET_FUEL_SYSTEM_STATUS, CarStateField.FUEL_SYSTEM_STATUS,
+			(a, b) -> a),
+	ENGINE_LOAD(OBD2Command.GET_ENGINE_LOAD, CarStateField.ENGINE_LOAD,
+			(a, b) -> a * 100 / 255),
+	COOLANT_TEMP(OBD2Command.GET_COOLANT_TEMP, CarStateField.COOLANT_TEMP,
+			(a, b) -> a - 40),
+	SHORT_TERM_FUEL_PERCENT(OBD2Command.GET_SHORT_TERM_FUEL_PERCENT, CarStateField.SHORT_TERM_FUEL,
+			(a, b) -> (a - 128) * 100 / 128.0),
+	LONG_TERM_FUEL_PERCENT(OBD2Command.GET_LONG_TERM_FUEL_PERCENT, CarStateField.LONG_TERM_FUEL,
+			(a, b) -> (a - 128) * 100 / 128.0),
+	INTAKE_ABSOLUTE_PRESSURE(OBD2Command.GET_INTAKE_ABSOLUTE_PRESSURE, CarStateField.INTAKE_MANIFOLD_PRESSURE,
+			(a, b) -> a),
+	INTAKE_AIR_TEMP(OBD2Command.GET_INTAKE_AIR_TEMP, CarStateField.INTAKE_AIR_TEMP,
+			(a, b) -> Math.round((a - 40) * 1.8 + 32)),
+	MAF_FLOW_RATE(OBD2Command.GET_MAF_FLOW_RATE, CarStateField.MAF_AIRFLOW,
+			(a, b) -> ((a * 256) + b) / 100.0),
+	THROTTLE_POSITION(OBD2Command.GET_THROTTLE_POSITION, CarStateField.THROTTLE_POSITION,
+			(a, b) -> a * 100 / 255),
+	OBD_STANDARD(OBD2Command.GET_OBD_STANDARD, CarStateField.OBD_STANDARDS,
+			(a, b) -> a),
+	RUN_TIME_SINCE_START(OBD2Command.GET_RUN_TIME_SINCE_START, CarStateField.TIME_SINCE_ENGINE_START,
+			(a, b) -> (a * 256) + b),
+	FUEL_LEVEL(OBD2Command.GET_FUEL_LEVEL, CarStateField.FUEL_LEVEL_INPUT,
+			(a, b) -> a * 100 / 255),
+	RELATIVE_THROTTLE_POSITION(OBD2Command.GET_RELATIVE_THROTTLE_POSITION, CarStateField.RELATIVE_THROTTLE_POS,
+			(a, b) -> a * 100 / 255),
+	ABSOLUTE_THROTTLE_POSITION_B(OBD2Command.GET_ABSOLUTE_THROTTLE_POSITION_B, CarStateField.ABSOLUTE_THROTTLE_POS_B,
+			(a, b) -> a * 100 / 255),
+	ACCELERATOR_PEDAL_POSITION_D(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_D, CarStateField.ACCELERATOR_THROTTLE_POS_D,
+			(a, b) -> a * 100 / 255),
+	ACCELERATOR_PEDAL_POSITION_E(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_E, CarStateField.ACCELERATOR_THROTTLE_POS_E,
+			(a, b) -> a * 100 / 255);
+
+	/**
+	 * Turns the A and B data bytes of a PID into its value.
+	 */
+	@FunctionalInterface
+	interface Formula {
+		double apply(int a, int b);
+	}
+
+	private static final OBD2Pid[] BY_PID = new OBD2Pid[256];
+
+	static {
+		for (OBD2Pid pid : values()) {
+			BY_PID[pid.command.getPid()] = pid;
+		}
+	}
+
+	private final OBD2Command command;
+
+	private final CarStateField field;
+
+	private final Formula formula;
+
+	private OBD2Pid(OBD2Command command, CarStateField field, Formula formula) {
+		this.command = command;
+		this.field = field;
+		this.formula = formula;
+	}
+
+	/**
+	 * @param pid a mode 01 PID
+	 * @return the descriptor of the PID, null if the controller does not read it
+	 */
+	public static OBD2Pid forPid(int pid) {
+		return pid >= 0 && pid < BY_PID.length ? BY_PID[pid] : null;
+	}
+
+	public OBD2Command getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the value of the sample set by the PID
+	 */
+	public CarStateField getField() {
+		return field;
+	}
+
+	/**
+	 * @return the number of data bytes of the PID
+	 */
+	public int getResponseBytes() {
+		return command.getResponseBytes();
+	}
+
+	/**
+	 * @param a the first data byte
+	 * @param b the second data byte, 0 for single byte PIDs
+	 * @return the value of the PID
+	 */
+	public double decode(int a, int b) {
+		return formula.apply(a, b);
+	}
+
+	/**
+	 * Sets the value recorded for the PID on the sample.
+	 *
+	 * @param readings readings holding a value for the PID
+	 * @param state the sample
+	 */
+	public void apply(OBD2Readings readings, CarState state) {
+		int a = readings.getA(command);
+		int b = command.getResponseBytes() > 1 ? readings.getB(command) : 0;
+
+		field.set(state, formula.apply(a, b));
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.acmemotors.domain.CarState;
+
+/**
+ * The {@link OBD2Pid}s polled for a car, built once from the supported PID bitmaps it
+ * returned (01 00, 01 20, etc).  Decoding a sample is then a walk over a small array of
+ * descriptors rather than a test and a decode method per PID.
+ *
+ * @author Michael Minella
+ */
+public class OBD2PidRegistry {
+
+	private final OBD2Pid[] polled;
+
+	private final List<OBD2Command> commands;
+
+	/**
+	 * @param bitmaps the supported PID bitmaps read, the first one for PIDs 01 to 20,
+	 * 		the second one for PIDs 21 to 40 and so on.  Without any bitmap every PID is
+	 * 		polled and the car ignores what it does not know.
+	 */
+	public OBD2PidRegistry(int... bitmaps) {
+		List<OBD2Pid> supported = new ArrayList<>();
+
+		for (OBD2Pid pid : OBD2Pid.values()) {
+			if(bitmaps.length == 0 || isSupported(bitmaps, pid.getCommand().getPid())) {
+				supported.add(pid);
+			}
+		}
+
+		List<OBD2Command> commands = new ArrayList<>(supported.size());
+
+		for (OBD2Pid pid : supported) {
+			commands.add(pid.getCommand());
+		}
+
+		this.polled = supported.toArray(new OBD2Pid[supported.size()]);
+		this.commands = Collections.unmodifiableList(commands);
+	}
+
+	/**
+	 * @param bitmaps the supported PID bitmaps
+	 * @param pid a mode 01 PID
+	 * @return true if the bit of the PID is set in its bitmap
+	 */
+	public static boolean isSupported(int[] bitmaps, int pid) {
+		int bitmap = (pid - 1) / 32;
+
+		return pid >= 1 && bitmap < bitmaps.length && (bitmaps[bitmap] & (0x80000000 >>> ((pid - 1) % 32))) != 0;
+	}
+
+	/**
+	 * @return the requests of the PIDs polled
+	 */
+	public List<OBD2Command> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Sets on the sample the value of every polled PID held by the readings.
+	 *
+	 * @param readings the latest readings
+	 * @param state the sample
+	 */
+	public void apply(OBD2Readings readings, CarState state) {
+		for (OBD2Pid pid : polled) {
+			if(readings.has(pid.getCommand())) {
+				pid.apply(readings, state);
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.acmemotors.metrics.LatencyHistogram;
+
+/**
+ * Latency histograms of the stages of the polling loop of {@link OBD2Controller}, in
+ * nanoseconds:
+ *
+ * <ul>
+ *     <li>round trip: from queuing a request to the dongle to its reply, per command.
+ *     The commands of a batch share one round trip, recorded for each of them</li>
+ *     <li>decode: decoding one reply and recording its readings</li>
+ *     <li>gps: fetching the location</li>
+ *     <li>sample: from the start of a poll to the publication of its sample</li>
+ *     <li>output: handing a sample to the consumer of the samples (printing,
+ *     journaling), recorded by that consumer</li>
+ * </ul>
+ *
+ * The round trip histogram of a command is created the first time the command is
+ * polled; recording is allocation free after that.  One instance may be shared by the
+ * controllers of many cars to get the figures of the whole fleet.
+ *
+ * @author Michael Minella
+ */
+public class OBD2PollingMetrics {
+
+	private final AtomicReferenceArray<LatencyHistogram> roundTrips =
+			new AtomicReferenceArray<>(OBD2Command.values().length);
+
+	private final LatencyHistogram decode = new LatencyHistogram();
+
+	private final LatencyHistogram gps = new LatencyHistogram();
+
+	private final LatencyHistogram sample = new LatencyHistogram();
+
+	private final LatencyHistogram output = new LatencyHistogram();
+
+	/**
+	 * Creates histograms printed to the standard error by a daemon thread.
+	 *
+	 * @param interval the number of milliseconds between two reports
+	 * @return the histograms
+	 */
+	public static OBD2PollingMetrics reportedEvery(long interval) {
+		OBD2PollingMetrics metrics = new OBD2PollingMetrics();
+
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "polling-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		executor.scheduleAtFixedRate(() -> System.err.print(metrics.report()), interval, interval, TimeUnit.MILLISECONDS);
+
+		return metrics;
+	}
+
+	/**
+	 * @param commands the commands of the batch
+	 * @param nanos the round trip of the batch
+	 */
+	public void recordRoundTrip(List<OBD2Command> commands, long nanos) {
+		for (int i = 0; i < commands.size(); i++) {
+			getRoundTrip(commands.get(i)).recordValue(nanos);
+		}
+	}
+
+	public void recordDecode(long nanos) {
+		decode.recordValue(nanos);
+	}
+
+	public void recordGps(long nanos) {
+		gps.recordValue(nanos);
+	}
+
+	public void recordSample(long nanos) {
+		sample.recordValue(nanos);
+	}
+
+	public void recordOutput(long nanos) {
+		output.recordValue(nanos);
+	}
+
+	/**
+	 * @param command the command
+	 * @return the round trips of the requests of the command
+	 */
+	public LatencyHistogram getRoundTrip(OBD2Command command) {
+		LatencyHistogram histogram = roundTrips.get(command.ordinal());
+
+		if(histogram == null) {
+			roundTrips.compareAndSet(command.ordinal(), null, new LatencyHistogram());
+			histogram = roundTrips.get(command.ordinal());
+		}
+
+		return histogram;
+	}
+
+	public LatencyHistogram getDecode() {
+		return decode;
+	}
+
+	public LatencyHistogram getGps() {
+		return gps;
+	}
+
+	public LatencyHistogram getSample() {
+		return sample;
+	}
+
+	public LatencyHistogram getOutput() {
+		return output;
+	}
+
+	/**
+	 * Forgets every value recorded, to report the figures of an interval.
+	 */
+	public void reset() {
+		for (int i = 0; i < roundTrips.length(); i++) {
+			if(roundTrips.get(i) != null) {
+				roundTrips.get(i).reset();
+			}
+		}
+
+		decode.reset();
+		gps.reset();
+		sample.reset();
+		output.reset();
+	}
+
+	/**
+	 * @return the count, percentiles and maximum, in milliseconds, of every histogram
+	 * 		holding values, one per line, the commands sorted by their median round trip
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder(String.format("%-44s %10s %9s %9s %9s %9s %9s%n",
+				"latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max"));
+
+		OBD2Command[] commands = OBD2Command.values();
+		Integer[] order = new Integer[commands.length];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, (a, b) -> Long.compare(median(b), median(a)));
+
+		for (int i : order) {
+			if(roundTrips.get(i) != null) {
+				append(report, "round trip " + commands[i], roundTrips.get(i));
+			}
+		}
+
+		append(report, "decode", decode);
+		append(report, "gps", gps);
+		append(report, "sample", sample);
+		append(report, "output", output);
+
+		return report.toString();
+	}
+
+	private long median(int command) {
+		LatencyHistogram histogram = roundTrips.get(command);
+
+		return histogram == null ? 0 : histogram.getValueAtPercentile(50);
+	}
+
+	private static void append(StringBuilder report, String name, LatencyHistogram histogram) {
+		if(histogram.getTotalCount() == 0) {
+			return;
+		}
+
+		report.append(String.format("%-44s %10d %9.3f %9.3f %9.3f %9.3f %9.3f%n", name, histogram.getTotalCount(),
+				histogram.getValueAtPercentile(50) / 1e6,
+				histogram.getValueAtPercentile(90) / 1e6,
+				histogram.getValueAtPercentile(99) / 1e6,
+				histogram.getValueAtPercentile(99.9) / 1e6,
+				histogram.getMaxValue() / 1e6));
+	}
+}
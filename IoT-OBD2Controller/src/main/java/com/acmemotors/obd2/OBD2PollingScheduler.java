@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Decides which PIDs to read on each pass of the polling loop.  Each PID has its own
+ * polling interval (fast changing values like RPM and speed are read several times a
+ * second, the fuel level every minute and the OBD standard once per session) and the
+ * number of requests sent to the dongle is capped by a budget of round trips per
+ * second.  When the budget does not allow every due PID to be read, the PIDs are read
+ * earliest deadline first (the time they came due plus their interval) so fast PIDs
+ * get priority without ever starving the slow ones; the others stay due for the next
+ * pass.
+ *
+ * PIDs that are due at the same time are grouped into multi-PID requests by the
+ * {@link OBD2BatchPlanner}.  The plans are cached since the same groups of PIDs come
+ * due over and over again.
+ *
+ * @author Michael Minella
+ */
+public class OBD2PollingScheduler {
+
+	/**
+	 * Interval used for PIDs read only once per session.
+	 */
+	public static final long ONCE = 0;
+
+	private static final String ONCE_VALUE = "once";
+
+	private static final long DEFAULT_INTERVAL = 1000;
+
+	private static final int MAX_CACHED_PLANS = 256;
+
+	private static final Map<OBD2Command, Long> DEFAULT_INTERVALS = new EnumMap<>(OBD2Command.class);
+
+	static {
+		DEFAULT_INTERVALS.put(OBD2Command.GET_RPM, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_SPEED, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_THROTTLE_POSITION, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_RELATIVE_THROTTLE_POSITION, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_ABSOLUTE_THROTTLE_POSITION_B, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_D, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_E, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_ENGINE_LOAD, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_MAF_FLOW_RATE, 250L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_COOLANT_TEMP, 10000L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_INTAKE_AIR_TEMP, 10000L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_FUEL_LEVEL, 60000L);
+		DEFAULT_INTERVALS.put(OBD2Command.GET_OBD_STANDARD, ONCE);
+	}
+
+	private final OBD2BatchPlanner planner;
+
+	private final OBD2Command[] commands;
+
+	private final long[] intervals;
+
+	private final long[] nextPoll;
+
+	private final double roundTripsPerSecond;
+
+	private final int[] indexByOrdinal = new int[OBD2Command.values().length];
+
+	private final List<OBD2Command> due = new ArrayList<>();
+
+	private final List<OBD2Command> polled = new ArrayList<>();
+
+	private final Comparator<OBD2Command> byDeadline =
+			(a, b) -> Long.compare(deadline(a), deadline(b));
+
+	private final Map<List<OBD2Command>, List<OBD2BatchPlanner.Batch>> plans = new HashMap<>();
+
+	private double tokens;
+
+	private long lastRefill = -1;
+
+	/**
+	 * @param commands the mode 01 PIDs to poll
+	 * @param intervals polling interval in milliseconds for each PID, overriding the
+	 * 		defaults ({@link #ONCE} for PIDs read once per session)
+	 * @param planner the planner used to group due PIDs into requests
+	 * @param roundTripsPerSecond the maximum number of requests sent to the dongle per
+	 * 		second
+	 */
+	public OBD2PollingScheduler(Collection<OBD2Command> commands, Map<OBD2Command, Long> intervals,
+			OBD2BatchPlanner planner, double roundTripsPerSecond) {
+		Assert.isTrue(roundTripsPerSecond > 0, "roundTripsPerSecond must be positive");
+
+		this.planner = planner;
+		this.roundTripsPerSecond = roundTripsPerSecond;
+		this.tokens = Math.max(roundTripsPerSecond, 1);
+
+		List<OBD2Command> sorted = new ArrayList<>(commands);
+		Collections.sort(sorted, (a, b) -> Long.compare(intervalOf(a, intervals), intervalOf(b, intervals)));
+
+		this.commands = sorted.toArray(new OBD2Command[sorted.size()]);
+		this.intervals = new long[this.commands.length];
+		this.nextPoll = new long[this.commands.length];
+
+		Arrays.fill(indexByOrdinal, -1);
+
+		for (int i = 0; i < this.commands.length; i++) {
+			this.intervals[i] = intervalOf(this.commands[i], intervals);
+			this.indexByOrdinal[this.commands[i].ordinal()] = i;
+		}
+	}
+
+	/**
+	 * Returns the requests to send now and schedules the next read of every PID they
+	 * contain.
+	 *
+	 * @param now the current time in milliseconds
+	 * @return the requests to send, possibly empty if nothing is due or the budget is
+	 * 		exhausted
+	 */
+	public List<OBD2BatchPlanner.Batch> nextBatches(long now) {
+		refill(now);
+
+		due.clear();
+
+		for (int i = 0; i < commands.length; i++) {
+			if(nextPoll[i] <= now) {
+				due.add(commands[i]);
+			}
+		}
+
+		int allowed = (int) tokens;
+
+		if(due.isEmpty() || allowed == 0) {
+			return Collections.emptyList();
+		}
+
+		due.sort(byDeadline);
+		selectWithinBudget(allowed);
+
+		List<OBD2BatchPlanner.Batch> plan = plans.get(polled);
+
+		if(plan == null) {
+			if(plans.size() == MAX_CACHED_PLANS) {
+				plans.clear();
+			}
+
+			plan = planner.plan(polled);
+			plans.put(new ArrayList<>(polled), plan);
+		}
+
+		for (OBD2BatchPlanner.Batch batch : plan) {
+			for (OBD2Command command : batch.getCommands()) {
+				reschedule(command, now);
+			}
+		}
+
+		tokens -= plan.size();
+
+		return plan;
+	}
+
+	/**
+	 * @param now the current time in milliseconds
+	 * @return the time at which {@link #nextBatches(long)} will next return requests
+	 */
+	public long getNextPollTime(long now) {
+		long next = Long.MAX_VALUE;
+
+		for (long time : nextPoll) {
+			next = Math.min(next, time);
+		}
+
+		refill(now);
+
+		if(tokens < 1) {
+			long refillTime = now + (long) Math.ceil((1 - tokens) * 1000 / roundTripsPerSecond);
+			next = Math.max(next, refillTime);
+		}
+
+		return next;
+	}
+
+	/**
+	 * @param command the PID
+	 * @return the polling interval in milliseconds of the PID, {@link #ONCE} for PIDs
+	 * 		read once per session
+	 */
+	public long getInterval(OBD2Command command) {
+		return intervals[indexOf(command)];
+	}
+
+	/**
+	 * Parses a comma delimited list of intervals, e.g.
+	 * <code>GET_RPM=100,GET_FUEL_LEVEL=30000,GET_OBD_STANDARD=once</code>.
+	 *
+	 * @param intervals the intervals to parse, may be empty
+	 * @return the intervals by PID
+	 */
+	public static Map<OBD2Command, Long> parseIntervals(String intervals) {
+		Map<OBD2Command, Long> result = new EnumMap<>(OBD2Command.class);
+
+		for (String interval : StringUtils.commaDelimitedListToStringArray(intervals)) {
+			String[] pieces = StringUtils.split(interval.trim(), "=");
+
+			Assert.notNull(pieces, "Invalid polling interval: " + interval);
+
+			String value = pieces[1].trim();
+			long millis = ONCE_VALUE.equalsIgnoreCase(value) ? ONCE : Long.parseLong(value);
+
+			Assert.isTrue(millis > 0 || ONCE_VALUE.equalsIgnoreCase(value),
+					"Invalid polling interval, it must be positive or once: " + interval);
+
+			result.put(OBD2Command.valueOf(pieces[0].trim()), millis);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fills {@link #polled} with the due PIDs, earliest deadline first, that can be read
+	 * with the requests allowed.  The budget is applied before the PIDs are grouped:
+	 * the planner places variable length PIDs after the fixed length ones, so dropping
+	 * its last requests would not follow the deadlines.
+	 */
+	private void selectWithinBudget(int allowed) {
+		polled.clear();
+
+		int fixed = 0;
+		int variable = 0;
+
+		for (OBD2Command command : due) {
+			int withFixed = command.isVariableLength() ? fixed : fixed + 1;
+			int withVariable = command.isVariableLength() ? variable + 1 : variable;
+
+			if(planner.countBatches(withFixed, withVariable) <= allowed) {
+				polled.add(command);
+				fixed = withFixed;
+				variable = withVariable;
+			}
+		}
+	}
+
+	private void reschedule(OBD2Command command, long now) {
+		int i = indexOf(command);
+
+		nextPoll[i] = intervals[i] == ONCE ? Long.MAX_VALUE : now + intervals[i];
+	}
+
+	private long deadline(OBD2Command command) {
+		int i = indexOf(command);
+
+		return nextPoll[i] + intervals[i];
+	}
+
+	private int indexOf(OBD2Command command) {
+		int index = indexByOrdinal[command.ordinal()];
+
+		if(index < 0) {
+			throw new IllegalArgumentException(command + " is not polled");
+		}
+
+		return index;
+	}
+
+	private void refill(long now) {
+		if(lastRefill >= 0 && now > lastRefill) {
+			tokens = Math.min(Math.max(roundTripsPerSecond, 1),
+					tokens + (now - lastRefill) * roundTripsPerSecond / 1000);
+		}
+
+		lastRefill = Math.max(lastRefill, now);
+	}
+
+	private static long intervalOf(OBD2Command command, Map<OBD2Command, Long> intervals) {
+		if(intervals.containsKey(command)) {
+			return intervals.get(command);
+		}
+
+		return DEFAULT_INTERVALS.containsKey(command) ? DEFAULT_INTERVALS.get(command) : DEFAULT_INTERVAL;
+	}
+}
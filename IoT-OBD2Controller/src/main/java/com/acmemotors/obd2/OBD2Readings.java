@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+/**
+ * Holds the raw data bytes of the latest value read for each mode 01 PID.  A single
+ * response may answer several PIDs (see {@link OBD2BatchPlanner}); {@link #record}
+ * splits the reassembled messages of such a response back into the individual PIDs.
+ *
+ * Like {@link OBD2ResponseDecoder}, instances reuse preallocated arrays and are not
+ * thread safe.
+ *
+ * @author Michael Minella
+ */
+public class OBD2Readings {
+
+	static final int MAX_BYTES = 4;
+
+	private static final int MODE_01_RESPONSE = 0x41;
+
+	private static final OBD2Command[] COMMANDS = OBD2Command.values();
+
+	private static final OBD2Command[] COMMANDS_BY_PID = new OBD2Command[256];
+
+	static {
+		for (OBD2Command command : COMMANDS) {
+			if(command.getMode() == 1 && command.getResponseBytes() > 0) {
+				COMMANDS_BY_PID[command.getPid()] = command;
+			}
+		}
+	}
+
+	private final int[] values = new int[COMMANDS.length * MAX_BYTES];
+
+	private final int[] lengths = new int[COMMANDS.length];
+
+	private final int[] recordedIn = new int[COMMANDS.length];
+
+	private int recording;
+
+	/**
+	 * Forgets every reading so the instance can be reused for the next sample.
+	 */
+	public void clear() {
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = 0;
+		}
+	}
+
+	/**
+	 * Records the PIDs found in the last response decoded by the decoder, replacing any
+	 * previously recorded value.  When more than one ECU answers the same PID in a
+	 * response, the first answer is kept.  A variable length PID is expected to be the
+	 * last one of its message and consumes the remaining bytes.
+	 *
+	 * @param decoder decoder holding a mode 01 response
+	 */
+	public void record(OBD2ResponseDecoder decoder) {
+		recording++;
+
+		for (int message = 0; message < decoder.getMessageCount(); message++) {
+			int length = decoder.getMessageLength(message);
+
+			if(length < 2 || decoder.getMessageByte(message, 0) != MODE_01_RESPONSE) {
+				continue;
+			}
+
+			int index = 1;
+
+			while(index < length) {
+				OBD2Command command = COMMANDS_BY_PID[decoder.getMessageByte(message, index)];
+
+				if(command == null) {
+					// Unknown PID, the size of its data is unknown so nothing after it can be read
+					break;
+				}
+
+				int count = command.getResponseBytes();
+
+				if(command.isVariableLength()) {
+					count = Math.min(Math.max(count, length - index - 1), MAX_BYTES);
+				}
+
+				if(index + 1 + count > length) {
+					break;
+				}
+
+				int ordinal = command.ordinal();
+
+				if(recordedIn[ordinal] != recording) {
+					for (int i = 0; i < count; i++) {
+						values[ordinal * MAX_BYTES + i] = decoder.getMessageByte(message, index + 1 + i);
+					}
+
+					lengths[ordinal] = count;
+					recordedIn[ordinal] = recording;
+				}
+
+				index += 1 + count;
+			}
+		}
+	}
+
+	/**
+	 * @param command the PID
+	 * @return true if a value was recorded for the PID since the last {@link #clear()}
+	 */
+	public boolean has(OBD2Command command) {
+		return lengths[command.ordinal()] > 0;
+	}
+
+	/**
+	 * @param command the PID
+	 * @param index index of the data byte (0 is A, 1 is B, etc)
+	 * @return the unsigned value of the data byte
+	 */
+	public int getByte(OBD2Command command, int index) {
+		int ordinal = command.ordinal();
+
+		if(index < 0 || index >= lengths[ordinal]) {
+			throw new IllegalStateException("No byte " + index + " recorded for " + command);
+		}
+
+		return values[ordinal * MAX_BYTES + index];
+	}
+
+	public int getA(OBD2Command command) {
+		return getByte(command, 0);
+	}
+
+	public int getB(OBD2Command command) {
+		return getByte(command, 1);
+	}
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the raw text returned by an ELM327 dongle into primitive values without
+ * creating any intermediate objects.  A response is expected to look like the
+ * following (echo on, headers on, CAN auto formatting on):
+ *
+ * <pre>
+ * 01 0C
+ * 18 DA F1 11 04 41 0C 0C C0
+ * 18 DA F1 1D 04 41 0C 0C B4
+ *
+ * &gt;
+ * </pre>
+ *
+ * The first line is the echo of the command and is skipped.  Every following line
+ * made up of hex tokens is treated as a frame: the header (four bytes for 29 bit CAN
+ * or one three digit token for 11 bit CAN) followed by the PCI byte, the mode, the
+ * PID and the data bytes.  Lines that are not hex (NO DATA, SEARCHING..., etc) are
+ * ignored.
+ *
+ * Frames are also reassembled into messages, one per responding ECU, following the
+ * ISO 15765-2 framing (single frame, first frame and consecutive frames) so responses
+ * longer than a single CAN frame (multi-PID requests, VIN, etc) can be read as one
+ * contiguous payload starting with the response mode.  The sequence numbers of the
+ * consecutive frames are checked: a message missing a frame stops at the gap and is
+ * reported as incomplete.
+ *
+ * Instances hold the last decoded response in preallocated arrays and are therefore
+ * not thread safe.  They are intended to be reused by a single controller.
+ *
+ * @author Michael Minella
+ */
+public class OBD2ResponseDecoder {
+
+	static final int MAX_FRAMES = 64;
+
+	static final int MAX_FRAME_BYTES = 16;
+
+	static final int MAX_MESSAGES = 8;
+
+	static final int MAX_MESSAGE_BYTES = 256;
+
+	private static final int SINGLE_FRAME = 0;
+
+	private static final int FIRST_FRAME = 1;
+
+	private static final int CONSECUTIVE_FRAME = 2;
+
+	private static final int HEADER_TOKENS_29_BIT = 4;
+
+	private final int[] headers = new int[MAX_FRAMES];
+
+	private final int[] lengths = new int[MAX_FRAMES];
+
+	private final int[] bytes = new int[MAX_FRAMES * MAX_FRAME_BYTES];
+
+	private final int[] messageHeaders = new int[MAX_MESSAGES];
+
+	private final int[] messageLengths = new int[MAX_MESSAGES];
+
+	private final int[] expectedLengths = new int[MAX_MESSAGES];
+
+	/**
+	 * Sequence number of the next consecutive frame of each message, -1 once a frame
+	 * was missed
+	 */
+	private final int[] nextSequences = new int[MAX_MESSAGES];
+
+	private final int[] messageBytes = new int[MAX_MESSAGES * MAX_MESSAGE_BYTES];
+
+	private final AsciiSequence asciiView = new AsciiSequence();
+
+	private int frameCount;
+
+	private int messageCount;
+
+	/**
+	 * Decodes the response currently between the position and the limit of the
+	 * buffer.  The buffer's position is not modified.
+	 *
+	 * @param response ASCII bytes as returned by the dongle
+	 * @return this decoder
+	 */
+	public OBD2ResponseDecoder decode(ByteBuffer response) {
+		asciiView.wrap(response, response.position(), response.remaining());
+		return decode(asciiView);
+	}
+
+	/**
+	 * Decodes a response that has already been converted to characters.
+	 *
+	 * @param response the full response including the echo line and the prompt
+	 * @return this decoder
+	 */
+	public OBD2ResponseDecoder decode(CharSequence response) {
+		frameCount = 0;
+
+		int length = response.length();
+		int lineStart = 0;
+		boolean echo = true;
+
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? response.charAt(i) : '\n';
+
+			if(c == '\n' || c == '\r' || c == '>') {
+				if(echo) {
+					echo = false;
+				}
+				else if(i > lineStart) {
+					decodeLine(response, lineStart, i);
+				}
+
+				lineStart = i + 1;
+
+				if(c == '>') {
+					break;
+				}
+			}
+		}
+
+		assembleMessages();
+
+		return this;
+	}
+
+	/**
+	 * @return the number of frames found in the last decoded response
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return the CAN header (sender address) of the frame
+	 */
+	public int getHeader(int frame) {
+		checkFrame(frame);
+		return headers[frame];
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return the number of bytes following the header, PCI byte included
+	 */
+	public int getLength(int frame) {
+		checkFrame(frame);
+		return lengths[frame];
+	}
+
+	/**
+	 * Returns a byte following the header.  Index 0 is the PCI byte, 1 the mode and
+	 * 2 the PID for a single frame response.
+	 *
+	 * @param frame index of the frame
+	 * @param index index of the byte after the header
+	 * @return the unsigned value of the byte
+	 */
+	public int getByte(int frame, int index) {
+		checkFrame(frame);
+
+		if(index < 0 || index >= lengths[frame]) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " has " + lengths[frame] + " bytes, requested " + index);
+		}
+
+		return bytes[frame * MAX_FRAME_BYTES + index];
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return the PCI (protocol control information) byte of the frame
+	 */
+	public int getPci(int frame) {
+		return getByte(frame, 0);
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return the mode echoed by the ECU (request mode + 0x40)
+	 */
+	public int getMode(int frame) {
+		return getByte(frame, 1);
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return the PID echoed by the ECU
+	 */
+	public int getPid(int frame) {
+		return getByte(frame, 2);
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @param index index of the data byte (0 is A, 1 is B, etc)
+	 * @return the unsigned value of the data byte
+	 */
+	public int getDataByte(int frame, int index) {
+		return getByte(frame, 3 + index);
+	}
+
+	/**
+	 * @return data byte A of the first frame
+	 */
+	public int getA() {
+		return getDataByte(0, 0);
+	}
+
+	/**
+	 * @return data byte B of the first frame
+	 */
+	public int getB() {
+		return getDataByte(0, 1);
+	}
+
+	/**
+	 * @param frame index of the frame
+	 * @return data bytes A through D of the frame as a single 32 bit value
+	 */
+	public int getDataWord(int frame) {
+		return (getDataByte(frame, 0) << 24) | (getDataByte(frame, 1) << 16) |
+				(getDataByte(frame, 2) << 8) | getDataByte(frame, 3);
+	}
+
+	/**
+	 * @return the number of messages (ISO 15765-2 reassembled payloads) found in the
+	 * 		last decoded response
+	 */
+	public int getMessageCount() {
+		return messageCount;
+	}
+
+	/**
+	 * @param message index of the message
+	 * @return the CAN header of the ECU that sent the message
+	 */
+	public int getMessageHeader(int message) {
+		checkMessage(message);
+		return messageHeaders[message];
+	}
+
+	/**
+	 * @param message index of the message
+	 * @return the number of payload bytes received for the message
+	 */
+	public int getMessageLength(int message) {
+		checkMessage(message);
+		return messageLengths[message];
+	}
+
+	/**
+	 * @param message index of the message
+	 * @return true if every byte announced by the first frame of the message was
+	 * 		received, in sequence
+	 */
+	public boolean isMessageComplete(int message) {
+		checkMessage(message);
+		return nextSequences[message] >= 0 && messageLengths[message] == expectedLengths[message];
+	}
+
+	/**
+	 * Returns a byte of a reassembled message.  Index 0 is the response mode (request
+	 * mode + 0x40), PCI bytes are not part of the message.
+	 *
+	 * @param message index of the message
+	 * @param index index of the byte in the payload
+	 * @return the unsigned value of the byte
+	 */
+	public int getMessageByte(int message, int index) {
+		checkMessage(message);
+
+		if(index < 0 || index >= messageLengths[message]) {
+			throw new IndexOutOfBoundsException("Message " + message + " has " + messageLengths[message] + " bytes, requested " + index);
+		}
+
+		return messageBytes[message * MAX_MESSAGE_BYTES + index];
+	}
+
+	private void checkMessage(int message) {
+		if(message < 0 || message >= messageCount) {
+			throw new IllegalStateException("Response contains " + messageCount + " messages, requested " + message);
+		}
+	}
+
+	private void assembleMessages() {
+		messageCount = 0;
+
+		for (int frame = 0; frame < frameCount; frame++) {
+			int base = frame * MAX_FRAME_BYTES;
+			int pci = bytes[base];
+			int start;
+			int message;
+
+			switch (pci >> 4) {
+				case SINGLE_FRAME:
+					message = newMessage(headers[frame], pci & 0x0F);
+					start = 1;
+					break;
+				case FIRST_FRAME:
+					if(lengths[frame] < 2) {
+						continue;
+					}
+
+					message = newMessage(headers[frame], ((pci & 0x0F) << 8) | bytes[base + 1]);
+					start = 2;
+					break;
+				case CONSECUTIVE_FRAME:
+					message = findMessage(headers[frame]);
+					start = 1;
+
+					if(message >= 0 && nextSequences[message] != (pci & 0x0F)) {
+						nextSequences[message] = -1;
+						continue;
+					}
+
+					if(message >= 0) {
+						nextSequences[message] = (nextSequences[message] + 1) & 0x0F;
+					}
+
+					break;
+				default:
+					// Flow control frames carry no payload
+					continue;
+			}
+
+			if(message < 0) {
+				continue;
+			}
+
+			int offset = message * MAX_MESSAGE_BYTES;
+
+			for (int i = start; i < lengths[frame] && messageLengths[message] < expectedLengths[message]; i++) {
+				messageBytes[offset + messageLengths[message]++] = bytes[base + i];
+			}
+		}
+	}
+
+	private int newMessage(int header, int expectedLength) {
+		if(messageCount == MAX_MESSAGES) {
+			return -1;
+		}
+
+		int message = messageCount++;
+		messageHeaders[message] = header;
+		messageLengths[message] = 0;
+		expectedLengths[message] = Math.min(expectedLength, MAX_MESSAGE_BYTES);
+		nextSequences[message] = 1;
+
+		return message;
+	}
+
+	private int findMessage(int header) {
+		for (int i = messageCount - 1; i >= 0; i--) {
+			if(messageHeaders[i] == header) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private void checkFrame(int frame) {
+		if(frame < 0 || frame >= frameCount) {
+			throw new IllegalStateException("Response contains " + frameCount + " frames, requested " + frame);
+		}
+	}
+
+	private void decodeLine(CharSequence response, int start, int end) {
+		if(frameCount == MAX_FRAMES) {
+			return;
+		}
+
+		int base = frameCount * MAX_FRAME_BYTES;
+		int header = 0;
+		int headerTokens = HEADER_TOKENS_29_BIT;
+		int tokens = 0;
+		int count = 0;
+		int value = 0;
+		int digits = 0;
+
+		for (int i = start; i <= end; i++) {
+			char c = i < end ? response.charAt(i) : ' ';
+			int digit = hexValue(c);
+
+			if(digit >= 0) {
+				value = (value << 4) | digit;
+				digits++;
+				continue;
+			}
+
+			if(c != ' ') {
+				// Not a frame (NO DATA, SEARCHING..., STOPPED, etc)
+				return;
+			}
+
+			if(digits == 0) {
+				continue;
+			}
+
+			if(tokens == 0 && digits == 3) {
+				headerTokens = 1;
+			}
+			else if(digits != 2) {
+				return;
+			}
+
+			if(tokens < headerTokens) {
+				header = (header << 8) | value;
+			}
+			else {
+				if(count == MAX_FRAME_BYTES) {
+					return;
+				}
+
+				bytes[base + count++] = value;
+			}
+
+			tokens++;
+			value = 0;
+			digits = 0;
+		}
+
+		if(count > 0) {
+			headers[frameCount] = header;
+			lengths[frameCount] = count;
+			frameCount++;
+		}
+	}
+
+	private static int hexValue(char c) {
+		if(c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		else if(c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		else if(c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Reusable {@link CharSequence} view over ASCII bytes so a {@link ByteBuffer} can
+	 * be decoded without being copied into a String first.
+	 */
+	private static final class AsciiSequence implements CharSequence {
+
+		private ByteBuffer buffer;
+
+		private int offset;
+
+		private int length;
+
+		void wrap(ByteBuffer buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(offset + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if(start < 0 || end > length || start > end) {
+				throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+			}
+
+			// A new view over the same bytes, the reused one is left to the decoder
+			AsciiSequence sequence = new AsciiSequence();
+			sequence.wrap(buffer, offset + start, end - start);
+
+			return sequence;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(length);
+
+			for (int i = 0; i < length; i++) {
+				builder.append(charAt(i));
+			}
+
+			return builder.toString();
+		}
+	}
+}
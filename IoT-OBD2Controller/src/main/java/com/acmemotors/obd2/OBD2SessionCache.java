@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Remembers, across restarts, what was negotiated with the dongle of each car: the
+ * protocol the dongle found (as reported by <code>AT DPN</code>) and the bitmaps of
+ * the PIDs the car supports, keyed by VIN, along with the VIN last seen behind each
+ * dongle.  With these, {@link OBD2Controller} can set the protocol directly and skip
+ * the protocol search and the supported PIDs requests, checking with a single VIN
+ * request that the dongle is still plugged into the same car.
+ *
+ * Sessions are kept in a properties file, rewritten atomically on every change.
+ * Thread safe, so the controllers of a fleet can share one cache.
+ *
+ * @author Michael Minella
+ */
+public class OBD2SessionCache {
+
+	private static final String DONGLE_PREFIX = "dongle.";
+
+	private static final String PROTOCOL_SUFFIX = ".protocol";
+
+	private static final String PIDS_SUFFIX = ".pids";
+
+	private final File file;
+
+	private final Properties properties = new Properties();
+
+	/**
+	 * @param file the file holding the sessions, created on the first change
+	 * @throws IOException if the file exists and cannot be read
+	 */
+	public OBD2SessionCache(File file) throws IOException {
+		this.file = file;
+
+		if(file.exists()) {
+			try (InputStream input = new FileInputStream(file)) {
+				properties.load(input);
+			}
+		}
+	}
+
+	/**
+	 * @param dongle identifies the dongle, typically its host and port
+	 * @return the session of the car last seen behind the dongle, null if unknown
+	 */
+	public synchronized Session get(String dongle) {
+		String vin = properties.getProperty(DONGLE_PREFIX + dongle);
+
+		if(vin == null) {
+			return null;
+		}
+
+		String protocol = properties.getProperty(vin + PROTOCOL_SUFFIX);
+		String pids = properties.getProperty(vin + PIDS_SUFFIX);
+
+		if(protocol == null || pids == null) {
+			return null;
+		}
+
+		String[] words = StringUtils.commaDelimitedListToStringArray(pids);
+		int[] bitmaps = new int[words.length];
+
+		for (int i = 0; i < words.length; i++) {
+			bitmaps[i] = (int) Long.parseLong(words[i], 16);
+		}
+
+		return new Session(vin, Integer.parseInt(protocol, 16), bitmaps);
+	}
+
+	/**
+	 * Records the session of the car behind a dongle and saves the cache.
+	 *
+	 * @param dongle identifies the dongle, typically its host and port
+	 * @param session the session negotiated
+	 * @throws IOException if the cache cannot be saved
+	 */
+	public synchronized void put(String dongle, Session session) throws IOException {
+		StringBuilder pids = new StringBuilder();
+
+		for (int bitmap : session.getBitmaps()) {
+			if(pids.length() > 0) {
+				pids.append(',');
+			}
+
+			pids.append(String.format("%08X", bitmap));
+		}
+
+		properties.setProperty(DONGLE_PREFIX + dongle, session.getVin());
+		properties.setProperty(session.getVin() + PROTOCOL_SUFFIX, Integer.toHexString(session.getProtocol()).toUpperCase());
+		properties.setProperty(session.getVin() + PIDS_SUFFIX, pids.toString());
+
+		save();
+	}
+
+	/**
+	 * Forgets the car last seen behind a dongle, so the next connection negotiates
+	 * from scratch.
+	 *
+	 * @param dongle identifies the dongle
+	 * @throws IOException if the cache cannot be saved
+	 */
+	public synchronized void remove(String dongle) throws IOException {
+		if(properties.remove(DONGLE_PREFIX + dongle) != null) {
+			save();
+		}
+	}
+
+	private void save() throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+
+		try (OutputStream output = new FileOutputStream(temporary)) {
+			properties.store(output, "OBD 2 sessions");
+		}
+
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * What was negotiated with the dongle of a car.
+	 */
+	public static class Session {
+
+		private final String vin;
+
+		private final int protocol;
+
+		private final int[] bitmaps;
+
+		/**
+		 * @param vin the VIN of the car
+		 * @param protocol the number of the protocol found by the dongle (1 to C)
+		 * @param bitmaps the supported PIDs bitmaps, see {@link OBD2PidRegistry}
+		 */
+		public Session(String vin, int protocol, int[] bitmaps) {
+			Assert.hasText(vin, "A VIN is required");
+			Assert.isTrue(protocol > 0 && protocol <= 0xC, "Unknown protocol " + protocol);
+
+			this.vin = vin;
+			this.protocol = protocol;
+			this.bitmaps = bitmaps.clone();
+		}
+
+		public String getVin() {
+			return vin;
+		}
+
+		public int getProtocol() {
+			return protocol;
+		}
+
+		public int[] getBitmaps() {
+			return bitmaps.clone();
+		}
+	}
+}
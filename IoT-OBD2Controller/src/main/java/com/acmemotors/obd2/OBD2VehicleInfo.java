@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the vehicle information (mode 09) out of a response decoded by an
+ * {@link OBD2ResponseDecoder}, working on the messages it reassembled rather than on
+ * the lines of the response, so replies spanning many frames and answered by many
+ * ECUs are read in one pass whatever the header format.
+ *
+ * A mode 09 message is the response mode (0x49), the info type, the number of data
+ * items and the items, each of a fixed length for a given info type.  Some ECUs leave
+ * the number of items out; it is then inferred from the message length.
+ *
+ * @author Michael Minella
+ */
+public final class OBD2VehicleInfo {
+
+	private static final int RESPONSE_MODE = 0x49;
+
+	/**
+	 * The info types read, with the length and format of their items.
+	 */
+	public enum InfoType {
+
+		VIN(OBD2Command.GET_VIN, 0x02, 17, true),
+		CALIBRATION_ID(OBD2Command.GET_CALIBRATION_ID, 0x04, 16, true),
+		CALIBRATION_VERIFICATION_NUMBER(OBD2Command.GET_CALIBRATION_VERIFICATION_NUMBERS, 0x06, 4, false),
+		ECU_NAME(OBD2Command.GET_ECU_NAME, 0x0A, 20, true);
+
+		private final OBD2Command command;
+
+		private final int code;
+
+		private final int itemLength;
+
+		private final boolean text;
+
+		private InfoType(OBD2Command command, int code, int itemLength, boolean text) {
+			this.command = command;
+			this.code = code;
+			this.itemLength = itemLength;
+			this.text = text;
+		}
+
+		/**
+		 * @return the command requesting the info type
+		 */
+		public OBD2Command getCommand() {
+			return command;
+		}
+
+		public int getCode() {
+			return code;
+		}
+
+		public int getItemLength() {
+			return itemLength;
+		}
+	}
+
+	private OBD2VehicleInfo() {
+	}
+
+	/**
+	 * @param decoder holding the decoded response to a mode 09 request
+	 * @param type the info type requested
+	 * @return the items sent by each ECU, keyed by the CAN header of the ECU in the
+	 * 		order the ECUs answered.  Text items are trimmed of their padding, binary
+	 * 		items are written in hex.  Incomplete messages are left out.
+	 */
+	public static Map<Integer, List<String>> decode(OBD2ResponseDecoder decoder, InfoType type) {
+		Map<Integer, List<String>> items = new LinkedHashMap<>();
+
+		for (int message = 0; message < decoder.getMessageCount(); message++) {
+			int length = decoder.getMessageLength(message);
+
+			if(!decoder.isMessageComplete(message) || length < 2
+					|| decoder.getMessageByte(message, 0) != RESPONSE_MODE
+					|| decoder.getMessageByte(message, 1) != type.code) {
+				continue;
+			}
+
+			int start = (length - 2) % type.itemLength == 0 ? 2 : 3;
+			List<String> ecuItems = new ArrayList<>();
+
+			for (int item = start; item + type.itemLength <= length; item += type.itemLength) {
+				ecuItems.add(type.text ? text(decoder, message, item, type.itemLength)
+						: hex(decoder, message, item, type.itemLength));
+			}
+
+			items.put(decoder.getMessageHeader(message), ecuItems);
+		}
+
+		return items;
+	}
+
+	/**
+	 * @param decoder holding the decoded response to a mode 09 request
+	 * @param type the info type requested
+	 * @return the first item sent, null if none
+	 */
+	public static String decodeFirst(OBD2ResponseDecoder decoder, InfoType type) {
+		for (List<String> ecuItems : decode(decoder, type).values()) {
+			if(!ecuItems.isEmpty()) {
+				return ecuItems.get(0);
+			}
+		}
+
+		return null;
+	}
+
+	private static String text(OBD2ResponseDecoder decoder, int message, int start, int length) {
+		StringBuilder text = new StringBuilder(length);
+
+		for (int i = start; i < start + length; i++) {
+			int c = decoder.getMessageByte(message, i);
+
+			// Items shorter than their field are padded with 0x00 (or 0xFF)
+			if(c >= 0x20 && c < 0x7F) {
+				text.append((char) c);
+			}
+		}
+
+		return text.toString().trim();
+	}
+
+	private static String hex(OBD2ResponseDecoder decoder, int message, int start, int length) {
+		StringBuilder hex = new StringBuilder(length * 2);
+
+		for (int i = start; i < start + length; i++) {
+			hex.append(Character.toUpperCase(Character.forDigit(decoder.getMessageByte(message, i) >> 4, 16)))
+					.append(Character.toUpperCase(Character.forDigit(decoder.getMessageByte(message, i) & 0x0F, 16)));
+		}
+
+		return hex.toString();
+	}
+}
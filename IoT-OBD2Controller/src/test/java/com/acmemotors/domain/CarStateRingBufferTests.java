@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class CarStateRingBufferTests {
+
+	@Test
+	public void testPollInBatches() {
+		CarStateRingBuffer samples = new CarStateRingBuffer(8);
+
+		for (int i = 0; i < 5; i++) {
+			CarState state = samples.next();
+			state.setTimestamp(i);
+			state.setRpm(800 + i);
+			samples.publish();
+		}
+
+		List<Long> timestamps = new ArrayList<>();
+
+		assertEquals(3, samples.poll(state -> timestamps.add(state.getTimestamp()), 3));
+		assertEquals(2, samples.poll(state -> timestamps.add(state.getTimestamp()), 3));
+		assertEquals(0, samples.poll(state -> timestamps.add(state.getTimestamp()), 3));
+
+		for (int i = 0; i < 5; i++) {
+			assertEquals(Long.valueOf(i), timestamps.get(i));
+		}
+	}
+
+	@Test
+	public void testSlotsAreClearedAndReused() {
+		CarStateRingBuffer samples = new CarStateRingBuffer(2);
+
+		CarState first = samples.next();
+		first.setSpeed(42);
+		samples.publish();
+		samples.poll(state -> {}, 1);
+
+		samples.next();
+		samples.publish();
+		samples.poll(state -> {}, 1);
+
+		CarState third = samples.next();
+
+		assertTrue(first == third);
+		assertEquals(CarState.NOT_READ, third.getSpeed());
+		assertTrue(Double.isNaN(third.getMafRate()));
+	}
+
+	@Test
+	public void testFullRingDropsNewSamples() {
+		CarStateRingBuffer samples = new CarStateRingBuffer(3);
+
+		assertEquals(4, samples.getCapacity());
+
+		for (int i = 0; i < 6; i++) {
+			samples.next().setTimestamp(i);
+			samples.publish();
+		}
+
+		assertEquals(4, samples.size());
+		assertEquals(2, samples.getDropped());
+
+		List<Long> timestamps = new ArrayList<>();
+		samples.poll(state -> timestamps.add(state.getTimestamp()), 10);
+
+		assertEquals(Long.valueOf(3), timestamps.get(3));
+	}
+
+	@Test
+	public void testConcurrentSamplingAndConsuming() throws Exception {
+		final CarStateRingBuffer samples = new CarStateRingBuffer(16);
+		final int count = 10000;
+
+		Thread producer = new Thread(() -> {
+			int published = 0;
+
+			while(published < count) {
+				// The only producer, so the ring cannot fill up between the check and next()
+				if(samples.size() < samples.getCapacity()) {
+					CarState state = samples.next();
+					state.setTimestamp(published);
+					state.setRpm(published);
+					samples.publish();
+					published++;
+				}
+				else {
+					Thread.yield();
+				}
+			}
+		});
+		producer.start();
+
+		final long[] expected = {0};
+		final boolean[] consistent = {true};
+
+		while(expected[0] < count) {
+			int polled = samples.poll(state -> {
+				consistent[0] &= state.getTimestamp() == expected[0] && state.getRpm() == expected[0];
+				expected[0]++;
+			}, 8);
+
+			if(polled == 0) {
+				Thread.yield();
+			}
+		}
+
+		producer.join();
+
+		assertTrue(consistent[0]);
+		assertEquals(0, samples.getDropped());
+	}
+}
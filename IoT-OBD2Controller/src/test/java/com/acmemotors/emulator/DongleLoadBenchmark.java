@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.ip.tcp.connection.TcpNioClientConnectionFactory;
+
+import com.acmemotors.integration.OBD2Serializer;
+import com.acmemotors.integration.PipelinedOBD2Gateway;
+import com.acmemotors.obd2.OBD2BatchPlanner;
+import com.acmemotors.obd2.OBD2Command;
+import com.acmemotors.obd2.OBD2PollingScheduler;
+import com.acmemotors.obd2.OBD2Readings;
+import com.acmemotors.obd2.OBD2ResponseDecoder;
+
+/**
+ * Runs the polling loop of the controller (scheduler, gateway, decoder) against many
+ * emulated dongles at once and reports the number of requests and PIDs read per
+ * second along with the time taken by each pass of the loop (sending the due requests
+ * and decoding their replies).  The run fails if any dongle stops polling before the
+ * end:
+ *
+ * <code>
+ * $ java -cp &lt;TEST_CLASSPATH&gt; com.acmemotors.emulator.DongleLoadBenchmark [dongles] [seconds] [latency] [jitter]
+ * </code>
+ *
+ * @author Michael Minella
+ */
+public class DongleLoadBenchmark {
+
+	private static final List<OBD2Command> POLLED = Arrays.asList(
+			OBD2Command.GET_RPM,
+			OBD2Command.GET_SPEED,
+			OBD2Command.GET_ENGINE_LOAD,
+			OBD2Command.GET_COOLANT_TEMP,
+			OBD2Command.GET_SHORT_TERM_FUEL_PERCENT,
+			OBD2Command.GET_INTAKE_AIR_TEMP,
+			OBD2Command.GET_MAF_FLOW_RATE,
+			OBD2Command.GET_THROTTLE_POSITION,
+			OBD2Command.GET_FUEL_LEVEL,
+			OBD2Command.GET_ACCELERATOR_PEDAL_POSITION_D);
+
+	private static final AtomicLong requests = new AtomicLong();
+
+	private static final AtomicLong pids = new AtomicLong();
+
+	private static final AtomicLong passes = new AtomicLong();
+
+	private static final AtomicLong latencyNanos = new AtomicLong();
+
+	private static final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	private static final AtomicLong failures = new AtomicLong();
+
+	public static void main(String[] args) throws Exception {
+		int dongles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		long latency = args.length > 2 ? Long.parseLong(args[2]) : 30;
+		long jitter = args.length > 3 ? Long.parseLong(args[3]) : 20;
+
+		ELM327EmulatorServer server = new ELM327EmulatorServer(0,
+				number -> new SyntheticResponseSource(number, ELM327EmulatorServer.vin(number)), latency, jitter);
+		server.start();
+
+		ExecutorService executor = Executors.newFixedThreadPool(dongles);
+		long end = System.currentTimeMillis() + seconds * 1000;
+
+		for (int i = 0; i < dongles; i++) {
+			executor.execute(() -> poll(server.getPort(), end));
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+		server.stop();
+
+		long count = Math.max(passes.get(), 1);
+
+		System.out.println(String.format("%d dongles, %dms latency + up to %dms jitter, %ds", dongles, latency, jitter, seconds));
+		System.out.println(String.format("requests/s: %.1f", requests.get() / (double) seconds));
+		System.out.println(String.format("PIDs/s: %.1f", pids.get() / (double) seconds));
+		System.out.println(String.format("mean pass time: %.2fms, max pass time: %.2fms",
+				latencyNanos.get() / (double) count / 1000000, maxLatencyNanos.get() / 1000000.0));
+
+		if(failures.get() > 0) {
+			// The figures above only cover the dongles that kept polling until the end
+			System.out.println(String.format("FAILED: %d of %d dongles stopped polling", failures.get(), dongles));
+			System.exit(1);
+		}
+	}
+
+	private static void poll(int port, long end) {
+		TcpNioClientConnectionFactory connectionFactory = new TcpNioClientConnectionFactory("localhost", port);
+		OBD2Serializer serializer = new OBD2Serializer();
+		connectionFactory.setSerializer(serializer);
+		connectionFactory.setDeserializer(serializer);
+		connectionFactory.setSingleUse(false);
+		connectionFactory.afterPropertiesSet();
+
+		try {
+			PipelinedOBD2Gateway gateway = new PipelinedOBD2Gateway(connectionFactory);
+			gateway.afterPropertiesSet();
+			gateway.send(OBD2Command.ECHO_ON.getCommand());
+			gateway.send(OBD2Command.HEADERS_ON.getCommand());
+
+			OBD2PollingScheduler scheduler = new OBD2PollingScheduler(POLLED,
+					Collections.<OBD2Command, Long>emptyMap(), new OBD2BatchPlanner(), 12);
+			OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+			OBD2Readings readings = new OBD2Readings();
+
+			List<CompletableFuture<String>> replies = new ArrayList<>();
+			long now;
+
+			while((now = System.currentTimeMillis()) < end) {
+				List<OBD2BatchPlanner.Batch> batches = scheduler.nextBatches(now);
+
+				if(batches.isEmpty()) {
+					Thread.sleep(Math.max(1, Math.min(end, scheduler.getNextPollTime(now)) - now));
+					continue;
+				}
+
+				long start = System.nanoTime();
+				replies.clear();
+
+				for (OBD2BatchPlanner.Batch batch : batches) {
+					replies.add(gateway.sendAsync(batch.getCommand()));
+				}
+
+				for (CompletableFuture<String> reply : replies) {
+					readings.record(decoder.decode(reply.join()));
+				}
+
+				long elapsed = System.nanoTime() - start;
+
+				for (OBD2BatchPlanner.Batch batch : batches) {
+					pids.addAndGet(batch.getCommands().size());
+				}
+
+				requests.addAndGet(batches.size());
+				passes.incrementAndGet();
+				latencyNanos.addAndGet(elapsed);
+				maxLatencyNanos.accumulateAndGet(elapsed, Math::max);
+			}
+		}
+		catch (Exception e) {
+			failures.incrementAndGet();
+			System.err.println("Dongle stopped polling: " + e);
+		}
+		finally {
+			connectionFactory.stop();
+		}
+	}
+}
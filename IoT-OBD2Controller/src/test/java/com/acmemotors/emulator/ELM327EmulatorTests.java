@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.emulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.integration.ip.tcp.connection.TcpNioClientConnectionFactory;
+
+import com.acmemotors.integration.OBD2Serializer;
+import com.acmemotors.integration.PipelinedOBD2Gateway;
+import com.acmemotors.obd2.OBD2Command;
+import com.acmemotors.obd2.OBD2Readings;
+import com.acmemotors.obd2.OBD2ResponseDecoder;
+
+/**
+ * @author Michael Minella
+ */
+public class ELM327EmulatorTests {
+
+	private static final String VIN = "1ACME000000000007";
+
+	@Test
+	public void testAtCommands() {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(7, VIN));
+
+		assertEquals("AT E1\rOK\r\r>", emulator.process("AT E1"));
+		assertEquals("AT I\rELM327 v1.5\r\r>", emulator.process("AT I"));
+		assertEquals("ST I\r?\r\r>", emulator.process("ST I"));
+		assertEquals("AT TP7\rOK\r\r>", emulator.process("AT TP7"));
+		assertEquals("AT DPN\r7\r\r>", emulator.process("AT DPN"));
+		assertEquals("AT L1\rOK\r\n\r\n>", emulator.process("AT L1"));
+		assertEquals("OK\r\n\r\n>", emulator.process("AT E0").substring("AT E0\r\n".length()));
+		assertEquals("OK\r\r>", emulator.process("AT D"));
+		assertEquals("AT E1\rOK\r\r>", emulator.process("AT E1"));
+	}
+
+	@Test
+	public void testMultiPidRequest() {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(7, VIN));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+
+		OBD2Readings readings = new OBD2Readings();
+		readings.record(new OBD2ResponseDecoder().decode(emulator.process("01 0C 0D 05 04 0B 06")));
+
+		assertTrue(readings.has(OBD2Command.GET_RPM));
+		assertTrue(readings.has(OBD2Command.GET_SPEED));
+		assertTrue(readings.has(OBD2Command.GET_COOLANT_TEMP));
+		assertTrue(readings.has(OBD2Command.GET_ENGINE_LOAD));
+		assertTrue(readings.has(OBD2Command.GET_INTAKE_ABSOLUTE_PRESSURE));
+		assertTrue(readings.has(OBD2Command.GET_SHORT_TERM_FUEL_PERCENT));
+		assertTrue(readings.getA(OBD2Command.GET_RPM) * 256 + readings.getB(OBD2Command.GET_RPM) >= 700 * 4);
+	}
+
+	@Test
+	public void testSupportedPids() {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(7, VIN));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+		OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+
+		decoder.decode(emulator.process("01 00"));
+
+		// 0C (RPM) and 20 (next range) are supported, 01 is not
+		assertTrue((decoder.getDataWord(0) & (0x80000000 >>> (0x0C - 1))) != 0);
+		assertTrue((decoder.getDataWord(0) & 1) != 0);
+		assertFalse((decoder.getDataWord(0) & 0x80000000) != 0);
+
+		assertTrue(emulator.process("01 60").contains("NO DATA"));
+	}
+
+	@Test
+	public void testVin() {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(7, VIN));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+
+		OBD2ResponseDecoder decoder = new OBD2ResponseDecoder().decode(emulator.process("0902"));
+
+		assertEquals(3 + 17, decoder.getMessageLength(0));
+
+		StringBuilder vin = new StringBuilder();
+
+		for (int i = 3; i < decoder.getMessageLength(0); i++) {
+			vin.append((char) decoder.getMessageByte(0, i));
+		}
+
+		assertEquals(VIN, vin.toString());
+	}
+
+	@Test
+	public void testHeadersOff() {
+		ELM327Emulator emulator = new ELM327Emulator(request -> Arrays.asList("18 DA F1 11 03 41 0D 32",
+				"7E8 03 41 0D 33", "18 DA F1 11 10 14 49 02 01 31 41 43"));
+		emulator.process("AT E0");
+
+		assertEquals("OK\r\r>", emulator.process("AT H0"));
+		// The PCI byte of the first frame of a longer message is kept
+		assertEquals("41 0D 32 \r41 0D 33 \r10 14 49 02 01 31 41 43 \r\r>", emulator.process("01 0D"));
+
+		emulator = new ELM327Emulator(new SyntheticResponseSource(7, VIN));
+		emulator.process("AT H0");
+
+		assertTrue(emulator.process("01 05").startsWith("01 05\r41 05 "));
+	}
+
+	@Test
+	public void testRecordedResponses() throws Exception {
+		Map<String, List<List<String>>> recording;
+
+		try (InputStream capture = new ClassPathResource("elm327-capture.txt").getInputStream()) {
+			recording = RecordedResponseSource.read(capture);
+		}
+
+		ELM327Emulator emulator = new ELM327Emulator(new RecordedResponseSource(recording, 0));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+
+		assertEquals("01 00\r18 DA F1 11 06 41 00 BE 3F A8 13 \r18 DA F1 1D 06 41 00 98 3A 80 01 \r\r>",
+				emulator.process("01 00"));
+		assertTrue(emulator.process("01 0C").contains("NO DATA"));
+	}
+
+	@Test
+	public void testRecordedResponsesOfUnspacedRequests() throws Exception {
+		Map<String, List<List<String>>> recording = RecordedResponseSource.read(new ByteArrayInputStream(
+				"ATZ\r\rELM327 v1.5\r\r>010c\r18 DA F1 11 04 41 0C 0C C0 \r\r>".getBytes(StandardCharsets.US_ASCII)));
+
+		ELM327Emulator emulator = new ELM327Emulator(new RecordedResponseSource(recording, 0));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+
+		assertEquals("01 0C\r18 DA F1 11 04 41 0C 0C C0 \r\r>", emulator.process("01 0C"));
+	}
+
+	@Test
+	public void testDonglesOverTcp() throws Exception {
+		ELM327EmulatorServer server = new ELM327EmulatorServer(0,
+				number -> new SyntheticResponseSource(number, ELM327EmulatorServer.vin(number)), 5, 5);
+		server.start();
+
+		try {
+			for (int i = 0; i < 3; i++) {
+				TcpNioClientConnectionFactory connectionFactory = new TcpNioClientConnectionFactory("localhost", server.getPort());
+				connectionFactory.setSerializer(new OBD2Serializer());
+				connectionFactory.setDeserializer(new OBD2Serializer());
+				connectionFactory.setSingleUse(false);
+				connectionFactory.afterPropertiesSet();
+
+				PipelinedOBD2Gateway gateway = new PipelinedOBD2Gateway(connectionFactory);
+				gateway.afterPropertiesSet();
+
+				try {
+					assertEquals("AT H1\nOK\n\n>", gateway.send(OBD2Command.HEADERS_ON.getCommand()));
+
+					// Queued without waiting for the replies
+					String rpm = gateway.sendAsync("01 0C").get();
+					OBD2ResponseDecoder decoder = new OBD2ResponseDecoder().decode(gateway.sendAsync("09 02").get());
+
+					assertTrue(rpm.startsWith("01 0C\n18 DA F1 11 04 41 0C"));
+					assertEquals(ELM327EmulatorServer.vin(i).charAt(16), (char) decoder.getMessageByte(0, 19));
+				}
+				finally {
+					connectionFactory.stop();
+				}
+			}
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.acmemotors.emulator.ELM327EmulatorServer;
+import com.acmemotors.emulator.SyntheticResponseSource;
+
+/**
+ * @author Michael Minella
+ */
+public class DongleConnectionTests {
+
+	private DongleEventLoop loop;
+
+	@Before
+	public void setUp() {
+		loop = new DongleEventLoop();
+		loop.start();
+	}
+
+	@After
+	public void tearDown() {
+		loop.stop();
+	}
+
+	@Test
+	public void testQueuedCommandsAreAnsweredInOrder() throws Exception {
+		ELM327EmulatorServer emulator = new ELM327EmulatorServer(0,
+				number -> new SyntheticResponseSource(number, ELM327EmulatorServer.vin(number)), 5, 0);
+		emulator.start();
+
+		try {
+			DongleConnection connection = loop.connect(new InetSocketAddress("localhost", emulator.getPort()), 8, 5000);
+
+			CompletableFuture<String> echo = connection.sendAsync("AT E1");
+			CompletableFuture<String> rpm = connection.sendAsync("01 0C");
+			CompletableFuture<String> speed = connection.sendAsync("01 0D");
+
+			assertTrue(echo.join().contains("OK"));
+			assertTrue(rpm.join(), rpm.join().startsWith("01 0C\n"));
+			assertTrue(speed.join(), speed.join().startsWith("01 0D\n"));
+			assertTrue(speed.join().endsWith(">"));
+		}
+		finally {
+			emulator.stop();
+		}
+	}
+
+	@Test
+	public void testPromptOnConnectionAnswersNoCommand() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			DongleConnection connection = loop.connect(new InetSocketAddress("localhost", server.getLocalPort()), 8, 5000);
+			CompletableFuture<String> reset = connection.sendAsync("AT Z");
+			CompletableFuture<String> echo = connection.sendAsync("AT E0");
+
+			try (Socket dongle = server.accept()) {
+				InputStream input = dongle.getInputStream();
+				OutputStream output = dongle.getOutputStream();
+
+				readCommand(input, "AT Z\r\n");
+				// The prompt sent on connection arrives once the first command was written
+				output.write("\r>".getBytes("US-ASCII"));
+				output.flush();
+				Thread.sleep(50);
+
+				assertFalse(reset.isDone());
+
+				output.write("ELM327 v1.5\r\r>".getBytes("US-ASCII"));
+				output.flush();
+				readCommand(input, "AT E0\r\n");
+				output.write("OK\r\r>".getBytes("US-ASCII"));
+				output.flush();
+
+				assertEquals("ELM327 v1.5\n\n>", reset.join());
+				assertEquals("OK\n\n>", echo.join());
+			}
+
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testFullQueueFailsRightAway() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			DongleConnection connection = loop.connect(new InetSocketAddress("localhost", server.getLocalPort()), 1, 5000);
+
+			connection.sendAsync("01 0C");
+
+			try {
+				connection.sendAsync("01 0D").join();
+				fail("The queue holds a single command");
+			}
+			catch (CompletionException e) {
+				assertEquals(IllegalStateException.class, e.getCause().getClass());
+			}
+
+			connection.close();
+		}
+	}
+
+	@Test
+	public void testSilentDongleIsClosed() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			DongleConnection connection = loop.connect(new InetSocketAddress("localhost", server.getLocalPort()), 8, 200);
+			CompletableFuture<String> first = connection.sendAsync("01 0C");
+			CompletableFuture<String> second = connection.sendAsync("01 0D");
+
+			try (Socket dongle = server.accept()) {
+				// Only the first command is written until it is answered
+				readCommand(dongle.getInputStream(), "01 0C\r\n");
+
+				try {
+					second.join();
+					fail("The connection should time out");
+				}
+				catch (CompletionException e) {
+					assertTrue(first.isCompletedExceptionally());
+					assertTrue(connection.isClosed());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnknownHostOnlyClosesItsConnection() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			DongleConnection unknown = loop.connect(InetSocketAddress.createUnresolved("dongle.invalid", 35000), 8, 5000);
+
+			try {
+				unknown.sendAsync("AT Z").join();
+				fail("The host is unknown");
+			}
+			catch (CompletionException e) {
+				assertTrue(unknown.isClosed());
+			}
+
+			DongleConnection connection = loop.connect(new InetSocketAddress("localhost", server.getLocalPort()), 8, 5000);
+
+			try (Socket dongle = server.accept()) {
+				assertFalse(connection.isClosed());
+			}
+
+			connection.close();
+		}
+	}
+
+	private static void readCommand(InputStream input, String expected) throws IOException {
+		byte[] command = new byte[expected.length()];
+		int read = 0;
+
+		while(read < command.length) {
+			read += input.read(command, read, command.length - read);
+		}
+
+		assertEquals(expected, new String(command, "US-ASCII"));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.fleet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.acmemotors.emulator.ELM327EmulatorServer;
+import com.acmemotors.emulator.SyntheticResponseSource;
+
+/**
+ * @author Michael Minella
+ */
+public class FleetTests {
+
+	private ELM327EmulatorServer emulator;
+
+	@Before
+	public void setUp() {
+		emulator = new ELM327EmulatorServer(0,
+				number -> new SyntheticResponseSource(number, ELM327EmulatorServer.vin(number)), 2, 2);
+		emulator.start();
+	}
+
+	@After
+	public void tearDown() {
+		emulator.stop();
+	}
+
+	@Test
+	public void testParseDongles() {
+		List<InetSocketAddress> dongles = Fleet.parseDongles("10.0.0.10:35000, 10.0.0.11:35001\nlocalhost:35000*3");
+
+		assertEquals(5, dongles.size());
+		assertEquals("10.0.0.11", dongles.get(1).getHostString());
+		assertEquals(35001, dongles.get(1).getPort());
+		assertEquals(dongles.get(2), dongles.get(4));
+	}
+
+	@Test
+	public void testEveryCarIsPolled() throws Exception {
+		int cars = 20;
+		Map<String, AtomicInteger> samples = new ConcurrentHashMap<>();
+
+		Fleet fleet = new Fleet(Fleet.parseDongles("localhost:" + emulator.getPort() + "*" + cars), () -> null,
+				(vin, state) -> {
+					assertTrue(state.getRpm() >= 0);
+					samples.computeIfAbsent(vin, key -> new AtomicInteger()).incrementAndGet();
+				}, 2);
+		fleet.start();
+
+		try {
+			long end = System.currentTimeMillis() + 10000;
+
+			while(System.currentTimeMillis() < end && !allPolled(samples, cars, 3)) {
+				Thread.sleep(50);
+			}
+
+			assertEquals(cars, fleet.getConnectedCount());
+			assertTrue(samples.toString(), allPolled(samples, cars, 3));
+
+			for (int i = 0; i < cars; i++) {
+				assertTrue(samples.containsKey(ELM327EmulatorServer.vin(i)));
+			}
+		}
+		finally {
+			fleet.stop();
+		}
+	}
+
+	private static boolean allPolled(Map<String, AtomicInteger> samples, int cars, int count) {
+		if(samples.size() < cars) {
+			return false;
+		}
+
+		for (AtomicInteger polled : samples.values()) {
+			if(polled.get() < count) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
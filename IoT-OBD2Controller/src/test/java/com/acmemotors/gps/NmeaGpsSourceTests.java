@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class NmeaGpsSourceTests {
+
+	@Test
+	public void testLatestFixFromSocket() throws Exception {
+		try (ServerSocket server = new ServerSocket(0)) {
+			NmeaGpsSource source = new NmeaGpsSource("localhost", server.getLocalPort());
+			source.setReconnectDelay(10);
+
+			assertNull(source.getPosition());
+
+			source.start();
+
+			try (Socket gps = server.accept()) {
+				OutputStream output = gps.getOutputStream();
+				output.write((NmeaReaderTests.sentence("GPRMC,123519,A,4807.038,N,01131.000,E,,,230394,,")
+						+ NmeaReaderTests.sentence("GPRMC,123520,A,4807.538,N,01131.000,E,,,230394,,"))
+						.getBytes(StandardCharsets.US_ASCII));
+				output.flush();
+
+				GpsPosition position = awaitPosition(source, 48.125633);
+
+				assertNotNull(position);
+				assertEquals(11.516667, position.getLongitude(), 0.00001);
+			}
+			finally {
+				source.stop();
+			}
+		}
+	}
+
+	private static GpsPosition awaitPosition(GpsSource source, double latitude) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+
+		while(System.currentTimeMillis() < end) {
+			GpsPosition position = source.getPosition();
+
+			if(position != null && Math.abs(position.getLatitude() - latitude) < 0.00001) {
+				return position;
+			}
+
+			Thread.sleep(10);
+		}
+
+		return null;
+	}
+}
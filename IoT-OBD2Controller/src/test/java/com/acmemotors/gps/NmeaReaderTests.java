@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.gps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class NmeaReaderTests {
+
+	private static final String GGA = "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47\r\n";
+
+	private static final String RMC = "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A\r\n";
+
+	private NmeaReader reader;
+
+	@Before
+	public void setUp() {
+		reader = new NmeaReader(() -> 42);
+	}
+
+	@Test
+	public void testGga() throws Exception {
+		List<GpsPosition> positions = read(GGA);
+
+		assertEquals(1, positions.size());
+		assertEquals(48.1173, positions.get(0).getLatitude(), 0.00001);
+		assertEquals(11.516667, positions.get(0).getLongitude(), 0.00001);
+		assertEquals(42, positions.get(0).getTimestamp());
+	}
+
+	@Test
+	public void testRmc() throws Exception {
+		List<GpsPosition> positions = read(RMC);
+
+		assertEquals(1, positions.size());
+		assertEquals(48.1173, positions.get(0).getLatitude(), 0.00001);
+		assertEquals(11.516667, positions.get(0).getLongitude(), 0.00001);
+	}
+
+	@Test
+	public void testSouthernAndWesternHemispheres() throws Exception {
+		List<GpsPosition> positions = read(sentence("GNRMC,210230,A,3355.3471,S,15110.7129,W,0.0,0.0,010115,,"));
+
+		assertEquals(1, positions.size());
+		assertEquals(-33.922452, positions.get(0).getLatitude(), 0.00001);
+		assertEquals(-151.178548, positions.get(0).getLongitude(), 0.00001);
+	}
+
+	@Test
+	public void testSentencesWithoutFixAreIgnored() throws Exception {
+		assertEquals(0, read(sentence("GPGGA,123519,,,,,0,00,,,M,,M,,")).size());
+		assertEquals(0, read(sentence("GPRMC,123519,V,4807.038,N,01131.000,E,,,230394,,")).size());
+	}
+
+	@Test
+	public void testWrongChecksumIsIgnored() throws Exception {
+		assertEquals(0, read(GGA.replace("*47", "*48")).size());
+	}
+
+	@Test
+	public void testOtherSentencesAreIgnored() throws Exception {
+		List<GpsPosition> positions = read(sentence("GPGSV,3,1,11,03,03,111,00,04,15,270,00,06,01,010,00,13,06,292,00")
+				+ sentence("GPVTG,054.7,T,034.4,M,005.5,N,010.2,K") + RMC);
+
+		assertEquals(1, positions.size());
+	}
+
+	@Test
+	public void testSentencesSplitAcrossReads() {
+		byte[] bytes = ("garbage" + GGA + RMC).getBytes(StandardCharsets.US_ASCII);
+		int count = 0;
+
+		for (byte b : bytes) {
+			if(reader.accept(b) != null) {
+				count++;
+			}
+		}
+
+		assertEquals(2, count);
+	}
+
+	@Test
+	public void testOverlongSentenceIsIgnored() {
+		StringBuilder sentence = new StringBuilder("$GPGGA,123519,4807.038,N,01131.000,E,1,08");
+
+		while(sentence.length() < NmeaReader.MAX_SENTENCE_LENGTH) {
+			sentence.append(",0");
+		}
+
+		for (byte b : (sentence + "\r\n").getBytes(StandardCharsets.US_ASCII)) {
+			assertNull(reader.accept(b));
+		}
+	}
+
+	private List<GpsPosition> read(String sentences) throws Exception {
+		List<GpsPosition> positions = new ArrayList<>();
+		InputStream input = new ByteArrayInputStream(sentences.getBytes(StandardCharsets.US_ASCII));
+
+		reader.read(input, positions::add);
+
+		return positions;
+	}
+
+	static String sentence(String body) {
+		int checksum = 0;
+
+		for (int i = 0; i < body.length(); i++) {
+			checksum ^= body.charAt(i);
+		}
+
+		return String.format("$%s*%02X\r\n", body, checksum);
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.integration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import com.acmemotors.obd2.OBD2ResponseDecoder;
+
+/**
+ * Frames per second reading a recorded dongle session (elm327-capture.txt, replayed
+ * in a loop) with the byte at a time deserializer previously used by
+ * {@link OBD2Serializer} and with the {@link OBD2Framer}:
+ *
+ * <code>
+ * $ java -cp &lt;TEST_CLASSPATH&gt; com.acmemotors.integration.OBD2FramerBenchmark
+ * </code>
+ *
+ * @author Michael Minella
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OBD2FramerBenchmark {
+
+	private InputStream capture;
+
+	private final OBD2Framer framer = new OBD2Framer();
+
+	private final OBD2Serializer serializer = new OBD2Serializer();
+
+	private final OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+
+	@Setup
+	public void setUp() throws IOException {
+		capture = new ReplayInputStream(StreamUtils.copyToByteArray(
+				new ClassPathResource("elm327-capture.txt").getInputStream()));
+	}
+
+	@Benchmark
+	public String legacyDeserialize() throws IOException {
+		StringBuilder builder = new StringBuilder();
+
+		int c;
+		while(true) {
+			c = capture.read();
+
+			if(c == '\r') {
+				c = '\n';
+			}
+
+			builder.append((char)c);
+
+			if(c == '>') {
+				break;
+			}
+		}
+
+		return builder.toString();
+	}
+
+	@Benchmark
+	public String serializerDeserialize() throws IOException {
+		return serializer.deserialize(capture);
+	}
+
+	@Benchmark
+	public ByteBuffer framerNextFrame() throws IOException {
+		return framer.nextFrame(capture);
+	}
+
+	@Benchmark
+	public int framerNextFrameAndDecode() throws IOException {
+		return decoder.decode(framer.nextFrame(capture)).getFrameCount();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(OBD2FramerBenchmark.class.getSimpleName())
+				.addProfiler("gc")
+				.build();
+
+		new Runner(options).run();
+	}
+
+	/**
+	 * Endlessly replays the capture, returning at most the rest of the capture on each
+	 * bulk read like a socket returning what has arrived so far.
+	 */
+	private static class ReplayInputStream extends InputStream {
+
+		private final byte[] bytes;
+
+		private int position;
+
+		private ReplayInputStream(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read() {
+			int b = bytes[position++];
+
+			if(position == bytes.length) {
+				position = 0;
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			int count = Math.min(len, bytes.length - position);
+			System.arraycopy(bytes, position, b, off, count);
+			position = (position + count) % bytes.length;
+
+			return count;
+		}
+	}
+}
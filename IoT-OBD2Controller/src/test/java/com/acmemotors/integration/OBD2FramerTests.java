@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.acmemotors.obd2.OBD2ResponseDecoder;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2FramerTests {
+
+	private static final String REPLIES = "01 0C\r18 DA F1 11 04 41 0C 0C C0 \r\r>" +
+			"01 0D\r18 DA F1 11 03 41 0D 3C \r\r>";
+
+	@Test
+	public void testFramesSplitOnPrompt() throws Exception {
+		OBD2Framer framer = new OBD2Framer();
+		InputStream inputStream = new ByteArrayInputStream(REPLIES.getBytes(StandardCharsets.US_ASCII));
+
+		assertEquals("01 0C\n18 DA F1 11 04 41 0C 0C C0 \n\n>", asString(framer.nextFrame(inputStream)));
+		assertEquals("01 0D\n18 DA F1 11 03 41 0D 3C \n\n>", asString(framer.nextFrame(inputStream)));
+		assertNull(framer.nextFrame(inputStream));
+	}
+
+	@Test
+	public void testFramesSplitAcrossReads() throws Exception {
+		// Small buffer and a channel returning a few bytes at a time
+		OBD2Framer framer = new OBD2Framer(4, 1024);
+		InputStream inputStream = new TrickleInputStream(REPLIES.getBytes(StandardCharsets.US_ASCII), 3);
+
+		OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+
+		decoder.decode(framer.nextFrame(Channels.newChannel(inputStream)));
+		assertEquals(0xC0, decoder.getB());
+
+		decoder.decode(framer.nextFrame(Channels.newChannel(inputStream)));
+		assertEquals(0x3C, decoder.getA());
+	}
+
+	@Test
+	public void testFramesReadTogether() throws Exception {
+		OBD2Framer framer = new OBD2Framer();
+		InputStream inputStream = new ByteArrayInputStream((REPLIES + "01 0D\r18").getBytes(StandardCharsets.US_ASCII));
+
+		assertEquals(REPLIES.replace('\r', '\n'), asString(framer.nextFrames(inputStream)));
+		// The start of the next reply is kept for the next call
+		assertEquals(8, framer.getBufferedBytes());
+	}
+
+	@Test
+	public void testPromptOnly() {
+		assertTrue(OBD2Framer.isPromptOnly(">"));
+		assertTrue(OBD2Framer.isPromptOnly("\n\n>"));
+		assertFalse(OBD2Framer.isPromptOnly("OK\n\n>"));
+		assertFalse(OBD2Framer.isPromptOnly(""));
+		assertFalse(OBD2Framer.isPromptOnly("\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testStreamClosedInTheMiddleOfAFrame() throws Exception {
+		new OBD2Framer().nextFrame(new ByteArrayInputStream("01 0C\r18 DA".getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testFrameTooLarge() throws Exception {
+		new OBD2Framer(4, 8).nextFrame(new ByteArrayInputStream(REPLIES.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Test
+	public void testSerializerReturnsTheRepliesReadTogether() throws Exception {
+		OBD2Serializer serializer = new OBD2Serializer();
+		InputStream inputStream = new TrickleInputStream((REPLIES + "01 0C\r18 DA F1 11 04 41 0C 0C C0 \r\r>")
+				.getBytes(StandardCharsets.US_ASCII), REPLIES.length() + 5);
+
+		// The start of the third reply read with the first two is kept for the next call
+		assertEquals("01 0C\n18 DA F1 11 04 41 0C 0C C0 \n\n>01 0D\n18 DA F1 11 03 41 0D 3C \n\n>",
+				serializer.deserialize(inputStream));
+		assertEquals("01 0C\n18 DA F1 11 04 41 0C 0C C0 \n\n>", serializer.deserialize(inputStream));
+	}
+
+	private static String asString(ByteBuffer frame) {
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	public void testPollFrameFromNonBlockingChannel() throws Exception {
+		OBD2Framer framer = new OBD2Framer();
+		Pipe pipe = Pipe.open();
+		pipe.source().configureBlocking(false);
+
+		pipe.sink().write(ByteBuffer.wrap("01 0C\r18 DA F1 11 04 41 0C 0C C0 \r".getBytes(StandardCharsets.US_ASCII)));
+		assertNull(framer.pollFrame(pipe.source()));
+		assertNull(framer.pollFrame(pipe.source()));
+
+		pipe.sink().write(ByteBuffer.wrap("\r>01".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("01 0C\n18 DA F1 11 04 41 0C 0C C0 \n\n>", asString(framer.pollFrame(pipe.source())));
+		assertNull(framer.pollFrame(pipe.source()));
+		assertEquals(2, framer.getBufferedBytes());
+	}
+
+	@Test(expected = IOException.class)
+	public void testPollFrameAfterClose() throws Exception {
+		Pipe pipe = Pipe.open();
+		pipe.source().configureBlocking(false);
+		pipe.sink().close();
+
+		new OBD2Framer().pollFrame(pipe.source());
+	}
+
+	private static class TrickleInputStream extends ByteArrayInputStream {
+
+		private final int chunkSize;
+
+		private TrickleInputStream(byte[] bytes, int chunkSize) {
+			super(bytes);
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, chunkSize));
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpConnectionSupport;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * @author Michael Minella
+ */
+public class PipelinedOBD2GatewayTests {
+
+	private AbstractClientConnectionFactory connectionFactory;
+
+	private TcpConnectionSupport connection;
+
+	private PipelinedOBD2Gateway gateway;
+
+	@Before
+	public void setUp() throws Exception {
+		connectionFactory = mock(AbstractClientConnectionFactory.class);
+		connection = mock(TcpConnectionSupport.class);
+
+		when(connectionFactory.getConnection()).thenReturn(connection);
+
+		gateway = new PipelinedOBD2Gateway(connectionFactory, 2);
+		gateway.afterPropertiesSet();
+
+		verify(connectionFactory).registerListener(gateway);
+	}
+
+	@Test
+	public void testOnlyOneCommandOnTheWire() throws Exception {
+		CompletableFuture<String> rpm = gateway.sendAsync("01 0C");
+		CompletableFuture<String> speed = gateway.sendAsync("01 0D");
+
+		assertEquals("01 0C", writtenCommands(1).get(0));
+
+		gateway.onMessage(MessageBuilder.withPayload("41 0C 0C C0 \n\n>".getBytes()).build());
+
+		assertEquals("41 0C 0C C0 \n\n>", rpm.get());
+		assertFalse(speed.isDone());
+		assertEquals("01 0D", writtenCommands(2).get(1));
+
+		gateway.onMessage(MessageBuilder.withPayload("41 0D 3C \n\n>").build());
+
+		assertEquals("41 0D 3C \n\n>", speed.get());
+	}
+
+	@Test
+	public void testUnsolicitedPromptIsIgnored() throws Exception {
+		gateway.onMessage(MessageBuilder.withPayload(">").build());
+
+		CompletableFuture<String> rpm = gateway.sendAsync("01 0C");
+
+		assertFalse(rpm.isDone());
+
+		gateway.onMessage(MessageBuilder.withPayload("41 0C 0C C0 \n\n>").build());
+
+		assertEquals("41 0C 0C C0 \n\n>", rpm.get());
+	}
+
+	@Test
+	public void testPromptAfterTheFirstCommandIsIgnored() throws Exception {
+		CompletableFuture<String> reset = gateway.sendAsync("AT Z");
+		CompletableFuture<String> echo = gateway.sendAsync("AT E0");
+
+		// The prompt sent on connection only arrives once the first command was written
+		gateway.onMessage(MessageBuilder.withPayload("\n>").build());
+
+		assertFalse(reset.isDone());
+
+		gateway.onMessage(MessageBuilder.withPayload("ELM327 v1.5\n\n>").build());
+		gateway.onMessage(MessageBuilder.withPayload("OK\n\n>").build());
+
+		assertEquals("ELM327 v1.5\n\n>", reset.get());
+		assertEquals("OK\n\n>", echo.get());
+		assertEquals("AT E0", writtenCommands(2).get(1));
+	}
+
+	@Test
+	public void testRepliesReadTogether() throws Exception {
+		CompletableFuture<String> rpm = gateway.sendAsync("01 0C");
+		CompletableFuture<String> speed = gateway.sendAsync("01 0D");
+
+		// The connection prompt and two replies coming in the same chunk
+		gateway.onMessage(MessageBuilder.withPayload(">41 0C 0C C0 \n\n>41 0D 3C \n\n>").build());
+
+		assertEquals("41 0C 0C C0 \n\n>", rpm.get());
+		assertEquals("41 0D 3C \n\n>", speed.get());
+	}
+
+	@Test
+	public void testWriteFailureFailsPendingCommands() throws Exception {
+		doThrow(new IllegalStateException("Connection lost")).when(connection).send(any(Message.class));
+
+		CompletableFuture<String> rpm = gateway.sendAsync("01 0C");
+
+		assertTrue(rpm.isCompletedExceptionally());
+
+		// Slots are freed so the gateway is still usable
+		gateway.sendAsync("01 0C");
+		gateway.sendAsync("01 0C");
+	}
+
+	@Test
+	public void testTimeoutResetsTheConnection() throws Exception {
+		gateway.setReplyTimeout(10);
+
+		CompletableFuture<String> speed = gateway.sendAsync("01 0D");
+
+		try {
+			gateway.send("01 0C");
+			fail("No reply was sent");
+		}
+		catch (MessageTimeoutException e) {
+			verify(connectionFactory).stop();
+		}
+
+		assertTrue(speed.isCompletedExceptionally());
+
+		// The commands sent next are not held back by the ones that timed out
+		CompletableFuture<String> rpm = gateway.sendAsync("01 0C");
+		gateway.sendAsync("01 0D");
+		gateway.onMessage(MessageBuilder.withPayload("41 0C 0C C0 \n\n>").build());
+
+		assertEquals("41 0C 0C C0 \n\n>", rpm.get());
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private List<String> writtenCommands(int count) throws Exception {
+		ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
+		verify(connection, times(count)).send(captor.capture());
+
+		List<String> commands = new ArrayList<>();
+
+		for (Message message : captor.getAllValues()) {
+			commands.add((String) message.getPayload());
+		}
+
+		return commands;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+import com.acmemotors.domain.OBDVersion;
+
+/**
+ * @author Michael Minella
+ */
+public class CarStateDeltaEncoderTests {
+
+	private static final String VIN = "1ACME000000000001";
+
+	private CarStateDeltaEncoder encoder;
+
+	private CarStateDeltaDecoder decoder;
+
+	@Before
+	public void setUp() {
+		encoder = new CarStateDeltaEncoder(10000);
+		decoder = new CarStateDeltaDecoder();
+	}
+
+	@Test
+	public void testFirstSampleIsAKeyframe() {
+		StringBuilder json = new StringBuilder();
+
+		assertTrue(encoder.encode(VIN, sample(1000, 800), json));
+		assertTrue(json.toString().endsWith(",\"keyframe\":true}\n"));
+		assertEquals(full(sample(1000, 800)), decoder.decode(json.toString().trim()));
+	}
+
+	@Test
+	public void testOnlyChangesBeyondTheDeadbandAreWritten() {
+		StringBuilder json = new StringBuilder();
+		encoder.encode(VIN, sample(1000, 800), json);
+		json.setLength(0);
+
+		assertFalse(encoder.encode(VIN, sample(2000, 840), json));
+		assertEquals(0, json.length());
+
+		// Compared to the value last written, so slow drifts are sent eventually
+		assertTrue(encoder.encode(VIN, sample(3000, 860), json));
+		assertEquals("{\"vin\":\"" + VIN + "\",\"timestamp\":3000,\"rpm\":860}\n", json.toString());
+	}
+
+	@Test
+	public void testValueNoLongerReadIsWritten() {
+		StringBuilder json = new StringBuilder();
+		encoder.encode(VIN, sample(1000, 800), json);
+		json.setLength(0);
+
+		CarState state = sample(2000, 800);
+		state.setCoolantTemp(CarState.NOT_READ);
+
+		assertTrue(encoder.encode(VIN, state, json));
+		assertEquals("{\"vin\":\"" + VIN + "\",\"timestamp\":2000,\"coolant_temp\":\"\"}\n", json.toString());
+	}
+
+	@Test
+	public void testTemperaturesBelowFreezingAreWritten() {
+		StringBuilder json = new StringBuilder();
+		CarState cold = sample(1000, 800);
+		cold.setCoolantTemp(-40);
+		cold.setIntakeAirTemp(-1);
+
+		assertTrue(encoder.encode(VIN, cold, json));
+		assertTrue(json.toString().contains("\"coolant_temp\":-40,"));
+		assertTrue(json.toString().contains("\"intake_air_temp\":-1,"));
+		assertEquals(full(cold), decoder.decode(json.toString().trim()));
+		json.setLength(0);
+
+		// Warming up from below freezing is a change like any other
+		CarState warmer = sample(2000, 800);
+		warmer.setCoolantTemp(-20);
+		warmer.setIntakeAirTemp(-1);
+
+		assertTrue(encoder.encode(VIN, warmer, json));
+		assertEquals("{\"vin\":\"" + VIN + "\",\"timestamp\":2000,\"coolant_temp\":-20}\n", json.toString());
+		assertEquals(full(warmer), decoder.decode(json.toString().trim()));
+	}
+
+	@Test
+	public void testKeyframeInterval() {
+		StringBuilder json = new StringBuilder();
+		encoder.encode(VIN, sample(1000, 800), json);
+		json.setLength(0);
+
+		assertFalse(encoder.encode(VIN, sample(10999, 800), json));
+		assertTrue(encoder.encode(VIN, sample(11000, 800), json));
+		assertTrue(json.toString().contains("\"keyframe\":true"));
+
+		json.setLength(0);
+		encoder.reset();
+
+		assertTrue(encoder.encode(VIN, sample(12000, 800), json));
+		assertTrue(json.toString().contains("\"keyframe\":true"));
+	}
+
+	@Test
+	public void testDeadbandOverride() {
+		encoder.setDeadbands("rpm=0, vehicle_speed=5");
+
+		StringBuilder json = new StringBuilder();
+		encoder.encode(VIN, sample(1000, 800), json);
+		json.setLength(0);
+
+		assertTrue(encoder.encode(VIN, sample(2000, 801), json));
+		assertEquals("{\"vin\":\"" + VIN + "\",\"timestamp\":2000,\"rpm\":801}\n", json.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownDeadbandField() {
+		encoder.setDeadbands("horsepower=5");
+	}
+
+	@Test
+	public void testDecoderRebuildsFullRecords() {
+		StringBuilder json = new StringBuilder();
+		CarState[] samples = {sample(1000, 800), sample(2000, 900), sample(3000, 910), sample(4000, 1500)};
+		samples[3].setMafRate(14.25);
+
+		for (CarState sample : samples) {
+			encoder.encode(VIN, sample, json);
+		}
+
+		String[] lines = json.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals(full(samples[0]), decoder.decode(lines[0]));
+		assertEquals(full(samples[1]), decoder.decode(lines[1]));
+
+		// Within the deadbands of the sample at 2000
+		CarState expected = sample(4000, 1500);
+		expected.setMafRate(14.25);
+		assertEquals(full(expected), decoder.decode(lines[2]));
+		assertTrue(full(expected).contains("\"obd_standards\":\"1\""));
+	}
+
+	@Test
+	public void testChangesBeforeTheFirstKeyframeAreDropped() {
+		assertNull(decoder.decode("{\"vin\":\"" + VIN + "\",\"timestamp\":2000,\"rpm\":801}"));
+	}
+
+	private static CarState sample(long timestamp, int rpm) {
+		CarState state = CarStateJournalTests.sample(timestamp);
+		state.setRpm(rpm);
+		state.setLatitude(37.7749);
+		state.setLongitude(-122.4194);
+		state.setFuelSystemStatusCode(2);
+		state.setCoolantTemp(90);
+		state.setMafRate(12.5);
+		state.setObdStandard(OBDVersion.fromCode(1));
+
+		return state;
+	}
+
+	private static String full(CarState state) {
+		StringBuilder json = new StringBuilder("{\"vin\":\"" + VIN + "\",\"timestamp\":" + state.getTimestamp());
+
+		for (CarStateField field : CarStateField.values()) {
+			field.appendJson(state, json);
+		}
+
+		return json.append('}').toString();
+	}
+}
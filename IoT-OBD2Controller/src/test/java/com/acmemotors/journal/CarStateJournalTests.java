@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.OBDVersion;
+
+/**
+ * @author Michael Minella
+ */
+public class CarStateJournalTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCodecRoundTrip() {
+		CarState state = new CarState();
+		state.setTimestamp(1420070400000L);
+		state.setLatitude(45.5);
+		state.setLongitude(-122.6);
+		state.setRpm(2500);
+		state.setSpeed(55);
+		state.setFuelSystemStatusCode(2);
+		state.setShortTermFuelPercent(-1.5625);
+		state.setMafRate(12.5);
+		state.setObdStandard(OBDVersion.OBD);
+		state.setRunningTime(90000);
+
+		ByteBuffer buffer = ByteBuffer.allocate(CarStateCodec.RECORD_SIZE);
+		CarStateCodec.encode(state, buffer);
+
+		assertEquals(CarStateCodec.RECORD_SIZE, buffer.position());
+		// Written as the code of the standard rather than its ordinal
+		assertEquals(OBDVersion.OBD.getCode(), buffer.getShort(56));
+
+		buffer.flip();
+		CarState decoded = new CarState();
+		CarStateCodec.decode(buffer, decoded);
+
+		assertEquals(state.toString(), decoded.toString());
+		assertEquals(1420070400000L, decoded.getTimestamp());
+		assertEquals(CarState.NOT_READ, decoded.getCoolantTemp());
+		assertTrue(Double.isNaN(decoded.getLongTermFuelPercent()));
+	}
+
+	@Test
+	public void testTemperaturesBelowFreezingAreJournaled() throws Exception {
+		CarStateJournal journal = new CarStateJournal(folder.newFolder());
+
+		CarState state = sample(1);
+		state.setCoolantTemp(-40);
+		state.setIntakeAirTemp(-1);
+		journal.append(state);
+		journal.roll();
+
+		List<Integer> values = new ArrayList<>();
+		CarStateJournal.read(journal.getSealedSegments().get(0), sample -> {
+			values.add(sample.getCoolantTemp());
+			values.add(sample.getIntakeAirTemp());
+			values.add(sample.getThrottlePosition());
+		});
+
+		assertEquals(Arrays.asList(-40, -1, CarState.NOT_READ), values);
+	}
+
+	@Test
+	public void testNullObdStandard() {
+		ByteBuffer buffer = ByteBuffer.allocate(CarStateCodec.RECORD_SIZE);
+		CarStateCodec.encode(new CarState(), buffer);
+		buffer.flip();
+
+		CarState decoded = new CarState();
+		decoded.setObdStandard(OBDVersion.values()[0]);
+		CarStateCodec.decode(buffer, decoded);
+
+		assertNull(decoded.getObdStandard());
+	}
+
+	@Test
+	public void testSegmentsRollWhenFull() throws Exception {
+		File directory = folder.newFolder();
+		// Room for the header and three samples
+		CarStateJournal journal = new CarStateJournal(directory, 16 + 3 * (CarStateCodec.RECORD_SIZE + 1), 60000);
+
+		for (int i = 0; i < 7; i++) {
+			journal.append(sample(i));
+		}
+
+		journal.roll();
+
+		List<File> sealed = journal.getSealedSegments();
+		assertEquals(3, sealed.size());
+
+		List<Long> timestamps = new ArrayList<>();
+
+		for (File segment : sealed) {
+			CarStateJournal.read(segment, state -> timestamps.add(state.getTimestamp()));
+		}
+
+		assertEquals(7, timestamps.size());
+
+		for (int i = 0; i < 7; i++) {
+			assertEquals(Long.valueOf(i), timestamps.get(i));
+		}
+	}
+
+	@Test
+	public void testRollWithoutSamples() throws Exception {
+		CarStateJournal journal = new CarStateJournal(folder.newFolder());
+		journal.roll();
+
+		assertTrue(journal.getSealedSegments().isEmpty());
+	}
+
+	@Test
+	public void testUncommittedSampleIsIgnoredOnRecovery() throws Exception {
+		File directory = folder.newFolder();
+		CarStateJournal journal = new CarStateJournal(directory);
+		journal.append(sample(1));
+		journal.append(sample(2));
+
+		File[] active = directory.listFiles((dir, name) -> name.endsWith(CarStateJournal.ACTIVE_SUFFIX));
+		assertEquals(1, active.length);
+
+		// Simulate a power loss while the second sample was written
+		try (RandomAccessFile file = new RandomAccessFile(active[0], "rw")) {
+			file.seek(16 + 2 * (CarStateCodec.RECORD_SIZE + 1) - 1);
+			file.writeByte(0);
+		}
+
+		CarStateJournal recovered = new CarStateJournal(directory);
+		List<File> sealed = recovered.getSealedSegments();
+
+		assertEquals(1, sealed.size());
+		assertEquals(0, directory.listFiles((dir, name) -> name.endsWith(CarStateJournal.ACTIVE_SUFFIX)).length);
+
+		List<Long> timestamps = new ArrayList<>();
+		assertEquals(1, CarStateJournal.read(sealed.get(0), state -> timestamps.add(state.getTimestamp())));
+		assertEquals(Long.valueOf(1), timestamps.get(0));
+
+		// New segments are numbered after the recovered one
+		recovered.append(sample(3));
+		recovered.roll();
+
+		assertEquals(2, recovered.getSealedSegments().size());
+		assertEquals(sealed.get(0), recovered.getSealedSegments().get(0));
+	}
+
+	static CarState sample(long timestamp) {
+		CarState state = new CarState();
+		state.setTimestamp(timestamp);
+		state.setRpm(800);
+		state.setSpeed(30);
+
+		return state;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySourcesPropertyResolver;
+import org.springframework.http.HttpEntity;
+import org.springframework.web.client.RestOperations;
+
+/**
+ * @author Michael Minella
+ */
+public class JournalUplinkTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUnexpectedFailureDoesNotStopTheUploads() throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("journalDirectory", folder.getRoot().getPath());
+		properties.put("uploadInterval", "10");
+
+		MutablePropertySources sources = new MutablePropertySources();
+		sources.addFirst(new MapPropertySource("options", properties));
+
+		RestOperations restTemplate = mock(RestOperations.class);
+		when(restTemplate.postForObject(anyString(), any(HttpEntity.class), eq(String.class)))
+				.thenThrow(new IllegalStateException("No converter"));
+
+		JournalUplink uplink = JournalUplink.create(new PropertySourcesPropertyResolver(sources), restTemplate);
+
+		try {
+			CarStateJournal journal = uplink.open(folder.newFolder(), "1ACME000000000001");
+			journal.append(CarStateJournalTests.sample(1));
+			journal.roll();
+
+			// The segment is kept and retried by the next runs
+			verify(restTemplate, timeout(2000).atLeast(3)).postForObject(anyString(), any(HttpEntity.class),
+					eq(String.class));
+		}
+		finally {
+			uplink.shutdown();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestOperations;
+
+import com.acmemotors.domain.CarState;
+
+/**
+ * @author Michael Minella
+ */
+public class JournalUploaderTests {
+
+	private static final String URL = "http://localhost:9000";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CarStateJournal journal;
+
+	private RestOperations restTemplate;
+
+	private JournalUploader uploader;
+
+	@Captor
+	private ArgumentCaptor<HttpEntity<String>> requests;
+
+	@Before
+	public void setUp() throws Exception {
+		MockitoAnnotations.initMocks(this);
+
+		journal = new CarStateJournal(folder.newFolder());
+		restTemplate = mock(RestOperations.class);
+		uploader = new JournalUploader(journal, restTemplate, URL, "1ACME000000000001", 2);
+	}
+
+	@Test
+	public void testUploadInBatches() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			journal.append(CarStateJournalTests.sample(i));
+		}
+
+		journal.roll();
+
+		assertEquals(5, uploader.upload());
+
+		verify(restTemplate, times(3)).postForObject(eq(URL), requests.capture(), eq(String.class));
+
+		assertEquals(2, lines(requests.getAllValues().get(0)));
+		assertEquals(2, lines(requests.getAllValues().get(1)));
+		assertEquals(1, lines(requests.getAllValues().get(2)));
+		assertEquals("application/x-ndjson;charset=UTF-8",
+				requests.getAllValues().get(0).getHeaders().getContentType().toString());
+		assertTrue(journal.getSealedSegments().isEmpty());
+	}
+
+	@Test
+	public void testFailedBatchIsRetried() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			journal.append(CarStateJournalTests.sample(i));
+		}
+
+		journal.roll();
+
+		when(restTemplate.postForObject(eq(URL), any(HttpEntity.class), eq(String.class)))
+				.thenReturn("")
+				.thenThrow(new ResourceAccessException("Connection refused"))
+				.thenReturn("");
+
+		assertEquals(2, uploader.upload());
+		assertEquals(1, journal.getSealedSegments().size());
+
+		assertEquals(1, uploader.upload());
+		assertTrue(journal.getSealedSegments().isEmpty());
+
+		verify(restTemplate, times(3)).postForObject(eq(URL), requests.capture(), eq(String.class));
+
+		// The failed batch is sent again, not the samples already uploaded
+		assertEquals(requests.getAllValues().get(1).getBody(), requests.getAllValues().get(2).getBody());
+		assertTrue(requests.getAllValues().get(2).getBody().contains("\"timestamp\":2,"));
+	}
+
+	@Test
+	public void testAgedSegmentIsUploadedWithoutNewSamples() throws Exception {
+		journal = new CarStateJournal(folder.newFolder(), CarStateJournal.DEFAULT_SEGMENT_SIZE, 50);
+		uploader = new JournalUploader(journal, restTemplate, URL, "1ACME000000000001", 2);
+
+		journal.append(CarStateJournalTests.sample(1));
+
+		assertEquals(0, uploader.upload());
+
+		// The car stopped sampling, the segment is sealed once old enough
+		Thread.sleep(100);
+
+		assertEquals(1, uploader.upload());
+		assertTrue(journal.getSealedSegments().isEmpty());
+	}
+
+	@Test
+	public void testJsonUsesTheSimulatorFields() {
+		CarState state = CarStateJournalTests.sample(1420070400000L);
+		state.setFuelSystemStatusCode(2);
+		state.setMafRate(12.5);
+
+		StringBuilder json = new StringBuilder();
+		uploader.appendJson(state, json);
+
+		String line = json.toString();
+
+		assertTrue(line.startsWith("{\"vin\":\"1ACME000000000001\",\"timestamp\":1420070400000,"));
+		assertTrue(line.contains("\"rpm\":800,\"vehicle_speed\":30,\"fuel_system_status\":[2],"));
+		assertTrue(line.contains("\"maf_airflow\":12.5,"));
+		assertTrue(line.contains("\"coolant_temp\":\"\","));
+		assertTrue(line.contains("\"latitude\":\"\","));
+		assertTrue(line.endsWith("\"accelerator_throttle_pos_e\":\"\"}\n"));
+	}
+
+	@Test
+	public void testTemperaturesBelowFreezingAreUploaded() throws Exception {
+		CarState state = CarStateJournalTests.sample(1);
+		state.setCoolantTemp(-40);
+		state.setIntakeAirTemp(-1);
+		journal.append(state);
+		journal.roll();
+
+		assertEquals(1, uploader.upload());
+
+		verify(restTemplate).postForObject(eq(URL), requests.capture(), eq(String.class));
+		String body = (String) requests.getValue().getBody();
+		assertTrue(body, body.contains("\"coolant_temp\":-40,"));
+		assertTrue(body, body.contains("\"intake_air_temp\":-1,"));
+	}
+
+	private static int lines(HttpEntity<?> request) {
+		return ((String) request.getBody()).split("\n").length;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2BatchPlannerTests {
+
+	@Test
+	public void testPlanGroupsSixPidsPerRequest() {
+		List<OBD2BatchPlanner.Batch> batches = new OBD2BatchPlanner().plan(Arrays.asList(
+				OBD2Command.GET_RPM,
+				OBD2Command.GET_SPEED,
+				OBD2Command.GET_COOLANT_TEMP,
+				OBD2Command.GET_ENGINE_LOAD,
+				OBD2Command.GET_INTAKE_ABSOLUTE_PRESSURE,
+				OBD2Command.GET_INTAKE_AIR_TEMP,
+				OBD2Command.GET_FUEL_LEVEL));
+
+		assertEquals(2, batches.size());
+		assertEquals("01 0C 0D 05 04 0B 0F", batches.get(0).getCommand());
+		assertEquals("01 2F", batches.get(1).getCommand());
+	}
+
+	@Test
+	public void testVariableLengthPidsAreLast() {
+		List<OBD2BatchPlanner.Batch> batches = new OBD2BatchPlanner().plan(Arrays.asList(
+				OBD2Command.GET_SHORT_TERM_FUEL_PERCENT,
+				OBD2Command.GET_LONG_TERM_FUEL_PERCENT,
+				OBD2Command.GET_RPM,
+				OBD2Command.GET_SPEED));
+
+		assertEquals(2, batches.size());
+		assertEquals("01 0C 0D 06", batches.get(0).getCommand());
+		assertEquals("01 07", batches.get(1).getCommand());
+	}
+
+	@Test
+	public void testBatchingDisabled() {
+		List<OBD2BatchPlanner.Batch> batches = new OBD2BatchPlanner(1).plan(Arrays.asList(
+				OBD2Command.GET_RPM,
+				OBD2Command.GET_SPEED));
+
+		assertEquals(2, batches.size());
+		assertEquals(OBD2Command.GET_RPM.getCommand(), batches.get(0).getCommand());
+		assertEquals(OBD2Command.GET_SPEED.getCommand(), batches.get(1).getCommand());
+	}
+
+	@Test
+	public void testCountBatches() {
+		OBD2BatchPlanner planner = new OBD2BatchPlanner(3);
+
+		assertEquals(planner.plan(Arrays.asList(OBD2Command.GET_SHORT_TERM_FUEL_PERCENT,
+				OBD2Command.GET_LONG_TERM_FUEL_PERCENT, OBD2Command.GET_RPM)).size(), planner.countBatches(1, 2));
+		assertEquals(2, planner.countBatches(4, 0));
+		assertEquals(3, new OBD2BatchPlanner(1).countBatches(2, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonMode01Command() {
+		new OBD2BatchPlanner().plan(Arrays.asList(OBD2Command.GET_VIN));
+	}
+
+	@Test
+	public void testDemultiplexMultiFrameResponse() {
+		String response = "01 0C 0D 05 04 0B 06\n" +
+				"18 DA F1 11 10 0E 41 0C 0C C0 0D 3C \n" +
+				"18 DA F1 1D 03 41 0D 3B \n" +
+				"18 DA F1 11 21 05 7B 04 4D 0B 21 06 \n" +
+				"18 DA F1 11 22 80 00 00 00 00 00 00 \n" +
+				"\n" +
+				">";
+
+		OBD2Readings readings = new OBD2Readings();
+		readings.record(new OBD2ResponseDecoder().decode(response));
+
+		assertEquals(0x0C, readings.getA(OBD2Command.GET_RPM));
+		assertEquals(0xC0, readings.getB(OBD2Command.GET_RPM));
+		assertEquals(0x3C, readings.getA(OBD2Command.GET_SPEED));
+		assertEquals(0x7B, readings.getA(OBD2Command.GET_COOLANT_TEMP));
+		assertEquals(0x4D, readings.getA(OBD2Command.GET_ENGINE_LOAD));
+		assertEquals(0x21, readings.getA(OBD2Command.GET_INTAKE_ABSOLUTE_PRESSURE));
+		assertEquals(0x80, readings.getA(OBD2Command.GET_SHORT_TERM_FUEL_PERCENT));
+		assertFalse(readings.has(OBD2Command.GET_FUEL_LEVEL));
+
+		readings.clear();
+
+		assertFalse(readings.has(OBD2Command.GET_RPM));
+	}
+
+	@Test
+	public void testDemultiplexSinglePidResponse() {
+		OBD2Readings readings = new OBD2Readings();
+		readings.record(new OBD2ResponseDecoder().decode("01 0C\n" +
+				"18 DA F1 11 04 41 0C 0C C0 \n" +
+				"18 DA F1 1D 04 41 0C 0C B4 \n" +
+				"\n" +
+				">"));
+
+		assertTrue(readings.has(OBD2Command.GET_RPM));
+		assertEquals(0xC0, readings.getB(OBD2Command.GET_RPM));
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.acmemotors.domain.CarState;
+import com.acmemotors.domain.CarStateField;
+import com.acmemotors.domain.OBDVersion;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2PidRegistryTests {
+
+	@Test
+	public void testOnlySupportedPidsArePolled() {
+		// 01 00 answer of a car supporting 01 to 0D except 02 and 08, none above 20
+		OBD2PidRegistry registry = new OBD2PidRegistry(0xBEF80000);
+
+		assertTrue(registry.getCommands().contains(OBD2Command.GET_RPM));
+		assertTrue(registry.getCommands().contains(OBD2Command.GET_SPEED));
+		assertTrue(registry.getCommands().contains(OBD2Command.GET_ENGINE_LOAD));
+		assertFalse(registry.getCommands().contains(OBD2Command.GET_INTAKE_AIR_TEMP));
+		assertFalse(registry.getCommands().contains(OBD2Command.GET_FUEL_LEVEL));
+	}
+
+	@Test
+	public void testEveryPidIsPolledWithoutBitmap() {
+		assertEquals(OBD2Pid.values().length, new OBD2PidRegistry().getCommands().size());
+	}
+
+	@Test
+	public void testPidsAboveTheFirstRange() {
+		int[] bitmaps = {0x00000001, 0x00020001};
+
+		assertTrue(OBD2PidRegistry.isSupported(bitmaps, 0x20));
+		assertTrue(OBD2PidRegistry.isSupported(bitmaps, 0x2F));
+		assertTrue(OBD2PidRegistry.isSupported(bitmaps, 0x40));
+		assertFalse(OBD2PidRegistry.isSupported(bitmaps, 0x41));
+		assertFalse(OBD2PidRegistry.isSupported(bitmaps, 0));
+	}
+
+	@Test
+	public void testApplySetsOnlyTheReadValues() {
+		OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+		OBD2Readings readings = new OBD2Readings();
+		readings.record(decoder.decode("01 0C 0D 1C 10\n" +
+				"18 DA F1 11 10 0C 41 0C 0C C0 0D 64 \n" +
+				"18 DA F1 11 21 1C 01 10 01 F4 00 00 \n" +
+				"\n" +
+				">"));
+
+		CarState state = new CarState();
+		new OBD2PidRegistry().apply(readings, state);
+
+		assertEquals(816, state.getRpm());
+		assertEquals(62, state.getSpeed());
+		assertEquals(OBDVersion.OBD_II, state.getObdStandard());
+		assertEquals(5.0, state.getMafRate(), 0);
+		assertEquals(CarState.NOT_READ, state.getCoolantTemp());
+	}
+
+	@Test
+	public void testFormulas() {
+		assertEquals(-100, OBD2Pid.SHORT_TERM_FUEL_PERCENT.decode(0, 0), 0);
+		assertEquals(0, OBD2Pid.LONG_TERM_FUEL_PERCENT.decode(128, 0), 0);
+		assertEquals(2.56, OBD2Pid.MAF_FLOW_RATE.decode(1, 0), 0.0001);
+		assertEquals(90, OBD2Pid.COOLANT_TEMP.decode(130, 0), 0);
+		assertEquals(100, OBD2Pid.FUEL_LEVEL.decode(255, 0), 0);
+		assertEquals(OBD2Pid.RPM, OBD2Pid.forPid(0x0C));
+		assertEquals(CarStateField.VEHICLE_SPEED, OBD2Pid.SPEED.getField());
+		assertNull(OBD2Pid.forPid(0x42));
+		assertNull(OBDVersion.fromCode(14));
+	}
+}
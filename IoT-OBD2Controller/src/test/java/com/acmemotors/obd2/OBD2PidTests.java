@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mminella
+ */
+public class OBD2PidTests {
+
+	private OBD2ResponseDecoder decoder;
+
+	@Before
+	public void setUp() {
+		decoder = new OBD2ResponseDecoder();
+	}
+
+	@Test
+	public void testRpmDecoding() {
+		double rpm = decode(OBD2Pid.RPM, "01 0C\n" +
+										 "18 DA F1 11 04 41 0C 0C C0 \n" +
+										 "18 DA F1 1D 04 41 0C 0C B4 \n" +
+										 "\n" +
+										 ">");
+
+		assertEquals(816, rpm, 0);
+	}
+
+	@Test
+	public void testFuelTrimDecoding() {
+		assertEquals(-100, decode(OBD2Pid.SHORT_TERM_FUEL_PERCENT, "01 06\n18 DA F1 10 03 41 06 00 \n\n>"), 0);
+		assertEquals(0, decode(OBD2Pid.SHORT_TERM_FUEL_PERCENT, "01 06\n18 DA F1 10 03 41 06 80 \n\n>"), 0);
+		assertEquals(50, decode(OBD2Pid.LONG_TERM_FUEL_PERCENT, "01 07\n18 DA F1 10 03 41 07 C0 \n\n>"), 0);
+		assertEquals(99.21875, decode(OBD2Pid.LONG_TERM_FUEL_PERCENT, "01 07\n18 DA F1 10 03 41 07 FF \n\n>"), 0);
+	}
+
+	@Test
+	public void testMafFlowRateDecoding() {
+		double rate = decode(OBD2Pid.MAF_FLOW_RATE, "01 10\n18 DA F1 10 04 41 10 01 5E \n\n>");
+
+		assertEquals(3.5, rate, 0);
+	}
+
+	@Test
+	public void testForPid() {
+		assertSame(OBD2Pid.MAF_FLOW_RATE, OBD2Pid.forPid(0x10));
+		assertNull(OBD2Pid.forPid(0x00));
+	}
+
+	private double decode(OBD2Pid pid, String response) {
+		decoder.decode(response);
+
+		assertEquals(pid.getCommand().getPid(), decoder.getPid(0));
+
+		return pid.decode(decoder.getA(), pid.getResponseBytes() > 1 ? decoder.getB() : 0);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2PollingSchedulerTests {
+
+	@Test
+	public void testPidsArePolledAtTheirOwnRate() {
+		OBD2PollingScheduler scheduler = new OBD2PollingScheduler(
+				Arrays.asList(OBD2Command.GET_FUEL_LEVEL, OBD2Command.GET_RPM, OBD2Command.GET_OBD_STANDARD),
+				OBD2PollingScheduler.parseIntervals("GET_RPM=100, GET_FUEL_LEVEL=1000"),
+				new OBD2BatchPlanner(), 100);
+
+		assertEquals("01 1C 0C 2F", commands(scheduler.nextBatches(0)));
+		assertEquals("", commands(scheduler.nextBatches(50)));
+		assertEquals(100, scheduler.getNextPollTime(50));
+		assertEquals("01 0C", commands(scheduler.nextBatches(100)));
+		assertEquals("01 0C", commands(scheduler.nextBatches(200)));
+		assertEquals("01 0C 2F", commands(scheduler.nextBatches(1000)));
+	}
+
+	@Test
+	public void testRoundTripBudget() {
+		OBD2PollingScheduler scheduler = new OBD2PollingScheduler(
+				Arrays.asList(OBD2Command.GET_RPM, OBD2Command.GET_SPEED, OBD2Command.GET_FUEL_LEVEL),
+				OBD2PollingScheduler.parseIntervals("GET_RPM=100,GET_SPEED=100,GET_FUEL_LEVEL=100"),
+				new OBD2BatchPlanner(1), 2);
+
+		// Two tokens available, the third PID stays due
+		assertEquals(2, scheduler.nextBatches(0).size());
+		assertTrue(scheduler.getNextPollTime(0) >= 500);
+		assertEquals(0, scheduler.nextBatches(100).size());
+		assertEquals("01 2F", commands(scheduler.nextBatches(500)));
+	}
+
+	@Test
+	public void testRoundTripBudgetAppliedEarliestDeadlineFirst() {
+		OBD2PollingScheduler scheduler = new OBD2PollingScheduler(
+				Arrays.asList(OBD2Command.GET_RPM, OBD2Command.GET_SPEED, OBD2Command.GET_SHORT_TERM_FUEL_PERCENT),
+				OBD2PollingScheduler.parseIntervals("GET_RPM=100,GET_SPEED=200,GET_SHORT_TERM_FUEL_PERCENT=300"),
+				new OBD2BatchPlanner(2), 1);
+
+		// The fuel trim would share the first request, it is due last and waits instead
+		assertEquals("01 0C 0D", commands(scheduler.nextBatches(0)));
+		assertEquals("01 0C 06", commands(scheduler.nextBatches(1000)));
+	}
+
+	@Test
+	public void testParseIntervals() {
+		Map<OBD2Command, Long> intervals =
+				OBD2PollingScheduler.parseIntervals("GET_RPM=100,GET_OBD_STANDARD=once");
+
+		assertEquals(Long.valueOf(100), intervals.get(OBD2Command.GET_RPM));
+		assertEquals(Long.valueOf(OBD2PollingScheduler.ONCE), intervals.get(OBD2Command.GET_OBD_STANDARD));
+		assertTrue(OBD2PollingScheduler.parseIntervals("").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseNegativeInterval() {
+		OBD2PollingScheduler.parseIntervals("GET_RPM=-100");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseZeroInterval() {
+		OBD2PollingScheduler.parseIntervals("GET_RPM=0");
+	}
+
+	@Test
+	public void testDefaultIntervals() {
+		OBD2PollingScheduler scheduler = new OBD2PollingScheduler(
+				Arrays.asList(OBD2Command.GET_RPM, OBD2Command.GET_FUEL_LEVEL, OBD2Command.GET_RUN_TIME_SINCE_START),
+				Collections.<OBD2Command, Long>emptyMap(), new OBD2BatchPlanner(), 10);
+
+		assertTrue(scheduler.getInterval(OBD2Command.GET_RPM) < scheduler.getInterval(OBD2Command.GET_RUN_TIME_SINCE_START));
+		assertTrue(scheduler.getInterval(OBD2Command.GET_RUN_TIME_SINCE_START) < scheduler.getInterval(OBD2Command.GET_FUEL_LEVEL));
+	}
+
+	private String commands(List<OBD2BatchPlanner.Batch> batches) {
+		StringBuilder builder = new StringBuilder();
+
+		for (OBD2BatchPlanner.Batch batch : batches) {
+			if(builder.length() > 0) {
+				builder.append('|');
+			}
+
+			builder.append(batch.getCommand());
+		}
+
+		return builder.toString();
+	}
+}
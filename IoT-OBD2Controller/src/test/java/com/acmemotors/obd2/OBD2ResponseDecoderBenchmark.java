@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link OBD2ResponseDecoder} with the String splitting/BigInteger
+ * parsing previously used by {@link OBD2Controller}.  Run with the GC profiler to see
+ * the allocation rate of each approach:
+ *
+ * <code>
+ * $ java -cp &lt;TEST_CLASSPATH&gt; com.acmemotors.obd2.OBD2ResponseDecoderBenchmark
+ * </code>
+ *
+ * @author Michael Minella
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OBD2ResponseDecoderBenchmark {
+
+	private final String response = "01 0C\n" +
+			"18 DA F1 11 04 41 0C 0C C0 \n" +
+			"18 DA F1 1D 04 41 0C 0C B4 \n" +
+			"\n" +
+			">";
+
+	private final ByteBuffer responseBytes =
+			ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII));
+
+	private final OBD2ResponseDecoder decoder = new OBD2ResponseDecoder();
+
+	@Benchmark
+	public int legacyRpm() {
+		String [] respsonseLines = response.split("\n");
+
+		String[] elements = respsonseLines[1].split(" ");
+
+		BigInteger a = new BigInteger(elements[7], 16);
+		BigInteger b = new BigInteger(elements[8], 16);
+
+		return ((a.intValue()*256)+b.intValue())/4;
+	}
+
+	@Benchmark
+	public int decoderRpmFromString() {
+		decoder.decode(response);
+
+		return ((decoder.getA() * 256) + decoder.getB()) / 4;
+	}
+
+	@Benchmark
+	public int decoderRpmFromBytes() {
+		decoder.decode(responseBytes);
+
+		return ((decoder.getA() * 256) + decoder.getB()) / 4;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.include(OBD2ResponseDecoderBenchmark.class.getSimpleName())
+				.addProfiler("gc")
+				.build();
+
+		new Runner(options).run();
+	}
+}
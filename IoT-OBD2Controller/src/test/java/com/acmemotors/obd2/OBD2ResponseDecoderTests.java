@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2ResponseDecoderTests {
+
+	private static final String RPM_RESPONSE = "01 0C\n" +
+			"18 DA F1 11 04 41 0C 0C C0 \n" +
+			"18 DA F1 1D 04 41 0C 0C B4 \n" +
+			"\n" +
+			">";
+
+	private OBD2ResponseDecoder decoder;
+
+	@Before
+	public void setUp() {
+		decoder = new OBD2ResponseDecoder();
+	}
+
+	@Test
+	public void testDecodeFrames() {
+		decoder.decode(RPM_RESPONSE);
+
+		assertEquals(2, decoder.getFrameCount());
+		assertEquals(0x18DAF111, decoder.getHeader(0));
+		assertEquals(0x18DAF11D, decoder.getHeader(1));
+		assertEquals(4, decoder.getPci(0));
+		assertEquals(0x41, decoder.getMode(0));
+		assertEquals(0x0C, decoder.getPid(0));
+		assertEquals(0x0C, decoder.getA());
+		assertEquals(0xC0, decoder.getB());
+		assertEquals(0xB4, decoder.getDataByte(1, 1));
+	}
+
+	@Test
+	public void testDecodeByteBuffer() {
+		ByteBuffer buffer = ByteBuffer.wrap(("xx" + RPM_RESPONSE).getBytes(StandardCharsets.US_ASCII));
+		buffer.position(2);
+
+		decoder.decode(buffer);
+
+		assertEquals(2, buffer.position());
+		assertEquals(2, decoder.getFrameCount());
+		assertEquals(0x0C, decoder.getA());
+		assertEquals(0xC0, decoder.getB());
+	}
+
+	@Test
+	public void testDecodeCarriageReturns() {
+		decoder.decode("01 0D\r18 DA F1 11 03 41 0D 3C \r\r>");
+
+		assertEquals(1, decoder.getFrameCount());
+		assertEquals(0x3C, decoder.getA());
+	}
+
+	@Test
+	public void testDecode11BitHeader() {
+		decoder.decode("01 05\n7E8 03 41 05 7B \n\n>");
+
+		assertEquals(1, decoder.getFrameCount());
+		assertEquals(0x7E8, decoder.getHeader(0));
+		assertEquals(0x7B, decoder.getA());
+	}
+
+	@Test
+	public void testNoData() {
+		decoder.decode("01 0C\nSEARCHING...\nNO DATA\n\n>");
+
+		assertEquals(0, decoder.getFrameCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReadingMissingFrame() {
+		decoder.decode("01 0C\nNO DATA\n\n>");
+
+		decoder.getA();
+	}
+
+	@Test
+	public void testDecoderIsReusable() {
+		decoder.decode(RPM_RESPONSE);
+		decoder.decode("01 0D\n18 DA F1 11 03 41 0D 3C \n\n>");
+
+		assertEquals(1, decoder.getFrameCount());
+		assertEquals(4, decoder.getLength(0));
+		assertEquals(0x3C, decoder.getA());
+	}
+
+	@Test
+	public void testMultiFrameMessage() {
+		decoder.decode("09 02\n" +
+				"18 DA F1 10 10 14 49 02 01 31 41 43 \n" +
+				"18 DA F1 10 21 4D 45 30 30 30 30 30 \n" +
+				"18 DA F1 10 22 30 30 30 30 30 30 31 \n" +
+				"\n>");
+
+		assertEquals(1, decoder.getMessageCount());
+		assertEquals(20, decoder.getMessageLength(0));
+		assertTrue(decoder.isMessageComplete(0));
+		assertEquals(0x49, decoder.getMessageByte(0, 0));
+		assertEquals(0x31, decoder.getMessageByte(0, 19));
+	}
+
+	@Test
+	public void testMissingConsecutiveFrame() {
+		decoder.decode("09 02\n" +
+				"18 DA F1 10 10 14 49 02 01 31 41 43 \n" +
+				"18 DA F1 10 22 30 30 30 30 30 30 31 \n" +
+				"\n>");
+
+		assertEquals(1, decoder.getMessageCount());
+		assertEquals(6, decoder.getMessageLength(0));
+		assertFalse(decoder.isMessageComplete(0));
+	}
+
+	@Test
+	public void testPidsSupported() {
+		String response = "01 00\n" +
+				"18 DA F1 11 06 41 00 BE 3F A8 13 \n" +
+				"18 DA F1 1D 06 41 00 98 3A 80 01 \n" +
+				"\n" +
+				">";
+
+		assertEquals(0xBE3FA813, decoder.decode(response).getDataWord(0));
+		assertEquals(Arrays.asList("1", "3", "4", "5", "6", "7", "b", "c", "d", "e", "f", "10", "11", "13", "15", "1c", "1f", "20"),
+				new OBD2Controller().decodePidsSupported(response, 0));
+	}
+}
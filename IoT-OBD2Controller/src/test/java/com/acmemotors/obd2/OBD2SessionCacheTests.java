@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.acmemotors.domain.CarStateRingBuffer;
+import com.acmemotors.emulator.ELM327Emulator;
+import com.acmemotors.emulator.SyntheticResponseSource;
+import com.acmemotors.integration.OBD2Gateway;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2SessionCacheTests {
+
+	private static final String VIN = "1ACME000000000001";
+
+	private static final String DONGLE = "localhost:35000";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File file;
+
+	private List<String> sent;
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "sessions.properties");
+		sent = new ArrayList<>();
+	}
+
+	@Test
+	public void testSessionsAreSaved() throws Exception {
+		new OBD2SessionCache(file).put(DONGLE, new OBD2SessionCache.Session(VIN, 6, new int[] {0xBE3EB811, 0x80000000}));
+
+		OBD2SessionCache.Session session = new OBD2SessionCache(file).get(DONGLE);
+
+		assertEquals(VIN, session.getVin());
+		assertEquals(6, session.getProtocol());
+		assertArrayEquals(new int[] {0xBE3EB811, 0x80000000}, session.getBitmaps());
+		assertNull(new OBD2SessionCache(file).get("localhost:35001"));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		OBD2SessionCache cache = new OBD2SessionCache(file);
+		cache.put(DONGLE, new OBD2SessionCache.Session(VIN, 6, new int[] {0xBE3EB811}));
+		cache.remove(DONGLE);
+
+		assertNull(new OBD2SessionCache(file).get(DONGLE));
+	}
+
+	@Test
+	public void testKnownCarSkipsTheNegotiation() throws Exception {
+		OBD2Controller first = controller(VIN);
+		first.setSessionCache(new OBD2SessionCache(file), DONGLE);
+		first.connect();
+
+		assertTrue(sent.contains(OBD2Command.GET_PIDS_SUPPORTED_00.getCommand()));
+		assertNotNull(new OBD2SessionCache(file).get(DONGLE));
+
+		sent.clear();
+
+		OBD2Controller second = controller(VIN);
+		second.setSessionCache(new OBD2SessionCache(file), DONGLE);
+		second.connect();
+
+		assertFalse(sent.contains(OBD2Command.GET_PIDS_SUPPORTED_00.getCommand()));
+		assertFalse(sent.contains(OBD2Command.TRY_PROTOCOL_7.getCommand()));
+		assertTrue(sent.contains("AT SP7"));
+		assertEquals(VIN, second.getVin());
+		assertEquals(1, sent.stream().filter(OBD2Command.GET_VIN.getCommand()::equals).count());
+		assertTrue(second.getCarState().getRpm() >= 0);
+	}
+
+	@Test
+	public void testAnotherCarIsNegotiated() throws Exception {
+		OBD2SessionCache cache = new OBD2SessionCache(file);
+		cache.put(DONGLE, new OBD2SessionCache.Session("1ACME000000000002", 6, new int[] {0xBE3EB811}));
+
+		OBD2Controller controller = controller(VIN);
+		controller.setSessionCache(cache, DONGLE);
+		controller.connect();
+
+		assertTrue(sent.contains(OBD2Command.GET_PIDS_SUPPORTED_00.getCommand()));
+		assertEquals(VIN, cache.get(DONGLE).getVin());
+	}
+
+	@Test
+	public void testCarWithoutVinIsNegotiatedWithoutCaching() throws Exception {
+		OBD2SessionCache cache = new OBD2SessionCache(file);
+
+		OBD2Controller controller = controller(null);
+		controller.setSessionCache(cache, DONGLE);
+		controller.connect();
+
+		assertTrue(sent.contains(OBD2Command.GET_PIDS_SUPPORTED_00.getCommand()));
+		assertNull(cache.get(DONGLE));
+		assertTrue(controller.getCarState().getRpm() >= 0);
+	}
+
+	/**
+	 * @param vin the VIN of the car, null for a car answering NO DATA to the VIN request
+	 */
+	private OBD2Controller controller(String vin) {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(1, vin == null ? VIN : vin));
+
+		OBD2Gateway gateway = command -> {
+			sent.add(command);
+
+			if(vin == null && command.equals(OBD2Command.GET_VIN.getCommand())) {
+				return command + "\nNO DATA\n\n>";
+			}
+
+			return emulator.process(command).replace('\r', '\n');
+		};
+
+		return new OBD2Controller(gateway, () -> null, new CarStateRingBuffer(4));
+	}
+}
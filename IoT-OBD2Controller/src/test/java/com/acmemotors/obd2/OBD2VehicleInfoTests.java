@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.acmemotors.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.acmemotors.domain.CarStateRingBuffer;
+import com.acmemotors.emulator.ELM327Emulator;
+import com.acmemotors.emulator.SyntheticResponseSource;
+
+/**
+ * @author Michael Minella
+ */
+public class OBD2VehicleInfoTests {
+
+	private OBD2ResponseDecoder decoder;
+
+	@Before
+	public void setUp() {
+		decoder = new OBD2ResponseDecoder();
+	}
+
+	@Test
+	public void testVin() {
+		decoder.decode("09 02\n" +
+				"18 DA F1 10 10 14 49 02 01 31 41 43 \n" +
+				"18 DA F1 10 21 4D 45 30 30 30 30 30 \n" +
+				"18 DA F1 10 22 30 30 30 30 30 30 31 \n" +
+				"\n>");
+
+		assertEquals("1ACME000000000001", OBD2VehicleInfo.decodeFirst(decoder, OBD2VehicleInfo.InfoType.VIN));
+	}
+
+	@Test
+	public void testVinWith11BitHeadersAndNoItemCount() {
+		decoder.decode("09 02\n" +
+				"7E8 10 13 49 02 31 41 43 4D \n" +
+				"7E8 21 45 30 30 30 30 30 30 \n" +
+				"7E8 22 30 30 30 30 30 31 \n" +
+				"\n>");
+
+		assertEquals("1ACME000000000001", OBD2VehicleInfo.decodeFirst(decoder, OBD2VehicleInfo.InfoType.VIN));
+	}
+
+	@Test
+	public void testCalibrationIdsOfManyEcus() {
+		// The engine ECU sends two padded IDs, the transmission ECU one, interleaved
+		decoder.decode("09 04\n" +
+				"18 DA F1 10 10 23 49 04 02 45 4E 47 \n" +
+				"18 DA F1 18 10 13 49 04 01 54 52 41 \n" +
+				"18 DA F1 10 21 31 32 33 00 00 00 00 \n" +
+				"18 DA F1 18 21 4E 53 39 00 00 00 00 \n" +
+				"18 DA F1 10 22 00 00 00 00 00 00 45 \n" +
+				"18 DA F1 18 22 00 00 00 00 00 00 \n" +
+				"18 DA F1 10 23 4E 47 34 35 36 00 00 \n" +
+				"18 DA F1 10 24 00 00 00 00 00 00 00 \n" +
+				"18 DA F1 10 25 00 00 00 00 00 00 00 \n" +
+				"\n>");
+
+		Map<Integer, List<String>> ids = OBD2VehicleInfo.decode(decoder, OBD2VehicleInfo.InfoType.CALIBRATION_ID);
+
+		assertEquals(Arrays.asList(0x18DAF110, 0x18DAF118), Arrays.asList(ids.keySet().toArray()));
+		assertEquals(Arrays.asList("ENG123", "ENG456"), ids.get(0x18DAF110));
+		assertEquals(Collections.singletonList("TRANS9"), ids.get(0x18DAF118));
+	}
+
+	@Test
+	public void testCalibrationVerificationNumbers() {
+		decoder.decode("09 06\n18 DA F1 10 07 49 06 01 17 91 BC 82 \n\n>");
+
+		assertEquals(Collections.singletonList("1791BC82"),
+				OBD2VehicleInfo.decode(decoder, OBD2VehicleInfo.InfoType.CALIBRATION_VERIFICATION_NUMBER).get(0x18DAF110));
+	}
+
+	@Test
+	public void testIncompleteMessageIsIgnored() {
+		decoder.decode("09 02\n" +
+				"18 DA F1 10 10 14 49 02 01 31 41 43 \n" +
+				"18 DA F1 10 22 30 30 30 30 30 30 31 \n" +
+				"\n>");
+
+		assertNull(OBD2VehicleInfo.decodeFirst(decoder, OBD2VehicleInfo.InfoType.VIN));
+	}
+
+	@Test
+	public void testControllerReadsVehicleInfo() {
+		ELM327Emulator emulator = new ELM327Emulator(new SyntheticResponseSource(1, "1ACME000000000001"));
+		OBD2Controller controller = new OBD2Controller(command -> emulator.process(command), () -> null,
+				new CarStateRingBuffer(4));
+		emulator.process(OBD2Command.HEADERS_ON.getCommand());
+
+		assertEquals("1ACME000000000001", controller.getVin());
+		assertEquals(Collections.singletonList("ACME000000000001"),
+				controller.getVehicleInfo(OBD2VehicleInfo.InfoType.CALIBRATION_ID).get(0x18DAF111));
+		assertTrue(controller.getVehicleInfo(OBD2VehicleInfo.InfoType.ECU_NAME).get(0x18DAF111)
+				.contains("ECM-EngineControl"));
+	}
+}